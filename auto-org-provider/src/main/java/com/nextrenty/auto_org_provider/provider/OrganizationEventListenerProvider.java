@@ -2,10 +2,13 @@ package com.nextrenty.auto_org_provider.provider;
 
 import java.util.Map;
 
+import org.infinispan.Cache;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventType;
 import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.AbstractKeycloakTransaction;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.OrganizationModel;
 import org.keycloak.models.RealmModel;
@@ -13,10 +16,15 @@ import org.keycloak.models.UserModel;
 import org.keycloak.organization.OrganizationProvider;
 import org.keycloak.models.GroupModel;
 
+import com.nextrenty.auto_org_provider.dtos.TrackSwiftlyRolesGroups;
+
 
 
 public class OrganizationEventListenerProvider implements EventListenerProvider{
 
+    private static final String MEMBERSHIP_CACHE_PREFIX = "trackswiftly.membership.";
+    private static final String GROUP_NAME_CACHE_PREFIX = "trackswiftly.group-catalog.name.";
+
     private final KeycloakSession session;
 
     public OrganizationEventListenerProvider(KeycloakSession session) {
@@ -46,7 +54,7 @@ public class OrganizationEventListenerProvider implements EventListenerProvider{
 
 
                 // Join the user to the admin group
-                GroupModel group = session.groups().getGroupByName(realm, null, "ADMIN_GROUP");
+                GroupModel group = findTopLevelGroup(realm, TrackSwiftlyRolesGroups.ADMIN_GROUP.name());
                 user.joinGroup(group);
     
                 // Create an organization for the user
@@ -76,6 +84,69 @@ public class OrganizationEventListenerProvider implements EventListenerProvider{
         
         organizationProvider.addManagedMember(organization, user);
 
+        evictMembershipCache(user);
+    }
+
+
+    /***
+     * 
+     * the users-services keeps the org ids of a user in the work cache , drop the entry of the new member .
+     * key prefix shared with OrganizationMembershipCache of keycloak-userservice .
+     * Evicted right away and once more after the transaction completes , as the WorkCache evictions of users-services ,
+     * so a node reading the membership before the commit does not cache the old one .
+     */
+    private void evictMembershipCache(UserModel user) {
+
+        Cache<String, Object> cache = session.getProvider(InfinispanConnectionProvider.class)
+            .getCache(InfinispanConnectionProvider.WORK_CACHE_NAME);
+
+        String key = MEMBERSHIP_CACHE_PREFIX + user.getId();
+
+        cache.remove(key);
+
+        session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+            @Override
+            protected void commitImpl() {
+                cache.remove(key);
+            }
+
+            @Override
+            protected void rollbackImpl() {
+                cache.remove(key);
+            }
+        });
+    }
+
+
+    /***
+     *
+     * name -> id of the group kept in the work cache , the group itself is read through the Keycloak group cache .
+     * The group catalog of keycloak-userservice lives in that provider , this one resolves the name on its own ,
+     * an entry pointing to a removed or renamed group is checked on read and replaced .
+     */
+    private GroupModel findTopLevelGroup(RealmModel realm, String name) {
+
+        Cache<String, Object> cache = session.getProvider(InfinispanConnectionProvider.class)
+            .getCache(InfinispanConnectionProvider.WORK_CACHE_NAME);
+
+        String key = GROUP_NAME_CACHE_PREFIX + realm.getId() + "." + name;
+
+        if (cache.get(key) instanceof String groupId) {
+            GroupModel group = realm.getGroupById(groupId);
+
+            if (group != null && group.getType() == GroupModel.Type.REALM
+                    && group.getParentId() == null && name.equals(group.getName())) {
+                return group;
+            }
+        }
+
+        GroupModel group = session.groups().getGroupByName(realm, null, name);
+
+        if (group != null) {
+            cache.put(key, group.getId());
+        }
+
+        return group;
     }
 
 
@@ -1,9 +1,10 @@
 package com.trackswiftly.keycloak_userservice;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
@@ -16,22 +17,30 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.OrganizationModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
-import org.keycloak.organization.OrganizationProvider;
-import org.keycloak.services.cors.Cors;
-import org.keycloak.services.managers.AuthenticationManager.AuthResult;
 import org.keycloak.services.resources.KeycloakOpenAPI;
 
 import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.cache.AssignableGroupsCache;
+import com.trackswiftly.keycloak_userservice.cache.OrganizationMembershipCache;
 import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
 import com.trackswiftly.keycloak_userservice.middlewares.AuthenticateMiddleware;
+import com.trackswiftly.keycloak_userservice.middlewares.CallerContext;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy.GroupClass;
+import com.trackswiftly.keycloak_userservice.services.BulkInvitationSender;
+import com.trackswiftly.keycloak_userservice.services.GroupCatalog;
+import com.trackswiftly.keycloak_userservice.services.InvitationTemplateCache;
 import com.trackswiftly.keycloak_userservice.services.OrganizationInvitationService;
+import com.trackswiftly.keycloak_userservice.services.PendingInvitationIndex;
 import com.trackswiftly.keycloak_userservice.services.UserManagementService;
 import com.trackswiftly.keycloak_userservice.utils.CorsUtils;
 import com.trackswiftly.keycloak_userservice.utils.EmailValidator;
+import com.trackswiftly.keycloak_userservice.utils.InvitationRowReader;
 
 import jakarta.validation.Valid;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.FormParam;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.OPTIONS;
@@ -41,10 +50,10 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
-import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import lombok.extern.slf4j.Slf4j;
 
 
@@ -53,33 +62,56 @@ import lombok.extern.slf4j.Slf4j;
 public class TrackSwiftlyResource {
 
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_DETAILS_IDS = 100;
+
     private static final String NO_ORGANIZATION_FOUND_FOR_USR = "No organization found for the user." ;
 
+    private static final int SENDER_BUSY_RETRY_AFTER_SECONDS = 30;
+
     private final KeycloakSession session;
     private final RealmModel realm;
-    private final OrganizationProvider provider;
+    private final CallerContext caller;
+    private final GroupAssignmentPolicy groupAssignmentPolicy;
+    private final GroupCatalog groupCatalog;
+    private final String preflightMaxAge;
+    private final int validationParallelThreshold;
+    private final int streamChunkSize;
+    private final BulkInvitationSender bulkInvitationSender;
+    private final InvitationTemplateCache invitationTemplates;
+    private final PendingInvitationIndex pendingInvitations;
 
 
     public TrackSwiftlyResource(
-		KeycloakSession session
+		KeycloakSession session ,
+        TrackSwiftlyResourceFactory factory
 	) {
         this.session = session;
         this.realm = session.getContext().getRealm();
-        this.provider = session.getProvider(OrganizationProvider.class);
+        this.caller = new CallerContext(session, factory.getTokenCache());
+        this.groupAssignmentPolicy = factory.getGroupAssignmentPolicy();
+        this.groupCatalog = factory.getGroupCatalog();
+        this.preflightMaxAge = factory.getPreflightMaxAge();
+        this.validationParallelThreshold = factory.getValidationParallelThreshold();
+        this.streamChunkSize = factory.getStreamChunkSize();
+        this.bulkInvitationSender = factory.getBulkInvitationSender();
+        this.invitationTemplates = factory.getInvitationTemplates();
+        this.pendingInvitations = factory.getPendingInvitations();
     }
 
 
+    /***
+     * 
+     * the CORS headers are already set by the provider , browsers cache this answer for "cors-preflight-max-age" seconds .
+     */
     @OPTIONS
     @Path("{any:.*}")
     public Response preflight() {
         log.debug("Preflight request received for CORS");
-        return Cors.builder()
-                .preflight()
-                .auth()
-                .allowAllOrigins()
-                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                .exposedHeaders("Location")
-                .add(Response.ok());
+        return CorsUtils.preflight(session, preflightMaxAge);
     }
 
 
@@ -101,29 +133,21 @@ public class TrackSwiftlyResource {
         (
             @FormParam("email") String email,
             @FormParam("firstName") String firstName,
-            @FormParam("lastName") String lastName ,
-            @Context HttpHeaders headers
+            @FormParam("lastName") String lastName
         ) {
         
         
-        AuthenticateMiddleware.checkRealm(session);
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session) ;
-        AuthenticateMiddleware.checkRole(authResult, session, List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
         
         /***
          * 
          *  get the first org of the crreunt user , we will allow to the user to be part of just one org .
          */
 
-        Stream<OrganizationModel> organizations = provider.getByMember(authResult.getUser());
-
-        Optional<OrganizationModel> firstOrganization = organizations.findFirst();
-        
         Response response ;
-        if (firstOrganization.isPresent()) {
-            OrganizationModel organization = firstOrganization.get();
+        if (caller.getOrganization().isPresent()) {
 
-            response =  new OrganizationInvitationService(session, organization).inviteUser(email, firstName, lastName);
+            response =  new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations).inviteUser(email, firstName, lastName);
 
         } else {
 
@@ -132,7 +156,7 @@ public class TrackSwiftlyResource {
                            .build();
         }
 
-        return CorsUtils.addCorsHeaders(response, headers);
+        return response;
     }
 
     /**
@@ -148,22 +172,22 @@ public class TrackSwiftlyResource {
     @Operation(summary = "Invites multiple users at once",
             description = "Sends invitations or registration links to multiple users in a single request. " +
                          "Automatically handles existing vs new users like the single invite method. " +
-                         "Uses a single SMTP connection for better performance.")
+                         "Emails are sent concurrently, results keep the order of the request.")
     public Response inviteUsersBulk(
-            @Valid List<@Valid InvitationRequest> userInvitations,
-            @Context HttpHeaders headers
+            @Valid List<@Valid InvitationRequest> userInvitations
         ) {
         
-        AuthenticateMiddleware.checkRealm(session);
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session);
-        AuthenticateMiddleware.checkRole(authResult, session, List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
         
+        if (bulkInvitationSender.isSaturated()) {
+            return senderBusy();
+        }
 
 
         Response response ;
 
         // Validate the request before processing
-        EmailValidator.ValidationResult validationResult = EmailValidator.validateInvitationRequests(userInvitations);
+        EmailValidator.ValidationResult validationResult = EmailValidator.validateInvitationRequests(userInvitations, validationParallelThreshold);
         if (!validationResult.isValid()) {
             
             response =  Response.status(Response.Status.BAD_REQUEST)
@@ -174,19 +198,13 @@ public class TrackSwiftlyResource {
                         ))
                         .build();
 
-            return CorsUtils.addCorsHeaders(response, headers);
+            return response;
         }
 
         // Get the first org of the current user
-        Stream<OrganizationModel> organizations = provider.getByMember(authResult.getUser());
-        Optional<OrganizationModel> firstOrganization = organizations.findFirst();
-        
-
-        
-        if (firstOrganization.isPresent()) {
-            OrganizationModel organization = firstOrganization.get();
+        if (caller.getOrganization().isPresent()) {
             
-            response = new OrganizationInvitationService(session, organization).inviteMultipleUsers(userInvitations);
+            response = new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations).inviteMultipleUsers(userInvitations, validationResult, bulkInvitationSender);
         } else {
             return Response.status(Response.Status.NOT_FOUND)
                            .entity(NO_ORGANIZATION_FOUND_FOR_USR)
@@ -194,13 +212,165 @@ public class TrackSwiftlyResource {
         }
 
 
-        return CorsUtils.addCorsHeaders(response, headers);
+        return response;
+    }
+
+
+    /**
+     * Bulk invite from an NDJSON or CSV upload , answered as NDJSON while the upload is processed
+     * @param upload one JSON invitation per line , or CSV with an email , firstName , lastName , userId header
+     * @return one result line per row , then a summary line
+     */
+    @Path("invite-users-stream")
+    @POST
+    @Consumes({ NDJSON, CSV })
+    @Produces(NDJSON)
+    @Tag(name = KeycloakOpenAPI.Admin.Tags.ORGANIZATIONS)
+    @Operation(summary = "Invites the users of an NDJSON or CSV upload",
+            description = "Rows are invited in chunks and answered as they are processed, one NDJSON line per row " +
+                         "then a summary line. Invalid rows are reported in their line, they do not stop the upload.")
+    public Response inviteUsersStream(InputStream upload) {
+
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
+
+        if (caller.getOrganization().isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                           .entity(NO_ORGANIZATION_FOUND_FOR_USR)
+                           .build();
+        }
+
+        if (bulkInvitationSender.isSaturated()) {
+            return senderBusy();
+        }
+
+        MediaType mediaType = session.getContext().getRequestHeaders().getMediaType();
+        InvitationRowReader rows;
+
+        try {
+            rows = mediaType != null && mediaType.isCompatible(MediaType.valueOf(CSV))
+                ? InvitationRowReader.csv(upload)
+                : InvitationRowReader.ndjson(upload);
+        } catch (IOException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(Map.of(
+                            "error", "VALIDATION_ERROR",
+                            "message", e.getMessage()
+                        ))
+                        .type(MediaType.APPLICATION_JSON)
+                        .build();
+        }
+
+        StreamingOutput results = new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations)
+                .inviteStream(rows, bulkInvitationSender, streamChunkSize);
+
+        return Response.ok(results, NDJSON).build();
+    }
+
+
+    /**
+     * Bulk invite in the background , answered once the invitations are stored
+     * @param userInvitations same list as the bulk invite
+     * @return 202 with the id of the job
+     */
+    @Path("invite-users-jobs")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Tag(name = KeycloakOpenAPI.Admin.Tags.ORGANIZATIONS)
+    @Operation(summary = "Creates a job inviting multiple users in the background",
+            description = "The invitations are processed in chunks, each chunk in its own transaction. " +
+                         "The progress and the failed rows are read from the returned Location.")
+    public Response createInvitationJob(
+            @Valid List<@Valid InvitationRequest> userInvitations
+        ) {
+
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
+
+        EmailValidator.ValidationResult validationResult = EmailValidator.validateInvitationRequests(userInvitations, validationParallelThreshold);
+        if (!validationResult.isValid()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(Map.of(
+                            "error", "VALIDATION_ERROR",
+                            "message", "Invalid request data",
+                            "details", validationResult.getErrors()
+                        ))
+                        .build();
+        }
+
+        if (caller.getOrganization().isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                           .entity(NO_ORGANIZATION_FOUND_FOR_USR)
+                           .build();
+        }
+
+        return new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations)
+                .createInvitationJob(userInvitations, validationResult, caller.getUser().getId());
+    }
+
+
+    /**
+     * Pending invitations of the organization of the caller
+     * @param first first invitation returned
+     * @param max max invitations returned
+     * @return the invitations not expired yet , latest first
+     */
+    @Path("invitations/pending")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Tag(name = KeycloakOpenAPI.Admin.Tags.ORGANIZATIONS)
+    @Operation(summary = "Retrieve the invitations of the organization that are still pending")
+    public Response getPendingInvitations(
+            @QueryParam("first") @DefaultValue("0") int first,
+            @QueryParam("max") @DefaultValue("100") int max
+        ) {
+
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
+
+        if (caller.getOrganization().isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                           .entity(NO_ORGANIZATION_FOUND_FOR_USR)
+                           .build();
+        }
+
+        return new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations)
+                .getPendingInvitations(Math.max(first, 0), Math.min(Math.max(max, 1), 1000));
+    }
+
+
+    /**
+     * Progress of a bulk invitation job
+     * @param jobId id returned when the job was created
+     * @param first first failed row returned
+     * @param max max failed rows returned
+     * @return the counters of the job and a page of its failed rows
+     */
+    @Path("invite-users-jobs/{jobId}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Tag(name = KeycloakOpenAPI.Admin.Tags.ORGANIZATIONS)
+    @Operation(summary = "Retrieve the progress and the failed rows of a bulk invitation job")
+    public Response getInvitationJob(
+            @PathParam("jobId") String jobId,
+            @QueryParam("first") @DefaultValue("0") int first,
+            @QueryParam("max") @DefaultValue("100") int max
+        ) {
+
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
+
+        if (caller.getOrganization().isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                           .entity(NO_ORGANIZATION_FOUND_FOR_USR)
+                           .build();
+        }
+
+        return new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations)
+                .getInvitationJob(jobId, Math.max(first, 0), Math.min(Math.max(max, 1), 1000));
     }
 
 
     /**
      * 
-     * @return
+     * @return the groups of the realm , served from the group catalog ; 304 if the If-None-Match header matches its ETag
      */
 
     @Path("groups")
@@ -208,27 +378,57 @@ public class TrackSwiftlyResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Tag(name = KeycloakOpenAPI.Admin.Tags.ORGANIZATIONS)
     @Operation(summary = "Retrieve groups for the current realm")
-    public Response getRealmGroups(
-        @Context HttpHeaders headers
-    ) {
+    public Response getRealmGroups() {
 
-        AuthenticateMiddleware.checkRealm(session);
-
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session);
-        
-        AuthenticateMiddleware.checkRole(authResult, session, 
-            List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
-        
-        Stream<GroupModel> groupsStream = session.getContext().getRealm().getGroupsStream();
-        List<Map<String, String>> groups = groupsStream
-            .map(group -> Map.of(
-                "id", group.getId(), 
-                "name", group.getName()
-            ))
-            .toList();
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
         
+        GroupCatalog.Snapshot catalog = groupCatalog.get(session, realm);
+        String ifNoneMatch = session.getContext().getRequestHeaders().getHeaderString(HttpHeaders.IF_NONE_MATCH);
+
+        if (ifNoneMatch != null && (ifNoneMatch.contains(catalog.etag()) || ifNoneMatch.trim().equals("*"))) {
+            return Response.notModified()
+                        .header(HttpHeaders.ETAG, catalog.etag())
+                        .build();
+        }
+
+        return Response.ok(catalog.body(), MediaType.APPLICATION_JSON_TYPE)
+                    .header(HttpHeaders.ETAG, catalog.etag())
+                    .header(HttpHeaders.CACHE_CONTROL, "private, no-cache")
+                    .build();
+    }
+
+
+    /**
+     * Read only view of the group assignment rules , and the groups the caller can assign users to ,
+     * so clients can pre-filter the options they show .
+     *
+     * @return the rules (requester tier -> target tier -> group class -> decision) and the assignable group ids
+     */
+    @Path("groups/assignment-policy")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Tag(name = KeycloakOpenAPI.Admin.Tags.ORGANIZATIONS)
+    @Operation(summary = "Retrieve the group assignment rules and the groups the current user can assign users to")
+    public Response getGroupAssignmentPolicy() {
+
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER));
+
+        List<String> assignableGroupIds;
+
+        if (caller.hasRole(TrackSwiftlyRoles.ADMIN)) {
+            assignableGroupIds = List.copyOf(groupCatalog.get(session, realm).byId().keySet());
+        } else {
+            assignableGroupIds = new AssignableGroupsCache(session).getGroupIds(realm, caller.getUser()).stream()
+                .map(groupId -> realm.getGroupById(groupId))
+                .filter(group -> group != null && groupAssignmentPolicy.classify(realm, group) == GroupClass.OTHER)
+                .map(GroupModel::getId)
+                .toList();
+        }
 
-        return CorsUtils.addCorsHeaders(Response.ok(groups).build(), headers);
+        return Response.ok(Map.of(
+            "rules", groupAssignmentPolicy.getRules(),
+            "assignableGroupIds", assignableGroupIds
+        )).build();
     }
 
 
@@ -238,38 +438,32 @@ public class TrackSwiftlyResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response assignUserToGroup(
         @PathParam("userId") String userId, 
-        @PathParam("group") String groupName,
-        @Context HttpHeaders headers
+        @PathParam("group") String groupName
     ) {
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session);
-        
-        AuthenticateMiddleware.checkRole(authResult, session, List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
          
         /**
          * get the target user
          */
-        UserModel targetUser = session.users().getUserById(session.getContext().getRealm(), userId);
-
-        UserModel requestingUser = authResult.getUser() ;
+        UserModel targetUser = session.users().getUserById(realm, userId);
 
         /**
          * 
          */
 
         AuthenticateMiddleware.checkOrganizationAccess(
-            provider , 
-            requestingUser , 
+            caller , 
             targetUser
         );
 
-        GroupModel group = session.groups().getGroupByName(realm, null, groupName.toUpperCase());
+        GroupModel group = groupCatalog.findTopLevelGroup(session, realm, groupName.toUpperCase());
 
 
-        AuthenticateMiddleware.checkRoleHierarchy(session, requestingUser, targetUser , group);
+        AuthenticateMiddleware.checkRoleHierarchy(caller, groupAssignmentPolicy, targetUser , group);
 
-        Response response = new UserManagementService(session).assignUserToGroup(requestingUser, targetUser, group) ;
+        Response response = new UserManagementService(caller).assignUserToGroup(targetUser, group) ;
 
-        return CorsUtils.addCorsHeaders(response, headers) ;        
+        return response;        
     }
 
 
@@ -280,18 +474,13 @@ public class TrackSwiftlyResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response unAssignUserFromGroup(
         @PathParam("userId") String userId, 
-        @PathParam("group") String groupName,
-        @Context HttpHeaders headers
+        @PathParam("group") String groupName
     ) {
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session);
-        
-        AuthenticateMiddleware.checkRole(authResult, session, List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
         /**
          * get the target user
          */
-        UserModel targetUser = session.users().getUserById(session.getContext().getRealm(), userId);
-
-        UserModel requestingUser = authResult.getUser() ;
+        UserModel targetUser = session.users().getUserById(realm, userId);
 
 
         /**
@@ -299,51 +488,53 @@ public class TrackSwiftlyResource {
          */
 
         AuthenticateMiddleware.checkOrganizationAccess(
-            provider, 
-            requestingUser , 
+            caller , 
             targetUser
         );
 
 
-        GroupModel group = session.groups().getGroupByName(realm, null, groupName.toUpperCase());
+        GroupModel group = groupCatalog.findTopLevelGroup(session, realm, groupName.toUpperCase());
 
-        AuthenticateMiddleware.checkRoleHierarchy(session, requestingUser, targetUser , group);
+        AuthenticateMiddleware.checkRoleHierarchy(caller, groupAssignmentPolicy, targetUser , group);
 
-        Response response = new UserManagementService(session).unassignUserFromGroup(requestingUser, targetUser, group) ; 
+        Response response = new UserManagementService(caller).unassignUserFromGroup(targetUser, group) ; 
 
 
-        return CorsUtils.addCorsHeaders(response, headers) ;
+        return response;
     }
 
 
 
+    /**
+     * Members of the organization of the caller , one page at a time
+     * @param max page size
+     * @param cursor X-Next-Cursor header of the previous page
+     * @param search prefix of the username , email , first name or last name
+     * @param expand roles , groups , or both comma separated
+     * @return the page , and the cursor of the next page in the X-Next-Cursor header
+     */
     @Path("users")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getUsers(
-        @Context HttpHeaders headers
+        @QueryParam("max") @DefaultValue("20") int max,
+        @QueryParam("cursor") String cursor,
+        @QueryParam("search") String search,
+        @QueryParam("expand") String expand
     ) {
         
         
-        AuthenticateMiddleware.checkRealm(session);
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session) ;
-        AuthenticateMiddleware.checkRole(authResult, session, List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER)) ;
         
         /***
          * 
          *  get the first org of the crreunt user , we will allow to the user to be part of just one org .
          */
 
-        Stream<OrganizationModel> organizations = provider.getByMember(authResult.getUser());
-
-        Optional<OrganizationModel> firstOrganization = organizations.findFirst();
-        
-
         Response response;
-        if (firstOrganization.isPresent()) {
-            OrganizationModel organization = firstOrganization.get();
+        if (caller.getOrganization().isPresent()) {
 
-            response =  new OrganizationInvitationService(session, organization).getOrgMembers(provider , 0 , 20);
+            response =  new OrganizationInvitationService(caller, invitationTemplates, pendingInvitations).getOrgMembers(cursor, search, Math.min(Math.max(max, 1), MAX_PAGE_SIZE), expand);
 
         } else {
 
@@ -353,7 +544,7 @@ public class TrackSwiftlyResource {
         }
 
 
-        return CorsUtils.addCorsHeaders(response, headers) ;
+        return response;
     }
 
 
@@ -364,31 +555,23 @@ public class TrackSwiftlyResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response toggleUser(
         @PathParam("userId") String userId, 
-        @QueryParam("enabled") boolean enabled ,
-        @Context HttpHeaders headers
+        @QueryParam("enabled") boolean enabled
     ) {
-        AuthenticateMiddleware.checkRealm(session);
-
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session);
-
-        AuthenticateMiddleware.checkRole(authResult, session, 
-            List.of(TrackSwiftlyRoles.ADMIN));
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN));
         
         
-        UserModel requestingUser = authResult.getUser() ;
+        UserModel requestingUser = caller.getUser() ;
 
         UserModel targetUser = AuthenticateMiddleware.checkOrganizationAccess(
-            session, 
-            provider, 
-            requestingUser , 
+            caller, 
             userId
         );
 
         AuthenticateMiddleware.preventUserFromUpdatingThemselves(requestingUser, targetUser);
         
-        Response response =  new UserManagementService(session).toggleUserStatus(targetUser, enabled);
+        Response response =  new UserManagementService(caller).toggleUserStatus(targetUser, enabled);
         
-        return CorsUtils.addCorsHeaders(response, headers) ;
+        return response;
     }
 
 
@@ -397,29 +580,46 @@ public class TrackSwiftlyResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getUser(
-        @PathParam("userId") String userId ,
-        @Context HttpHeaders headers
+        @PathParam("userId") String userId
     ) {
-        AuthenticateMiddleware.checkRealm(session);
-        
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session);
-
-        AuthenticateMiddleware.checkRole(authResult, session, 
-            List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER));
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER));
         
-        
-        UserModel requestingUser = authResult.getUser() ;
 
         UserModel targetUser = AuthenticateMiddleware.checkOrganizationAccess(
-            session, 
-            provider, 
-            requestingUser , 
+            caller, 
             userId
         );        
 
-        Response response =  new UserManagementService(session).userDetails(targetUser) ;
+        Response response =  new UserManagementService(caller).userDetails(targetUser) ;
 
-        return CorsUtils.addCorsHeaders(response, headers) ;
+        return response;
+    }
+
+
+    /**
+     * Details of several users of the organization of the caller
+     * @param userIds the ids , at most MAX_DETAILS_IDS
+     * @return the details by id , and the ids not found
+     */
+    @Path("users/details")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Retrieve the details of several users of the organization",
+            description = "Ids that do not exist or belong to another organization are listed in notFound.")
+    public Response getUsersDetails(List<String> userIds) {
+        caller.checkRole(List.of(TrackSwiftlyRoles.ADMIN , TrackSwiftlyRoles.MANAGER));
+
+        if (userIds == null || userIds.isEmpty() || userIds.size() > MAX_DETAILS_IDS || userIds.contains(null)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(Map.of(
+                            "error", "VALIDATION_ERROR",
+                            "message", "Provide between 1 and " + MAX_DETAILS_IDS + " user ids"
+                        ))
+                        .build();
+        }
+
+        return new UserManagementService(caller).usersDetails(userIds);
     }
 
 
@@ -428,7 +628,7 @@ public class TrackSwiftlyResource {
 	@Produces(MediaType.APPLICATION_JSON)
 	@Operation(
 		summary = "Oragnization endpoint",
-		description = "This endpoint returns Oranization of the current user ."
+		description = "This endpoint returns Oranization of the current user , with its number of members ."
 	)
     @APIResponse(
 		responseCode = "200",
@@ -442,15 +642,8 @@ public class TrackSwiftlyResource {
 	)
     public Response myOrg() {
 
-        AuthenticateMiddleware.checkRealm(session);
-        AuthResult authResult = AuthenticateMiddleware.checkAuthentication(session) ;
-
-
-        UserModel authenticatedUser = authResult.getUser();
 
-        Stream<OrganizationModel> organizations = provider.getByMember(authenticatedUser);
-
-        Optional<OrganizationModel> firstOrganization = organizations.findFirst();
+        Optional<OrganizationModel> firstOrganization = caller.getOrganization();
 
         if (firstOrganization.isPresent()) {
             OrganizationModel organization = firstOrganization.get();
@@ -458,7 +651,8 @@ public class TrackSwiftlyResource {
             return Response.ok(
                 Map.of(
                     "name", organization.getName() ,
-                    "id" , organization.getId()
+                    "id" , organization.getId() ,
+                    "membersCount" , new OrganizationMembershipCache(session).getMembersCount(organization)
                 )
             ).build();
         } else {
@@ -472,6 +666,22 @@ public class TrackSwiftlyResource {
 
 
 
+    /*
+     * the workers of the bulk sender have a full queue , the invitation jobs still take the request
+     */
+    private static Response senderBusy() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, SENDER_BUSY_RETRY_AFTER_SECONDS)
+                    .entity(Map.of(
+                        "error", "SENDER_BUSY",
+                        "message", "Too many invitations being sent, retry later or create an invitation job"
+                    ))
+                    .type(MediaType.APPLICATION_JSON)
+                    .build();
+    }
+
+
+
 
 
 
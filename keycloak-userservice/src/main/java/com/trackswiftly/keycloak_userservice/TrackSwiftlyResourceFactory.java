@@ -3,24 +3,67 @@ package com.trackswiftly.keycloak_userservice;
 import org.keycloak.Config.Scope;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.services.resource.RealmResourceProvider;
 import org.keycloak.services.resource.RealmResourceProviderFactory;
 
+import com.trackswiftly.keycloak_userservice.cache.VerifiedTokenCache;
+import com.trackswiftly.keycloak_userservice.events.TrackSwiftlyModelEventListener;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy;
+import com.trackswiftly.keycloak_userservice.middlewares.RealmRegistry;
+import com.trackswiftly.keycloak_userservice.services.BulkInvitationSender;
+import com.trackswiftly.keycloak_userservice.services.GroupCatalog;
+import com.trackswiftly.keycloak_userservice.services.InvitationJobRunner;
+import com.trackswiftly.keycloak_userservice.services.InvitationOutboxDispatcher;
+import com.trackswiftly.keycloak_userservice.services.InvitationTemplateCache;
+import com.trackswiftly.keycloak_userservice.services.PendingInvitationIndex;
+import com.trackswiftly.keycloak_userservice.services.RealmSendLimiter;
+import com.trackswiftly.keycloak_userservice.utils.CorsUtils;
+import com.trackswiftly.keycloak_userservice.utils.OriginPolicyRegistry;
+
 public class TrackSwiftlyResourceFactory implements RealmResourceProviderFactory{
 
 
     public static final String PROVIDER_ID = "users-services";
 
+    public static final String VALIDATION_PARALLEL_THRESHOLD_OPTION = "bulk-validation-parallel-threshold";
+    public static final int DEFAULT_VALIDATION_PARALLEL_THRESHOLD = 2_000;
+
+    public static final String STREAM_CHUNK_SIZE_OPTION = "bulk-invitation-stream-chunk-size";
+    public static final int DEFAULT_STREAM_CHUNK_SIZE = 200;
+
+    private RealmRegistry realmRegistry;
+    private VerifiedTokenCache tokenCache;
+    private GroupAssignmentPolicy groupAssignmentPolicy;
+    private GroupCatalog groupCatalog;
+    private OriginPolicyRegistry originPolicyRegistry;
+    private String preflightMaxAge;
+    private int validationParallelThreshold;
+    private int streamChunkSize;
+    private InvitationOutboxDispatcher outboxDispatcher;
+    private BulkInvitationSender bulkInvitationSender;
+    private InvitationTemplateCache invitationTemplates;
+    private InvitationJobRunner invitationJobRunner;
+    private PendingInvitationIndex pendingInvitations;
+
     @Override
     public void close() {
-        /**
-         * 
-         */
+        if (outboxDispatcher != null) {
+            outboxDispatcher.stop();
+        }
+
+        if (bulkInvitationSender != null) {
+            bulkInvitationSender.stop();
+        }
+
+        if (invitationJobRunner != null) {
+            invitationJobRunner.stop();
+        }
     }
 
     @Override
     public RealmResourceProvider create(KeycloakSession session) {
-       return new TrackSwiftlyResourceProvider(session) ;
+       return new TrackSwiftlyResourceProvider(session, this) ;
     }
 
     @Override
@@ -29,21 +72,95 @@ public class TrackSwiftlyResourceFactory implements RealmResourceProviderFactory
         return PROVIDER_ID ;
     }
 
+
+    public RealmRegistry getRealmRegistry() {
+        return realmRegistry;
+    }
+
+    public VerifiedTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public GroupAssignmentPolicy getGroupAssignmentPolicy() {
+        return groupAssignmentPolicy;
+    }
+
+    public GroupCatalog getGroupCatalog() {
+        return groupCatalog;
+    }
+
+    public OriginPolicyRegistry getOriginPolicyRegistry() {
+        return originPolicyRegistry;
+    }
+
+    public String getPreflightMaxAge() {
+        return preflightMaxAge;
+    }
+
+    public int getValidationParallelThreshold() {
+        return validationParallelThreshold;
+    }
+
+    public int getStreamChunkSize() {
+        return streamChunkSize;
+    }
+
+    public BulkInvitationSender getBulkInvitationSender() {
+        return bulkInvitationSender;
+    }
+
+    public InvitationTemplateCache getInvitationTemplates() {
+        return invitationTemplates;
+    }
+
+    public PendingInvitationIndex getPendingInvitations() {
+        return pendingInvitations;
+    }
+
     @Override
     public void init(Scope config) {
         /*
          * 
-         * 
+         * realms enabled through --spi-realm-restapi-extension-users-services-enabled-realms / -realm-name-pattern
          */
+        realmRegistry = RealmRegistry.fromConfig(config);
+        tokenCache = VerifiedTokenCache.fromConfig(config);
+        groupAssignmentPolicy = new GroupAssignmentPolicy();
+        groupCatalog = new GroupCatalog();
+        originPolicyRegistry = OriginPolicyRegistry.fromConfig(config);
+        preflightMaxAge = String.valueOf(config.getInt(CorsUtils.PREFLIGHT_MAX_AGE_OPTION, CorsUtils.DEFAULT_PREFLIGHT_MAX_AGE));
+        validationParallelThreshold = config.getInt(VALIDATION_PARALLEL_THRESHOLD_OPTION, DEFAULT_VALIDATION_PARALLEL_THRESHOLD);
+        streamChunkSize = config.getInt(STREAM_CHUNK_SIZE_OPTION, DEFAULT_STREAM_CHUNK_SIZE);
 
+        RealmSendLimiter sendLimiter = RealmSendLimiter.fromConfig(config);
+        outboxDispatcher = InvitationOutboxDispatcher.fromConfig(config, sendLimiter);
+        bulkInvitationSender = BulkInvitationSender.fromConfig(config, sendLimiter);
+        invitationTemplates = InvitationTemplateCache.fromConfig(config);
+        pendingInvitations = PendingInvitationIndex.fromConfig(config);
+        invitationJobRunner = InvitationJobRunner.fromConfig(config, invitationTemplates, pendingInvitations);
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory arg0) {
+    public void postInit(KeycloakSessionFactory factory) {
         /*
          * 
-         * 
+         * keep the realm registry and the caches in sync with the model .
          */
+        KeycloakModelUtils.runJobInTransaction(factory, session ->
+            session.realms().getRealmsStream().forEach(realm -> {
+                realmRegistry.register(realm);
+
+                if (realmRegistry.isEnabled(realm)) {
+                    groupAssignmentPolicy.compile(realm);
+                }
+            })
+        );
+
+        factory.register(new TrackSwiftlyModelEventListener(realmRegistry, groupAssignmentPolicy, groupCatalog, originPolicyRegistry));
+
+        outboxDispatcher.start(factory);
+        bulkInvitationSender.start(factory);
+        invitationJobRunner.start(factory);
     }
 
     
@@ -1,8 +1,11 @@
 package com.trackswiftly.keycloak_userservice;
 
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
 import org.keycloak.services.resource.RealmResourceProvider;
 
+import com.trackswiftly.keycloak_userservice.utils.CorsUtils;
+
 
 
 
@@ -10,11 +13,13 @@ import org.keycloak.services.resource.RealmResourceProvider;
 public class TrackSwiftlyResourceProvider implements RealmResourceProvider{
 
     private KeycloakSession session;
+    private TrackSwiftlyResourceFactory factory;
 
 
-	public TrackSwiftlyResourceProvider(KeycloakSession session) {
+	public TrackSwiftlyResourceProvider(KeycloakSession session, TrackSwiftlyResourceFactory factory) {
 
         this.session = session;
+        this.factory = factory;
     }
 
     @Override
@@ -27,8 +32,16 @@ public class TrackSwiftlyResourceProvider implements RealmResourceProvider{
 
     @Override
     public Object getResource() {
+
+        RealmModel realm = session.getContext().getRealm();
+
+        // CORS headers are written once , in place , for every endpoint and for the errors below
+        CorsUtils.addCorsHeaders(session, factory.getOriginPolicyRegistry().getPolicy(realm));
+
+        // unsupported realms are rejected before any other work
+        factory.getRealmRegistry().checkRealm(realm);
         
-        return new TrackSwiftlyResource(session );
+        return new TrackSwiftlyResource(session, factory);
     }
 
 
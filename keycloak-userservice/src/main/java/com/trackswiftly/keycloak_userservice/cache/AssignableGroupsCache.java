@@ -0,0 +1,72 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+
+/***
+ *
+ * Groups a requester has access to for assignments : the groups of the requester and their direct sub groups .
+ *
+ *  realm id + user id -> group ids
+ *
+ * Evicted when the requester joins / leaves a group , and for the whole realm when groups are created , moved or removed .
+ */
+public class AssignableGroupsCache extends WorkCache {
+
+
+    public static final String PREFIX = "trackswiftly.assignable-groups.";
+
+    private static final long LIFESPAN_MINUTES = 30;
+    private static final String SEPARATOR = ",";
+
+
+    public AssignableGroupsCache(KeycloakSession session) {
+        super(session);
+    }
+
+
+
+    public Set<String> getGroupIds(RealmModel realm, UserModel requester) {
+        String key = userKey(realm.getId(), requester.getId());
+
+        if (cache.get(key) instanceof String ids) {
+            return ids.isEmpty() ? Set.of() : new HashSet<>(Arrays.asList(ids.split(SEPARATOR)));
+        }
+
+        Set<String> groupIds = requester.getGroupsStream()
+            .flatMap(group -> Stream.concat(Stream.of(group), group.getSubGroupsStream()))
+            .map(GroupModel::getId)
+            .collect(Collectors.toSet());
+
+        cache.put(key, String.join(SEPARATOR, groupIds), LIFESPAN_MINUTES, TimeUnit.MINUTES);
+
+        return groupIds;
+    }
+
+
+
+    public void evictUser(String realmId, String userId) {
+        evict(userKey(realmId, userId));
+    }
+
+
+    public void evictRealm(String realmId) {
+        evictAll(PREFIX + realmId + ".", value -> true);
+    }
+
+
+
+    private static String userKey(String realmId, String userId) {
+        return PREFIX + realmId + "." + userId;
+    }
+}
@@ -0,0 +1,180 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+
+import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+
+/***
+ *
+ * Effective TrackSwiftly roles of the users , one bit per {@link TrackSwiftlyRoles} ordinal .
+ *
+ *  realm id           -> ids of the TrackSwiftly realm roles , in ordinal order ("" when the role is missing)
+ *  realm id + user id -> bitmask of the roles the user has , directly , through composites or through groups
+ *
+ * The composite / group walk of {@link UserModel#hasRole} runs once per user , after that a role check is a bit test .
+ *
+ * The model events (always on) evict the realm when a role is renamed or removed and when a member joins or leaves
+ * a group with role mappings . A role granted to or revoked from a user fires no model event , only the admin event
+ * of the opt-in trackswiftly-cache-events listener evicts it : without the listener a user entry lives no longer
+ * than an access token of the realm , the time the same roles would stay in a token already issued .
+ */
+public class EffectiveRolesCache extends WorkCache {
+
+
+    public static final String ROLE_IDS_PREFIX = "trackswiftly.role-ids.";
+    public static final String USER_ROLES_PREFIX = "trackswiftly.roles.";
+
+    private static final long LIFESPAN_MINUTES = 30;
+    private static final String SEPARATOR = ",";
+    private static final String MISSING_ROLE = "";
+
+    private static final String METRIC_NAME = "trackswiftly.roles.cache";
+    private static final Counter HITS = Metrics.counter(METRIC_NAME, "result", "hit");
+    private static final Counter MISSES = Metrics.counter(METRIC_NAME, "result", "miss");
+
+
+    public EffectiveRolesCache(KeycloakSession session) {
+        super(session);
+    }
+
+
+
+    /**
+     * Effective TrackSwiftly roles of the user .
+     *
+     * @param realm the realm of the user
+     * @param user the user
+     * @return the roles , empty if the user has none
+     */
+    public EnumSet<TrackSwiftlyRoles> getRoles(RealmModel realm, UserModel user) {
+        String key = userKey(realm.getId(), user.getId());
+        Object cached = cache.get(key);
+
+        if (cached instanceof Integer mask) {
+            HITS.increment();
+            return fromMask(mask);
+        }
+
+        MISSES.increment();
+
+        String[] roleIds = getRoleIds(realm);
+        int mask = 0;
+
+        for (TrackSwiftlyRoles role : TrackSwiftlyRoles.values()) {
+            String roleId = roleIds[role.ordinal()];
+
+            if (MISSING_ROLE.equals(roleId)) {
+                continue;
+            }
+
+            RoleModel roleModel = realm.getRoleById(roleId);
+
+            if (roleModel != null && user.hasRole(roleModel)) {
+                mask |= 1 << role.ordinal();
+            }
+        }
+
+        cache.put(key, mask, userLifespanSeconds(realm), TimeUnit.SECONDS);
+
+        return fromMask(mask);
+    }
+
+
+    public boolean hasAnyRole(RealmModel realm, UserModel user, List<TrackSwiftlyRoles> roleNames) {
+        EnumSet<TrackSwiftlyRoles> roles = getRoles(realm, user);
+
+        return roleNames.stream().anyMatch(roles::contains);
+    }
+
+
+    /**
+     * @return true if every given role is defined in the realm
+     */
+    public boolean rolesExist(RealmModel realm, TrackSwiftlyRoles... roles) {
+        String[] roleIds = getRoleIds(realm);
+
+        for (TrackSwiftlyRoles role : roles) {
+            if (MISSING_ROLE.equals(roleIds[role.ordinal()])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+
+    public void evictUser(String realmId, String userId) {
+        evict(userKey(realmId, userId));
+    }
+
+
+    /***
+     *
+     * Used when a change can touch many users at once , like the role mappings of a group or a role definition .
+     */
+    public void evictRealm(String realmId) {
+        evict(ROLE_IDS_PREFIX + realmId);
+        evictAll(USER_ROLES_PREFIX + realmId + ".", value -> true);
+    }
+
+
+
+    /***
+     *
+     * role names resolved to role ids once per realm .
+     */
+    private String[] getRoleIds(RealmModel realm) {
+        String key = ROLE_IDS_PREFIX + realm.getId();
+
+        if (cache.get(key) instanceof String ids) {
+            return ids.split(SEPARATOR, -1);
+        }
+
+        TrackSwiftlyRoles[] roles = TrackSwiftlyRoles.values();
+        String[] roleIds = new String[roles.length];
+
+        for (TrackSwiftlyRoles role : roles) {
+            RoleModel roleModel = realm.getRole(role.name());
+            roleIds[role.ordinal()] = roleModel == null ? MISSING_ROLE : roleModel.getId();
+        }
+
+        cache.put(key, String.join(SEPARATOR, roleIds), LIFESPAN_MINUTES, TimeUnit.MINUTES);
+
+        return roleIds;
+    }
+
+
+    private static long userLifespanSeconds(RealmModel realm) {
+        return Math.min(TimeUnit.MINUTES.toSeconds(LIFESPAN_MINUTES), Math.max(realm.getAccessTokenLifespan(), 1));
+    }
+
+
+    private static String userKey(String realmId, String userId) {
+        return USER_ROLES_PREFIX + realmId + "." + userId;
+    }
+
+
+    private static EnumSet<TrackSwiftlyRoles> fromMask(int mask) {
+        EnumSet<TrackSwiftlyRoles> roles = EnumSet.noneOf(TrackSwiftlyRoles.class);
+
+        for (TrackSwiftlyRoles role : TrackSwiftlyRoles.values()) {
+            if ((mask & (1 << role.ordinal())) != 0) {
+                roles.add(role);
+            }
+        }
+
+        return roles;
+    }
+}
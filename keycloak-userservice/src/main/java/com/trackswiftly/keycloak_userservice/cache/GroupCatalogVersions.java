@@ -0,0 +1,72 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import org.keycloak.models.KeycloakSession;
+
+
+/***
+ *
+ * Version of the group catalog of each realm , shared by the nodes .
+ *
+ *  realm id -> version
+ *
+ * A node keeps its catalog of a realm while the shared version is the one the catalog was built or patched with ,
+ * a change committed on another node replaces the version and the catalog is rebuilt on its next read .
+ */
+public class GroupCatalogVersions extends WorkCache {
+
+
+    public static final String PREFIX = "trackswiftly.group-catalog.";
+
+
+    public GroupCatalogVersions(KeycloakSession session) {
+        super(session);
+    }
+
+
+
+    /**
+     * @return the current version , a new one is published if there is none
+     */
+    public String getOrPublish(String realmId, String candidate) {
+        Object previous = cache.putIfAbsent(key(realmId), candidate);
+
+        return previous instanceof String version ? version : candidate;
+    }
+
+
+    /**
+     * Peeks the current version , without publishing any .
+     */
+    public String get(String realmId) {
+        return cache.get(key(realmId)) instanceof String version ? version : null;
+    }
+
+
+    /**
+     * Replaces the version only if it is still the expected one .
+     *
+     * @return false if another node changed the catalog in between
+     */
+    public boolean replace(String realmId, String expected, String next) {
+        return cache.replace(key(realmId), expected, next);
+    }
+
+
+    /**
+     * Replaces the version whatever it is , if a node published one .
+     */
+    public void bump(String realmId, String next) {
+        cache.replace(key(realmId), next);
+    }
+
+
+    public void evictRealm(String realmId) {
+        evict(key(realmId));
+    }
+
+
+
+    private static String key(String realmId) {
+        return PREFIX + realmId;
+    }
+}
@@ -0,0 +1,154 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+
+/***
+ *
+ * Cluster wide cache of the organization membership .
+ *
+ *  user id -> ids of the organizations of the user
+ *  org id  -> number of members of the organization
+ *
+ * Entries live in the replicated Keycloak "work" cache , so a lookup is a local read on every node
+ * and an eviction done on one node is seen by the whole cluster .
+ * Only ids and counts are stored , the organizations themselves are resolved through
+ * {@link OrganizationProvider#getById(String)} which is already cached by Keycloak .
+ *
+ * The key prefixes are shared with the auto-org-provider listener , keep them in sync .
+ */
+public class OrganizationMembershipCache extends WorkCache {
+
+
+    public static final String MEMBERSHIP_PREFIX = "trackswiftly.membership.";
+    public static final String MEMBER_COUNT_PREFIX = "trackswiftly.org-members.";
+
+    private static final long LIFESPAN_MINUTES = 30;
+    private static final String SEPARATOR = ",";
+
+    private static final String METRIC_NAME = "trackswiftly.membership.cache";
+    private static final Counter MEMBERSHIP_HITS = Metrics.counter(METRIC_NAME, "entry", "membership", "result", "hit");
+    private static final Counter MEMBERSHIP_MISSES = Metrics.counter(METRIC_NAME, "entry", "membership", "result", "miss");
+    private static final Counter COUNT_HITS = Metrics.counter(METRIC_NAME, "entry", "member-count", "result", "hit");
+    private static final Counter COUNT_MISSES = Metrics.counter(METRIC_NAME, "entry", "member-count", "result", "miss");
+    private static final Counter EVICTIONS = Metrics.counter(METRIC_NAME + ".evictions");
+
+
+    private final OrganizationProvider provider;
+
+
+    public OrganizationMembershipCache(KeycloakSession session) {
+        super(session);
+        this.provider = session.getProvider(OrganizationProvider.class);
+    }
+
+
+
+    /**
+     * Ids of the organizations the user is a member of .
+     *
+     * @param user the user
+     * @return the organization ids , empty if the user has no organization
+     */
+    public List<String> getOrganizationIds(UserModel user) {
+        String key = MEMBERSHIP_PREFIX + user.getId();
+        Object cached = cache.get(key);
+
+        if (cached instanceof String ids) {
+            MEMBERSHIP_HITS.increment();
+            return ids.isEmpty() ? List.of() : Arrays.asList(ids.split(SEPARATOR));
+        }
+
+        MEMBERSHIP_MISSES.increment();
+
+        List<String> ids = provider.getByMember(user)
+            .map(OrganizationModel::getId)
+            .toList();
+
+        cache.put(key, String.join(SEPARATOR, ids), LIFESPAN_MINUTES, TimeUnit.MINUTES);
+
+        return ids;
+    }
+
+
+    /**
+     * Organizations of the user , the ids come from the cache and the models from the organization provider .
+     * Organizations removed since the entry was cached are skipped and the entry is evicted .
+     */
+    public List<OrganizationModel> getOrganizations(UserModel user) {
+        List<String> ids = getOrganizationIds(user);
+
+        List<OrganizationModel> organizations = ids.stream()
+            .map(provider::getById)
+            .filter(Objects::nonNull)
+            .toList();
+
+        if (organizations.size() != ids.size()) {
+            evictMembership(user.getId());
+        }
+
+        return organizations;
+    }
+
+
+    public long getMembersCount(OrganizationModel organization) {
+        String key = MEMBER_COUNT_PREFIX + organization.getId();
+        Object cached = cache.get(key);
+
+        if (cached instanceof Long count) {
+            COUNT_HITS.increment();
+            return count;
+        }
+
+        COUNT_MISSES.increment();
+
+        long count = provider.getMembersCount(organization);
+        cache.put(key, count, LIFESPAN_MINUTES, TimeUnit.MINUTES);
+
+        return count;
+    }
+
+
+
+    public void evictMembership(String userId) {
+        evict(MEMBERSHIP_PREFIX + userId);
+        EVICTIONS.increment();
+    }
+
+
+    public void evictMembersCount(String organizationId) {
+        evict(MEMBER_COUNT_PREFIX + organizationId);
+        EVICTIONS.increment();
+    }
+
+
+    public void evictMembership(OrganizationModel organization, UserModel user) {
+        evictMembership(user.getId());
+        evictMembersCount(organization.getId());
+    }
+
+
+    /***
+     *
+     * Drops every membership entry pointing to the organization , used when an organization is removed .
+     */
+    public void evictOrganization(String organizationId) {
+        evictMembersCount(organizationId);
+
+        int evicted = evictAll(MEMBERSHIP_PREFIX, value -> value instanceof String ids
+            && Arrays.asList(ids.split(SEPARATOR)).contains(organizationId));
+
+        EVICTIONS.increment(evicted);
+    }
+}
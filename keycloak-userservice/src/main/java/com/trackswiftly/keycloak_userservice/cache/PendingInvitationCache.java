@@ -0,0 +1,97 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+
+/***
+ *
+ * Recent invitations , in front of the pending invitation index .
+ *
+ *  org id + normalized email -> time the invitation was sent
+ *
+ * Only the invitations found or recorded are cached , until the end of their deduplication window ,
+ * so a miss always reads the index . Entries are written once the transaction recording the invitation
+ * commits , and evicted when the user joins the organization .
+ */
+public class PendingInvitationCache extends WorkCache {
+
+
+    public static final String PENDING_INVITATION_PREFIX = "trackswiftly.pending-invitation.";
+
+    private static final String METRIC_NAME = "trackswiftly.pending-invitation.cache";
+    private static final Counter HITS = Metrics.counter(METRIC_NAME, "result", "hit");
+    private static final Counter MISSES = Metrics.counter(METRIC_NAME, "result", "miss");
+
+
+    public PendingInvitationCache(KeycloakSession session) {
+        super(session);
+    }
+
+
+
+    /**
+     * @return the time the invitation was sent , null if it is not cached
+     */
+    public Long getSentAt(String organizationId, String email) {
+        Object cached = cache.get(key(organizationId, email));
+
+        if (cached instanceof Long sentAt) {
+            HITS.increment();
+            return sentAt;
+        }
+
+        MISSES.increment();
+
+        return null;
+    }
+
+
+    /**
+     * Caches an invitation already committed .
+     *
+     * @param until end of its deduplication window
+     */
+    public void put(String organizationId, String email, long sentAt, long until) {
+        long lifespan = until - System.currentTimeMillis();
+
+        if (lifespan > 0) {
+            cache.put(key(organizationId, email), sentAt, lifespan, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Caches an invitation recorded in the current transaction , once it commits .
+     */
+    public void putAfterCommit(String organizationId, String email, long sentAt, long until) {
+        session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+            @Override
+            protected void commitImpl() {
+                put(organizationId, email, sentAt, until);
+            }
+
+            @Override
+            protected void rollbackImpl() {
+                /*
+                 * nothing was recorded
+                 */
+            }
+        });
+    }
+
+
+    public void evict(String organizationId, String email) {
+        evict(key(organizationId, email));
+    }
+
+
+    private static String key(String organizationId, String email) {
+        return PENDING_INVITATION_PREFIX + organizationId + "." + email;
+    }
+}
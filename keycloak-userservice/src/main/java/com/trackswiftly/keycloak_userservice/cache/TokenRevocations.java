@@ -0,0 +1,55 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.models.KeycloakSession;
+
+
+/***
+ *
+ * Cluster wide revocation markers for the {@link VerifiedTokenCache} .
+ *
+ * A marker is written on logout , session revocation or user disable , and lives as long as a verified token
+ * can stay cached ({@link VerifiedTokenCache#MAX_TTL_CEILING_SECONDS}) . A cached token hit by a marker
+ * goes through the full verification again .
+ */
+public class TokenRevocations extends WorkCache {
+
+
+    public static final String SESSION_PREFIX = "trackswiftly.revoked.session.";
+    public static final String USER_PREFIX = "trackswiftly.revoked.user.";
+    public static final String REALM_PREFIX = "trackswiftly.revoked.realm.";
+
+
+    public TokenRevocations(KeycloakSession session) {
+        super(session);
+    }
+
+
+
+    public void revokeSession(String sessionId) {
+        mark(SESSION_PREFIX + sessionId);
+    }
+
+    public void revokeUser(String userId) {
+        mark(USER_PREFIX + userId);
+    }
+
+    public void revokeRealm(String realmId) {
+        mark(REALM_PREFIX + realmId);
+    }
+
+
+
+    public boolean isRevoked(String realmId, String userId, String sessionId) {
+        return cache.containsKey(REALM_PREFIX + realmId)
+            || cache.containsKey(USER_PREFIX + userId)
+            || (sessionId != null && cache.containsKey(SESSION_PREFIX + sessionId));
+    }
+
+
+
+    private void mark(String key) {
+        cache.put(key, System.currentTimeMillis(), VerifiedTokenCache.MAX_TTL_CEILING_SECONDS, TimeUnit.SECONDS);
+    }
+}
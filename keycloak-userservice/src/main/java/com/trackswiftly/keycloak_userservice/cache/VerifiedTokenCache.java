@@ -0,0 +1,228 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
+import org.keycloak.services.managers.AuthenticationManager.AuthResult;
+
+import com.trackswiftly.keycloak_userservice.utils.LruCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.ws.rs.NotAuthorizedException;
+
+
+/***
+ *
+ * Per node cache of the bearer tokens already verified , keyed by the SHA-256 of realm id + token .
+ *
+ * A hit skips the signature verification only , it still checks :
+ *  - the token expiry , an entry never outlives the "exp" of its token nor the configured max TTL ,
+ *  - the cluster wide revocation markers ({@link TokenRevocations}) written on logout / session revocation / user disable ,
+ *  - the user session of the token , online or offline , as the full verification does : a logged out or expired
+ *    session is seen at once , with or without the event listener writing the markers ,
+ *  - the user of the session must be enabled , the client of the token must exist and be enabled .
+ *
+ * A hit returns the user session and sets it in the context , as the full verification does .
+ * Owned by the resource factory , options : token-cache-max-entries , token-cache-max-ttl (seconds) .
+ */
+public class VerifiedTokenCache {
+
+
+    public static final String MAX_ENTRIES_OPTION = "token-cache-max-entries";
+    public static final String MAX_TTL_OPTION = "token-cache-max-ttl";
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_TTL_SECONDS = 60;
+    public static final long MAX_TTL_CEILING_SECONDS = 300;
+
+    private static final String METRIC_NAME = "trackswiftly.token.cache";
+    private static final Counter HITS = Metrics.counter(METRIC_NAME, "result", "hit");
+    private static final Counter MISSES = Metrics.counter(METRIC_NAME, "result", "miss");
+
+
+    private record VerifiedToken(
+        String userId,
+        String sessionId,
+        String clientId,
+        AccessToken token,
+        long expiresAt
+    ) {}
+
+
+    private final LruCache<String, VerifiedToken> tokens;
+    private final long maxTtlMillis;
+
+
+    public VerifiedTokenCache(int maxEntries, long maxTtlSeconds) {
+        this.tokens = new LruCache<>(maxEntries);
+        this.maxTtlMillis = Math.min(maxTtlSeconds, MAX_TTL_CEILING_SECONDS) * 1000;
+    }
+
+
+    public static VerifiedTokenCache fromConfig(Scope config) {
+        return new VerifiedTokenCache(
+            config.getInt(MAX_ENTRIES_OPTION, DEFAULT_MAX_ENTRIES),
+            config.getLong(MAX_TTL_OPTION, DEFAULT_MAX_TTL_SECONDS)
+        );
+    }
+
+
+
+    /**
+     * Authenticates the bearer token of the current request .
+     *
+     * @param session the Keycloak session
+     * @return the authentication result
+     * @throws NotAuthorizedException if the token is missing or invalid
+     */
+    public AuthResult authenticate(KeycloakSession session) {
+        String tokenString = AppAuthManager.extractAuthorizationHeaderTokenOrReturnNull(session.getContext().getRequestHeaders());
+
+        if (tokenString == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+
+        return authenticate(session, tokenString, () -> new AppAuthManager.BearerTokenAuthenticator(session)
+            .setTokenString(tokenString)
+            .authenticate());
+    }
+
+
+    /*
+     * the full verification is passed in , the tests replace it
+     */
+    AuthResult authenticate(KeycloakSession session, String tokenString, Supplier<AuthResult> verifier) {
+        RealmModel realm = session.getContext().getRealm();
+
+        String key = hash(realm.getId(), tokenString);
+        TokenRevocations revocations = new TokenRevocations(session);
+
+        AuthResult cached = fromCache(session, realm, key, revocations);
+
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        MISSES.increment();
+
+        AuthResult auth = verifier.get();
+
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+
+        AccessToken token = auth.getToken();
+        String sessionId = auth.getSession() == null ? token.getSessionId() : auth.getSession().getId();
+
+        // a recent revocation is pending , keep verifying until the marker expires
+        if (token.getExp() != null && !revocations.isRevoked(realm.getId(), auth.getUser().getId(), sessionId)) {
+            long expiresAt = Math.min(token.getExp() * 1000, System.currentTimeMillis() + maxTtlMillis);
+
+            tokens.put(key, new VerifiedToken(
+                auth.getUser().getId(),
+                sessionId,
+                auth.getClient() == null ? null : auth.getClient().getClientId(),
+                token,
+                expiresAt
+            ));
+        }
+
+        return auth;
+    }
+
+
+
+    private AuthResult fromCache(KeycloakSession session, RealmModel realm, String key, TokenRevocations revocations) {
+        VerifiedToken verified = tokens.get(key);
+
+        if (verified == null) {
+            return null;
+        }
+
+        AuthResult auth = verified.expiresAt() > System.currentTimeMillis()
+                && !revocations.isRevoked(realm.getId(), verified.userId(), verified.sessionId())
+            ? resume(session, realm, verified)
+            : null;
+
+        if (auth == null) {
+            tokens.remove(key);
+        }
+
+        return auth;
+    }
+
+
+    /*
+     * the checks of AuthenticationManager#verifyIdentityToken that do not need the token itself ,
+     * anything failing goes through the full verification again (which also logs out an expired session)
+     */
+    private static AuthResult resume(KeycloakSession session, RealmModel realm, VerifiedToken verified) {
+        UserSessionModel userSession = null;
+        UserModel user;
+
+        if (verified.sessionId() == null) {
+            user = session.users().getUserById(realm, verified.userId());
+        } else {
+            userSession = session.sessions().getUserSession(realm, verified.sessionId());
+
+            if (!AuthenticationManager.isSessionValid(realm, userSession)) {
+                userSession = session.sessions().getOfflineUserSession(realm, verified.sessionId());
+
+                if (!AuthenticationManager.isSessionValid(realm, userSession)) {
+                    return null;
+                }
+            }
+
+            user = userSession.getUser();
+        }
+
+        if (user == null || !user.isEnabled() || !user.getId().equals(verified.userId())) {
+            return null;
+        }
+
+        ClientModel client = null;
+
+        if (verified.clientId() != null) {
+            client = realm.getClientByClientId(verified.clientId());
+
+            if (client == null || !client.isEnabled()) {
+                return null;
+            }
+        }
+
+        KeycloakContext context = session.getContext();
+        context.setUserSession(userSession);
+        context.setClient(client);
+        context.setBearerToken(verified.token());
+
+        return new AuthResult(user, userSession, verified.token(), client);
+    }
+
+
+    private static String hash(String realmId, String tokenString) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(realmId.getBytes(StandardCharsets.UTF_8));
+            digest.update(tokenString.getBytes(StandardCharsets.US_ASCII));
+
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
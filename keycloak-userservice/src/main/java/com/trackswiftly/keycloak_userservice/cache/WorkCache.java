@@ -0,0 +1,76 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.infinispan.Cache;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+
+
+/***
+ *
+ * Base of the users-services caches kept in the replicated Keycloak "work" cache .
+ *
+ * Only strings and numbers are stored , they are marshalled by Infinispan without any extra schema .
+ */
+abstract class WorkCache {
+
+
+    protected final KeycloakSession session;
+    protected final Cache<String, Object> cache;
+
+
+    protected WorkCache(KeycloakSession session) {
+        this.session = session;
+        this.cache = session.getProvider(InfinispanConnectionProvider.class)
+            .getCache(InfinispanConnectionProvider.WORK_CACHE_NAME);
+    }
+
+
+
+    /***
+     *
+     * Evictions are done right away and once more after the transaction completes ,
+     * so a node that reloads the entry before the commit does not keep the old value .
+     */
+    protected void evict(String key) {
+        cache.remove(key);
+
+        session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+            @Override
+            protected void commitImpl() {
+                cache.remove(key);
+            }
+
+            @Override
+            protected void rollbackImpl() {
+                cache.remove(key);
+            }
+        });
+    }
+
+
+    /**
+     * Evicts the entries under the prefix whose value matches .
+     *
+     * @return the number of evicted entries
+     */
+    protected int evictAll(String prefix, Predicate<Object> valueFilter) {
+        // plain iteration , a cache stream would try to ship the lambdas to the other nodes
+        List<String> keys = new ArrayList<>();
+
+        for (Map.Entry<String, Object> entry : cache.entrySet()) {
+            if (entry.getKey().startsWith(prefix) && valueFilter.test(entry.getValue())) {
+                keys.add(entry.getKey());
+            }
+        }
+
+        keys.forEach(this::evict);
+
+        return keys.size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.trackswiftly.keycloak_userservice.dtos;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+
+/***
+ *
+ * Row of a member listing with its expansions , roles and groups are left out when they were not asked for .
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MemberDetails(
+    String id,
+    String username,
+    String email,
+    String firstName,
+    String lastName,
+    boolean enabled,
+    Set<String> roles,
+    Set<String> groups
+) {
+
+
+    public static MemberDetails of(MemberSummary member, Set<String> roles, Set<String> groups) {
+        return new MemberDetails(
+            member.id(),
+            member.username(),
+            member.email(),
+            member.firstName(),
+            member.lastName(),
+            member.enabled(),
+            roles,
+            groups
+        );
+    }
+}
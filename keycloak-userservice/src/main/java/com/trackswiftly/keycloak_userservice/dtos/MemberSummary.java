@@ -0,0 +1,16 @@
+package com.trackswiftly.keycloak_userservice.dtos;
+
+
+/***
+ *
+ * Row of a member listing , read with a projection query and serialized as is .
+ */
+public record MemberSummary(
+    String id,
+    String username,
+    String email,
+    String firstName,
+    String lastName,
+    boolean enabled
+) {
+}
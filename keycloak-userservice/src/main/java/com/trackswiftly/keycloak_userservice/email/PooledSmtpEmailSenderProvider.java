@@ -0,0 +1,268 @@
+package com.trackswiftly.keycloak_userservice.email;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.keycloak.common.enums.HostnameVerificationPolicy;
+import org.keycloak.email.EmailException;
+import org.keycloak.email.EmailSenderProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.ServicesLogger;
+import org.keycloak.truststore.JSSETruststoreConfigurator;
+import org.keycloak.vault.VaultStringSecret;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimeUtility;
+
+
+/***
+ *
+ * Email sender reusing the SMTP connections of the node , the TCP / TLS handshake and the AUTH exchange
+ * are done once per pooled connection instead of once per email .
+ *
+ * Messages , properties and errors are the ones of the Keycloak default sender .
+ * A pooled connection dropped by the server is replaced once by a fresh one .
+ */
+public class PooledSmtpEmailSenderProvider implements EmailSenderProvider {
+
+
+    private static final String CONNECT_TIMEOUT = "10000";
+
+
+    private final KeycloakSession session;
+    private final SmtpTransportPool pool;
+
+
+    public PooledSmtpEmailSenderProvider(KeycloakSession session, SmtpTransportPool pool) {
+        this.session = session;
+        this.pool = pool;
+    }
+
+
+
+    @Override
+    public void send(Map<String, String> config, String address, String subject, String textBody, String htmlBody) throws EmailException {
+        Transport transport = null;
+
+        try {
+            String key = SmtpTransportPool.key(config);
+            Session mailSession = pool.getMailSession(key, () -> buildProperties(config));
+
+            Message message = buildMessage(mailSession, config, address, subject, textBody, htmlBody);
+            Address[] recipients = { new InternetAddress(address) };
+
+            transport = pool.borrow(key);
+
+            if (transport == null) {
+                transport = connect(mailSession, config);
+                transport.sendMessage(message, recipients);
+            } else {
+                transport = sendOrReconnect(transport, mailSession, config, message, recipients);
+            }
+
+            pool.release(key, transport);
+            transport = null;
+
+        } catch (EmailException e) {
+            throw e;
+        } catch (Exception e) {
+            ServicesLogger.LOGGER.failedToSendEmail(e);
+            throw new EmailException("Error when attempting to send the email to the server. More information is available in the server log.", e);
+        } finally {
+            if (transport != null) {
+                SmtpTransportPool.closeQuietly(transport);
+            }
+        }
+    }
+
+
+    @Override
+    public void close() {
+        // the connections belong to the pool of the factory
+    }
+
+
+
+    /*
+     * a rejected message (SendFailedException) is not resent , only a broken connection is replaced
+     */
+    private Transport sendOrReconnect(Transport pooled, Session mailSession, Map<String, String> config, Message message, Address[] recipients) throws MessagingException {
+        try {
+            pooled.sendMessage(message, recipients);
+            return pooled;
+
+        } catch (SendFailedException e) {
+            throw e;
+        } catch (MessagingException e) {
+            SmtpTransportPool.closeQuietly(pooled);
+        }
+
+        Transport fresh = connect(mailSession, config);
+
+        try {
+            fresh.sendMessage(message, recipients);
+        } catch (MessagingException e) {
+            SmtpTransportPool.closeQuietly(fresh);
+            throw e;
+        }
+
+        return fresh;
+    }
+
+
+    private Transport connect(Session mailSession, Map<String, String> config) throws MessagingException {
+        Transport transport = mailSession.getTransport("smtp");
+
+        try {
+            if ("true".equals(config.get("auth"))) {
+                try (VaultStringSecret password = session.vault().getStringSecret(config.get("password"))) {
+                    transport.connect(config.get("user"), password.get().orElse(config.get("password")));
+                }
+            } else {
+                transport.connect();
+            }
+        } catch (MessagingException | RuntimeException e) {
+            SmtpTransportPool.closeQuietly(transport);
+            throw e;
+        }
+
+        return transport;
+    }
+
+
+    private Properties buildProperties(Map<String, String> config) {
+        Properties props = new Properties();
+
+        if (config.containsKey("host")) {
+            props.setProperty("mail.smtp.host", config.get("host"));
+        }
+
+        if (config.containsKey("port") && config.get("port") != null) {
+            props.setProperty("mail.smtp.port", config.get("port"));
+        }
+
+        boolean ssl = "true".equals(config.get("ssl"));
+        boolean starttls = "true".equals(config.get("starttls"));
+
+        if ("true".equals(config.get("auth"))) {
+            props.setProperty("mail.smtp.auth", "true");
+        }
+
+        if (ssl) {
+            props.setProperty("mail.smtp.ssl.enable", "true");
+        }
+
+        if (starttls) {
+            props.setProperty("mail.smtp.starttls.enable", "true");
+        }
+
+        if (ssl || starttls) {
+            try {
+                props.put("mail.smtp.ssl.protocols", String.join(" ", SSLContext.getDefault().getSupportedSSLParameters().getProtocols()));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("No default SSL context", e);
+            }
+
+            setupTruststore(props);
+        }
+
+        props.setProperty("mail.smtp.timeout", CONNECT_TIMEOUT);
+        props.setProperty("mail.smtp.connectiontimeout", CONNECT_TIMEOUT);
+
+        String envelopeFrom = config.get("envelopeFrom");
+
+        if (envelopeFrom != null && !envelopeFrom.isBlank()) {
+            props.setProperty("mail.smtp.from", envelopeFrom);
+        }
+
+        return props;
+    }
+
+
+    private void setupTruststore(Properties props) {
+        JSSETruststoreConfigurator configurator = new JSSETruststoreConfigurator(session);
+        SSLSocketFactory factory = configurator.getSSLSocketFactory();
+
+        if (factory != null) {
+            props.put("mail.smtp.ssl.socketFactory", factory);
+
+            if (configurator.getProvider().getPolicy() == HostnameVerificationPolicy.ANY) {
+                props.setProperty("mail.smtp.ssl.trust", "*");
+                props.put("mail.smtp.ssl.checkserveridentity", Boolean.FALSE.toString());
+            } else {
+                props.put("mail.smtp.ssl.checkserveridentity", Boolean.TRUE.toString());
+            }
+        }
+    }
+
+
+    private Message buildMessage(Session mailSession, Map<String, String> config, String address, String subject, String textBody, String htmlBody) throws MessagingException, EmailException, UnsupportedEncodingException {
+        String from = config.get("from");
+
+        if (from == null) {
+            throw new EmailException("No sender address configured in the realm settings for emails");
+        }
+
+        Multipart multipart = new MimeMultipart("alternative");
+
+        if (textBody != null) {
+            MimeBodyPart textPart = new MimeBodyPart();
+            textPart.setText(textBody, "UTF-8");
+            multipart.addBodyPart(textPart);
+        }
+
+        if (htmlBody != null) {
+            MimeBodyPart htmlPart = new MimeBodyPart();
+            htmlPart.setContent(htmlBody, "text/html; charset=UTF-8");
+            multipart.addBodyPart(htmlPart);
+        }
+
+        MimeMessage message = new MimeMessage(mailSession);
+        message.setFrom(toInternetAddress(from, config.get("fromDisplayName")));
+
+        String replyTo = config.get("replyTo");
+
+        if (replyTo != null && !replyTo.isBlank()) {
+            message.setReplyTo(new Address[] { toInternetAddress(replyTo, config.get("replyToDisplayName")) });
+        }
+
+        message.setHeader("To", address);
+        message.setSubject(MimeUtility.encodeText(subject, StandardCharsets.UTF_8.name(), null));
+        message.setContent(multipart);
+        message.saveChanges();
+        message.setSentDate(new Date());
+
+        return message;
+    }
+
+
+    private static InternetAddress toInternetAddress(String email, String displayName) throws UnsupportedEncodingException, AddressException, EmailException {
+        if (email == null || email.isBlank()) {
+            throw new EmailException("Please provide a valid address", null);
+        }
+
+        if (displayName == null || displayName.isBlank()) {
+            return new InternetAddress(email);
+        }
+
+        return new InternetAddress(email, displayName, "utf-8");
+    }
+}
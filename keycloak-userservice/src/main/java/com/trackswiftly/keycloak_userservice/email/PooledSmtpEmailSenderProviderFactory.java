@@ -0,0 +1,81 @@
+package com.trackswiftly.keycloak_userservice.email;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.email.EmailSenderProvider;
+import org.keycloak.email.EmailSenderProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+
+/***
+ *
+ * Enabled with --spi-email-sender-provider=trackswiftly-pooled-smtp ,
+ * options : --spi-email-sender-trackswiftly-pooled-smtp-max-idle-per-config , --spi-email-sender-trackswiftly-pooled-smtp-idle-timeout (seconds) .
+ */
+public class PooledSmtpEmailSenderProviderFactory implements EmailSenderProviderFactory {
+
+
+    public static final String PROVIDER_ID = "trackswiftly-pooled-smtp";
+
+    public static final String MAX_IDLE_OPTION = "max-idle-per-config";
+    public static final String IDLE_TIMEOUT_OPTION = "idle-timeout";
+
+    public static final int DEFAULT_MAX_IDLE = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+
+
+    private SmtpTransportPool pool;
+    private long idleTimeoutSeconds;
+    private ScheduledExecutorService evictor;
+
+
+
+    @Override
+    public EmailSenderProvider create(KeycloakSession session) {
+        return new PooledSmtpEmailSenderProvider(session, pool);
+    }
+
+
+    @Override
+    public void init(Scope config) {
+        idleTimeoutSeconds = Math.max(config.getLong(IDLE_TIMEOUT_OPTION, DEFAULT_IDLE_TIMEOUT_SECONDS), 1);
+
+        pool = new SmtpTransportPool(
+            Math.max(config.getInt(MAX_IDLE_OPTION, DEFAULT_MAX_IDLE), 0),
+            TimeUnit.SECONDS.toMillis(idleTimeoutSeconds)
+        );
+    }
+
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trackswiftly-smtp-evictor");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        evictor.scheduleWithFixedDelay(pool::evictIdle, idleTimeoutSeconds, idleTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+
+    @Override
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+
+        pool.close();
+    }
+
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
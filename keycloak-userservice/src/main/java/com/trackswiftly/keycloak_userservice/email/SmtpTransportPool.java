@@ -0,0 +1,216 @@
+package com.trackswiftly.keycloak_userservice.email;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+
+
+/***
+ *
+ * Connected and authenticated SMTP transports , kept per SMTP configuration (one per realm in practice) .
+ *
+ * A transport is used by one sender at a time : borrowed , used for one message , released .
+ * Transports idle for longer than the idle timeout are closed , a released transport above max idle is closed .
+ * An endpoint without idle transports and not used for the idle timeout is dropped , so the endpoints of an old
+ * configuration (changed password , deleted realm) do not pile up .
+ *
+ * One instance per node , owned by {@link PooledSmtpEmailSenderProviderFactory} .
+ */
+public class SmtpTransportPool {
+
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+
+    private record IdleTransport(Transport transport, long idleSince) {}
+
+
+    private static final class Endpoint {
+
+        private final Session mailSession;
+        private final Deque<IdleTransport> idle = new ArrayDeque<>();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Endpoint(Session mailSession) {
+            this.mailSession = mailSession;
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+
+    private final int maxIdlePerEndpoint;
+    private final long idleTimeoutMillis;
+
+    /*
+     * SMTP configuration fingerprint -> endpoint
+     */
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+
+    public SmtpTransportPool(int maxIdlePerEndpoint, long idleTimeoutMillis) {
+        this.maxIdlePerEndpoint = maxIdlePerEndpoint;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+
+
+    /**
+     * Mail session of the SMTP configuration , its properties are built once .
+     */
+    public Session getMailSession(String key, Supplier<Properties> properties) {
+        Endpoint endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint(Session.getInstance(properties.get())));
+        endpoint.touch();
+
+        return endpoint.mailSession;
+    }
+
+
+    /**
+     * @return an idle connected transport , or null if there is none
+     */
+    public Transport borrow(String key) {
+        Endpoint endpoint = endpoints.get(key);
+
+        if (endpoint == null) {
+            return null;
+        }
+
+        endpoint.touch();
+        long now = System.currentTimeMillis();
+
+        while (true) {
+            IdleTransport candidate;
+
+            synchronized (endpoint) {
+                candidate = endpoint.idle.pollFirst();
+            }
+
+            if (candidate == null) {
+                return null;
+            }
+
+            // isConnected() checks the connection with a NOOP
+            if (now - candidate.idleSince() < idleTimeoutMillis && candidate.transport().isConnected()) {
+                return candidate.transport();
+            }
+
+            closeQuietly(candidate.transport());
+        }
+    }
+
+
+    public void release(String key, Transport transport) {
+        Endpoint endpoint = endpoints.get(key);
+
+        if (endpoint != null) {
+            endpoint.touch();
+
+            synchronized (endpoint) {
+                if (endpoint.idle.size() < maxIdlePerEndpoint) {
+                    endpoint.idle.addFirst(new IdleTransport(transport, System.currentTimeMillis()));
+                    return;
+                }
+            }
+        }
+
+        closeQuietly(transport);
+    }
+
+
+
+    /***
+     *
+     * closes the transports idle for longer than the idle timeout , and drops the endpoints left empty and unused
+     * for as long , run periodically by the factory .
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            Endpoint endpoint = entry.getValue();
+
+            while (true) {
+                IdleTransport eldest;
+
+                synchronized (endpoint) {
+                    eldest = endpoint.idle.peekLast();
+
+                    if (eldest == null || now - eldest.idleSince() < idleTimeoutMillis) {
+                        break;
+                    }
+
+                    endpoint.idle.pollLast();
+                }
+
+                closeQuietly(eldest.transport());
+            }
+
+            synchronized (endpoint) {
+                if (endpoint.idle.isEmpty() && now - endpoint.lastUsed >= idleTimeoutMillis) {
+                    // a transport released after this finds no endpoint and is closed
+                    endpoints.remove(entry.getKey(), endpoint);
+                }
+            }
+        }
+    }
+
+
+    int getEndpointCount() {
+        return endpoints.size();
+    }
+
+
+    public void close() {
+        for (Endpoint endpoint : endpoints.values()) {
+            synchronized (endpoint) {
+                endpoint.idle.forEach(idle -> closeQuietly(idle.transport()));
+                endpoint.idle.clear();
+            }
+        }
+
+        endpoints.clear();
+    }
+
+
+
+    /**
+     * Fingerprint of an SMTP configuration , the configuration holds the password so it is hashed .
+     */
+    public static String key(Map<String, String> config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(new TreeMap<>(config).toString().getBytes(StandardCharsets.UTF_8));
+
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+
+    static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            logger.warn("Failed to close transport", e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/***
+ *
+ * A bulk invitation processed in the background , chunk after chunk .
+ *
+ * PROCESSED is the index of the first row not committed yet , a job picked up again after a restart
+ * goes on from there . The base URI and the Accept-Language of the request that created the job are kept
+ * so the links and the emails are the same as if they were made in that request .
+ * Table created by the changelog of {@link TrackSwiftlyJpaEntityProviderFactory} .
+ */
+@Entity
+@Table(name = "TS_INVITATION_JOB")
+@Getter
+@Setter
+@NoArgsConstructor
+public class InvitationJobEntity {
+
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+
+    @Id
+    @Column(name = "ID", length = 36)
+    private String id;
+
+    @Column(name = "REALM_ID", length = 36, nullable = false)
+    private String realmId;
+
+    @Column(name = "ORGANIZATION_ID", length = 36, nullable = false)
+    private String organizationId;
+
+    @Column(name = "CREATED_BY", length = 36)
+    private String createdBy;
+
+    @Column(name = "BASE_URI", length = 1024, nullable = false)
+    private String baseUri;
+
+    @Column(name = "ACCEPT_LANGUAGE")
+    private String acceptLanguage;
+
+    @Column(name = "STATUS", length = 16, nullable = false)
+    private String status;
+
+    @Column(name = "TOTAL", nullable = false)
+    private int total;
+
+    @Column(name = "PROCESSED", nullable = false)
+    private int processed;
+
+    @Column(name = "SUCCEEDED", nullable = false)
+    private int succeeded;
+
+    @Column(name = "FAILURES", nullable = false)
+    private int failures;
+
+    /*
+     * node run currently processing the job , and the end of its lease
+     */
+    @Column(name = "LEASE_OWNER", length = 36)
+    private String leaseOwner;
+
+    @Column(name = "LEASE_UNTIL", nullable = false)
+    private long leaseUntil;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    private long createdAt;
+
+    @Column(name = "UPDATED_AT", nullable = false)
+    private long updatedAt;
+
+    @Column(name = "LAST_ERROR")
+    private String lastError;
+}
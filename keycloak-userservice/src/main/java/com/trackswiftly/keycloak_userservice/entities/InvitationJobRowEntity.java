@@ -0,0 +1,61 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/***
+ *
+ * One invitation of a job , with its result once the chunk holding it is committed .
+ *
+ * Duplicates of an earlier row are already FAILED when the job is created .
+ */
+@Entity
+@Table(name = "TS_INVITATION_JOB_ROW")
+@Getter
+@Setter
+@NoArgsConstructor
+public class InvitationJobRowEntity {
+
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+
+
+    @Id
+    @Column(name = "ID", length = 36)
+    private String id;
+
+    @Column(name = "JOB_ID", length = 36, nullable = false)
+    private String jobId;
+
+    @Column(name = "ROW_INDEX", nullable = false)
+    private int rowIndex;
+
+    @Column(name = "EMAIL")
+    private String email;
+
+    @Column(name = "FIRST_NAME")
+    private String firstName;
+
+    @Column(name = "LAST_NAME")
+    private String lastName;
+
+    @Column(name = "USER_ID")
+    private String userId;
+
+    @Column(name = "STATUS", length = 16, nullable = false)
+    private String status;
+
+    @Column(name = "ERROR_CODE", length = 64)
+    private String errorCode;
+
+    @Column(name = "MESSAGE")
+    private String message;
+}
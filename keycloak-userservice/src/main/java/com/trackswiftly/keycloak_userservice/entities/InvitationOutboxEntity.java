@@ -0,0 +1,72 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/***
+ *
+ * An invitation email waiting to be sent , or already sent .
+ *
+ * The email is rendered in the request that creates the row , the outbox dispatcher only talks to the SMTP server .
+ * Table created by the changelog of {@link TrackSwiftlyJpaEntityProviderFactory} .
+ */
+@Entity
+@Table(name = "TS_INVITATION_OUTBOX")
+@Getter
+@Setter
+@NoArgsConstructor
+public class InvitationOutboxEntity {
+
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_SENDING = "SENDING";
+    public static final String STATUS_SENT = "SENT";
+    public static final String STATUS_FAILED = "FAILED";
+
+
+    @Id
+    @Column(name = "ID", length = 36)
+    private String id;
+
+    @Column(name = "REALM_ID", length = 36, nullable = false)
+    private String realmId;
+
+    @Column(name = "ORGANIZATION_ID", length = 36, nullable = false)
+    private String organizationId;
+
+    @Column(name = "EMAIL", nullable = false)
+    private String email;
+
+    @Column(name = "SUBJECT", length = 1024)
+    private String subject;
+
+    @Column(name = "TEXT_BODY", length = 25500)
+    private String textBody;
+
+    @Column(name = "HTML_BODY", length = 25500)
+    private String htmlBody;
+
+    @Column(name = "STATUS", length = 16, nullable = false)
+    private String status;
+
+    @Column(name = "ATTEMPTS", nullable = false)
+    private int attempts;
+
+    /*
+     * next try for a pending row , end of the lease for a row being sent
+     */
+    @Column(name = "NEXT_ATTEMPT_AT", nullable = false)
+    private long nextAttemptAt;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    private long createdAt;
+
+    @Column(name = "LAST_ERROR")
+    private String lastError;
+}
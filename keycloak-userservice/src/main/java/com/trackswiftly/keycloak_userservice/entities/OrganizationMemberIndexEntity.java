@@ -0,0 +1,60 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/***
+ *
+ * A member of an organization with its username , the (ORGANIZATION_ID , USERNAME) index lists the members
+ * of an organization in username order without reading the other users of the realm .
+ *
+ * Kept in sync with the organization membership by the model and admin event listeners , the rows of an organization
+ * go with its members when it is removed .
+ * Table created by the changelog of {@link TrackSwiftlyJpaEntityProviderFactory} .
+ */
+@Entity
+@Table(name = "TS_ORG_MEMBER")
+@IdClass(OrganizationMemberIndexEntity.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+public class OrganizationMemberIndexEntity {
+
+
+    @Id
+    @Column(name = "ORGANIZATION_ID", length = 36)
+    private String organizationId;
+
+    @Id
+    @Column(name = "USER_ID", length = 36)
+    private String userId;
+
+    /*
+     * username of the user when it joined or was last renamed , usernames are stored lower case
+     */
+    @Column(name = "USERNAME", nullable = false)
+    private String username;
+
+
+
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private String organizationId;
+        private String userId;
+    }
+}
@@ -0,0 +1,51 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/***
+ *
+ * Last invitation sent to an email for an organization , until its token expires or the user joins .
+ *
+ * The email is normalized (trimmed , lower case) , unique per organization , the user id is null for a registration invitation .
+ * Table created by the changelog of {@link TrackSwiftlyJpaEntityProviderFactory} .
+ */
+@Entity
+@Table(name = "TS_PENDING_INVITATION")
+@Getter
+@Setter
+@NoArgsConstructor
+public class PendingInvitationEntity {
+
+
+    @Id
+    @Column(name = "ID", length = 36)
+    private String id;
+
+    @Column(name = "REALM_ID", length = 36, nullable = false)
+    private String realmId;
+
+    @Column(name = "ORGANIZATION_ID", length = 36, nullable = false)
+    private String organizationId;
+
+    @Column(name = "EMAIL", nullable = false)
+    private String email;
+
+    @Column(name = "USER_ID", length = 36)
+    private String userId;
+
+    @Column(name = "SENT_AT", nullable = false)
+    private long sentAt;
+
+    /*
+     * expiration of the token of the invitation link
+     */
+    @Column(name = "EXPIRES_AT", nullable = false)
+    private long expiresAt;
+}
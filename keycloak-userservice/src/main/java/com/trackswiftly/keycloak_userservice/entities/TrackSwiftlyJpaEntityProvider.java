@@ -0,0 +1,33 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import java.util.List;
+
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProvider;
+
+
+public class TrackSwiftlyJpaEntityProvider implements JpaEntityProvider {
+
+
+    @Override
+    public List<Class<?>> getEntities() {
+        return List.of(InvitationOutboxEntity.class, InvitationJobEntity.class, InvitationJobRowEntity.class,
+            PendingInvitationEntity.class, OrganizationMemberIndexEntity.class);
+    }
+
+    @Override
+    public String getChangelogLocation() {
+        return "META-INF/trackswiftly-changelog.xml";
+    }
+
+    @Override
+    public String getFactoryId() {
+        return TrackSwiftlyJpaEntityProviderFactory.PROVIDER_ID;
+    }
+
+    @Override
+    public void close() {
+        /**
+         * 
+         */
+    }
+}
@@ -0,0 +1,49 @@
+package com.trackswiftly.keycloak_userservice.entities;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProvider;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+
+/***
+ *
+ * Adds the users-services tables to the Keycloak database , see META-INF/trackswiftly-changelog.xml .
+ */
+public class TrackSwiftlyJpaEntityProviderFactory implements JpaEntityProviderFactory {
+
+
+    public static final String PROVIDER_ID = "trackswiftly-entities";
+
+    @Override
+    public JpaEntityProvider create(KeycloakSession session) {
+        return new TrackSwiftlyJpaEntityProvider();
+    }
+
+    @Override
+    public void init(Scope config) {
+        /****
+         * 
+         */
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        /***
+         * 
+         */
+    }
+
+    @Override
+    public void close() {
+        /**
+         * 
+         */
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
@@ -0,0 +1,224 @@
+package com.trackswiftly.keycloak_userservice.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+import com.trackswiftly.keycloak_userservice.cache.AssignableGroupsCache;
+import com.trackswiftly.keycloak_userservice.cache.EffectiveRolesCache;
+import com.trackswiftly.keycloak_userservice.cache.OrganizationMembershipCache;
+import com.trackswiftly.keycloak_userservice.cache.TokenRevocations;
+import com.trackswiftly.keycloak_userservice.repositories.OrganizationMemberRepository;
+
+
+/***
+ *
+ * Evicts the users-services caches on admin events , revokes the cached tokens on logout ,
+ * and re-sorts a renamed user in the organization member index .
+ *
+ * Model changes are already tracked by {@link TrackSwiftlyModelEventListener} , this listener covers what the
+ * model does not publish , like the removal of an organization , a role mapping change or a logout .
+ * It has to be enabled in the realm events configuration ("trackswiftly-cache-events") .
+ */
+public class TrackSwiftlyEventListenerProvider implements EventListenerProvider {
+
+
+    private static final String ORGANIZATIONS_SEGMENT = "organizations";
+    private static final String MEMBERS_SEGMENT = "members";
+    private static final String USERS_SEGMENT = "users";
+    private static final String SESSIONS_SEGMENT = "sessions";
+
+    private final KeycloakSession session;
+
+
+    public TrackSwiftlyEventListenerProvider(KeycloakSession session) {
+        this.session = session;
+    }
+
+
+    @Override
+    public void onEvent(Event event) {
+
+        if (event.getType() == EventType.LOGOUT && event.getSessionId() != null) {
+            new TokenRevocations(session).revokeSession(event.getSessionId());
+
+        } else if ((event.getType() == EventType.REVOKE_GRANT || event.getType() == EventType.DELETE_ACCOUNT)
+                && event.getUserId() != null) {
+            new TokenRevocations(session).revokeUser(event.getUserId());
+
+        } else if ((event.getType() == EventType.UPDATE_PROFILE || event.getType() == EventType.UPDATE_EMAIL)
+                && event.getUserId() != null) {
+            // the username can be the email
+            renameMember(event.getRealmId(), event.getUserId());
+        }
+    }
+
+
+    @Override
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+
+        if (event.getResourceType() == null) {
+            return;
+        }
+
+        switch (event.getResourceType()) {
+            case ORGANIZATION_MEMBERSHIP -> onOrganizationMembershipEvent(event);
+            case ORGANIZATION -> onOrganizationEvent(event);
+            case REALM_ROLE_MAPPING, CLIENT_ROLE_MAPPING, GROUP_MEMBERSHIP -> onRoleMappingEvent(event);
+            case REALM_ROLE, CLIENT_ROLE -> new EffectiveRolesCache(session).evictRealm(event.getRealmId());
+            case GROUP -> onGroupEvent(event);
+            case USER -> onUserEvent(event);
+            case USER_SESSION -> onUserSessionEvent(event);
+            case REALM -> onRealmEvent(event);
+            default -> {
+                /*
+                 * not cached
+                 */
+            }
+        }
+    }
+
+
+    @Override
+    public void close() {
+        /****
+         * 
+         */
+    }
+
+
+
+    private void onOrganizationEvent(AdminEvent event) {
+        if (event.getOperationType() == OperationType.DELETE) {
+            String organizationId = pathSegmentAfter(event.getResourcePath(), ORGANIZATIONS_SEGMENT);
+
+            if (organizationId != null) {
+                new OrganizationMembershipCache(session).evictOrganization(organizationId);
+            }
+        }
+    }
+
+
+    /***
+     * 
+     * "users/{id}/role-mappings/..." and "users/{id}/groups/{groupId}" touch a single user ,
+     * "groups/{id}/role-mappings/..." touches every member of the group .
+     */
+    private void onRoleMappingEvent(AdminEvent event) {
+        EffectiveRolesCache rolesCache = new EffectiveRolesCache(session);
+        String userId = pathSegmentAfter(event.getResourcePath(), USERS_SEGMENT);
+
+        if (userId != null) {
+            rolesCache.evictUser(event.getRealmId(), userId);
+        } else {
+            rolesCache.evictRealm(event.getRealmId());
+        }
+
+        if (userId != null && event.getResourceType() == ResourceType.GROUP_MEMBERSHIP) {
+            new AssignableGroupsCache(session).evictUser(event.getRealmId(), userId);
+        }
+    }
+
+
+    private void onGroupEvent(AdminEvent event) {
+        if (event.getOperationType() == OperationType.DELETE) {
+            new EffectiveRolesCache(session).evictRealm(event.getRealmId());
+        }
+
+        // sub groups created , moved or removed
+        new AssignableGroupsCache(session).evictRealm(event.getRealmId());
+    }
+
+
+    /***
+     * 
+     * any admin change of a user can be a disable or a "users/{id}/logout" , verify its tokens again .
+     */
+    private void onUserEvent(AdminEvent event) {
+        String userId = pathSegmentAfter(event.getResourcePath(), USERS_SEGMENT);
+
+        if (userId != null && event.getOperationType() != OperationType.CREATE) {
+            new TokenRevocations(session).revokeUser(userId);
+        }
+
+        if (userId != null && event.getOperationType() == OperationType.UPDATE) {
+            renameMember(event.getRealmId(), userId);
+        }
+    }
+
+
+    /***
+     *
+     * the organization member index is sorted by username , the model publishes no rename .
+     */
+    private void renameMember(String realmId, String userId) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        UserModel user = realm == null ? null : session.users().getUserById(realm, userId);
+
+        if (user != null) {
+            new OrganizationMemberRepository(session).renameUser(user);
+        }
+    }
+
+
+    private void onUserSessionEvent(AdminEvent event) {
+        String sessionId = pathSegmentAfter(event.getResourcePath(), SESSIONS_SEGMENT);
+
+        if (sessionId != null && event.getOperationType() == OperationType.DELETE) {
+            new TokenRevocations(session).revokeSession(sessionId);
+        }
+    }
+
+
+    /***
+     * 
+     * "logout-all" and "push-revocation" are realm actions .
+     */
+    private void onRealmEvent(AdminEvent event) {
+        if (event.getOperationType() == OperationType.ACTION) {
+            new TokenRevocations(session).revokeRealm(event.getRealmId());
+        }
+    }
+
+
+    private void onOrganizationMembershipEvent(AdminEvent event) {
+        OrganizationMembershipCache membershipCache = new OrganizationMembershipCache(session);
+
+        String organizationId = pathSegmentAfter(event.getResourcePath(), ORGANIZATIONS_SEGMENT);
+        String userId = pathSegmentAfter(event.getResourcePath(), MEMBERS_SEGMENT);
+
+        if (organizationId != null) {
+            membershipCache.evictMembersCount(organizationId);
+        }
+
+        if (userId != null) {
+            membershipCache.evictMembership(userId);
+        }
+    }
+
+
+    /**
+     * Returns the path segment following the given one , e.g. the id in "organizations/{id}/members" .
+     */
+    static String pathSegmentAfter(String resourcePath, String segment) {
+        if (resourcePath == null) {
+            return null;
+        }
+
+        String[] segments = resourcePath.split("/");
+
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (segments[i].equals(segment) && !segments[i + 1].isEmpty()) {
+                return segments[i + 1];
+            }
+        }
+
+        return null;
+    }
+}
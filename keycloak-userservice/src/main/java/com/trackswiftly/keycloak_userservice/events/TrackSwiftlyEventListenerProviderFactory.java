@@ -0,0 +1,44 @@
+package com.trackswiftly.keycloak_userservice.events;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventListenerProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+public class TrackSwiftlyEventListenerProviderFactory implements EventListenerProviderFactory {
+
+
+    public static final String PROVIDER_ID = "trackswiftly-cache-events";
+
+    @Override
+    public EventListenerProvider create(KeycloakSession session) {
+        return new TrackSwiftlyEventListenerProvider(session);
+    }
+
+    @Override
+    public void init(Scope config) {
+        /****
+         * 
+         */
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        /***
+         * 
+         */
+    }
+
+    @Override
+    public void close() {
+        /**
+         * 
+         */
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
@@ -0,0 +1,142 @@
+package com.trackswiftly.keycloak_userservice.events;
+
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleContainerModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+
+import com.trackswiftly.keycloak_userservice.cache.AssignableGroupsCache;
+import com.trackswiftly.keycloak_userservice.cache.EffectiveRolesCache;
+import com.trackswiftly.keycloak_userservice.cache.GroupCatalogVersions;
+import com.trackswiftly.keycloak_userservice.cache.OrganizationMembershipCache;
+import com.trackswiftly.keycloak_userservice.cache.TokenRevocations;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy;
+import com.trackswiftly.keycloak_userservice.middlewares.RealmRegistry;
+import com.trackswiftly.keycloak_userservice.repositories.OrganizationMemberRepository;
+import com.trackswiftly.keycloak_userservice.services.GroupCatalog;
+import com.trackswiftly.keycloak_userservice.services.PendingInvitationIndex;
+import com.trackswiftly.keycloak_userservice.utils.OriginPolicyRegistry;
+
+
+/***
+ *
+ * Keeps the realm registry and the users-services caches in sync with the Keycloak model .
+ *
+ * Registered on the session factory in {@link com.trackswiftly.keycloak_userservice.TrackSwiftlyResourceFactory#postInit} ,
+ * it sees every change done through the model , whatever the caller is (admin console , invitations , other providers) .
+ */
+public class TrackSwiftlyModelEventListener implements ProviderEventListener {
+
+
+    private final RealmRegistry realmRegistry;
+    private final GroupAssignmentPolicy groupAssignmentPolicy;
+    private final GroupCatalog groupCatalog;
+    private final OriginPolicyRegistry originPolicyRegistry;
+
+
+    public TrackSwiftlyModelEventListener(
+        RealmRegistry realmRegistry ,
+        GroupAssignmentPolicy groupAssignmentPolicy ,
+        GroupCatalog groupCatalog ,
+        OriginPolicyRegistry originPolicyRegistry
+    ) {
+        this.realmRegistry = realmRegistry;
+        this.groupAssignmentPolicy = groupAssignmentPolicy;
+        this.groupCatalog = groupCatalog;
+        this.originPolicyRegistry = originPolicyRegistry;
+    }
+
+
+    @Override
+    public void onEvent(ProviderEvent event) {
+
+        if (event instanceof RealmModel.RealmPostCreateEvent realmCreatedEvent) {
+            realmRegistry.register(realmCreatedEvent.getCreatedRealm());
+
+        } else if (event instanceof RealmModel.RealmRemovedEvent realmRemovedEvent) {
+            realmRegistry.unregister(realmRemovedEvent.getRealm().getId());
+            groupAssignmentPolicy.evictRealm(realmRemovedEvent.getRealm().getId());
+            groupCatalog.evictRealm(realmRemovedEvent.getRealm().getId());
+            new GroupCatalogVersions(realmRemovedEvent.getKeycloakSession()).evictRealm(realmRemovedEvent.getRealm().getId());
+            originPolicyRegistry.unregister(realmRemovedEvent.getRealm().getId());
+
+        } else if (event instanceof OrganizationModel.OrganizationMembershipEvent membershipEvent) {
+            new OrganizationMembershipCache(membershipEvent.getSession())
+                .evictMembership(membershipEvent.getOrganization(), membershipEvent.getUser());
+
+            OrganizationMemberRepository members = new OrganizationMemberRepository(membershipEvent.getSession());
+
+            if (event instanceof OrganizationModel.OrganizationMemberJoinEvent) {
+                PendingInvitationIndex.forget(membershipEvent.getSession(), membershipEvent.getOrganization(), membershipEvent.getUser());
+                members.addMember(membershipEvent.getOrganization(), membershipEvent.getUser());
+            } else if (event instanceof OrganizationModel.OrganizationMemberLeaveEvent) {
+                members.removeMember(membershipEvent.getOrganization(), membershipEvent.getUser());
+            }
+
+        } else if (event instanceof GroupModel.GroupMemberJoinEvent || event instanceof GroupModel.GroupMemberLeaveEvent) {
+            onGroupMembershipEvent((GroupModel.GroupEvent) event);
+
+        } else if (event instanceof GroupModel.GroupEvent groupEvent) {
+            onGroupEvent(groupEvent);
+
+        } else if (event instanceof UserModel.UserRemovedEvent userRemovedEvent) {
+            new OrganizationMembershipCache(userRemovedEvent.getKeycloakSession())
+                .evictMembership(userRemovedEvent.getUser().getId());
+            new EffectiveRolesCache(userRemovedEvent.getKeycloakSession())
+                .evictUser(userRemovedEvent.getRealm().getId(), userRemovedEvent.getUser().getId());
+            new TokenRevocations(userRemovedEvent.getKeycloakSession())
+                .revokeUser(userRemovedEvent.getUser().getId());
+            new AssignableGroupsCache(userRemovedEvent.getKeycloakSession())
+                .evictUser(userRemovedEvent.getRealm().getId(), userRemovedEvent.getUser().getId());
+            new OrganizationMemberRepository(userRemovedEvent.getKeycloakSession())
+                .removeUser(userRemovedEvent.getUser().getId());
+
+        } else if (event instanceof RoleModel.RoleNameChangeEvent roleNameChangeEvent) {
+            new EffectiveRolesCache(roleNameChangeEvent.getKeycloakSession())
+                .evictRealm(roleNameChangeEvent.getRealm().getId());
+
+        } else if (event instanceof RoleContainerModel.RoleRemovedEvent roleRemovedEvent
+                && roleRemovedEvent.getRole().getContainer() instanceof RealmModel realm) {
+            new EffectiveRolesCache(roleRemovedEvent.getKeycloakSession())
+                .evictRealm(realm.getId());
+        }
+    }
+
+
+    /***
+     *
+     * the event carries the group but not the member , the roles of the whole realm are evicted
+     * when the group or one of its parents maps roles .
+     */
+    private void onGroupMembershipEvent(GroupModel.GroupEvent groupEvent) {
+        for (GroupModel group = groupEvent.getGroup(); group != null; group = group.getParent()) {
+            if (group.getRoleMappingsStream().findAny().isPresent()) {
+                new EffectiveRolesCache(groupEvent.getKeycloakSession()).evictRealm(groupEvent.getRealm().getId());
+                return;
+            }
+        }
+    }
+
+
+    /***
+     *
+     * a created , moved , renamed or removed group changes the sub groups the requesters have access to ,
+     * the class of a renamed group is checked against its name on each lookup .
+     * Member join / leave events carry no user , the requester entries are evicted by the admin events and the assign endpoints .
+     * The group catalog is patched for this group only .
+     */
+    private void onGroupEvent(GroupModel.GroupEvent groupEvent) {
+        if (groupEvent instanceof GroupModel.GroupRemovedEvent) {
+            groupAssignmentPolicy.evictRealm(groupEvent.getRealm().getId());
+            groupCatalog.groupRemoved(groupEvent.getKeycloakSession(), groupEvent.getRealm(), groupEvent.getGroup());
+        } else {
+            groupCatalog.groupChanged(groupEvent.getKeycloakSession(), groupEvent.getRealm(), groupEvent.getGroup());
+        }
+
+        new AssignableGroupsCache(groupEvent.getKeycloakSession()).evictRealm(groupEvent.getRealm().getId());
+    }
+}
@@ -1,28 +1,19 @@
 package com.trackswiftly.keycloak_userservice.middlewares;
 
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
 import org.keycloak.models.GroupModel;
-import org.keycloak.models.KeycloakSession;
-import org.keycloak.models.OrganizationModel;
 import org.keycloak.models.RealmModel;
-import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
-import org.keycloak.organization.OrganizationProvider;
-import org.keycloak.services.managers.AppAuthManager;
-import org.keycloak.services.managers.AuthenticationManager.AuthResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.trackswiftly.keycloak_userservice.cache.AssignableGroupsCache;
+import com.trackswiftly.keycloak_userservice.cache.EffectiveRolesCache;
 import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy.Decision;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy.Tier;
 
 import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.ForbiddenException;
-import jakarta.ws.rs.NotAuthorizedException;
 import jakarta.ws.rs.NotFoundException;
 
 public class AuthenticateMiddleware {
@@ -33,61 +24,15 @@ public class AuthenticateMiddleware {
 
     private AuthenticateMiddleware () {}
 
-    public static AuthResult checkAuthentication(KeycloakSession session) {
-        AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
-        
-        if (auth == null) {
-			throw new NotAuthorizedException("Bearer");
-		}
-
-        return auth ;
-    }
-
-
-    public static void checkRealm(KeycloakSession session) {
-        RealmModel realm = session.getContext().getRealm();
-        String realmName = realm.getName();
-
-        if (!realmName.toLowerCase().matches(".*?(track|swiftly|b2b|org).*")) {
-            throw new ForbiddenException("This Endpoint is only available in realms containing 'track' or 'swiftly' in their name");
-        }
-    }
-
-
-    public static void checkRole(
-        AuthResult auth ,
-        KeycloakSession session ,
-        List<TrackSwiftlyRoles> roleNames
-    ) {
-
-        UserModel authenticatedUser = auth.getUser();
-
-        if (!userHasAnyRole(session, authenticatedUser, roleNames)) {
-            throw new ForbiddenException("You do not have the required roles: " + 
-                roleNames.stream()
-                    .map(Enum::name)
-                    .collect(Collectors.joining(", ")));
-        }
-    }
-
-
-
     public static void checkOrganizationAccess(
-        OrganizationProvider provider, 
-        UserModel adminUser, 
+        CallerContext caller,
         UserModel targetUser
     ) {
-        Stream<OrganizationModel> adminOrganizations = provider.getByMember(adminUser);
-        Stream<OrganizationModel> targetUserOrganizations = provider.getByMember(targetUser);
-
-        boolean sharedOrganization = adminOrganizations
-            .anyMatch(adminOrg -> 
-                targetUserOrganizations.anyMatch(targetOrg -> 
-                    targetOrg.getId().equals(adminOrg.getId())
-                )
-            );
+        if (targetUser == null) {
+            throw new NotFoundException("User not found");
+        }
 
-        if (!sharedOrganization) {
+        if (!new OrganizationAccess(caller).sharesOrganization(targetUser)) {
             throw new ForbiddenException("Users must be in the same organization");
         }
     }
@@ -96,31 +41,18 @@ public class AuthenticateMiddleware {
 
     public static UserModel checkOrganizationAccess(
 
-        KeycloakSession session, 
-        OrganizationProvider provider, 
-        UserModel adminUser, 
+        CallerContext caller, 
         String targetUserId
 
     ) {
-        RealmModel realm = session.getContext().getRealm();
-        UserModel targetUser = session.users().getUserById(realm, targetUserId);
+        UserModel targetUser = caller.getSession().users().getUserById(caller.getRealm(), targetUserId);
 
 
         if (targetUser == null) {
             throw new NotFoundException("User not found");
         }
-        
-        Stream<OrganizationModel> adminOrganizations = provider.getByMember(adminUser);
-        Stream<OrganizationModel> targetUserOrganizations = provider.getByMember(targetUser);
-
-        boolean sharedOrganization = adminOrganizations
-            .anyMatch(adminOrg -> 
-                targetUserOrganizations.anyMatch(targetOrg -> 
-                    targetOrg.getId().equals(adminOrg.getId())
-                )
-            );
 
-        if (!sharedOrganization) {
+        if (!new OrganizationAccess(caller).sharesOrganization(targetUser)) {
             // Users must be in the same organization
             throw new ForbiddenException("access denied or unable to process the item");
         }
@@ -142,42 +74,55 @@ public class AuthenticateMiddleware {
 
 
     public static void checkRoleHierarchy(
-            KeycloakSession session, 
-            UserModel requestingUser, 
+            CallerContext caller, 
+            GroupAssignmentPolicy policy,
             UserModel targetUser, 
             GroupModel targetGroup) {
             
-        if (session == null || requestingUser == null || targetUser == null || targetGroup == null) {
+        if (caller == null || targetUser == null || targetGroup == null) {
             logger.error("Security violation: Null parameters detected in checkRoleHierarchy");
             throw new BadRequestException("Incorrectly sent data");
         }
 
-        RealmModel realm = session.getContext().getRealm();
+        RealmModel realm = caller.getRealm();
+        UserModel requestingUser = caller.getUser();
         
         if (requestingUser.getId().equals(targetUser.getId())) {
             logger.warn("Security alert: User {} attempted to modify their own permissions", requestingUser.getId());
             throw new ForbiddenException("Self-modification of permissions is not allowed");
         }
 
-        RoleModel adminRole = realm.getRole(TrackSwiftlyRoles.ADMIN.name());
-        RoleModel managerRole = realm.getRole(TrackSwiftlyRoles.MANAGER.name());
-        
-        AuthenticationUtils.validateRolesExist(adminRole, managerRole);
+        EffectiveRolesCache rolesCache = new EffectiveRolesCache(caller.getSession());
 
-        boolean isAdmin = requestingUser.hasRole(adminRole);
-        
-        if (!isAdmin) {
-            boolean isManager = requestingUser.hasRole(managerRole);
-            if (!isManager) {
-                logger.warn("Unauthorized access attempt by user: {}", requestingUser.getId());
-                throw new ForbiddenException("Insufficient permissions to modify users");
-            }
+        AuthenticationUtils.validateRolesExist(rolesCache, realm, TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER);
 
-            AuthenticationUtils.validateManagerPermissions(targetUser, adminRole, managerRole, targetGroup);
-            
-            // checkOrganizationAccess(provider, requestingUser, targetUser);
-            
-            AuthenticationUtils.validateGroupPermissions(requestingUser, targetGroup);
+        Tier requesterTier = Tier.of(caller.getRoles());
+
+        /*
+         * the roles of the target are only needed below the admin tier
+         */
+        Tier targetTier = requesterTier == Tier.ADMIN ? Tier.OTHER : Tier.of(rolesCache.getRoles(realm, targetUser));
+
+        Decision decision = policy.decide(requesterTier, targetTier, policy.classify(realm, targetGroup));
+
+        switch (decision) {
+            case ALLOW -> {
+                /*
+                 * 
+                 */
+            }
+            case REQUIRES_GROUP_ACCESS -> {
+                if (!new AssignableGroupsCache(caller.getSession()).getGroupIds(realm, requestingUser).contains(targetGroup.getId())) {
+                    logger.warn("User {} attempted to assign to unauthorized group: {}", 
+                        requestingUser.getId(), targetGroup.getName());
+                    throw new ForbiddenException("No permission to assign users to this group");
+                }
+            }
+            default -> {
+                logger.warn("User {} denied to modify user {} in group {}: {}", 
+                    requestingUser.getId(), targetUser.getId(), targetGroup.getName(), decision);
+                throw new ForbiddenException(decision.getMessage());
+            }
         }
 
         logger.info("User {} authorized to modify user {} in group {}", 
@@ -194,31 +139,6 @@ public class AuthenticateMiddleware {
         }
     }
 
-    /*****
-     * 
-     * 
-     * Utils Functions
-     */
-
-
-    /**
-     * Checks if the user has any of the specified roles.
-     *
-     * @param session the Keycloak session
-     * @param user the user to check
-     * @param roleNames the list of role names to check against
-     * @return true if the user has any of the roles, false otherwise
-     */
-    private static boolean userHasAnyRole(KeycloakSession session, UserModel user, List<TrackSwiftlyRoles> roleNames) {
-        RealmModel realm = session.getContext().getRealm();
-        
-        return roleNames.stream()
-            .map(roleName -> realm.getRole(roleName.name()))
-            .filter(Objects::nonNull)
-            .anyMatch(user::hasRole);
-    }
-
-
 }   
 
 
@@ -0,0 +1,144 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+import org.keycloak.services.managers.AuthenticationManager.AuthResult;
+
+import com.trackswiftly.keycloak_userservice.cache.EffectiveRolesCache;
+import com.trackswiftly.keycloak_userservice.cache.OrganizationMembershipCache;
+import com.trackswiftly.keycloak_userservice.cache.VerifiedTokenCache;
+import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
+
+import jakarta.ws.rs.ForbiddenException;
+
+
+/***
+ *
+ * Request scoped view of the caller .
+ *
+ * The bearer token , the TrackSwiftly roles and the organization of the caller are resolved on first use
+ * and kept for the rest of the request , so the resource and the services never verify the token
+ * or query the org membership twice for the same call .
+ *
+ * The realm is not checked here : TrackSwiftlyResourceProvider#getResource rejects unsupported realms
+ * before the resource is built .
+ *
+ * Not thread safe , one instance per request .
+ */
+public class CallerContext {
+
+
+    private final KeycloakSession session;
+    private final RealmModel realm;
+    private final OrganizationProvider provider;
+    private final VerifiedTokenCache tokenCache;
+
+    private AuthResult authResult;
+
+    private EnumSet<TrackSwiftlyRoles> roles;
+
+    private List<OrganizationModel> organizations;
+
+
+    public CallerContext(KeycloakSession session, VerifiedTokenCache tokenCache) {
+        this.session = session;
+        this.tokenCache = tokenCache;
+        this.realm = session.getContext().getRealm();
+        this.provider = session.getProvider(OrganizationProvider.class);
+    }
+
+
+    public KeycloakSession getSession() {
+        return session;
+    }
+
+    public RealmModel getRealm() {
+        return realm;
+    }
+
+    public OrganizationProvider getOrganizationProvider() {
+        return provider;
+    }
+
+
+
+    public AuthResult checkAuthentication() {
+        if (authResult == null) {
+            authResult = tokenCache.authenticate(session);
+        }
+
+        return authResult;
+    }
+
+
+    public UserModel getUser() {
+        return checkAuthentication().getUser();
+    }
+
+
+
+    /**
+     * Effective TrackSwiftly roles of the caller , read from the roles cache once per request .
+     *
+     * @return the roles of the caller
+     */
+    public Set<TrackSwiftlyRoles> getRoles() {
+        if (roles == null) {
+            roles = new EffectiveRolesCache(session).getRoles(realm, getUser());
+        }
+
+        return roles;
+    }
+
+
+    public boolean hasRole(TrackSwiftlyRoles role) {
+        return getRoles().contains(role);
+    }
+
+
+    public boolean hasAnyRole(List<TrackSwiftlyRoles> roleNames) {
+        return roleNames.stream().anyMatch(this::hasRole);
+    }
+
+
+    public void checkRole(List<TrackSwiftlyRoles> roleNames) {
+        if (!hasAnyRole(roleNames)) {
+            throw new ForbiddenException("You do not have the required roles: " +
+                roleNames.stream()
+                    .map(Enum::name)
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+
+
+    /***
+     *
+     * All the organizations of the caller , read from the membership cache once per request .
+     */
+    public List<OrganizationModel> getOrganizations() {
+        if (organizations == null) {
+            organizations = new OrganizationMembershipCache(session).getOrganizations(getUser());
+        }
+
+        return organizations;
+    }
+
+
+    /***
+     *
+     * the first org of the current user , we allow the user to be part of just one org .
+     */
+    public Optional<OrganizationModel> getOrganization() {
+        return getOrganizations().stream().findFirst();
+    }
+}
@@ -0,0 +1,209 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RealmModel;
+
+import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
+
+
+/***
+ *
+ * Decision table for assigning a user to a group (or removing it) :
+ *
+ *   requester tier x target tier x group class -> decision
+ *
+ * The table is compiled once , the class of each group (admin / manager / other , from its name) is
+ * compiled per realm on first use and kept by group id . An entry is classified again if the group was renamed ,
+ * the name comes from the Keycloak group cache which is invalidated across the cluster .
+ *
+ * One instance per node , owned by the resource factory .
+ */
+public class GroupAssignmentPolicy {
+
+
+    public enum Tier {
+        ADMIN ,
+        MANAGER ,
+        OTHER ;
+
+        public static Tier of(Set<TrackSwiftlyRoles> roles) {
+            if (roles.contains(TrackSwiftlyRoles.ADMIN)) {
+                return ADMIN;
+            }
+
+            return roles.contains(TrackSwiftlyRoles.MANAGER) ? MANAGER : OTHER;
+        }
+    }
+
+
+    public enum GroupClass {
+        ADMIN ,
+        MANAGER ,
+        OTHER ;
+
+        public static GroupClass of(String groupName) {
+            String name = groupName.toLowerCase(Locale.ROOT);
+
+            if (name.contains("admin")) {
+                return ADMIN;
+            }
+
+            return name.contains("manager") ? MANAGER : OTHER;
+        }
+    }
+
+
+    public enum Decision {
+        ALLOW(null) ,
+
+        /*
+         * allowed if the requester is a member of the group or of its parent
+         */
+        REQUIRES_GROUP_ACCESS(null) ,
+
+        DENY_INSUFFICIENT_PERMISSIONS("Insufficient permissions to modify users") ,
+        DENY_ADMIN_TARGET("Managers cannot modify admin accounts") ,
+        DENY_MANAGER_TARGET("Managers cannot modify other manager accounts") ,
+        DENY_PRIVILEGED_GROUP("Managers cannot assign users to admin or manager groups") ;
+
+        private final String message;
+
+        Decision(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+
+    private static final Decision[][][] TABLE = compile();
+
+
+    private record ClassifiedGroup(String name, GroupClass groupClass) {}
+
+    /*
+     * realm id -> group id -> class
+     */
+    private final Map<String, Map<String, ClassifiedGroup>> groupClasses = new ConcurrentHashMap<>();
+
+
+
+    public Decision decide(Tier requester, Tier target, GroupClass groupClass) {
+        return TABLE[requester.ordinal()][target.ordinal()][groupClass.ordinal()];
+    }
+
+
+    public GroupClass classify(RealmModel realm, GroupModel group) {
+        Map<String, ClassifiedGroup> realmGroups = groupClasses.computeIfAbsent(realm.getId(), id -> compileRealm(realm));
+        ClassifiedGroup classified = realmGroups.get(group.getId());
+
+        if (classified == null || !classified.name().equals(group.getName())) {
+            classified = new ClassifiedGroup(group.getName(), GroupClass.of(group.getName()));
+            realmGroups.put(group.getId(), classified);
+        }
+
+        return classified.groupClass();
+    }
+
+
+    public void compile(RealmModel realm) {
+        groupClasses.put(realm.getId(), compileRealm(realm));
+    }
+
+
+    public void evictRealm(String realmId) {
+        groupClasses.remove(realmId);
+    }
+
+
+
+    /**
+     * Read only view of the table , requester tier -> target tier -> group class -> decision .
+     */
+    public Map<Tier, Map<Tier, Map<GroupClass, Decision>>> getRules() {
+        Map<Tier, Map<Tier, Map<GroupClass, Decision>>> rules = new EnumMap<>(Tier.class);
+
+        for (Tier requester : Tier.values()) {
+            Map<Tier, Map<GroupClass, Decision>> byTarget = new EnumMap<>(Tier.class);
+
+            for (Tier target : Tier.values()) {
+                Map<GroupClass, Decision> byGroup = new EnumMap<>(GroupClass.class);
+
+                for (GroupClass groupClass : GroupClass.values()) {
+                    byGroup.put(groupClass, decide(requester, target, groupClass));
+                }
+
+                byTarget.put(target, byGroup);
+            }
+
+            rules.put(requester, byTarget);
+        }
+
+        return rules;
+    }
+
+
+
+    private static Map<String, ClassifiedGroup> compileRealm(RealmModel realm) {
+        Map<String, ClassifiedGroup> realmGroups = new ConcurrentHashMap<>();
+
+        realm.getGroupsStream().forEach(group ->
+            realmGroups.put(group.getId(), new ClassifiedGroup(group.getName(), GroupClass.of(group.getName())))
+        );
+
+        return realmGroups;
+    }
+
+
+    /***
+     *
+     * same order as the former checks : admins can do anything , managers cannot touch admins / managers
+     * nor privileged groups , anyone else is rejected .
+     */
+    private static Decision[][][] compile() {
+        Decision[][][] table = new Decision[Tier.values().length][Tier.values().length][GroupClass.values().length];
+
+        for (Tier requester : Tier.values()) {
+            for (Tier target : Tier.values()) {
+                for (GroupClass groupClass : GroupClass.values()) {
+                    table[requester.ordinal()][target.ordinal()][groupClass.ordinal()] = compile(requester, target, groupClass);
+                }
+            }
+        }
+
+        return table;
+    }
+
+
+    private static Decision compile(Tier requester, Tier target, GroupClass groupClass) {
+        if (requester == Tier.ADMIN) {
+            return Decision.ALLOW;
+        }
+
+        if (requester == Tier.OTHER) {
+            return Decision.DENY_INSUFFICIENT_PERMISSIONS;
+        }
+
+        if (target == Tier.ADMIN) {
+            return Decision.DENY_ADMIN_TARGET;
+        }
+
+        if (target == Tier.MANAGER) {
+            return Decision.DENY_MANAGER_TARGET;
+        }
+
+        if (groupClass != GroupClass.OTHER) {
+            return Decision.DENY_PRIVILEGED_GROUP;
+        }
+
+        return Decision.REQUIRES_GROUP_ACCESS;
+    }
+}
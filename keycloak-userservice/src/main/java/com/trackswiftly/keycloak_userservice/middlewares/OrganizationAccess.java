@@ -0,0 +1,66 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.repositories.OrganizationMemberRepository;
+
+
+/***
+ *
+ * Answers "does the caller share an organization with these users" .
+ *
+ * The organizations of the caller are resolved once by the {@link CallerContext} , then each target costs a
+ * single membership lookup ({@link OrganizationProvider#isMember} , cached by Keycloak) , and a batch of targets
+ * costs one IN (...) query per organization of the caller .
+ */
+public class OrganizationAccess {
+
+
+    private final CallerContext caller;
+
+
+    public OrganizationAccess(CallerContext caller) {
+        this.caller = caller;
+    }
+
+
+
+    public boolean sharesOrganization(UserModel targetUser) {
+        OrganizationProvider provider = caller.getOrganizationProvider();
+
+        return caller.getOrganizations().stream()
+            .anyMatch(organization -> provider.isMember(organization, targetUser));
+    }
+
+
+
+    /**
+     * Batch form of {@link #sharesOrganization(UserModel)} .
+     *
+     * @param targetUserIds the ids of the target users
+     * @return the ids sharing an organization with the caller , unknown ids are simply left out
+     */
+    public Set<String> filterSharingOrganization(Collection<String> targetUserIds) {
+        Set<String> accessible = new HashSet<>();
+
+        if (targetUserIds == null || targetUserIds.isEmpty()) {
+            return accessible;
+        }
+
+        OrganizationMemberRepository repository = new OrganizationMemberRepository(caller.getSession());
+        List<OrganizationModel> organizations = caller.getOrganizations();
+
+        for (OrganizationModel organization : organizations) {
+            accessible.addAll(repository.findMemberIds(organization, targetUserIds));
+        }
+
+        return accessible;
+    }
+}
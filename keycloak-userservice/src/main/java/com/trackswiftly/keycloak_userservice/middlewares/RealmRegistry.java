@@ -0,0 +1,118 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.models.RealmModel;
+
+import jakarta.ws.rs.ForbiddenException;
+
+
+/***
+ *
+ * Realms where the users-services endpoints are enabled , keyed by realm id .
+ *
+ * Built once by the resource factory , a realm is enabled when :
+ *  - the realm attribute "trackswiftly.users-services.enabled" is set , it wins over everything else ,
+ *  - or its name / id is listed in the "enabled-realms" SPI option ,
+ *  - or its name matches the "realm-name-pattern" SPI option (precompiled , case insensitive) .
+ *
+ * The attribute is read from the cached realm on each call , so ops can enable a realm at runtime .
+ */
+public class RealmRegistry {
+
+
+    public static final String ENABLED_ATTRIBUTE = "trackswiftly.users-services.enabled";
+
+    public static final String ENABLED_REALMS_OPTION = "enabled-realms";
+    public static final String REALM_NAME_PATTERN_OPTION = "realm-name-pattern";
+    public static final String DEFAULT_REALM_NAME_PATTERN = ".*?(track|swiftly|b2b|org).*";
+
+
+    private final Set<String> configuredRealms;
+    private final Pattern realmNamePattern;
+
+    /*
+     * realm id -> decision taken from the name , recomputed if the realm is renamed
+     */
+    private final Map<String, RealmEntry> realms = new ConcurrentHashMap<>();
+
+    private record RealmEntry(String name, boolean enabled) {}
+
+
+    public RealmRegistry(Set<String> configuredRealms, Pattern realmNamePattern) {
+        this.configuredRealms = configuredRealms;
+        this.realmNamePattern = realmNamePattern;
+    }
+
+
+    public static RealmRegistry fromConfig(Scope config) {
+        String[] enabledRealms = config.getArray(ENABLED_REALMS_OPTION);
+
+        Set<String> configuredRealms = enabledRealms == null ? Set.of() : Arrays.stream(enabledRealms)
+            .map(String::trim)
+            .filter(realm -> !realm.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+
+        Pattern realmNamePattern = Pattern.compile(
+            config.get(REALM_NAME_PATTERN_OPTION, DEFAULT_REALM_NAME_PATTERN),
+            Pattern.CASE_INSENSITIVE
+        );
+
+        return new RealmRegistry(configuredRealms, realmNamePattern);
+    }
+
+
+
+    public void register(RealmModel realm) {
+        realms.put(realm.getId(), evaluate(realm));
+    }
+
+
+    public void unregister(String realmId) {
+        realms.remove(realmId);
+    }
+
+
+
+    public boolean isEnabled(RealmModel realm) {
+        String attribute = realm.getAttribute(ENABLED_ATTRIBUTE);
+
+        if (attribute != null) {
+            return Boolean.parseBoolean(attribute);
+        }
+
+        RealmEntry entry = realms.get(realm.getId());
+
+        if (entry == null || !entry.name().equals(realm.getName())) {
+            entry = evaluate(realm);
+            realms.put(realm.getId(), entry);
+        }
+
+        return entry.enabled();
+    }
+
+
+    public void checkRealm(RealmModel realm) {
+        if (!isEnabled(realm)) {
+            throw new ForbiddenException("This Endpoint is only available in realms containing 'track' or 'swiftly' in their name");
+        }
+    }
+
+
+
+    private RealmEntry evaluate(RealmModel realm) {
+        String realmName = realm.getName();
+
+        boolean enabled = configuredRealms.contains(realmName)
+            || configuredRealms.contains(realm.getId())
+            || realmNamePattern.matcher(realmName).matches();
+
+        return new RealmEntry(realmName, enabled);
+    }
+}
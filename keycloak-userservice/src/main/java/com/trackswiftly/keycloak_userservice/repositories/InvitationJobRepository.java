@@ -0,0 +1,264 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.entities.InvitationJobEntity;
+import com.trackswiftly.keycloak_userservice.entities.InvitationJobRowEntity;
+import com.trackswiftly.keycloak_userservice.utils.EmailValidator;
+
+import jakarta.persistence.EntityManager;
+
+
+/***
+ *
+ * Bulk invitation jobs and their rows .
+ *
+ * A runnable job is claimed like an outbox row , with a conditional update that sets a lease owner and a lease end .
+ * A chunk is committed with a conditional update on the owner and on the first row of the chunk , so a chunk
+ * processed by a node whose lease was taken over is rolled back with the invitations it queued .
+ */
+public class InvitationJobRepository {
+
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int FLUSH_EVERY = 500;
+
+    private final EntityManager em;
+
+
+    public InvitationJobRepository(KeycloakSession session) {
+        this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    }
+
+
+
+    /**
+     * Adds a pending job and its rows , written in the transaction of the current request .
+     * The duplicates marked by the validation are stored as failed rows .
+     *
+     * @return the job
+     */
+    public InvitationJobEntity create(
+        RealmModel realm,
+        OrganizationModel organization,
+        String createdBy,
+        String baseUri,
+        String acceptLanguage,
+        List<InvitationRequest> requests,
+        EmailValidator.ValidationResult validation
+    ) {
+        long now = System.currentTimeMillis();
+
+        InvitationJobEntity job = new InvitationJobEntity();
+        job.setId(KeycloakModelUtils.generateId());
+        job.setRealmId(realm.getId());
+        job.setOrganizationId(organization.getId());
+        job.setCreatedBy(createdBy);
+        job.setBaseUri(baseUri);
+        job.setAcceptLanguage(truncate(acceptLanguage));
+        job.setStatus(InvitationJobEntity.STATUS_PENDING);
+        job.setTotal(requests.size());
+        job.setLeaseUntil(now);
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
+
+        em.persist(job);
+
+        List<InvitationJobRowEntity> pending = new ArrayList<>(FLUSH_EVERY);
+
+        for (int i = 0; i < requests.size(); i++) {
+            InvitationRequest request = requests.get(i);
+
+            InvitationJobRowEntity row = new InvitationJobRowEntity();
+            row.setId(KeycloakModelUtils.generateId());
+            row.setJobId(job.getId());
+            row.setRowIndex(i);
+            row.setEmail(request.getEmail());
+            row.setFirstName(truncate(request.getFirstName()));
+            row.setLastName(truncate(request.getLastName()));
+            row.setUserId(request.getUserId());
+
+            if (validation.isDuplicate(i)) {
+                row.setStatus(InvitationJobRowEntity.STATUS_FAILED);
+                row.setErrorCode("DUPLICATE_EMAIL");
+                row.setMessage("Email appears more than once in the request");
+            } else {
+                row.setStatus(InvitationJobRowEntity.STATUS_PENDING);
+            }
+
+            em.persist(row);
+            pending.add(row);
+
+            // the rows are only written , keep the persistence context small on large jobs
+            if (pending.size() == FLUSH_EVERY) {
+                em.flush();
+                pending.forEach(em::detach);
+                pending.clear();
+            }
+        }
+
+        return job;
+    }
+
+
+    public InvitationJobEntity find(String id) {
+        return em.find(InvitationJobEntity.class, id);
+    }
+
+
+
+    /**
+     * Claims up to max jobs to run , the pending ones and the running ones whose lease ended .
+     *
+     * @param now the current time
+     * @param max max number of jobs
+     * @param owner lease owner of the caller
+     * @param leaseMillis time the claimed jobs stay reserved
+     * @return the ids of the claimed jobs
+     */
+    public List<String> claimRunnable(long now, int max, String owner, long leaseMillis) {
+        List<Object[]> runnable = em.createQuery(
+                "select j.id, j.status, j.leaseUntil from InvitationJobEntity j " +
+                "where j.status in (:pending, :running) and j.leaseUntil <= :now " +
+                "order by j.createdAt",
+                Object[].class)
+            .setParameter("pending", InvitationJobEntity.STATUS_PENDING)
+            .setParameter("running", InvitationJobEntity.STATUS_RUNNING)
+            .setParameter("now", now)
+            .setMaxResults(max)
+            .getResultList();
+
+        List<String> claimed = new ArrayList<>(runnable.size());
+
+        for (Object[] row : runnable) {
+            int updated = em.createQuery(
+                    "update InvitationJobEntity j set j.status = :running , j.leaseOwner = :owner , j.leaseUntil = :leaseEnd " +
+                    "where j.id = :id and j.status = :status and j.leaseUntil = :leaseUntil")
+                .setParameter("running", InvitationJobEntity.STATUS_RUNNING)
+                .setParameter("owner", owner)
+                .setParameter("leaseEnd", now + leaseMillis)
+                .setParameter("id", row[0])
+                .setParameter("status", row[1])
+                .setParameter("leaseUntil", row[2])
+                .executeUpdate();
+
+            if (updated == 1) {
+                claimed.add((String) row[0]);
+            }
+        }
+
+        return claimed;
+    }
+
+
+
+    /**
+     * @return the rows of the job from this index on , in order
+     */
+    public List<InvitationJobRowEntity> findRows(String jobId, int fromIndex, int max) {
+        return em.createQuery(
+                "select r from InvitationJobRowEntity r where r.jobId = :jobId and r.rowIndex >= :fromIndex order by r.rowIndex",
+                InvitationJobRowEntity.class)
+            .setParameter("jobId", jobId)
+            .setParameter("fromIndex", fromIndex)
+            .setMaxResults(max)
+            .getResultList();
+    }
+
+
+    /**
+     * @return a page of the failed rows of the job , in order
+     */
+    public List<InvitationJobRowEntity> findFailedRows(String jobId, int first, int max) {
+        return em.createQuery(
+                "select r from InvitationJobRowEntity r where r.jobId = :jobId and r.status = :failed " +
+                "and r.rowIndex < (select j.processed from InvitationJobEntity j where j.id = :jobId) order by r.rowIndex",
+                InvitationJobRowEntity.class)
+            .setParameter("jobId", jobId)
+            .setParameter("failed", InvitationJobRowEntity.STATUS_FAILED)
+            .setFirstResult(first)
+            .setMaxResults(max)
+            .getResultList();
+    }
+
+
+
+    public void markRow(InvitationJobRowEntity row, boolean success, String errorCode, String message) {
+        row.setStatus(success ? InvitationJobRowEntity.STATUS_SUCCEEDED : InvitationJobRowEntity.STATUS_FAILED);
+        row.setErrorCode(errorCode);
+        row.setMessage(truncate(message));
+    }
+
+
+    /**
+     * Moves the job past a processed chunk and renews the lease , or completes it after its last row .
+     *
+     * @param fromIndex first row of the chunk , the chunk is only committed if the job is still there
+     * @return false if the job was taken over by another owner , or the chunk was already committed
+     */
+    public boolean commitChunk(String jobId, String owner, int fromIndex, int rows, int succeeded, int failures, long leaseEnd) {
+        return em.createQuery(
+                "update InvitationJobEntity j set j.processed = j.processed + :rows , " +
+                "j.succeeded = j.succeeded + :succeeded , j.failures = j.failures + :failures , " +
+                "j.status = case when j.processed + :rows >= j.total then :completed else j.status end , " +
+                "j.leaseUntil = :leaseEnd , j.updatedAt = :now " +
+                "where j.id = :id and j.leaseOwner = :owner and j.processed = :fromIndex and j.status = :running")
+            .setParameter("rows", rows)
+            .setParameter("succeeded", succeeded)
+            .setParameter("failures", failures)
+            .setParameter("completed", InvitationJobEntity.STATUS_COMPLETED)
+            .setParameter("leaseEnd", leaseEnd)
+            .setParameter("now", System.currentTimeMillis())
+            .setParameter("id", jobId)
+            .setParameter("owner", owner)
+            .setParameter("fromIndex", fromIndex)
+            .setParameter("running", InvitationJobEntity.STATUS_RUNNING)
+            .executeUpdate() == 1;
+    }
+
+
+    /**
+     * Gives up a job that cannot run anymore (realm or organization removed) .
+     */
+    public void markFailed(InvitationJobEntity job, String error) {
+        job.setStatus(InvitationJobEntity.STATUS_FAILED);
+        job.setLastError(truncate(error));
+        job.setUpdatedAt(System.currentTimeMillis());
+    }
+
+
+    /**
+     * Removes the finished jobs , and their rows , last updated before the given time .
+     *
+     * @return the number of removed jobs
+     */
+    public int purgeFinished(long updatedBefore) {
+        em.createQuery(
+                "delete from InvitationJobRowEntity r where r.jobId in (" +
+                "select j.id from InvitationJobEntity j where j.status in (:completed, :failed) and j.updatedAt < :updatedBefore)")
+            .setParameter("completed", InvitationJobEntity.STATUS_COMPLETED)
+            .setParameter("failed", InvitationJobEntity.STATUS_FAILED)
+            .setParameter("updatedBefore", updatedBefore)
+            .executeUpdate();
+
+        return em.createQuery(
+                "delete from InvitationJobEntity j where j.status in (:completed, :failed) and j.updatedAt < :updatedBefore")
+            .setParameter("completed", InvitationJobEntity.STATUS_COMPLETED)
+            .setParameter("failed", InvitationJobEntity.STATUS_FAILED)
+            .setParameter("updatedBefore", updatedBefore)
+            .executeUpdate();
+    }
+
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= MAX_TEXT_LENGTH ? value : value.substring(0, MAX_TEXT_LENGTH);
+    }
+}
@@ -0,0 +1,176 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import com.trackswiftly.keycloak_userservice.entities.InvitationOutboxEntity;
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+
+import jakarta.persistence.EntityManager;
+
+
+/***
+ *
+ * Rows of the invitation outbox .
+ *
+ * A due row is claimed with a conditional update on its status and next attempt , so two nodes polling
+ * at the same time never send the same invitation . A claim is a lease , a row left in SENDING by a
+ * stopped node is due again once the lease ends .
+ */
+public class InvitationOutboxRepository {
+
+
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final EntityManager em;
+
+
+    public InvitationOutboxRepository(KeycloakSession session) {
+        this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    }
+
+
+
+    /**
+     * Adds a pending invitation , written in the transaction of the current request .
+     *
+     * @return the id of the invitation
+     */
+    public String enqueue(RealmModel realm, OrganizationModel organization, RenderedEmail email) {
+        long now = System.currentTimeMillis();
+
+        InvitationOutboxEntity entity = new InvitationOutboxEntity();
+        entity.setId(KeycloakModelUtils.generateId());
+        entity.setRealmId(realm.getId());
+        entity.setOrganizationId(organization.getId());
+        entity.setEmail(email.address());
+        entity.setSubject(email.subject());
+        entity.setTextBody(email.textBody());
+        entity.setHtmlBody(email.htmlBody());
+        entity.setStatus(InvitationOutboxEntity.STATUS_PENDING);
+        entity.setAttempts(0);
+        entity.setNextAttemptAt(now);
+        entity.setCreatedAt(now);
+
+        em.persist(entity);
+
+        return entity.getId();
+    }
+
+
+    public InvitationOutboxEntity find(String id) {
+        return em.find(InvitationOutboxEntity.class, id);
+    }
+
+
+
+    /**
+     * Claims up to max due rows for the caller .
+     *
+     * @param now the current time
+     * @param max max number of rows
+     * @param leaseMillis time the claimed rows stay reserved
+     * @return the ids of the claimed rows
+     */
+    public List<String> claimDue(long now, int max, long leaseMillis) {
+        List<Object[]> due = em.createQuery(
+                "select o.id, o.status, o.nextAttemptAt from InvitationOutboxEntity o " +
+                "where o.status in (:pending, :sending) and o.nextAttemptAt <= :now " +
+                "order by o.nextAttemptAt",
+                Object[].class)
+            .setParameter("pending", InvitationOutboxEntity.STATUS_PENDING)
+            .setParameter("sending", InvitationOutboxEntity.STATUS_SENDING)
+            .setParameter("now", now)
+            .setMaxResults(max)
+            .getResultList();
+
+        List<String> claimed = new ArrayList<>(due.size());
+
+        for (Object[] row : due) {
+            int updated = em.createQuery(
+                    "update InvitationOutboxEntity o set o.status = :sending , o.nextAttemptAt = :leaseEnd , " +
+                    "o.attempts = o.attempts + 1 " +
+                    "where o.id = :id and o.status = :status and o.nextAttemptAt = :nextAttemptAt")
+                .setParameter("sending", InvitationOutboxEntity.STATUS_SENDING)
+                .setParameter("leaseEnd", now + leaseMillis)
+                .setParameter("id", row[0])
+                .setParameter("status", row[1])
+                .setParameter("nextAttemptAt", row[2])
+                .executeUpdate();
+
+            if (updated == 1) {
+                claimed.add((String) row[0]);
+            }
+        }
+
+        return claimed;
+    }
+
+
+
+    /**
+     * Gives back rows claimed but never attempted : due at once , the attempt of the claim is not counted .
+     *
+     * @param ids the claimed rows
+     * @param leaseMillis the lease of the claim , rows claimed again since are left alone
+     * @return the number of released rows
+     */
+    public int release(List<String> ids, long leaseMillis) {
+        long now = System.currentTimeMillis();
+
+        return em.createQuery(
+                "update InvitationOutboxEntity o set o.status = :pending , o.nextAttemptAt = :now , " +
+                "o.attempts = o.attempts - 1 " +
+                "where o.id in :ids and o.status = :sending and o.nextAttemptAt > :now and o.nextAttemptAt <= :leaseEnd")
+            .setParameter("pending", InvitationOutboxEntity.STATUS_PENDING)
+            .setParameter("sending", InvitationOutboxEntity.STATUS_SENDING)
+            .setParameter("now", now)
+            .setParameter("leaseEnd", now + leaseMillis)
+            .setParameter("ids", ids)
+            .executeUpdate();
+    }
+
+
+
+    public void markSent(InvitationOutboxEntity entity) {
+        entity.setStatus(InvitationOutboxEntity.STATUS_SENT);
+        entity.setLastError(null);
+    }
+
+
+    /**
+     * Schedules the next attempt , or gives up if there is none .
+     *
+     * @param nextAttemptAt time of the next attempt , negative to give up
+     */
+    public void markFailed(InvitationOutboxEntity entity, String error, long nextAttemptAt) {
+        entity.setLastError(error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH));
+
+        if (nextAttemptAt < 0) {
+            entity.setStatus(InvitationOutboxEntity.STATUS_FAILED);
+        } else {
+            entity.setStatus(InvitationOutboxEntity.STATUS_PENDING);
+            entity.setNextAttemptAt(nextAttemptAt);
+        }
+    }
+
+
+    /**
+     * Removes the sent invitations created before the given time .
+     *
+     * @return the number of removed rows
+     */
+    public int purgeSent(long createdBefore) {
+        return em.createQuery(
+                "delete from InvitationOutboxEntity o where o.status = :sent and o.createdAt < :createdBefore")
+            .setParameter("sent", InvitationOutboxEntity.STATUS_SENT)
+            .setParameter("createdBefore", createdBefore)
+            .executeUpdate();
+    }
+}
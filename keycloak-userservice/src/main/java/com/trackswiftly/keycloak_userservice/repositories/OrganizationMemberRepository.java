@@ -0,0 +1,191 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.UserModel;
+
+import com.trackswiftly.keycloak_userservice.dtos.MemberSummary;
+import com.trackswiftly.keycloak_userservice.entities.OrganizationMemberIndexEntity;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+
+/***
+ *
+ * Set based queries over the organization membership .
+ *
+ * Keycloak stores the members of an organization in the internal group of the organization ,
+ * so the membership is read from USER_GROUP_MEMBERSHIP joined with ORG on the group id . The listing of the members
+ * reads TS_ORG_MEMBER , the members of each organization by username .
+ */
+public class OrganizationMemberRepository {
+
+
+    /**
+     * Max number of ids bound to a single IN (...) clause .
+     */
+    public static final int MAX_IDS_PER_QUERY = 500;
+
+    private final EntityManager em;
+
+
+    public OrganizationMemberRepository(KeycloakSession session) {
+        this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    }
+
+
+
+    /**
+     * Keeps the ids of the users that are members of the organization .
+     *
+     * @param organization the organization
+     * @param userIds the candidate user ids
+     * @return the ids of the candidates that are members , one query per {@link #MAX_IDS_PER_QUERY} ids
+     */
+    public Set<String> findMemberIds(OrganizationModel organization, Collection<String> userIds) {
+        Set<String> memberIds = new HashSet<>();
+
+        for (List<String> chunk : chunks(userIds)) {
+            memberIds.addAll(em.createQuery(
+                    "select m.user.id from UserGroupMembershipEntity m, OrganizationEntity o " +
+                    "where o.id = :organizationId and m.groupId = o.groupId and m.user.id in :userIds",
+                    String.class)
+                .setParameter("organizationId", organization.getId())
+                .setParameter("userIds", chunk)
+                .getResultList());
+        }
+
+        return memberIds;
+    }
+
+
+
+    /**
+     * Page of the members of the organization , sorted by username . The members are read from the
+     * (ORGANIZATION_ID , USERNAME) index of TS_ORG_MEMBER from the last key on , each joined with its user
+     * on the primary key , stopping after max members : no offset is skipped and no other user of the realm is read ,
+     * a page costs the same wherever it is in the listing and whatever the size of the realm .
+     *
+     * @param afterUsername username of the last member of the previous page , null for the first page
+     * @param search prefix of the username , email , first name or last name , null for all the members
+     * @param max max number of members
+     * @return the members , only the listed columns are read , no user entity or adapter is built
+     */
+    public List<MemberSummary> findMembersAfter(
+        OrganizationModel organization,
+        String afterUsername,
+        String search,
+        int max
+    ) {
+        StringBuilder query = new StringBuilder(
+            "select new " + MemberSummary.class.getName() + "(u.id , u.username , u.email , u.firstName , u.lastName , u.enabled) " +
+            "from OrganizationMemberIndexEntity i join UserEntity u on u.id = i.userId " +
+            "where i.organizationId = :organizationId");
+
+        if (afterUsername != null) {
+            query.append(" and i.username > :afterUsername");
+        }
+
+        if (search != null) {
+            query.append(" and (i.username like :search escape '\\' or u.email like :search escape '\\'" +
+                " or lower(u.firstName) like :search escape '\\' or lower(u.lastName) like :search escape '\\')");
+        }
+
+        // the whole index key , H2 only reads the rows in index order when the sort columns are a prefix of the index
+        query.append(" order by i.organizationId , i.username");
+
+        TypedQuery<MemberSummary> typed = em.createQuery(query.toString(), MemberSummary.class)
+            .setParameter("organizationId", organization.getId())
+            .setMaxResults(max);
+
+        if (afterUsername != null) {
+            typed.setParameter("afterUsername", afterUsername);
+        }
+
+        if (search != null) {
+            typed.setParameter("search", likePrefix(search));
+        }
+
+        return typed.getResultList();
+    }
+
+
+
+    /**
+     * Indexes a user who joined the organization , nothing if already indexed .
+     */
+    public void addMember(OrganizationModel organization, UserModel user) {
+        if (em.find(OrganizationMemberIndexEntity.class, new OrganizationMemberIndexEntity.Key(organization.getId(), user.getId())) != null) {
+            return;
+        }
+
+        OrganizationMemberIndexEntity member = new OrganizationMemberIndexEntity();
+        member.setOrganizationId(organization.getId());
+        member.setUserId(user.getId());
+        member.setUsername(user.getUsername());
+
+        em.persist(member);
+    }
+
+
+    public void removeMember(OrganizationModel organization, UserModel user) {
+        em.createQuery("delete from OrganizationMemberIndexEntity i where i.organizationId = :organizationId and i.userId = :userId")
+            .setParameter("organizationId", organization.getId())
+            .setParameter("userId", user.getId())
+            .executeUpdate();
+    }
+
+
+    /**
+     * Removes a deleted user from the organizations it was a member of .
+     */
+    public void removeUser(String userId) {
+        em.createQuery("delete from OrganizationMemberIndexEntity i where i.userId = :userId")
+            .setParameter("userId", userId)
+            .executeUpdate();
+    }
+
+
+    /**
+     * Re-sorts a renamed user in the organizations it is a member of , the model publishes no rename event .
+     */
+    public void renameUser(UserModel user) {
+        em.createQuery("update OrganizationMemberIndexEntity i set i.username = :username where i.userId = :userId and i.username <> :username")
+            .setParameter("username", user.getUsername())
+            .setParameter("userId", user.getId())
+            .executeUpdate();
+    }
+
+
+    /*
+     * usernames and emails are stored lower case
+     */
+    private static String likePrefix(String search) {
+        return search.trim().toLowerCase(Locale.ROOT)
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_") + "%";
+    }
+
+
+
+    static List<List<String>> chunks(Collection<String> ids) {
+        List<String> distinct = new ArrayList<>(new HashSet<>(ids));
+        List<List<String>> chunks = new ArrayList<>();
+
+        for (int from = 0; from < distinct.size(); from += MAX_IDS_PER_QUERY) {
+            chunks.add(distinct.subList(from, Math.min(from + MAX_IDS_PER_QUERY, distinct.size())));
+        }
+
+        return chunks;
+    }
+}
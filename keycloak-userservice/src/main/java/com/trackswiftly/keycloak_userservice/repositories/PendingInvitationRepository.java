@@ -0,0 +1,220 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ModelDuplicateException;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import com.trackswiftly.keycloak_userservice.entities.PendingInvitationEntity;
+
+import jakarta.persistence.EntityManager;
+
+
+/***
+ *
+ * Index of the pending invitations , one row per organization and normalized email .
+ *
+ * Rows are looked up with IN (...) queries , one query per {@link OrganizationMemberRepository#MAX_IDS_PER_QUERY} emails .
+ * The (organization , email) pair is unique , an email is claimed by a single request at a time .
+ */
+public class PendingInvitationRepository {
+
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final EntityManager em;
+
+
+    public PendingInvitationRepository(KeycloakSession session) {
+        this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    }
+
+
+
+    /**
+     * @param emails normalized emails
+     * @return the invitation of each email , expired ones included
+     */
+    public Map<String, PendingInvitationEntity> findLatest(String organizationId, Collection<String> emails) {
+        Map<String, PendingInvitationEntity> latest = new HashMap<>();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(emails)) {
+            for (PendingInvitationEntity entity : em.createQuery(
+                    "select p from PendingInvitationEntity p where p.organizationId = :organizationId and p.email in :emails",
+                    PendingInvitationEntity.class)
+                .setParameter("organizationId", organizationId)
+                .setParameter("emails", chunk)
+                .getResultList()) {
+
+                latest.put(entity.getEmail(), entity);
+            }
+        }
+
+        return latest;
+    }
+
+
+
+    /**
+     * Claims the emails for invitations sent now , meant to run in a transaction of its own .
+     *
+     * An email whose row is still pending is not claimed , an expired row is taken over with an update
+     * conditional on its previous send time . Two requests inserting the same email conflict on the unique
+     * (organization , email) index : the flush throws a {@link ModelDuplicateException} and the transaction
+     * has to be rolled back . The rows are written in email order , two requests claiming the same emails wait on
+     * each other's rows in the same order and never deadlock .
+     *
+     * @param userIds normalized email -> invited user id , null for a registration invitation
+     * @param stillPending whether an existing row still blocks a new invitation of its email
+     * @return the claimed emails
+     */
+    public Set<String> claim(
+        String realmId ,
+        String organizationId ,
+        Map<String, String> userIds ,
+        long sentAt ,
+        long expiresAt ,
+        Predicate<PendingInvitationEntity> stillPending
+    ) {
+        Map<String, PendingInvitationEntity> existing = findLatest(organizationId, userIds.keySet());
+        Set<String> claimed = new HashSet<>();
+        List<PendingInvitationEntity> written = new ArrayList<>(Math.min(userIds.size(), FLUSH_EVERY));
+
+        for (Map.Entry<String, String> invitation : new TreeMap<>(userIds).entrySet()) {
+            PendingInvitationEntity entity = existing.get(invitation.getKey());
+
+            if (entity == null) {
+                entity = new PendingInvitationEntity();
+                entity.setId(KeycloakModelUtils.generateId());
+                entity.setRealmId(realmId);
+                entity.setOrganizationId(organizationId);
+                entity.setEmail(invitation.getKey());
+                entity.setUserId(invitation.getValue());
+                entity.setSentAt(sentAt);
+                entity.setExpiresAt(expiresAt);
+                em.persist(entity);
+
+                written.add(entity);
+                claimed.add(invitation.getKey());
+
+            } else if (!stillPending.test(entity) && em.createQuery(
+                    "update PendingInvitationEntity p set p.userId = :userId , p.sentAt = :sentAt , p.expiresAt = :expiresAt " +
+                    "where p.id = :id and p.sentAt = :previousSentAt")
+                .setParameter("userId", invitation.getValue())
+                .setParameter("sentAt", sentAt)
+                .setParameter("expiresAt", expiresAt)
+                .setParameter("id", entity.getId())
+                .setParameter("previousSentAt", entity.getSentAt())
+                .executeUpdate() == 1) {
+
+                claimed.add(invitation.getKey());
+            }
+
+            if (written.size() == FLUSH_EVERY) {
+                release(written);
+                written.clear();
+            }
+        }
+
+        // a concurrent insert of the same email fails here
+        release(written);
+
+        return claimed;
+    }
+
+
+
+    /**
+     * Drops the claims of invitations not sent after all .
+     *
+     * @param sentAt send time of the claim , a later claim of the same email is kept
+     */
+    public int removeClaims(String organizationId, Collection<String> emails, long sentAt) {
+        int removed = 0;
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(emails)) {
+            removed += em.createQuery(
+                    "delete from PendingInvitationEntity p where p.organizationId = :organizationId " +
+                    "and p.email in :emails and p.sentAt = :sentAt")
+                .setParameter("organizationId", organizationId)
+                .setParameter("emails", chunk)
+                .setParameter("sentAt", sentAt)
+                .executeUpdate();
+        }
+
+        return removed;
+    }
+
+
+
+    /**
+     * Writes the pending changes of the rows and detaches them from the persistence context .
+     */
+    public void release(Collection<PendingInvitationEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        em.flush();
+
+        for (PendingInvitationEntity entity : entities) {
+            if (em.contains(entity)) {
+                em.detach(entity);
+            }
+        }
+    }
+
+
+
+    /**
+     * @return a page of the invitations of the organization not expired yet , latest first
+     */
+    public List<PendingInvitationEntity> findPending(OrganizationModel organization, long now, int first, int max) {
+        return em.createQuery(
+                "select p from PendingInvitationEntity p where p.organizationId = :organizationId and p.expiresAt > :now " +
+                "order by p.sentAt desc",
+                PendingInvitationEntity.class)
+            .setParameter("organizationId", organization.getId())
+            .setParameter("now", now)
+            .setFirstResult(first)
+            .setMaxResults(max)
+            .getResultList();
+    }
+
+
+
+    /**
+     * Drops the invitations of an email , used once the user joined the organization .
+     */
+    public int remove(String organizationId, String email) {
+        return em.createQuery(
+                "delete from PendingInvitationEntity p where p.organizationId = :organizationId and p.email = :email")
+            .setParameter("organizationId", organizationId)
+            .setParameter("email", email)
+            .executeUpdate();
+    }
+
+
+    /**
+     * Removes the invitations whose token expired before the given time .
+     *
+     * @return the number of removed rows
+     */
+    public int purgeExpired(long expiredBefore) {
+        return em.createQuery(
+                "delete from PendingInvitationEntity p where p.expiresAt < :expiredBefore")
+            .setParameter("expiredBefore", expiredBefore)
+            .executeUpdate();
+    }
+}
@@ -0,0 +1,232 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.hibernate.jpa.HibernateHints;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.jpa.UserAdapter;
+import org.keycloak.models.jpa.entities.UserEntity;
+
+import com.trackswiftly.keycloak_userservice.dtos.MemberSummary;
+
+import jakarta.persistence.EntityManager;
+
+
+/***
+ *
+ * Loads the users of a batch , and their role and group mappings , with IN (...) queries , attributes fetched
+ * in the same query , one query per {@link OrganizationMemberRepository#MAX_IDS_PER_QUERY} ids or emails .
+ *
+ * Only the local database is read , the users of a user storage provider that are not imported
+ * are not found , callers fall back to {@code session.users()} for them .
+ * The returned users are read only views for the batch , they skip the user cache . Their entities are loaded
+ * in a read only persistence context of the repository , not in the one of the request , so a user the request
+ * already holds is never replaced nor detached , and a long upload does not grow the request context batch
+ * after batch . {@link #close()} releases them .
+ */
+public class UserBatchRepository implements AutoCloseable {
+
+
+    private final KeycloakSession session;
+    private final EntityManager em;
+
+    /*
+     * opened on the first user lookup , the projection queries go through the request context
+     */
+    private EntityManager reader;
+
+
+    public UserBatchRepository(KeycloakSession session) {
+        this.session = session;
+        this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    }
+
+
+
+    /**
+     * @return the users found , by id
+     */
+    public Map<String, UserModel> findByIds(RealmModel realm, Collection<String> userIds) {
+        Map<String, UserModel> users = new HashMap<>();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(userIds)) {
+            for (UserEntity entity : reader().createQuery(
+                    "select distinct u from UserEntity u left join fetch u.attributes " +
+                    "where u.realmId = :realmId and u.id in :ids",
+                    UserEntity.class)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setParameter("realmId", realm.getId())
+                .setParameter("ids", chunk)
+                .getResultList()) {
+
+                users.put(entity.getId(), new UserAdapter(session, realm, em, entity));
+            }
+        }
+
+        return users;
+    }
+
+
+    /**
+     * @return the users found , by lower case email , an email shared by several users (duplicate emails allowed)
+     *         is mapped to null
+     */
+    public Map<String, UserModel> findByEmails(RealmModel realm, Collection<String> emails) {
+        Map<String, UserModel> users = new HashMap<>();
+
+        List<String> lowerCaseEmails = emails.stream().map(email -> email.toLowerCase(Locale.ROOT)).toList();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(lowerCaseEmails)) {
+            for (UserEntity entity : reader().createQuery(
+                    "select distinct u from UserEntity u left join fetch u.attributes " +
+                    "where u.realmId = :realmId and u.email in :emails",
+                    UserEntity.class)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setParameter("realmId", realm.getId())
+                .setParameter("emails", chunk)
+                .getResultList()) {
+
+                if (users.containsKey(entity.getEmail())) {
+                    users.put(entity.getEmail(), null);
+                } else {
+                    users.put(entity.getEmail(), new UserAdapter(session, realm, em, entity));
+                }
+            }
+        }
+
+        return users;
+    }
+
+
+    /**
+     * Listed columns of the users , read with a projection query , no user entity or adapter is built .
+     *
+     * @return the users found , by id
+     */
+    public Map<String, MemberSummary> findSummaries(RealmModel realm, Collection<String> userIds) {
+        Map<String, MemberSummary> users = new HashMap<>();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(userIds)) {
+            for (MemberSummary user : em.createQuery(
+                    "select new " + MemberSummary.class.getName() + "(u.id , u.username , u.email , u.firstName , u.lastName , u.enabled) " +
+                    "from UserEntity u where u.realmId = :realmId and u.id in :ids",
+                    MemberSummary.class)
+                .setParameter("realmId", realm.getId())
+                .setParameter("ids", chunk)
+                .getResultList()) {
+
+                users.put(user.id(), user);
+            }
+        }
+
+        return users;
+    }
+
+
+    /**
+     * Ids of the roles directly mapped to the users , realm and client roles , one query per chunk of ids .
+     *
+     * @return user id -> role ids , users without role mapping are absent
+     */
+    public Map<String, List<String>> findRoleIds(Collection<String> userIds) {
+        Map<String, List<String>> roleIds = new HashMap<>();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(userIds)) {
+            for (Object[] row : em.createQuery(
+                    "select m.user.id , m.roleId from UserRoleMappingEntity m where m.user.id in :ids",
+                    Object[].class)
+                .setParameter("ids", chunk)
+                .getResultList()) {
+
+                roleIds.computeIfAbsent((String) row[0], id -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+
+        return roleIds;
+    }
+
+
+    /**
+     * Ids of the groups the users are direct members of , organization groups included since their role mappings
+     * apply too , one query per chunk of ids .
+     *
+     * @return user id -> group ids , users without group are absent
+     */
+    public Map<String, List<String>> findGroupIds(Collection<String> userIds) {
+        Map<String, List<String>> groupIds = new HashMap<>();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(userIds)) {
+            for (Object[] row : em.createQuery(
+                    "select m.user.id , m.groupId from UserGroupMembershipEntity m where m.user.id in :ids",
+                    Object[].class)
+                .setParameter("ids", chunk)
+                .getResultList()) {
+
+                groupIds.computeIfAbsent((String) row[0], id -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+
+        return groupIds;
+    }
+
+
+    /**
+     * Names of the groups the users are direct members of , the internal groups of the organizations left out ,
+     * one query per chunk of ids .
+     *
+     * @return user id -> group names , users without group are absent
+     */
+    public Map<String, List<String>> findGroupNames(Collection<String> userIds) {
+        Map<String, List<String>> groupNames = new HashMap<>();
+
+        for (List<String> chunk : OrganizationMemberRepository.chunks(userIds)) {
+            for (Object[] row : em.createQuery(
+                    "select m.user.id , g.name from UserGroupMembershipEntity m , GroupEntity g " +
+                    "where g.id = m.groupId and g.type = :type and m.user.id in :ids",
+                    Object[].class)
+                .setParameter("type", GroupModel.Type.REALM.intValue())
+                .setParameter("ids", chunk)
+                .getResultList()) {
+
+                groupNames.computeIfAbsent((String) row[0], id -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+
+        return groupNames;
+    }
+
+
+    /**
+     * Closes the persistence context of the users loaded , the users returned stay readable , attributes included .
+     */
+    @Override
+    public void close() {
+        if (reader != null && reader.isOpen()) {
+            reader.close();
+        }
+
+        reader = null;
+    }
+
+
+
+    /*
+     * a persistence context of its own , from the factory of the request one so it joins the same transaction
+     */
+    private EntityManager reader() {
+        if (reader == null) {
+            reader = em.getEntityManagerFactory().createEntityManager();
+        }
+
+        return reader;
+    }
+}
@@ -0,0 +1,203 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.email.EmailException;
+import org.keycloak.email.EmailSenderProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+
+
+/***
+ *
+ * Sends the emails of a bulk invitation concurrently , on a bounded pool of workers shared by the node .
+ *
+ * Sessions are not thread safe , each send runs in its own session (and transaction) on the worker .
+ * The request thread takes a realm permit before handing an email over , so a realm never has more than
+ * bulk-invitation-realm-concurrency emails in flight , and waits for all of them .
+ * The queue of the workers is bounded as well : once full , {@link #isSaturated()} turns the new bulk requests
+ * away (503) , and the emails of a batch the workers cannot take are failed without being sent .
+ *
+ * Owned by the resource factory , options : bulk-invitation-workers , bulk-invitation-parallel-signing-threshold
+ * (batches larger than this get their invitation links signed in parallel , see {@link InvitationLinkFactory}) .
+ */
+public class BulkInvitationSender {
+
+
+    public static final String WORKERS_OPTION = "bulk-invitation-workers";
+    public static final String PARALLEL_SIGNING_THRESHOLD_OPTION = "bulk-invitation-parallel-signing-threshold";
+
+    public static final int DEFAULT_WORKERS = 8;
+    public static final int DEFAULT_PARALLEL_SIGNING_THRESHOLD = 100;
+
+    private static final int QUEUED_PER_WORKER = 16;
+
+
+    private final int workerCount;
+    private final int parallelSigningThreshold;
+    private final RealmSendLimiter limiter;
+
+    private KeycloakSessionFactory sessionFactory;
+    private ThreadPoolExecutor workers;
+
+
+    public BulkInvitationSender(int workerCount, int parallelSigningThreshold, RealmSendLimiter limiter) {
+        this.workerCount = Math.max(workerCount, 1);
+        this.parallelSigningThreshold = parallelSigningThreshold;
+        this.limiter = limiter;
+    }
+
+
+    public static BulkInvitationSender fromConfig(Scope config, RealmSendLimiter limiter) {
+        return new BulkInvitationSender(
+            config.getInt(WORKERS_OPTION, DEFAULT_WORKERS),
+            config.getInt(PARALLEL_SIGNING_THRESHOLD_OPTION, DEFAULT_PARALLEL_SIGNING_THRESHOLD),
+            limiter
+        );
+    }
+
+
+    public int getParallelSigningThreshold() {
+        return parallelSigningThreshold;
+    }
+
+
+
+    public void start(KeycloakSessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+
+        AtomicInteger threads = new AtomicInteger();
+
+        // the realm permits bound each realm , the queue bounds the realms together
+        workers = new ThreadPoolExecutor(
+            workerCount, workerCount,
+            0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(workerCount * QUEUED_PER_WORKER),
+            runnable -> {
+                Thread thread = new Thread(runnable, "trackswiftly-bulk-sender-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        );
+    }
+
+
+    public void stop() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+
+
+    /**
+     * @return whether the queue of the workers is full , a new batch would not be taken
+     */
+    public boolean isSaturated() {
+        return workers.getQueue().remainingCapacity() == 0;
+    }
+
+
+
+    /**
+     * Sends the emails and waits for all of them . Once the workers reject an email , the rest of the batch
+     * is not handed over and fails with a {@link RejectedExecutionException} .
+     *
+     * @param realm the realm of the emails , its SMTP settings are used
+     * @param emails the rendered emails
+     * @return the failure of each email , in the order of the emails , null when the email was sent
+     */
+    public List<Exception> sendAll(RealmModel realm, List<RenderedEmail> emails) {
+        String realmId = realm.getId();
+        Map<String, String> smtpConfig = realm.getSmtpConfig();
+        Semaphore permits = limiter.permits(realmId);
+
+        List<Future<Exception>> pending = new ArrayList<>(emails.size());
+        List<Exception> failures = new ArrayList<>(emails.size());
+        boolean rejected = false;
+
+        for (RenderedEmail email : emails) {
+            if (rejected) {
+                pending.add(null);
+                continue;
+            }
+
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.add(null);
+                continue;
+            }
+
+            try {
+                pending.add(workers.submit(() -> {
+                    try {
+                        return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+                            send(session, realmId, smtpConfig, email)
+                        );
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                pending.add(null);
+                rejected = true;
+            }
+        }
+
+        for (Future<Exception> future : pending) {
+            failures.add(await(future));
+        }
+
+        return failures;
+    }
+
+
+
+    private static Exception send(KeycloakSession session, String realmId, Map<String, String> smtpConfig, RenderedEmail email) {
+        session.getContext().setRealm(session.realms().getRealm(realmId));
+
+        try {
+            session.getProvider(EmailSenderProvider.class)
+                    .send(smtpConfig, email.address(), email.subject(), email.textBody(), email.htmlBody());
+
+            return null;
+        } catch (EmailException e) {
+            return e;
+        }
+    }
+
+
+    private static Exception await(Future<Exception> future) {
+        if (future == null) {
+            return new RejectedExecutionException("Email not handed to the bulk sender");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.util.JsonSerialization;
+
+import com.trackswiftly.keycloak_userservice.cache.GroupCatalogVersions;
+
+
+/***
+ *
+ * Groups of each realm , indexed by id and by top level name , with the body of GET groups already serialized .
+ *
+ * A catalog is built on first read , then patched after each group created , renamed , moved or removed on this node
+ * (model events , admin API changes included) . Other nodes see the version of {@link GroupCatalogVersions} change
+ * and rebuild their catalog on their next read , so group listings and name lookups do not read the database
+ * in steady state .
+ *
+ * One instance per node , owned by the resource factory .
+ */
+public class GroupCatalog {
+
+
+    public record Group(String id, String name, String parentId) {
+
+        /**
+         * @return null for the internal groups of the organizations , only realm groups are listed
+         */
+        static Group of(GroupModel group) {
+            if (group.getType() != GroupModel.Type.REALM) {
+                return null;
+            }
+
+            return new Group(group.getId(), group.getName(), group.getParentId());
+        }
+    }
+
+
+    /***
+     *
+     * Immutable , replaced as a whole on each change .
+     */
+    public record Snapshot(
+        String version ,
+        Map<String, Group> byId ,
+        Map<String, String> topLevelIds ,
+        byte[] body ,
+        String etag
+    ) {
+
+        static Snapshot of(String version, Map<String, Group> groups) {
+            Map<String, String> topLevelIds = new HashMap<>();
+            List<Map<String, String>> listing = groups.values().stream()
+                .sorted(Comparator.comparing(Group::name).thenComparing(Group::id))
+                .map(group -> {
+                    // only realm groups get here (Group.of) , organization groups never resolve by name
+                    if (group.parentId() == null) {
+                        topLevelIds.put(group.name(), group.id());
+                    }
+
+                    Map<String, String> entry = new LinkedHashMap<>();
+                    entry.put("id", group.id());
+                    entry.put("name", group.name());
+                    return entry;
+                })
+                .toList();
+
+            try {
+                byte[] body = JsonSerialization.writeValueAsBytes(listing);
+
+                return new Snapshot(version, Map.copyOf(groups), Map.copyOf(topLevelIds), body, entityTag(body));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot serialize the group catalog", e);
+            }
+        }
+    }
+
+
+    /*
+     * realm id -> catalog
+     */
+    private final Map<String, Snapshot> catalogs = new ConcurrentHashMap<>();
+
+
+
+    /**
+     * @return the catalog of the realm , rebuilt if another node changed its groups
+     */
+    public Snapshot get(KeycloakSession session, RealmModel realm) {
+        GroupCatalogVersions versions = new GroupCatalogVersions(session);
+        Snapshot snapshot = catalogs.get(realm.getId());
+
+        if (snapshot != null && snapshot.version().equals(versions.get(realm.getId()))) {
+            return snapshot;
+        }
+
+        // the version is read before the groups , a change committed meanwhile publishes a newer one
+        String version = versions.getOrPublish(realm.getId(), KeycloakModelUtils.generateId());
+        Map<String, Group> groups = new HashMap<>();
+
+        realm.getGroupsStream()
+            .map(Group::of)
+            .filter(group -> group != null)
+            .forEach(group -> groups.put(group.id(), group));
+
+        snapshot = Snapshot.of(version, groups);
+        catalogs.put(realm.getId(), snapshot);
+
+        return snapshot;
+    }
+
+
+    /**
+     * Top level group by name , read through the Keycloak group cache .
+     *
+     * @return the group , null if there is none
+     */
+    public GroupModel findTopLevelGroup(KeycloakSession session, RealmModel realm, String name) {
+        String groupId = get(session, realm).topLevelIds().get(name);
+
+        return groupId == null ? null : realm.getGroupById(groupId);
+    }
+
+
+
+    /**
+     * The group was created , renamed or moved , the catalog is patched once the transaction commits .
+     * Organization groups are created through the same model events , they are not part of the catalog .
+     */
+    public void groupChanged(KeycloakSession session, RealmModel realm, GroupModel group) {
+        if (group.getType() != GroupModel.Type.REALM) {
+            return;
+        }
+
+        patchAfterCommit(session, realm.getId(), groups -> {
+            Group changed = Group.of(group);
+
+            if (changed != null) {
+                groups.put(changed.id(), changed);
+            }
+        });
+    }
+
+
+    /**
+     * The group was removed , with its sub groups .
+     */
+    public void groupRemoved(KeycloakSession session, RealmModel realm, GroupModel group) {
+        if (group.getType() != GroupModel.Type.REALM) {
+            return;
+        }
+
+        String groupId = group.getId();
+
+        patchAfterCommit(session, realm.getId(), groups -> removeWithSubGroups(groups, groupId));
+    }
+
+
+    public void evictRealm(String realmId) {
+        catalogs.remove(realmId);
+    }
+
+
+
+    private void patchAfterCommit(KeycloakSession session, String realmId, Consumer<Map<String, Group>> change) {
+        session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+            @Override
+            protected void commitImpl() {
+                patch(new GroupCatalogVersions(session), realmId, change);
+            }
+
+            @Override
+            protected void rollbackImpl() {
+                /*
+                 * nothing changed
+                 */
+            }
+        });
+    }
+
+
+    /***
+     *
+     * The local catalog is patched only if no other node changed the groups since it was built ,
+     * otherwise it is dropped and rebuilt on the next read . Either way the other nodes get a new version .
+     */
+    private void patch(GroupCatalogVersions versions, String realmId, Consumer<Map<String, Group>> change) {
+        String next = KeycloakModelUtils.generateId();
+
+        catalogs.compute(realmId, (id, snapshot) -> {
+            if (snapshot != null && versions.replace(realmId, snapshot.version(), next)) {
+                Map<String, Group> groups = new HashMap<>(snapshot.byId());
+                change.accept(groups);
+
+                return Snapshot.of(next, groups);
+            }
+
+            versions.bump(realmId, next);
+
+            return null;
+        });
+    }
+
+
+    private static void removeWithSubGroups(Map<String, Group> groups, String groupId) {
+        groups.remove(groupId);
+
+        groups.values().stream()
+            .filter(group -> groupId.equals(group.parentId()))
+            .map(Group::id)
+            .toList()
+            .forEach(subGroupId -> removeWithSubGroups(groups, subGroupId));
+    }
+
+
+    private static String entityTag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
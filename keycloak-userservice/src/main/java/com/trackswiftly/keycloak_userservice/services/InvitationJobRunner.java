@@ -0,0 +1,287 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.organization.OrganizationProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.dtos.InvitationResult;
+import com.trackswiftly.keycloak_userservice.entities.InvitationJobEntity;
+import com.trackswiftly.keycloak_userservice.entities.InvitationJobRowEntity;
+import com.trackswiftly.keycloak_userservice.repositories.InvitationJobRepository;
+import com.trackswiftly.keycloak_userservice.utils.BackgroundHttpRequest;
+import com.trackswiftly.keycloak_userservice.utils.EmailValidator;
+
+
+/***
+ *
+ * Runs the bulk invitation jobs in the background , so a large invitation neither holds the request open
+ * nor runs in one long transaction .
+ *
+ * A scheduler thread claims the runnable jobs (one job per free worker) , a worker invites a job chunk after chunk ,
+ * each chunk in its own transaction : the users of the chunk are resolved , the emails rendered and queued
+ * in the invitation outbox , the row results written and the job moved past the chunk , or none of it .
+ * The lease of a job is renewed by every chunk , a job of a stopped node is claimed again once its lease ends
+ * and goes on from its last committed chunk . Finished jobs are purged after a week .
+ *
+ * Owned by the resource factory , options : invitation-job-workers , invitation-job-poll-interval (seconds) ,
+ * invitation-job-chunk-size .
+ */
+public class InvitationJobRunner {
+
+
+    private static final Logger logger = LoggerFactory.getLogger(InvitationJobRunner.class);
+
+    public static final String WORKERS_OPTION = "invitation-job-workers";
+    public static final String POLL_INTERVAL_OPTION = "invitation-job-poll-interval";
+    public static final String CHUNK_SIZE_OPTION = "invitation-job-chunk-size";
+
+    public static final int DEFAULT_WORKERS = 2;
+    public static final long DEFAULT_POLL_INTERVAL_SECONDS = 5;
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long FINISHED_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+
+    private final int workerCount;
+    private final long pollIntervalSeconds;
+    private final int chunkSize;
+    private final InvitationTemplateCache templates;
+    private final PendingInvitationIndex pendingInvitations;
+
+    /*
+     * lease owner of this node , a new one on every start
+     */
+    private final String owner = KeycloakModelUtils.generateId();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private KeycloakSessionFactory sessionFactory;
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor workers;
+    private volatile boolean stopped;
+    private long lastPurge;
+
+
+    public InvitationJobRunner(
+        int workerCount,
+        long pollIntervalSeconds,
+        int chunkSize,
+        InvitationTemplateCache templates,
+        PendingInvitationIndex pendingInvitations
+    ) {
+        this.workerCount = Math.max(workerCount, 1);
+        this.pollIntervalSeconds = Math.max(pollIntervalSeconds, 1);
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.templates = templates;
+        this.pendingInvitations = pendingInvitations;
+    }
+
+
+    public static InvitationJobRunner fromConfig(Scope config, InvitationTemplateCache templates, PendingInvitationIndex pendingInvitations) {
+        return new InvitationJobRunner(
+            config.getInt(WORKERS_OPTION, DEFAULT_WORKERS),
+            config.getLong(POLL_INTERVAL_OPTION, DEFAULT_POLL_INTERVAL_SECONDS),
+            config.getInt(CHUNK_SIZE_OPTION, DEFAULT_CHUNK_SIZE),
+            templates,
+            pendingInvitations
+        );
+    }
+
+
+
+    public void start(KeycloakSessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+
+        AtomicInteger threads = new AtomicInteger();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+            daemon(runnable, "trackswiftly-invitation-job-poller")
+        );
+
+        workers = new ThreadPoolExecutor(
+            workerCount, workerCount,
+            0, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(),
+            runnable -> daemon(runnable, "trackswiftly-invitation-job-worker-" + threads.incrementAndGet())
+        );
+
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+
+    public void stop() {
+        stopped = true;
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        if (workers != null) {
+            // the current chunks are committed , the jobs go on elsewhere once their lease ends
+            workers.shutdown();
+        }
+    }
+
+
+
+    /*
+     * package-private , the tests poll without waiting for the scheduler
+     */
+    void poll() {
+        try {
+            int capacity = workerCount - running.get();
+
+            if (capacity <= 0) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+
+            List<String> claimed = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+                new InvitationJobRepository(session).claimRunnable(now, capacity, owner, LEASE_MILLIS)
+            );
+
+            for (String id : claimed) {
+                running.incrementAndGet();
+                workers.execute(() -> run(id));
+            }
+
+            purgeFinished(now);
+
+        } catch (RuntimeException e) {
+            logger.warn("Failed to poll the invitation jobs", e);
+        }
+    }
+
+
+    private void run(String id) {
+        try {
+            boolean more = true;
+
+            while (more && !stopped) {
+                more = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session -> processChunk(session, id));
+            }
+
+        } catch (RuntimeException e) {
+            // the chunk is rolled back , the job is claimed again once its lease ends
+            logger.warn("Failed to process invitation job {}", id, e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+
+    /*
+     * one transaction : returns true while the job has rows left
+     */
+    private boolean processChunk(KeycloakSession session, String id) {
+        InvitationJobRepository repository = new InvitationJobRepository(session);
+        InvitationJobEntity job = repository.find(id);
+
+        if (job == null || !InvitationJobEntity.STATUS_RUNNING.equals(job.getStatus()) || !owner.equals(job.getLeaseOwner())) {
+            return false;
+        }
+
+        RealmModel realm = session.realms().getRealm(job.getRealmId());
+
+        if (realm == null) {
+            repository.markFailed(job, "Realm not found");
+            return false;
+        }
+
+        session.getContext().setRealm(realm);
+        session.getContext().setHttpRequest(new BackgroundHttpRequest(job.getBaseUri(), job.getAcceptLanguage()));
+
+        OrganizationModel organization = session.getProvider(OrganizationProvider.class).getById(job.getOrganizationId());
+
+        if (organization == null) {
+            repository.markFailed(job, "Organization not found");
+            return false;
+        }
+
+        int fromIndex = job.getProcessed();
+        List<InvitationJobRowEntity> rows = repository.findRows(id, fromIndex, chunkSize);
+
+        if (rows.isEmpty()) {
+            repository.markFailed(job, "Rows not found from row " + fromIndex);
+            return false;
+        }
+
+        List<InvitationJobRowEntity> pendingRows = new ArrayList<>(rows.size());
+        List<InvitationRequest> requests = new ArrayList<>(rows.size());
+
+        for (InvitationJobRowEntity row : rows) {
+            if (InvitationJobRowEntity.STATUS_PENDING.equals(row.getStatus())) {
+                pendingRows.add(row);
+                requests.add(new InvitationRequest(row.getEmail(), row.getFirstName(), row.getLastName(), row.getUserId()));
+            }
+        }
+
+        if (!requests.isEmpty()) {
+            // rows were validated , and the duplicates failed , when the job was created
+            InvitationResult[] results = OrganizationInvitationService.forOrganization(session, organization, templates, pendingInvitations)
+                    .inviteQueued(requests, EmailValidator.validateInvitationChunk(requests, new HashSet<>()));
+
+            for (int i = 0; i < results.length; i++) {
+                InvitationResult result = results[i];
+                repository.markRow(pendingRows.get(i), result.isSuccess(), result.getErrorCode(), result.getMessage());
+            }
+        }
+
+        int succeeded = 0;
+
+        for (InvitationJobRowEntity row : rows) {
+            if (InvitationJobRowEntity.STATUS_SUCCEEDED.equals(row.getStatus())) {
+                succeeded++;
+            }
+        }
+
+        if (!repository.commitChunk(id, owner, fromIndex, rows.size(), succeeded, rows.size() - succeeded,
+                System.currentTimeMillis() + LEASE_MILLIS)) {
+            throw new IllegalStateException("Invitation job " + id + " was taken over , chunk from row " + fromIndex + " rolled back");
+        }
+
+        return fromIndex + rows.size() < job.getTotal();
+    }
+
+
+    private void purgeFinished(long now) {
+        if (now - lastPurge < PURGE_INTERVAL_MILLIS) {
+            return;
+        }
+
+        lastPurge = now;
+
+        int purged = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            new InvitationJobRepository(session).purgeFinished(now - FINISHED_RETENTION_MILLIS)
+        );
+
+        logger.debug("Purged {} finished invitation jobs", purged);
+    }
+
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
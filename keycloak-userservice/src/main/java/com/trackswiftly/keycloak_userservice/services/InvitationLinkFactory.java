@@ -0,0 +1,157 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.keycloak.OAuth2Constants;
+import org.keycloak.TokenCategory;
+import org.keycloak.authentication.actiontoken.inviteorg.InviteOrgActionToken;
+import org.keycloak.crypto.SignatureProvider;
+import org.keycloak.crypto.SignatureSignerContext;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.models.Constants;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakUriInfo;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.protocol.oidc.OIDCLoginProtocolService;
+import org.keycloak.protocol.oidc.utils.OIDCResponseType;
+import org.keycloak.services.Urls;
+import org.keycloak.services.resources.LoginActionsService;
+
+
+/***
+ *
+ * Mints the organization invitation links of a batch .
+ *
+ * What does not change between recipients is resolved once : issuer , redirect URI , link prefixes and
+ * the signer of the active realm key . A link is then one token , one signature and one string concatenation ,
+ * the same token {@link InviteOrgActionToken#serialize} would produce .
+ *
+ * The signer holds no session state , large batches are signed in parallel .
+ */
+public class InvitationLinkFactory {
+
+
+    private static final String TOKEN_TYPE = "JWT";
+
+    private final String issuer;
+    private final String redirectUri;
+    private final String organizationId;
+    private final int expiration;
+    private final SignatureSignerContext signer;
+
+    /*
+     * the token is appended , a JWS is base64url + dots , nothing to encode
+     */
+    private final String invitationLinkPrefix;
+    private final String registrationLinkPrefix;
+
+
+    /**
+     * @param invitationBase action token URL of the realm , the token is appended as the key parameter
+     * @param registrationBase registration URL of the realm , the token is appended as the token parameter
+     */
+    InvitationLinkFactory(String issuer, String redirectUri, String organizationId, int expiration, SignatureSignerContext signer,
+                          String invitationBase, String registrationBase) {
+        this.issuer = issuer;
+        this.redirectUri = redirectUri;
+        this.organizationId = organizationId;
+        this.expiration = expiration;
+        this.signer = signer;
+        this.invitationLinkPrefix = invitationBase + (invitationBase.indexOf('?') < 0 ? "?" : "&") + "key=";
+        this.registrationLinkPrefix = registrationBase + "&" + Constants.TOKEN + "=";
+    }
+
+
+
+    /**
+     * @param expiration the expiration time of the tokens , in seconds since the epoch
+     */
+    public static InvitationLinkFactory forBatch(KeycloakSession session, RealmModel realm, OrganizationModel organization, int expiration) {
+        KeycloakUriInfo uri = session.getContext().getUri();
+        String redirectUri = organization.getRedirectUrl();
+
+        if (redirectUri == null || redirectUri.isBlank()) {
+            redirectUri = Urls.accountBase(uri.getBaseUri()).path("/").build(realm.getName()).toString();
+        }
+
+        String algorithm = session.tokens().signatureAlgorithm(TokenCategory.INTERNAL);
+
+        String invitationBase = LoginActionsService.actionTokenProcessor(uri)
+                .build(realm.getName()).toString();
+
+        String registrationBase = OIDCLoginProtocolService.registrationsUrl(uri.getBaseUriBuilder())
+                .queryParam(OAuth2Constants.RESPONSE_TYPE, OIDCResponseType.CODE)
+                .queryParam(Constants.CLIENT_ID, Constants.ACCOUNT_MANAGEMENT_CLIENT_ID)
+                .buildFromMap(Map.of("realm", realm.getName(), "protocol", OIDCLoginProtocol.LOGIN_PROTOCOL)).toString();
+
+        return new InvitationLinkFactory(
+            Urls.realmIssuer(uri.getBaseUri(), realm.getName()),
+            redirectUri,
+            organization.getId(),
+            expiration,
+            session.getProvider(SignatureProvider.class, algorithm).signer(),
+            invitationBase,
+            registrationBase
+        );
+    }
+
+
+    /**
+     * Invitation link of an existing user , registration link of a user not created yet (null id) .
+     */
+    public String createLink(UserModel user) {
+        return createLink(user.getId(), user.getEmail());
+    }
+
+
+    public String createLink(String userId, String email) {
+        String token = sign(userId, email);
+
+        return userId == null ? registrationLinkPrefix.concat(token) : invitationLinkPrefix.concat(token);
+    }
+
+
+    /**
+     * Links of the users , in their order , signed in parallel above the threshold .
+     * The users are read in the calling thread , the signing threads do not touch the session .
+     */
+    public List<String> createLinks(List<UserModel> users, int parallelThreshold) {
+        String[] userIds = new String[users.size()];
+        String[] emails = new String[users.size()];
+
+        for (int i = 0; i < users.size(); i++) {
+            userIds[i] = users.get(i).getId();
+            emails[i] = users.get(i).getEmail();
+        }
+
+        IntStream indexes = IntStream.range(0, users.size());
+
+        if (users.size() > parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+
+        return indexes.mapToObj(i -> createLink(userIds[i], emails[i])).toList();
+    }
+
+
+
+    private String sign(String userId, String email) {
+        InviteOrgActionToken token = new InviteOrgActionToken(userId, expiration, email, Constants.ACCOUNT_MANAGEMENT_CLIENT_ID);
+
+        token.setOrgId(organizationId);
+        token.setRedirectUri(redirectUri);
+
+        // what DefaultActionToken#serialize sets before encoding
+        token.issuedNow();
+        token.id(token.getActionVerificationNonce().toString());
+        token.issuer(issuer);
+        token.audience(issuer);
+
+        return new JWSBuilder().type(TOKEN_TYPE).jsonContent(token).sign(signer);
+    }
+}
@@ -0,0 +1,346 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.email.EmailException;
+import org.keycloak.email.EmailSenderProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.trackswiftly.keycloak_userservice.entities.InvitationOutboxEntity;
+import com.trackswiftly.keycloak_userservice.repositories.InvitationOutboxRepository;
+import com.trackswiftly.keycloak_userservice.repositories.PendingInvitationRepository;
+
+
+/***
+ *
+ * Drains the invitation outbox in the background , so no HTTP worker waits on the SMTP server .
+ *
+ * A scheduler thread claims the due rows , a bounded pool of workers sends them . A send holds no transaction
+ * (nor database connection) while it waits for a realm permit or for the SMTP server : the row is read in a first
+ * short transaction , the outcome recorded in a second one , if the lease of the row is still ours .
+ * Claimed rows the workers cannot take (pool stopping) are released at once instead of waiting for their lease .
+ * A failed send is retried with an exponential backoff (backoff , 2 x backoff , 4 x backoff ... capped to one hour)
+ * until max attempts , then the row is marked FAILED and its pending invitation dropped . Sent rows are purged after a week , the expired pending
+ * invitations (see {@link PendingInvitationIndex}) with them .
+ *
+ * Owned by the resource factory , options : invitation-outbox-workers , invitation-outbox-poll-interval (seconds) ,
+ * invitation-outbox-max-attempts , invitation-outbox-backoff (seconds) .
+ * Sends take the realm permits of the bulk invitations , see {@link RealmSendLimiter} .
+ */
+public class InvitationOutboxDispatcher {
+
+
+    private static final Logger logger = LoggerFactory.getLogger(InvitationOutboxDispatcher.class);
+
+
+    /*
+     * what a worker needs from the claimed row and its realm , read before the send
+     */
+    private record Delivery(
+        String id,
+        String realmId,
+        Map<String, String> smtpConfig,
+        String email,
+        String subject,
+        String textBody,
+        String htmlBody,
+        int attempts,
+        long leaseEnd
+    ) {}
+
+    public static final String WORKERS_OPTION = "invitation-outbox-workers";
+    public static final String POLL_INTERVAL_OPTION = "invitation-outbox-poll-interval";
+    public static final String MAX_ATTEMPTS_OPTION = "invitation-outbox-max-attempts";
+    public static final String BACKOFF_OPTION = "invitation-outbox-backoff";
+
+    public static final int DEFAULT_WORKERS = 4;
+    public static final long DEFAULT_POLL_INTERVAL_SECONDS = 2;
+    public static final int DEFAULT_MAX_ATTEMPTS = 6;
+    public static final long DEFAULT_BACKOFF_SECONDS = 30;
+
+    private static final int QUEUED_PER_WORKER = 16;
+    private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long SENT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+
+    private final int workerCount;
+    private final long pollIntervalSeconds;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final RealmSendLimiter limiter;
+
+    private KeycloakSessionFactory sessionFactory;
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor workers;
+    private long lastPurge;
+
+
+    public InvitationOutboxDispatcher(int workerCount, long pollIntervalSeconds, int maxAttempts, long backoffSeconds, RealmSendLimiter limiter) {
+        this.workerCount = Math.max(workerCount, 1);
+        this.pollIntervalSeconds = Math.max(pollIntervalSeconds, 1);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.backoffMillis = TimeUnit.SECONDS.toMillis(backoffSeconds);
+        this.limiter = limiter;
+    }
+
+
+    public static InvitationOutboxDispatcher fromConfig(Scope config, RealmSendLimiter limiter) {
+        return new InvitationOutboxDispatcher(
+            config.getInt(WORKERS_OPTION, DEFAULT_WORKERS),
+            config.getLong(POLL_INTERVAL_OPTION, DEFAULT_POLL_INTERVAL_SECONDS),
+            config.getInt(MAX_ATTEMPTS_OPTION, DEFAULT_MAX_ATTEMPTS),
+            config.getLong(BACKOFF_OPTION, DEFAULT_BACKOFF_SECONDS),
+            limiter
+        );
+    }
+
+
+
+    public void start(KeycloakSessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+
+        AtomicInteger threads = new AtomicInteger();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+            daemon(runnable, "trackswiftly-outbox-poller")
+        );
+
+        workers = new ThreadPoolExecutor(
+            workerCount, workerCount,
+            0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(workerCount * QUEUED_PER_WORKER),
+            runnable -> daemon(runnable, "trackswiftly-outbox-worker-" + threads.incrementAndGet())
+        );
+
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        if (workers != null) {
+            // claimed rows not sent yet are due again once their lease ends
+            workers.shutdown();
+        }
+    }
+
+
+
+    /*
+     * package-private , the tests poll without waiting for the scheduler
+     */
+    void poll() {
+        try {
+            int capacity = workers.getQueue().remainingCapacity();
+
+            if (capacity == 0) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+
+            List<String> claimed = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+                new InvitationOutboxRepository(session).claimDue(now, capacity, LEASE_MILLIS)
+            );
+
+            for (int i = 0; i < claimed.size(); i++) {
+                String id = claimed.get(i);
+
+                try {
+                    workers.execute(() -> dispatch(id));
+                } catch (RejectedExecutionException e) {
+                    release(claimed.subList(i, claimed.size()));
+                    return;
+                }
+            }
+
+            purgeSent(now);
+
+        } catch (RuntimeException e) {
+            logger.warn("Failed to poll the invitation outbox", e);
+        }
+    }
+
+
+    /*
+     * rows claimed but not handed to a worker : due again now , the claim does not count as an attempt
+     */
+    private void release(List<String> ids) {
+        int released = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            new InvitationOutboxRepository(session).release(ids, LEASE_MILLIS)
+        );
+
+        logger.debug("Released {} claimed invitations the workers could not take", released);
+    }
+
+
+    private void dispatch(String id) {
+        try {
+            Delivery delivery = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session -> load(session, id));
+
+            if (delivery == null) {
+                return;
+            }
+
+            String error = deliver(delivery);
+
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> record(session, delivery, error));
+
+        } catch (RuntimeException e) {
+            logger.warn("Failed to dispatch invitation {}", id, e);
+        }
+    }
+
+
+    private Delivery load(KeycloakSession session, String id) {
+        InvitationOutboxRepository repository = new InvitationOutboxRepository(session);
+        InvitationOutboxEntity entity = repository.find(id);
+
+        if (entity == null || !InvitationOutboxEntity.STATUS_SENDING.equals(entity.getStatus())) {
+            return null;
+        }
+
+        RealmModel realm = session.realms().getRealm(entity.getRealmId());
+
+        if (realm == null) {
+            giveUp(session, repository, entity, "Realm not found");
+            return null;
+        }
+
+        return new Delivery(
+            entity.getId(),
+            realm.getId(),
+            new HashMap<>(realm.getSmtpConfig()),
+            entity.getEmail(),
+            entity.getSubject(),
+            entity.getTextBody(),
+            entity.getHtmlBody(),
+            entity.getAttempts(),
+            entity.getNextAttemptAt()
+        );
+    }
+
+
+    /***
+     *
+     * sends outside of any transaction , the session only serves the email sender and the vault of the realm .
+     * @return null once sent , the error otherwise
+     */
+    private String deliver(Delivery delivery) {
+        Semaphore permits = limiter.permits(delivery.realmId());
+        permits.acquireUninterruptibly();
+
+        try (KeycloakSession session = sessionFactory.create()) {
+            RealmModel realm = session.realms().getRealm(delivery.realmId());
+
+            if (realm == null) {
+                return "Realm not found";
+            }
+
+            session.getContext().setRealm(realm);
+
+            session.getProvider(EmailSenderProvider.class).send(
+                delivery.smtpConfig(),
+                delivery.email(),
+                delivery.subject(),
+                delivery.textBody(),
+                delivery.htmlBody()
+            );
+
+            return null;
+
+        } catch (EmailException e) {
+            logger.warn("Failed to send invitation {} (attempt {} of {})", delivery.id(), delivery.attempts(), maxAttempts, e);
+
+            return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    private void record(KeycloakSession session, Delivery delivery, String error) {
+        InvitationOutboxRepository repository = new InvitationOutboxRepository(session);
+        InvitationOutboxEntity entity = repository.find(delivery.id());
+
+        if (entity == null
+                || !InvitationOutboxEntity.STATUS_SENDING.equals(entity.getStatus())
+                || entity.getNextAttemptAt() != delivery.leaseEnd()) {
+            // the lease ended during the send , the row belongs to another claim now
+            logger.warn("Lease of invitation {} lost during the send , the outcome is not recorded", delivery.id());
+            return;
+        }
+
+        if (error == null) {
+            repository.markSent(entity);
+        } else if (delivery.attempts() < maxAttempts) {
+            repository.markFailed(entity, error, System.currentTimeMillis() + backoff(delivery.attempts()));
+        } else {
+            giveUp(session, repository, entity, error);
+        }
+    }
+
+
+    /***
+     *
+     * the invitation was never delivered , it is not pending anymore and the address can be invited again .
+     */
+    private static void giveUp(KeycloakSession session, InvitationOutboxRepository repository, InvitationOutboxEntity entity, String error) {
+        repository.markFailed(entity, error, -1);
+
+        PendingInvitationIndex.forget(session, entity.getOrganizationId(), entity.getEmail());
+    }
+
+
+    private long backoff(int attempts) {
+        return Math.min(backoffMillis << Math.min(attempts - 1, 20), MAX_BACKOFF_MILLIS);
+    }
+
+
+    private void purgeSent(long now) {
+        if (now - lastPurge < PURGE_INTERVAL_MILLIS) {
+            return;
+        }
+
+        lastPurge = now;
+
+        int purged = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            new InvitationOutboxRepository(session).purgeSent(now - SENT_RETENTION_MILLIS)
+        );
+
+        int expired = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session ->
+            new PendingInvitationRepository(session).purgeExpired(now)
+        );
+
+        logger.debug("Purged {} sent invitations , {} expired pending invitations", purged, expired);
+    }
+
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
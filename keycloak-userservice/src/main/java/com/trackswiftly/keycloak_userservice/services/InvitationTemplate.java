@@ -0,0 +1,200 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+
+
+/***
+ *
+ * An invitation email compiled once per (realm , theme , locale , organization ...) , see {@link InvitationTemplateCache} .
+ *
+ * It is rendered by the theme with sentinel values in place of the recipient fields (link , first name , last name) ,
+ * the rendered subject and bodies are then split around the sentinels , rendering an invitation only appends
+ * the literal parts and the recipient values , HTML escaped in the HTML body .
+ *
+ * A template that uses recipient data beyond these fields , or transforms them , is {@link #UNCACHEABLE} .
+ */
+public class InvitationTemplate {
+
+
+    static final String LINK_SENTINEL = "https://trackswiftly.invalid/tsxlinksentinel";
+    static final String FIRST_NAME_SENTINEL = "tsxfirstnamesentinel";
+    static final String LAST_NAME_SENTINEL = "tsxlastnamesentinel";
+    static final String EMAIL_SENTINEL = "tsxemailsentinel@trackswiftly.invalid";
+    static final String USERNAME_SENTINEL = "tsxusernamesentinel";
+
+    private static final String LINK_TOKEN = "tsxlinksentinel";
+    private static final String EMAIL_TOKEN = "tsxemailsentinel";
+
+    private static final int LINK = 0;
+    private static final int FIRST_NAME = 1;
+    private static final int LAST_NAME = 2;
+
+    private static final String[] SENTINELS = { LINK_SENTINEL, FIRST_NAME_SENTINEL, LAST_NAME_SENTINEL };
+
+
+    public static final InvitationTemplate UNCACHEABLE = new InvitationTemplate(null, null, null);
+
+
+    /*
+     * literals.length == fields.length + 1 , literal , field , literal , field ... literal
+     */
+    private record Part(String[] literals, int[] fields) {
+
+        String render(String[] values, boolean html) {
+            StringBuilder out = new StringBuilder(literals[0].length() * 2);
+            out.append(literals[0]);
+
+            for (int i = 0; i < fields.length; i++) {
+                String value = values[fields[i]];
+
+                if (html) {
+                    escapeHtml(value, out);
+                } else {
+                    out.append(value);
+                }
+
+                out.append(literals[i + 1]);
+            }
+
+            return out.toString();
+        }
+    }
+
+
+    private final Part subject;
+    private final Part textBody;
+    private final Part htmlBody;
+
+
+    private InvitationTemplate(Part subject, Part textBody, Part htmlBody) {
+        this.subject = subject;
+        this.textBody = textBody;
+        this.htmlBody = htmlBody;
+    }
+
+
+
+    /**
+     * @param rendered the invitation rendered for the sentinel user
+     * @return the compiled template , or {@link #UNCACHEABLE}
+     */
+    public static InvitationTemplate compile(RenderedEmail rendered) {
+        String[] parts = { rendered.subject(), rendered.textBody(), rendered.htmlBody() };
+
+        for (String part : parts) {
+            if (part != null && (part.contains(EMAIL_TOKEN) || part.contains(USERNAME_SENTINEL))) {
+                return UNCACHEABLE;
+            }
+        }
+
+        Part subject = split(rendered.subject());
+        Part textBody = split(rendered.textBody());
+        Part htmlBody = split(rendered.htmlBody());
+
+        if ((rendered.subject() != null && subject == null)
+                || (rendered.textBody() != null && textBody == null)
+                || (rendered.htmlBody() != null && htmlBody == null)) {
+            return UNCACHEABLE;
+        }
+
+        return new InvitationTemplate(subject, textBody, htmlBody);
+    }
+
+
+    public boolean isCacheable() {
+        return this != UNCACHEABLE;
+    }
+
+
+    public RenderedEmail render(String address, String link, String firstName, String lastName) {
+        String[] values = { link, firstName == null ? "" : firstName, lastName == null ? "" : lastName };
+
+        return new RenderedEmail(
+            address,
+            subject == null ? null : subject.render(values, false),
+            textBody == null ? null : textBody.render(values, false),
+            htmlBody == null ? null : htmlBody.render(values, true)
+        );
+    }
+
+
+
+    /*
+     * null when a link sentinel was altered by the template (only part of it left)
+     */
+    private static Part split(String rendered) {
+        if (rendered == null) {
+            return null;
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> fields = new ArrayList<>();
+
+        int from = 0;
+        int links = 0;
+
+        while (true) {
+            int next = -1;
+            int field = -1;
+
+            for (int f = 0; f < SENTINELS.length; f++) {
+                int index = rendered.indexOf(SENTINELS[f], from);
+
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    field = f;
+                }
+            }
+
+            if (next < 0) {
+                break;
+            }
+
+            literals.add(rendered.substring(from, next));
+            fields.add(field);
+            links += field == LINK ? 1 : 0;
+            from = next + SENTINELS[field].length();
+        }
+
+        literals.add(rendered.substring(from));
+
+        if (countOccurrences(rendered, LINK_TOKEN) != links) {
+            return null;
+        }
+
+        return new Part(
+            literals.toArray(String[]::new),
+            fields.stream().mapToInt(Integer::intValue).toArray()
+        );
+    }
+
+
+    private static int countOccurrences(String text, String token) {
+        int count = 0;
+
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + token.length())) {
+            count++;
+        }
+
+        return count;
+    }
+
+
+    private static void escapeHtml(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&#34;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
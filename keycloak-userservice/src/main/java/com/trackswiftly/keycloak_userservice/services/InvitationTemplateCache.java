@@ -0,0 +1,104 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.net.URI;
+import java.util.Locale;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+
+import com.trackswiftly.keycloak_userservice.utils.LruCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+
+/***
+ *
+ * Per node cache of the compiled invitation emails ({@link InvitationTemplate}) .
+ *
+ * The key holds everything the theme output depends on besides the recipient : realm , email theme , locale ,
+ * base URI , organization (id and name) , link expiration and whether the recipient has a name .
+ * A realm switching its email theme uses new keys right away , entries expire after the TTL so edited
+ * message bundles / realm localization texts are picked up .
+ *
+ * Owned by the resource factory , options : invitation-template-cache-max-entries , invitation-template-cache-ttl (seconds) .
+ */
+public class InvitationTemplateCache {
+
+
+    public static final String MAX_ENTRIES_OPTION = "invitation-template-cache-max-entries";
+    public static final String TTL_OPTION = "invitation-template-cache-ttl";
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private static final String METRIC_NAME = "trackswiftly.invitation.template.cache";
+    private static final Counter HITS = Metrics.counter(METRIC_NAME, "result", "hit");
+    private static final Counter MISSES = Metrics.counter(METRIC_NAME, "result", "miss");
+
+
+    private record Entry(InvitationTemplate template, long expiresAt) {}
+
+
+    private final LruCache<String, Entry> templates;
+    private final long ttlMillis;
+
+
+    public InvitationTemplateCache(int maxEntries, long ttlSeconds) {
+        this.templates = new LruCache<>(maxEntries);
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+
+    public static InvitationTemplateCache fromConfig(Scope config) {
+        return new InvitationTemplateCache(
+            config.getInt(MAX_ENTRIES_OPTION, DEFAULT_MAX_ENTRIES),
+            config.getLong(TTL_OPTION, DEFAULT_TTL_SECONDS)
+        );
+    }
+
+
+
+    public static String key(
+        RealmModel realm ,
+        Locale locale ,
+        URI baseUri ,
+        OrganizationModel organization ,
+        long expirationInMinutes ,
+        boolean named
+    ) {
+        return String.join("|",
+            realm.getId(),
+            String.valueOf(realm.getEmailTheme()),
+            String.valueOf(realm.getDisplayName()),
+            locale.toLanguageTag(),
+            baseUri.toString(),
+            organization.getId(),
+            organization.getName(),
+            Long.toString(expirationInMinutes),
+            Boolean.toString(named)
+        );
+    }
+
+
+    /**
+     * @return the template , null if not cached or expired
+     */
+    public InvitationTemplate get(String key) {
+        Entry entry = templates.get(key);
+
+        if (entry == null || entry.expiresAt() < System.currentTimeMillis()) {
+            MISSES.increment();
+            return null;
+        }
+
+        HITS.increment();
+        return entry.template();
+    }
+
+
+    public void put(String key, InvitationTemplate template) {
+        templates.put(key, new Entry(template, System.currentTimeMillis() + ttlMillis));
+    }
+}
@@ -1,58 +1,123 @@
 package com.trackswiftly.keycloak_userservice.services;
 
-import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.OrganizationModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
-import org.keycloak.organization.OrganizationProvider;
-import org.keycloak.protocol.oidc.OIDCLoginProtocol;
-import org.keycloak.protocol.oidc.OIDCLoginProtocolService;
-import org.keycloak.protocol.oidc.utils.OIDCResponseType;
 import org.keycloak.services.ErrorResponse;
 import org.keycloak.services.ServicesLogger;
-import org.keycloak.services.Urls;
-import org.keycloak.services.resources.LoginActionsService;
+import org.keycloak.storage.UserStorageProvider;
 import org.keycloak.storage.adapter.InMemoryUserAdapter;
 import org.keycloak.utils.StringUtil;
 
 import com.trackswiftly.keycloak_userservice.dtos.BulkInvitationResponse;
 import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
 import com.trackswiftly.keycloak_userservice.dtos.InvitationResult;
+import com.trackswiftly.keycloak_userservice.dtos.MemberDetails;
+import com.trackswiftly.keycloak_userservice.dtos.MemberSummary;
 import com.trackswiftly.keycloak_userservice.dtos.ProcessedInvitation;
+import com.trackswiftly.keycloak_userservice.entities.InvitationJobEntity;
+import com.trackswiftly.keycloak_userservice.entities.InvitationOutboxEntity;
+import com.trackswiftly.keycloak_userservice.middlewares.CallerContext;
+import com.trackswiftly.keycloak_userservice.repositories.InvitationJobRepository;
+import com.trackswiftly.keycloak_userservice.repositories.InvitationOutboxRepository;
+import com.trackswiftly.keycloak_userservice.repositories.OrganizationMemberRepository;
+import com.trackswiftly.keycloak_userservice.repositories.UserBatchRepository;
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+import com.trackswiftly.keycloak_userservice.utils.EmailValidator;
+import com.trackswiftly.keycloak_userservice.utils.InvitationRowReader;
+import com.trackswiftly.keycloak_userservice.utils.KeysetCursor;
 
 import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.function.Predicate;
 
-import org.keycloak.OAuth2Constants;
-import org.keycloak.authentication.actiontoken.inviteorg.InviteOrgActionToken;
 import org.keycloak.common.util.Time;
 import org.keycloak.email.EmailException;
-import org.keycloak.email.EmailTemplateProvider;
+import org.keycloak.http.HttpRequest;
+import org.keycloak.util.JsonSerialization;
 
 public class OrganizationInvitationService {
 
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String EXPAND_ROLES = "roles";
+    private static final String EXPAND_GROUPS = "groups";
+
+
     private final KeycloakSession session;
     private final RealmModel realm;
     private final OrganizationModel organization;
     private final int tokenExpiration;
+    private final InvitationTemplateCache templates;
+    private final PendingInvitationIndex pendingInvitations;
    
     
 
-    public OrganizationInvitationService(KeycloakSession session, OrganizationModel organization) {
+    /***
+     * Uses the organization already resolved for the caller of the current request .
+     * Invitations are rendered through the compiled templates of the cache , invitations already pending
+     * for an email are skipped , see {@link PendingInvitationIndex} .
+     * @param caller
+     * @param templates
+     * @param pendingInvitations
+     */
+    public OrganizationInvitationService(CallerContext caller, InvitationTemplateCache templates, PendingInvitationIndex pendingInvitations) {
+        this(caller.getSession(), caller.getOrganization()
+            .orElseThrow(() -> new NotFoundException("No organization found for the user.")), templates, pendingInvitations);
+    }
+
+
+    private OrganizationInvitationService(
+        KeycloakSession session,
+        OrganizationModel organization,
+        InvitationTemplateCache templates,
+        PendingInvitationIndex pendingInvitations
+    ) {
         this.session = session;
         this.realm = session.getContext().getRealm();
         this.organization = organization;
         this.tokenExpiration = getTokenExpiration();
+        this.templates = templates;
+        this.pendingInvitations = pendingInvitations;
+    }
+
+
+    /***
+     * For the background work without a caller (invitation jobs) : the organization is the one the work was created for .
+     * @param session session of the background transaction , its context realm set
+     * @param organization
+     * @param templates
+     * @param pendingInvitations
+     */
+    public static OrganizationInvitationService forOrganization(
+        KeycloakSession session,
+        OrganizationModel organization,
+        InvitationTemplateCache templates,
+        PendingInvitationIndex pendingInvitations
+    ) {
+        return new OrganizationInvitationService(session, organization, templates, pendingInvitations);
     }
 
 
@@ -75,7 +140,15 @@ public class OrganizationInvitationService {
             if (organization.isMember(user)) {
                 throw ErrorResponse.error("User already a member of the organization", Status.CONFLICT);
             }
+        }
+
+        Response alreadyInvited = alreadyInvited(email);
+
+        if (alreadyInvited != null) {
+            return alreadyInvited;
+        }
 
+        if (user != null) {
             return sendInvitation(user);
         }
 
@@ -103,97 +176,177 @@ public class OrganizationInvitationService {
             throw ErrorResponse.error("User does not exist", Status.BAD_REQUEST);
         }
 
+        Response alreadyInvited = alreadyInvited(user.getEmail());
+
+        if (alreadyInvited != null) {
+            return alreadyInvited;
+        }
+
         return sendInvitation(user);
     }
 
+    /***
+     * 
+     * the email is rendered here and queued in the invitation outbox , in the transaction of the request ,
+     * the SMTP server is only contacted by the outbox dispatcher .
+     */
     private Response sendInvitation(UserModel user) {
-        String link = user.getId() == null ? createRegistrationLink(user) : createInvitationLink(user);
+        PendingInvitationIndex.Claim claim = claimInvitations(List.of(user));
+
+        if (claim != null && !claim.holds(user)) {
+            // a concurrent request invited the address since the lookup
+            Response alreadyInvited = alreadyInvited(user.getEmail());
 
-        System.err.println(link + "✅");
+            return alreadyInvited != null ? alreadyInvited : Response.status(Status.CONFLICT).entity(Map.of(
+                "error", "ALREADY_INVITED",
+                "message", "An invitation was already sent to this email"
+            )).build();
+        }
+
+        String link = InvitationLinkFactory.forBatch(session, realm, organization, tokenExpiration).createLink(user);
+
+        String invitationId;
 
         try {
-            session.getProvider(EmailTemplateProvider.class)
-                    .setRealm(realm)
-                    .setUser(user)
-                    .sendOrgInviteEmail(organization, link, TimeUnit.SECONDS.toMinutes(getActionTokenLifespan()));
+            RenderedEmail email = new RenderingEmailTemplateProvider(session, templates)
+                    .renderOrgInviteEmail(realm, user, organization, link, TimeUnit.SECONDS.toMinutes(getActionTokenLifespan()));
+
+            invitationId = new InvitationOutboxRepository(session).enqueue(realm, organization, email);
         } catch (EmailException e) {
             ServicesLogger.LOGGER.failedToSendEmail(e);
             throw ErrorResponse.error("Failed to send invite email", Status.INTERNAL_SERVER_ERROR);
         }
 
-        return Response.noContent().build();
+        return Response.accepted(Map.of(
+            "id", invitationId,
+            "status", InvitationOutboxEntity.STATUS_PENDING
+        )).build();
     }
 
     
-    private int getTokenExpiration() {
-        return Time.currentTime() + getActionTokenLifespan();
+    /*
+     * the mappings of the whole page are read at once , role and group mappings for roles , memberships for groups
+     */
+    private List<MemberDetails> expand(List<MemberSummary> page, Set<String> expansions) {
+        List<String> userIds = page.stream().map(MemberSummary::id).toList();
+        UserBatchRepository users = new UserBatchRepository(session);
+
+        Map<String, List<String>> roleIds = expansions.contains(EXPAND_ROLES) ? users.findRoleIds(userIds) : null;
+        Map<String, List<String>> groupIds = expansions.contains(EXPAND_ROLES) ? users.findGroupIds(userIds) : null;
+        Map<String, List<String>> groupNames = expansions.contains(EXPAND_GROUPS) ? users.findGroupNames(userIds) : null;
+        RoleGraph roleGraph = new RoleGraph(session, realm);
+
+        return page.stream()
+            .map(member -> MemberDetails.of(
+                member,
+                roleIds == null ? null : roleGraph.expand(
+                    roleIds.getOrDefault(member.id(), List.of()),
+                    groupIds.getOrDefault(member.id(), List.of())
+                ),
+                groupNames == null ? null : new TreeSet<>(groupNames.getOrDefault(member.id(), List.of()))
+            ))
+            .toList();
     }
 
-    private int getActionTokenLifespan() {
-        return realm.getActionTokenGeneratedByAdminLifespan();
-    }
 
+    private static Set<String> parseExpand(String expand) {
+        Set<String> expansions = new HashSet<>();
 
+        if (StringUtil.isBlank(expand)) {
+            return expansions;
+        }
 
-    private String createInvitationLink(UserModel user) {
-        return LoginActionsService.actionTokenProcessor(session.getContext().getUri())
-                .queryParam("key", createToken(user))
-                .build(realm.getName()).toString();
-    }
+        for (String value : expand.split(",")) {
+            String expansion = value.trim().toLowerCase(Locale.ROOT);
 
+            if (!expansion.equals(EXPAND_ROLES) && !expansion.equals(EXPAND_GROUPS)) {
+                throw new BadRequestException("Unknown expand value: " + value.trim());
+            }
+
+            expansions.add(expansion);
+        }
 
-    private String createRegistrationLink(UserModel user) {
-        return OIDCLoginProtocolService.registrationsUrl(session.getContext().getUri().getBaseUriBuilder())
-                .queryParam(OAuth2Constants.RESPONSE_TYPE, OIDCResponseType.CODE)
-                .queryParam(Constants.CLIENT_ID, Constants.ACCOUNT_MANAGEMENT_CLIENT_ID)
-                .queryParam(Constants.TOKEN, createToken(user))
-                .buildFromMap(Map.of("realm", realm.getName(), "protocol", OIDCLoginProtocol.LOGIN_PROTOCOL)).toString();
+        return expansions;
     }
 
 
+    /*
+     * 409 ALREADY_INVITED if an invitation is still pending for the email , null otherwise
+     */
+    private Response alreadyInvited(String email) {
+        if (pendingInvitations == null || email == null) {
+            return null;
+        }
 
+        Long sentAt = pendingInvitations.findRecent(session, organization, List.of(email))
+                .get(PendingInvitationIndex.normalize(email));
+
+        if (sentAt == null) {
+            return null;
+        }
 
-    private String createToken(UserModel user) {
-        InviteOrgActionToken token = new InviteOrgActionToken(user.getId(), tokenExpiration, user.getEmail(), Constants.ACCOUNT_MANAGEMENT_CLIENT_ID);
+        return Response.status(Status.CONFLICT).entity(Map.of(
+            "error", "ALREADY_INVITED",
+            "message", "An invitation was already sent to this email",
+            "sentAt", sentAt
+        )).build();
+    }
 
-        token.setOrgId(organization.getId());
 
-        if (organization.getRedirectUrl() == null || organization.getRedirectUrl().isBlank()) {
-            token.setRedirectUri(Urls.accountBase(session.getContext().getUri().getBaseUri()).path("/").build(realm.getName()).toString());
-        } else {
-            token.setRedirectUri(organization.getRedirectUrl());
+    /*
+     * null without pending invitation index , every address can be invited then
+     */
+    private PendingInvitationIndex.Claim claimInvitations(List<UserModel> users) {
+        if (pendingInvitations == null || users.isEmpty()) {
+            return null;
         }
 
-        return token.serialize(session, realm, session.getContext().getUri());
+        return pendingInvitations.claim(session, realm, organization, users, TimeUnit.SECONDS.toMillis(tokenExpiration));
     }
 
 
+    private int getTokenExpiration() {
+        return Time.currentTime() + getActionTokenLifespan();
+    }
+
+    private int getActionTokenLifespan() {
+        return realm.getActionTokenGeneratedByAdminLifespan();
+    }
 
 
-    public Response getOrgMembers(OrganizationProvider organizationProvider , int first , int max) {
-        Stream<UserModel> users = organizationProvider.getMembersStream(
-            organization, 
-            Map.of(), 
-            null, 
-            first, 
-            max
+
+    /***
+     *
+     * Page of the members of the organization , keyset paginated on the username : the next page starts
+     * after the last member of this one , its cursor is returned in the X-Next-Cursor header (absent on the last page) .
+     *
+     * @param cursor X-Next-Cursor of the previous page , null for the first page
+     * @param search prefix of the username , email , first name or last name , null for all the members
+     * @param max page size
+     * @param expand comma separated "roles" (effective roles : user and group mappings , composites included) and "groups" , null for none
+     */
+    public Response getOrgMembers(String cursor, String search, int max, String expand) {
+        Set<String> expansions = parseExpand(expand);
+        String[] after = KeysetCursor.decode(cursor, 1);
+
+        // one more member than the page tells whether there is a next page
+        List<MemberSummary> members = new OrganizationMemberRepository(session).findMembersAfter(
+            organization,
+            after == null ? null : after[0],
+            StringUtil.isBlank(search) ? null : search,
+            max + 1
         );
 
-        List<Map<String, Object>> userDetails = users
-        .map(user -> {
-            Map<String, Object> details = new HashMap<>();
-            details.put("id", user.getId());
-            details.put("username", user.getUsername());
-            details.put("email", user.getEmail());
-            details.put("firstName", user.getFirstName());
-            details.put("lastName", user.getLastName());
-            details.put("enabled", user.isEnabled());
-            return details;
-        })
-        .toList();
+        List<MemberSummary> page = members.size() > max ? members.subList(0, max) : members;
+
+        Response.ResponseBuilder response = Response.ok(expansions.isEmpty() ? page : expand(page, expansions));
 
+        if (members.size() > max) {
+            MemberSummary last = page.get(page.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, KeysetCursor.encode(last.username()));
+        }
 
-        return Response.ok(userDetails).build() ;
+        return response.build();
     }
 
 
@@ -205,7 +358,11 @@ public class OrganizationInvitationService {
      */
 
 
-    public Response inviteMultipleUsers(List<InvitationRequest> invitationRequests) {
+    public Response inviteMultipleUsers(
+        List<InvitationRequest> invitationRequests,
+        EmailValidator.ValidationResult validation,
+        BulkInvitationSender sender
+    ) {
         if (invitationRequests == null || invitationRequests.isEmpty()) {
             throw new BadRequestException("Invitation requests list cannot be empty");
         }
@@ -213,71 +370,404 @@ public class OrganizationInvitationService {
         BulkInvitationResponse response = new BulkInvitationResponse();
         response.setTotalRequested(invitationRequests.size());
 
-        // Process requests and prepare valid invitations
-        List<ProcessedInvitation> validInvitations = new ArrayList<>();
-        
-        for (InvitationRequest request : invitationRequests) {
-            InvitationResult result = processInvitationRequestWithoutSending(request);
-            
-            if (result.isSuccess()) {
-                // Store the processed invitation for batch email sending
-                validInvitations.add(new ProcessedInvitation(result, request));
-            } else {
-                // Add failed validation results immediately
-                response.addResult(result);
+        for (InvitationResult result : inviteBatch(invitationRequests, validation, sender)) {
+            response.addResult(result);
+        }
+
+        return Response.ok(response).build();
+    }
+
+
+
+    /***
+     *
+     * Streamed variant of {@link #inviteMultipleUsers} : the rows are read , invited and answered chunk after chunk ,
+     * one NDJSON line per row then a summary line , so the memory used does not depend on the upload size
+     * (besides the normalized emails kept to flag the duplicates across chunks) .
+     *
+     * @param rows the rows of the upload , closed once read
+     * @param sender the bulk sender
+     * @param chunkSize rows invited together
+     */
+    public StreamingOutput inviteStream(InvitationRowReader rows, BulkInvitationSender sender, int chunkSize) {
+        return output -> writeStream(rows, sender, Math.max(chunkSize, 1), output);
+    }
+
+
+
+    /***
+     *
+     * Background variant of {@link #inviteMultipleUsers} : the invitations are stored as a job , in the transaction
+     * of the request , and invited chunk after chunk by the {@link InvitationJobRunner} .
+     *
+     * @param createdBy id of the caller
+     * @return 202 with the id of the job , its progress is read from the Location
+     */
+    public Response createInvitationJob(
+        List<InvitationRequest> invitationRequests,
+        EmailValidator.ValidationResult validation,
+        String createdBy
+    ) {
+        if (invitationRequests == null || invitationRequests.isEmpty()) {
+            throw new BadRequestException("Invitation requests list cannot be empty");
+        }
+
+        HttpRequest request = session.getContext().getHttpRequest();
+
+        InvitationJobEntity job = new InvitationJobRepository(session).create(
+            realm,
+            organization,
+            createdBy,
+            request.getUri().getBaseUri().toString(),
+            request.getHttpHeaders().getHeaderString(HttpHeaders.ACCEPT_LANGUAGE),
+            invitationRequests,
+            validation
+        );
+
+        URI location = session.getContext().getUri().getAbsolutePathBuilder().path(job.getId()).build();
+
+        return Response.accepted(Map.of(
+            "id", job.getId(),
+            "status", job.getStatus(),
+            "total", job.getTotal()
+        )).location(location).build();
+    }
+
+
+
+    /***
+     *
+     * Invitations of the organization whose link has not expired , and whose user has not joined yet , latest first .
+     */
+    public Response getPendingInvitations(int first, int max) {
+        if (pendingInvitations == null) {
+            return Response.ok(List.of()).build();
+        }
+
+        return Response.ok(pendingInvitations.listPending(session, organization, first, max)).build();
+    }
+
+
+
+    /***
+     *
+     * Progress of a job of the organization , and a page of its failed rows .
+     *
+     * @param first first failed row returned
+     * @param max max failed rows returned
+     */
+    public Response getInvitationJob(String jobId, int first, int max) {
+        InvitationJobRepository jobs = new InvitationJobRepository(session);
+        InvitationJobEntity job = jobs.find(jobId);
+
+        if (job == null || !job.getRealmId().equals(realm.getId()) || !job.getOrganizationId().equals(organization.getId())) {
+            throw new NotFoundException("Invitation job not found");
+        }
+
+        List<Map<String, Object>> failedRows = jobs.findFailedRows(jobId, first, max).stream()
+            .map(row -> {
+                Map<String, Object> details = new LinkedHashMap<>();
+                details.put("row", row.getRowIndex());
+                details.put("email", row.getEmail());
+                details.put("userId", row.getUserId());
+                details.put("errorCode", row.getErrorCode());
+                details.put("message", row.getMessage());
+                return details;
+            })
+            .toList();
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("id", job.getId());
+        progress.put("status", job.getStatus());
+        progress.put("total", job.getTotal());
+        progress.put("processed", job.getProcessed());
+        progress.put("succeeded", job.getSucceeded());
+        progress.put("failed", job.getFailures());
+        progress.put("createdAt", job.getCreatedAt());
+        progress.put("updatedAt", job.getUpdatedAt());
+        progress.put("error", job.getLastError());
+        progress.put("failedRows", failedRows);
+
+        return Response.ok(progress).build();
+    }
+
+
+
+    /***
+     *
+     * Invites a batch and queues its emails in the invitation outbox , in the current transaction ,
+     * used by the chunks of the invitation jobs .
+     *
+     * @return the results , in the order of the requests
+     */
+    public InvitationResult[] inviteQueued(List<InvitationRequest> invitationRequests, EmailValidator.ValidationResult validation) {
+        return inviteBatch(invitationRequests, validation, null);
+    }
+
+
+
+    /**
+     * Invites a batch , the results are in the order of the requests .
+     * Without a sender the emails are queued in the invitation outbox instead of being sent .
+     */
+    private InvitationResult[] inviteBatch(
+        List<InvitationRequest> invitationRequests,
+        EmailValidator.ValidationResult validation,
+        BulkInvitationSender sender
+    ) {
+        InvitationResult[] results = new InvitationResult[invitationRequests.size()];
+
+        BatchUsers users = new BatchUsers(invitationRequests, validation);
+
+        try {
+            // Process requests and prepare valid invitations
+            List<ProcessedInvitation> validInvitations = new ArrayList<>();
+            List<Integer> validIndexes = new ArrayList<>();
+
+            for (int i = 0; i < invitationRequests.size(); i++) {
+                InvitationRequest request = invitationRequests.get(i);
+                String rowError = validation.getRowError(i);
+
+                // only a streamed chunk keeps its invalid rows
+                if (rowError != null) {
+                    results[i] = new InvitationResult(request.getEmail(), request.getUserId(), false,
+                        rowError, "VALIDATION_ERROR");
+                    continue;
+                }
+
+                // the same email earlier in the batch is already being invited
+                if (validation.isDuplicate(i)) {
+                    results[i] = new InvitationResult(request.getEmail(), null, false,
+                        "Email appears more than once in the request", "DUPLICATE_EMAIL");
+                    continue;
+                }
+
+                ProcessedInvitation processed = processInvitationRequestWithoutSending(request, users);
+                InvitationResult result = processed.getResult();
+
+                if (result.isSuccess()) {
+                    // Store the processed invitation (and its user) for the concurrent sending
+                    validInvitations.add(processed);
+                    validIndexes.add(i);
+                } else {
+                    // Add failed validation results immediately
+                    results[i] = result;
+                }
+            }
+
+            // invitations still pending from an earlier request are not sent again
+            skipAlreadyInvited(validInvitations, validIndexes, results);
+
+            // then the addresses are claimed , the ones a concurrent request claimed first are skipped too
+            PendingInvitationIndex.Claim claim = claimInvitations(validInvitations.stream().map(ProcessedInvitation::getUser).toList());
+
+            if (claim != null) {
+                skip(validInvitations, validIndexes, results, user -> !claim.holds(user));
+            }
+
+            if (!validInvitations.isEmpty()) {
+                List<InvitationResult> emailResults = sendBulkInvitations(validInvitations, sender);
+                List<UserModel> notSent = new ArrayList<>();
+
+                for (int i = 0; i < emailResults.size(); i++) {
+                    results[validIndexes.get(i)] = emailResults.get(i);
+
+                    if (!emailResults.get(i).isSuccess()) {
+                        notSent.add(validInvitations.get(i).getUser());
+                    }
+                }
+
+                if (claim != null && !notSent.isEmpty()) {
+                    pendingInvitations.unclaim(session, organization, claim, notSent);
+                }
             }
+
+        } finally {
+            users.release();
         }
 
-        // Send all valid invitations in batch with single SMTP connection
-        if (!validInvitations.isEmpty()) {
-            List<InvitationResult> emailResults = sendBulkInvitations(validInvitations);
-            for (InvitationResult result : emailResults) {
-                response.addResult(result);
+        return results;
+    }
+
+
+
+    /*
+     * one lookup for the whole batch , the skipped invitations get their ALREADY_INVITED result
+     */
+    private void skipAlreadyInvited(List<ProcessedInvitation> validInvitations, List<Integer> validIndexes, InvitationResult[] results) {
+        if (pendingInvitations == null || validInvitations.isEmpty()) {
+            return;
+        }
+
+        List<String> emails = validInvitations.stream()
+            .map(processed -> processed.getUser().getEmail())
+            .filter(Objects::nonNull)
+            .toList();
+
+        Map<String, Long> recent = pendingInvitations.findRecent(session, organization, emails);
+
+        if (recent.isEmpty()) {
+            return;
+        }
+
+        skip(validInvitations, validIndexes, results, user ->
+            user.getEmail() != null && recent.containsKey(PendingInvitationIndex.normalize(user.getEmail()))
+        );
+    }
+
+
+
+    /*
+     * the invitations of the users matching are answered ALREADY_INVITED and removed from the valid ones
+     */
+    private static void skip(
+        List<ProcessedInvitation> validInvitations,
+        List<Integer> validIndexes,
+        InvitationResult[] results,
+        Predicate<UserModel> alreadyInvited
+    ) {
+        for (int i = validInvitations.size() - 1; i >= 0; i--) {
+            if (alreadyInvited.test(validInvitations.get(i).getUser())) {
+                InvitationResult result = validInvitations.get(i).getResult();
+
+                results[validIndexes.get(i)] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "An invitation was already sent to this email", "ALREADY_INVITED");
+
+                validInvitations.remove(i);
+                validIndexes.remove(i);
             }
         }
+    }
 
-        return Response.ok(response).build();
+
+
+    private void writeStream(InvitationRowReader rows, BulkInvitationSender sender, int chunkSize, OutputStream output) throws IOException {
+        Set<String> seenEmails = new HashSet<>();
+        List<InvitationRowReader.Row> chunk = new ArrayList<>(chunkSize);
+        BulkInvitationResponse summary = new BulkInvitationResponse();
+
+        try (rows) {
+            for (InvitationRowReader.Row row = rows.next(); row != null; row = rows.next()) {
+                chunk.add(row);
+
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, seenEmails, sender, summary, output);
+                    chunk.clear();
+                }
+            }
+
+            writeChunk(chunk, seenEmails, sender, summary, output);
+
+        } catch (IOException e) {
+            ServicesLogger.LOGGER.error("Failed to read the invitation upload", e);
+            writeLine(output, Map.of("error", "UPLOAD_READ_FAILED", "message", "The upload could not be read to the end"));
+        }
+
+        writeLine(output, Map.of("summary", Map.of(
+            "totalRequested", summary.getTotalRequested(),
+            "successCount", summary.getSuccessCount(),
+            "failureCount", summary.getFailureCount()
+        )));
+
+        output.flush();
+    }
+
+
+    private void writeChunk(
+        List<InvitationRowReader.Row> chunk,
+        Set<String> seenEmails,
+        BulkInvitationSender sender,
+        BulkInvitationResponse summary,
+        OutputStream output
+    ) throws IOException {
+
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<InvitationRequest> requests = new ArrayList<>(chunk.size());
+
+        for (InvitationRowReader.Row row : chunk) {
+            if (row.error() == null) {
+                requests.add(row.request());
+            }
+        }
+
+        InvitationResult[] results = requests.isEmpty()
+            ? new InvitationResult[0]
+            : inviteBatch(requests, EmailValidator.validateInvitationChunk(requests, seenEmails), sender);
+
+        int next = 0;
+
+        for (InvitationRowReader.Row row : chunk) {
+            InvitationResult result = row.error() == null
+                ? results[next++]
+                : new InvitationResult(null, null, false, row.error(), "INVALID_ROW");
+
+            summary.setTotalRequested(summary.getTotalRequested() + 1);
+            summary.setSuccessCount(summary.getSuccessCount() + (result.isSuccess() ? 1 : 0));
+            summary.setFailureCount(summary.getFailureCount() + (result.isSuccess() ? 0 : 1));
+
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("line", row.line());
+            line.put("email", result.getEmail());
+            line.put("userId", result.getUserId());
+            line.put("success", result.isSuccess());
+            line.put("message", result.getMessage());
+            line.put("errorCode", result.getErrorCode());
+
+            writeLine(output, line);
+        }
+
+        // the results of the chunk reach the client before the next chunk is read
+        output.flush();
+    }
+
+
+    private static void writeLine(OutputStream output, Object value) throws IOException {
+        output.write(JsonSerialization.writeValueAsBytes(value));
+        output.write('\n');
     }
-    
 
 
 
 
     /**
-     * Process invitation request without sending email (validation only)
+     * Process invitation request without sending email (validation only) , the user is resolved from the batch lookups
      */
-    private InvitationResult processInvitationRequestWithoutSending(InvitationRequest request) {
+    private ProcessedInvitation processInvitationRequestWithoutSending(InvitationRequest request, BatchUsers users) {
         try {
             // Handle existing user invitation by ID
             if (!StringUtil.isBlank(request.getUserId())) {
-                return validateExistingUserInvitation(request.getUserId());
+                return validateExistingUserInvitation(request, users);
             }
 
             // Handle invitation by email
             if (StringUtil.isBlank(request.getEmail())) {
-                return new InvitationResult(request.getEmail(), null, false, 
-                    "Email is required for invitation", "MISSING_EMAIL");
+                return new ProcessedInvitation(new InvitationResult(request.getEmail(), null, false, 
+                    "Email is required for invitation", "MISSING_EMAIL"), request);
             }
 
-            UserModel user = session.users().getUserByEmail(realm, request.getEmail());
+            UserModel user = users.findByEmail(request.getEmail());
 
             if (user != null) {
                 // Existing user
-                if (organization.isMember(user)) {
-                    return new InvitationResult(request.getEmail(), user.getId(), false,
-                        "User already a member of the organization", "ALREADY_MEMBER");
+                if (users.isMember(user)) {
+                    return new ProcessedInvitation(new InvitationResult(request.getEmail(), user.getId(), false,
+                        "User already a member of the organization", "ALREADY_MEMBER"), request);
                 }
 
-                return new InvitationResult(request.getEmail(), user.getId(), true, "Ready for invitation");
+                return processed(new InvitationResult(request.getEmail(), user.getId(), true, "Ready for invitation"), request, user);
             } else {
                 // New user - will need registration invitation
-                return new InvitationResult(request.getEmail(), null, true, "Ready for registration invitation");
+                return processed(new InvitationResult(request.getEmail(), null, true, "Ready for registration invitation"),
+                    request, newUserForInvitation(request));
             }
 
         } catch (Exception e) {
             ServicesLogger.LOGGER.error("Error validating invitation request", e);
-            return new InvitationResult(request.getEmail(), request.getUserId(), false,
-                "Internal error: " + e.getMessage(), "INTERNAL_ERROR");
+            return new ProcessedInvitation(new InvitationResult(request.getEmail(), request.getUserId(), false,
+                "Internal error: " + e.getMessage(), "INTERNAL_ERROR"), request);
         }
     }
 
@@ -286,99 +776,132 @@ public class OrganizationInvitationService {
     /**
      * Validate existing user invitation without sending email
      */
-    private InvitationResult validateExistingUserInvitation(String userId) {
-        UserModel user = session.users().getUserById(realm, userId);
+    private ProcessedInvitation validateExistingUserInvitation(InvitationRequest request, BatchUsers users) {
+        String userId = request.getUserId();
+        UserModel user = users.findById(userId);
 
         if (user == null) {
-            return new InvitationResult(null, userId, false,
-                "User does not exist", "USER_NOT_FOUND");
+            return new ProcessedInvitation(new InvitationResult(null, userId, false,
+                "User does not exist", "USER_NOT_FOUND"), request);
         }
 
-        if (organization.isMember(user)) {
-            return new InvitationResult(user.getEmail(), userId, false,
-                "User already a member of the organization", "ALREADY_MEMBER");
+        if (users.isMember(user)) {
+            return new ProcessedInvitation(new InvitationResult(user.getEmail(), userId, false,
+                "User already a member of the organization", "ALREADY_MEMBER"), request);
         }
 
-        return new InvitationResult(user.getEmail(), userId, true, "Ready for invitation");
+        return processed(new InvitationResult(user.getEmail(), userId, true, "Ready for invitation"), request, user);
+    }
+
+
+    private static ProcessedInvitation processed(InvitationResult result, InvitationRequest request, UserModel user) {
+        return ProcessedInvitation.builder()
+                .result(result)
+                .request(request)
+                .user(user)
+                .build();
     }
 
 
 
 
     /**
-     * Send bulk invitations with single SMTP connection
+     * Send bulk invitations , the emails are rendered here (they need the request) and sent concurrently by the sender ,
+     * or queued in the invitation outbox without a sender , the results are in the order of the invitations .
      */
-    private List<InvitationResult> sendBulkInvitations(List<ProcessedInvitation> validInvitations) {
-        List<InvitationResult> results = new ArrayList<>();
-        EmailTemplateProvider emailProvider = null;
-        
-        try {
-            // Initialize email provider once
-            emailProvider = session.getProvider(EmailTemplateProvider.class).setRealm(realm);
-            
-            for (ProcessedInvitation processedInvitation : validInvitations) {
-                InvitationResult result = processedInvitation.getResult();
-                InvitationRequest request = processedInvitation.getRequest();
-                
-                try {
-                    UserModel user = getUserForInvitation(request);
-                    String link = createInvitationLinkForUser(user);
-                    
-                    // Send email using the same provider instance
-                    emailProvider.setUser(user)
-                            .sendOrgInviteEmail(organization, link, TimeUnit.SECONDS.toMinutes(getActionTokenLifespan()));
-                    
-                    // Update result with success
-                    String successMessage = user.getId() == null ? 
-                        "Registration invitation sent successfully" : 
-                        "Invitation sent successfully";
-                    
-                    results.add(new InvitationResult(result.getEmail(), result.getUserId(), true, successMessage));
-                    
-                } catch (EmailException e) {
-                    ServicesLogger.LOGGER.error("Failed to send invitation email to: " + result.getEmail(), e);
-                    results.add(new InvitationResult(result.getEmail(), result.getUserId(), false, 
-                        "Failed to send invitation email: " + e.getMessage(), "EMAIL_SEND_FAILED"));
-                } catch (Exception e) {
-                    ServicesLogger.LOGGER.error("Error processing invitation for: " + result.getEmail(), e);
-                    results.add(new InvitationResult(result.getEmail(), result.getUserId(), false, 
-                        "Internal error: " + e.getMessage(), "INTERNAL_ERROR"));
-                }
+    private List<InvitationResult> sendBulkInvitations(List<ProcessedInvitation> validInvitations, BulkInvitationSender sender) {
+        InvitationResult[] results = new InvitationResult[validInvitations.size()];
+
+        List<RenderedEmail> emails = new ArrayList<>(validInvitations.size());
+        List<Integer> emailIndexes = new ArrayList<>(validInvitations.size());
+        List<Boolean> registrations = new ArrayList<>(validInvitations.size());
+
+        RenderingEmailTemplateProvider renderer = new RenderingEmailTemplateProvider(session, templates);
+        long expirationInMinutes = TimeUnit.SECONDS.toMinutes(getActionTokenLifespan());
+
+        // users were resolved by the validation , their links are minted together by the link factory of the batch
+        List<UserModel> users = validInvitations.stream().map(ProcessedInvitation::getUser).toList();
+
+        List<String> links = InvitationLinkFactory.forBatch(session, realm, organization, tokenExpiration)
+                .createLinks(users, sender != null ? sender.getParallelSigningThreshold() : Integer.MAX_VALUE);
+
+        for (int i = 0; i < validInvitations.size(); i++) {
+            InvitationResult result = validInvitations.get(i).getResult();
+            UserModel user = users.get(i);
+
+            try {
+                emails.add(renderer.renderOrgInviteEmail(realm, user, organization, links.get(i), expirationInMinutes));
+                emailIndexes.add(i);
+                registrations.add(user.getId() == null);
+
+            } catch (EmailException e) {
+                ServicesLogger.LOGGER.error("Failed to send invitation email to: " + result.getEmail(), e);
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "Failed to send invitation email: " + e.getMessage(), "EMAIL_SEND_FAILED");
+            } catch (Exception e) {
+                ServicesLogger.LOGGER.error("Error processing invitation for: " + result.getEmail(), e);
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "Internal error: " + e.getMessage(), "INTERNAL_ERROR");
             }
-            
-        } catch (Exception e) {
-            ServicesLogger.LOGGER.error("Failed to initialize email provider for bulk invitations", e);
-            // If we can't initialize the email provider, mark all as failed
-            for (ProcessedInvitation processedInvitation : validInvitations) {
-                InvitationResult result = processedInvitation.getResult();
-                results.add(new InvitationResult(result.getEmail(), result.getUserId(), false, 
-                    "Failed to initialize email system", "EMAIL_SYSTEM_ERROR"));
+        }
+
+        List<Exception> failures = sender != null ? sender.sendAll(realm, emails) : enqueueAll(emails);
+
+        for (int j = 0; j < failures.size(); j++) {
+            int i = emailIndexes.get(j);
+            InvitationResult result = validInvitations.get(i).getResult();
+            Exception failure = failures.get(j);
+
+            if (failure == null) {
+                String successMessage = Boolean.TRUE.equals(registrations.get(j)) ?
+                    "Registration invitation " + (sender != null ? "sent successfully" : "queued") :
+                    "Invitation " + (sender != null ? "sent successfully" : "queued");
+
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), true, successMessage);
+
+            } else if (failure instanceof EmailException) {
+                ServicesLogger.LOGGER.error("Failed to send invitation email to: " + result.getEmail(), failure);
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "Failed to send invitation email: " + failure.getMessage(), "EMAIL_SEND_FAILED");
+
+            } else if (failure instanceof RejectedExecutionException) {
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "The email sender is busy, retry later", "SENDER_BUSY");
+
+            } else if (failure instanceof InterruptedException) {
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "Failed to initialize email system", "EMAIL_SYSTEM_ERROR");
+
+            } else {
+                ServicesLogger.LOGGER.error("Error processing invitation for: " + result.getEmail(), failure);
+                results[i] = new InvitationResult(result.getEmail(), result.getUserId(), false,
+                    "Internal error: " + failure.getMessage(), "INTERNAL_ERROR");
             }
         }
-        
-        return results;
+
+        return Arrays.asList(results);
+    }
+
+
+    private List<Exception> enqueueAll(List<RenderedEmail> emails) {
+        InvitationOutboxRepository outbox = new InvitationOutboxRepository(session);
+        List<Exception> failures = new ArrayList<>(emails.size());
+
+        for (RenderedEmail email : emails) {
+            outbox.enqueue(realm, organization, email);
+            failures.add(null);
+        }
+
+        return failures;
     }
 
 
 
     /**
-     * Get or create user model for invitation
+     * Temporary user for a registration invitation
      */
-    private UserModel getUserForInvitation(InvitationRequest request) {
-        // Handle existing user by ID
-        if (!StringUtil.isBlank(request.getUserId())) {
-            return session.users().getUserById(realm, request.getUserId());
-        }
-        
-        // Handle user by email
-        UserModel user = session.users().getUserByEmail(realm, request.getEmail());
-        
-        if (user != null) {
-            return user;
-        }
-        
-        // Create temporary user for registration invitation
-        user = new InMemoryUserAdapter(session, realm, null);
+    private UserModel newUserForInvitation(InvitationRequest request) {
+        UserModel user = new InMemoryUserAdapter(session, realm, null);
         user.setEmail(request.getEmail());
         
         if (request.getFirstName() != null && request.getLastName() != null) {
@@ -390,11 +913,90 @@ public class OrganizationInvitationService {
     }
 
 
-    /**
-     * Create invitation link for user
+
+    /***
+     *
+     * Users and organization membership of a bulk invitation , loaded with a few IN (...) queries instead of
+     * one lookup per row . Rows not found locally in a realm with user storage providers , and emails shared by
+     * several users , fall back to the per row lookup of {@code session.users()} .
      */
-    private String createInvitationLinkForUser(UserModel user) {
-        return user.getId() == null ? createRegistrationLink(user) : createInvitationLink(user);
+    private final class BatchUsers {
+
+        private final UserBatchRepository repository;
+        private final Map<String, UserModel> byId;
+        private final Map<String, UserModel> byEmail;
+        private final Set<String> loadedIds;
+        private final Set<String> memberIds;
+        private final boolean federated;
+
+
+        BatchUsers(List<InvitationRequest> requests, EmailValidator.ValidationResult validation) {
+            List<String> userIds = new ArrayList<>();
+            List<String> emails = new ArrayList<>();
+
+            for (int i = 0; i < requests.size(); i++) {
+                InvitationRequest request = requests.get(i);
+
+                if (validation.isDuplicate(i)) {
+                    continue;
+                }
+
+                if (!StringUtil.isBlank(request.getUserId())) {
+                    userIds.add(request.getUserId());
+                } else if (!StringUtil.isBlank(request.getEmail())) {
+                    emails.add(request.getEmail());
+                }
+            }
+
+            this.repository = new UserBatchRepository(session);
+            this.byId = repository.findByIds(realm, userIds);
+            this.byEmail = repository.findByEmails(realm, emails);
+            this.federated = realm.getStorageProviders(UserStorageProvider.class).findAny().isPresent();
+
+            this.loadedIds = new HashSet<>(byId.keySet());
+            byEmail.values().stream().filter(Objects::nonNull).map(UserModel::getId).forEach(loadedIds::add);
+
+            this.memberIds = new OrganizationMemberRepository(session).findMemberIds(organization, loadedIds);
+        }
+
+
+        UserModel findById(String userId) {
+            UserModel user = byId.get(userId);
+
+            if (user == null && federated) {
+                user = session.users().getUserById(realm, userId);
+            }
+
+            return user;
+        }
+
+
+        UserModel findByEmail(String email) {
+            String key = email.toLowerCase(Locale.ROOT);
+
+            if (!byEmail.containsKey(key)) {
+                return federated ? session.users().getUserByEmail(realm, email) : null;
+            }
+
+            UserModel user = byEmail.get(key);
+
+            // shared by several users , the user provider reports it as for a single invitation
+            return user != null ? user : session.users().getUserByEmail(realm, email);
+        }
+
+
+        void release() {
+            repository.close();
+        }
+
+
+        boolean isMember(UserModel user) {
+            if (loadedIds.contains(user.getId())) {
+                return memberIds.contains(user.getId());
+            }
+
+            return organization.isMember(user);
+        }
     }
 
 }
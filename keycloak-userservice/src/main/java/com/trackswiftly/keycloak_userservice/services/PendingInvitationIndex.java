@@ -0,0 +1,309 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.ModelDuplicateException;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import com.trackswiftly.keycloak_userservice.cache.PendingInvitationCache;
+import com.trackswiftly.keycloak_userservice.entities.PendingInvitationEntity;
+import com.trackswiftly.keycloak_userservice.repositories.PendingInvitationRepository;
+
+
+/***
+ *
+ * Skips the invitations already sent : an email invited to an organization is not invited again
+ * for "invitation-dedup-window" seconds , or until the token of its link expires if sooner .
+ * 0 turns the deduplication off , the invitations are still recorded for the pending list .
+ *
+ * Lookups read the {@link PendingInvitationCache} then the index , with one query for the misses of a batch .
+ * An address is claimed before its invitation is sent , see {@link #claim} , the lookups only spare the claim .
+ * Owned by the resource factory .
+ */
+public class PendingInvitationIndex {
+
+
+    public static final String WINDOW_OPTION = "invitation-dedup-window";
+
+    public static final long DEFAULT_WINDOW_SECONDS = TimeUnit.HOURS.toSeconds(24);
+
+
+    private final long windowMillis;
+
+
+    public PendingInvitationIndex(long windowSeconds) {
+        this.windowMillis = TimeUnit.SECONDS.toMillis(Math.max(windowSeconds, 0));
+    }
+
+
+    public static PendingInvitationIndex fromConfig(Scope config) {
+        return new PendingInvitationIndex(config.getLong(WINDOW_OPTION, DEFAULT_WINDOW_SECONDS));
+    }
+
+
+
+    /**
+     * Invitations sent within the window and not expired .
+     *
+     * @param emails the emails to check , any case
+     * @return normalized email -> time the invitation was sent
+     */
+    public Map<String, Long> findRecent(KeycloakSession session, OrganizationModel organization, Collection<String> emails) {
+        Map<String, Long> recent = new HashMap<>();
+
+        if (windowMillis == 0 || emails.isEmpty()) {
+            return recent;
+        }
+
+        PendingInvitationCache cache = new PendingInvitationCache(session);
+        List<String> misses = new ArrayList<>();
+
+        for (String email : emails) {
+            String key = normalize(email);
+            Long sentAt = cache.getSentAt(organization.getId(), key);
+
+            if (sentAt != null) {
+                recent.put(key, sentAt);
+            } else {
+                misses.add(key);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return recent;
+        }
+
+        long now = System.currentTimeMillis();
+        PendingInvitationRepository repository = new PendingInvitationRepository(session);
+        Map<String, PendingInvitationEntity> latest = repository.findLatest(organization.getId(), misses);
+
+        latest.forEach((email, invitation) -> {
+            long until = until(invitation.getSentAt(), invitation.getExpiresAt());
+
+            if (until > now) {
+                recent.put(email, invitation.getSentAt());
+                cache.put(organization.getId(), email, invitation.getSentAt(), until);
+            }
+        });
+
+        // only read , a streamed upload looks up chunk after chunk in one request
+        repository.release(latest.values());
+
+        return recent;
+    }
+
+
+    /***
+     *
+     * Addresses claimed by a request , with the send time of their rows .
+     */
+    public record Claim(long sentAt, Set<String> emails) {
+
+        /**
+         * @return whether the invitation of the user can be sent , a user without email is not deduplicated
+         */
+        public boolean holds(UserModel user) {
+            return user.getEmail() == null || emails.contains(normalize(user.getEmail()));
+        }
+    }
+
+
+    /**
+     * Claims the addresses of the users before their invitations are sent . The rows are committed in a transaction
+     * of their own , so two concurrent requests inviting the same address conflict on the unique index and only one
+     * of them claims it , without rolling back the other request . The claims are dropped if the current request
+     * rolls back .
+     *
+     * @param users the users to invite , without id for a registration invitation
+     * @param expiresAt expiration of the tokens of the links , in milliseconds
+     * @return the claim , the users it does not hold are already invited
+     */
+    public Claim claim(KeycloakSession session, RealmModel realm, OrganizationModel organization, List<UserModel> users, long expiresAt) {
+        long now = System.currentTimeMillis();
+        Map<String, String> userIds = new LinkedHashMap<>();
+
+        for (UserModel user : users) {
+            if (user.getEmail() != null) {
+                userIds.put(normalize(user.getEmail()), user.getId());
+            }
+        }
+
+        if (userIds.isEmpty()) {
+            return new Claim(now, Set.of());
+        }
+
+        KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+        String realmId = realm.getId();
+        String organizationId = organization.getId();
+        Set<String> claimed;
+
+        try {
+            claimed = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, claimSession ->
+                new PendingInvitationRepository(claimSession).claim(realmId, organizationId, userIds, now, expiresAt, row -> stillPending(row, now))
+            );
+        } catch (ModelDuplicateException e) {
+            // another request claimed some of the addresses meanwhile , the others are claimed one by one
+            claimed = new HashSet<>();
+
+            for (Map.Entry<String, String> invitation : userIds.entrySet()) {
+                // the user id is null for a registration invitation
+                Map<String, String> single = Collections.singletonMap(invitation.getKey(), invitation.getValue());
+
+                try {
+                    claimed.addAll(KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, claimSession ->
+                        new PendingInvitationRepository(claimSession).claim(realmId, organizationId, single, now, expiresAt, row -> stillPending(row, now))
+                    ));
+                } catch (ModelDuplicateException duplicate) {
+                    // without deduplication the other request recorded the address , it is invited by both
+                    if (windowMillis == 0) {
+                        claimed.add(invitation.getKey());
+                    }
+                }
+            }
+        }
+
+        Claim claim = new Claim(now, Set.copyOf(claimed));
+
+        releaseOnRollback(session, organizationId, claim);
+
+        if (windowMillis > 0) {
+            PendingInvitationCache cache = new PendingInvitationCache(session);
+            long until = until(now, expiresAt);
+
+            claim.emails().forEach(email -> cache.putAfterCommit(organizationId, email, now, until));
+        }
+
+        return claim;
+    }
+
+
+    /**
+     * Drops the claims of the users whose invitation could not be sent , in the transaction of the current request .
+     */
+    public void unclaim(KeycloakSession session, OrganizationModel organization, Claim claim, List<UserModel> users) {
+        List<String> emails = users.stream()
+            .map(UserModel::getEmail)
+            .filter(Objects::nonNull)
+            .map(PendingInvitationIndex::normalize)
+            .filter(claim.emails()::contains)
+            .toList();
+
+        if (!emails.isEmpty()) {
+            removeClaims(session, organization.getId(), emails, claim.sentAt());
+        }
+    }
+
+
+    /**
+     * Page of the invitations of the organization not expired yet , latest first .
+     */
+    public List<Map<String, Object>> listPending(KeycloakSession session, OrganizationModel organization, int first, int max) {
+        List<Map<String, Object>> pending = new ArrayList<>();
+
+        for (PendingInvitationEntity invitation : new PendingInvitationRepository(session)
+                .findPending(organization, System.currentTimeMillis(), first, max)) {
+
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("email", invitation.getEmail());
+            details.put("userId", invitation.getUserId());
+            details.put("sentAt", invitation.getSentAt());
+            details.put("expiresAt", invitation.getExpiresAt());
+            pending.add(details);
+        }
+
+        return pending;
+    }
+
+
+    /***
+     *
+     * The user joined the organization , its invitations are not pending anymore .
+     */
+    public static void forget(KeycloakSession session, OrganizationModel organization, UserModel user) {
+        if (user.getEmail() != null) {
+            forget(session, organization.getId(), user.getEmail());
+        }
+    }
+
+
+    /***
+     *
+     * The invitation email to the address was given up , it can be invited again right away .
+     * An address is not invited again while its invitation is pending , so the row is the one of that email .
+     */
+    public static void forget(KeycloakSession session, String organizationId, String email) {
+        String normalized = normalize(email);
+
+        new PendingInvitationRepository(session).remove(organizationId, normalized);
+        new PendingInvitationCache(session).evict(organizationId, normalized);
+    }
+
+
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+
+    /*
+     * the row blocks a new invitation of its address
+     */
+    private boolean stillPending(PendingInvitationEntity row, long now) {
+        return windowMillis > 0 && until(row.getSentAt(), row.getExpiresAt()) > now;
+    }
+
+
+    private static void releaseOnRollback(KeycloakSession session, String organizationId, Claim claim) {
+        if (claim.emails().isEmpty()) {
+            return;
+        }
+
+        KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+
+        session.getTransactionManager().enlistAfterCompletion(new AbstractKeycloakTransaction() {
+            @Override
+            protected void commitImpl() {
+                /*
+                 * the invitations are sent or queued
+                 */
+            }
+
+            @Override
+            protected void rollbackImpl() {
+                KeycloakModelUtils.runJobInTransaction(sessionFactory, releaseSession ->
+                    removeClaims(releaseSession, organizationId, claim.emails(), claim.sentAt())
+                );
+            }
+        });
+    }
+
+
+    private static void removeClaims(KeycloakSession session, String organizationId, Collection<String> emails, long sentAt) {
+        new PendingInvitationRepository(session).removeClaims(organizationId, emails, sentAt);
+
+        PendingInvitationCache cache = new PendingInvitationCache(session);
+        emails.forEach(email -> cache.evict(organizationId, email));
+    }
+
+
+    private long until(long sentAt, long expiresAt) {
+        return Math.min(sentAt + windowMillis, expiresAt);
+    }
+}
@@ -0,0 +1,46 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.keycloak.Config.Scope;
+
+
+/***
+ *
+ * Caps the emails sent at the same time for a realm on this node , shared by the bulk invitations
+ * and the invitation outbox so together they stay under the relay limits of the realm SMTP server .
+ *
+ * Owned by the resource factory , option : bulk-invitation-realm-concurrency .
+ */
+public class RealmSendLimiter {
+
+
+    public static final String REALM_CONCURRENCY_OPTION = "bulk-invitation-realm-concurrency";
+    public static final int DEFAULT_REALM_CONCURRENCY = 4;
+
+
+    private final int permitsPerRealm;
+
+    /*
+     * realm id -> permits
+     */
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+
+    public RealmSendLimiter(int permitsPerRealm) {
+        this.permitsPerRealm = Math.max(permitsPerRealm, 1);
+    }
+
+
+    public static RealmSendLimiter fromConfig(Scope config) {
+        return new RealmSendLimiter(config.getInt(REALM_CONCURRENCY_OPTION, DEFAULT_REALM_CONCURRENCY));
+    }
+
+
+
+    public Semaphore permits(String realmId) {
+        return permits.computeIfAbsent(realmId, id -> new Semaphore(permitsPerRealm, true));
+    }
+}
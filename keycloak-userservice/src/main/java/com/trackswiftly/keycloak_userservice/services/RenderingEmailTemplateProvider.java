@@ -0,0 +1,126 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.keycloak.email.EmailException;
+import org.keycloak.email.freemarker.FreeMarkerEmailTemplateProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+import org.keycloak.theme.Theme;
+
+
+/***
+ *
+ * Renders the Keycloak emails with the realm theme and the user locale , without sending them .
+ *
+ * The rendering needs the request (links , theme , locale) , the sending does not ,
+ * so the rendered email can be handed to the invitation outbox and sent later from a background thread .
+ *
+ * With a template cache , an invitation is rendered by the theme once per cache key and only the recipient fields
+ * are substituted for the next recipients (see {@link InvitationTemplate}) .
+ */
+public class RenderingEmailTemplateProvider extends FreeMarkerEmailTemplateProvider {
+
+
+    public record RenderedEmail(String address, String subject, String textBody, String htmlBody) {}
+
+
+    private final InvitationTemplateCache templates;
+    private RenderedEmail rendered;
+
+
+    public RenderingEmailTemplateProvider(KeycloakSession session) {
+        this(session, null);
+    }
+
+
+    public RenderingEmailTemplateProvider(KeycloakSession session, InvitationTemplateCache templates) {
+        super(session);
+        this.templates = templates;
+    }
+
+
+
+    public RenderedEmail renderOrgInviteEmail(
+        RealmModel realm ,
+        UserModel user ,
+        OrganizationModel organization ,
+        String link ,
+        long expirationInMinutes
+    ) throws EmailException {
+
+        if (templates == null) {
+            return renderOrgInviteEmailWithTheme(realm, user, organization, link, expirationInMinutes);
+        }
+
+        boolean named = user.getFirstName() != null && user.getLastName() != null;
+        Locale locale = session.getContext().resolveLocale(user, Theme.Type.EMAIL);
+
+        String key = InvitationTemplateCache.key(realm, locale, session.getContext().getUri().getBaseUri(), organization, expirationInMinutes, named);
+        InvitationTemplate template = templates.get(key);
+
+        if (template == null) {
+            template = InvitationTemplate.compile(renderOrgInviteEmailWithTheme(
+                realm, sentinelUser(realm, locale, named), organization, InvitationTemplate.LINK_SENTINEL, expirationInMinutes
+            ));
+
+            templates.put(key, template);
+        }
+
+        if (!template.isCacheable()) {
+            return renderOrgInviteEmailWithTheme(realm, user, organization, link, expirationInMinutes);
+        }
+
+        return template.render(user.getEmail(), link, user.getFirstName(), user.getLastName());
+    }
+
+
+
+    private RenderedEmail renderOrgInviteEmailWithTheme(
+        RealmModel realm ,
+        UserModel user ,
+        OrganizationModel organization ,
+        String link ,
+        long expirationInMinutes
+    ) throws EmailException {
+
+        setRealm(realm);
+        setUser(user);
+        sendOrgInviteEmail(organization, link, expirationInMinutes);
+
+        return rendered;
+    }
+
+
+    /*
+     * resolves to the same locale as the recipient , every recipient field holds a sentinel
+     */
+    private UserModel sentinelUser(RealmModel realm, Locale locale, boolean named) {
+        UserModel sentinel = new InMemoryUserAdapter(session, realm, null);
+
+        sentinel.setUsername(InvitationTemplate.USERNAME_SENTINEL);
+        sentinel.setEmail(InvitationTemplate.EMAIL_SENTINEL);
+        sentinel.setSingleAttribute(UserModel.LOCALE, locale.toLanguageTag());
+
+        if (named) {
+            sentinel.setFirstName(InvitationTemplate.FIRST_NAME_SENTINEL);
+            sentinel.setLastName(InvitationTemplate.LAST_NAME_SENTINEL);
+        }
+
+        return sentinel;
+    }
+
+
+    /***
+     *
+     * last step of every send , keep the rendered email instead of handing it to the EmailSenderProvider .
+     */
+    @Override
+    protected void send(Map<String, String> config, String subject, String textBody, String htmlBody, String address) {
+        rendered = new RenderedEmail(address == null ? user.getEmail() : address, subject, textBody, htmlBody);
+    }
+}
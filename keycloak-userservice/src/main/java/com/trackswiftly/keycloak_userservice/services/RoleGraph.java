@@ -0,0 +1,169 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+
+
+/***
+ *
+ * Composite role graph of a realm , walked once per role for the time of a request .
+ *
+ * The roles and groups come from the Keycloak realm cache , expanding the mappings of a page of members
+ * walks each distinct role and group once , whatever the number of members holding it .
+ */
+public class RoleGraph {
+
+
+    private final KeycloakSession session;
+    private final RealmModel realm;
+
+    /*
+     * role id -> names of the role and of every role it contains
+     */
+    private final Map<String, Set<String>> closures = new HashMap<>();
+
+    /*
+     * group id -> ids of the roles mapped to the group and to its parents
+     */
+    private final Map<String, Set<String>> groupRoles = new HashMap<>();
+
+
+    public RoleGraph(KeycloakSession session, RealmModel realm) {
+        this.session = session;
+        this.realm = realm;
+    }
+
+
+
+    /**
+     * @param roleIds ids of the roles mapped to a user
+     * @return the names of the roles and of their composites , sorted
+     */
+    public Set<String> expand(Collection<String> roleIds) {
+        Set<String> names = new TreeSet<>();
+
+        for (String roleId : roleIds) {
+            names.addAll(closure(roleId));
+        }
+
+        return names;
+    }
+
+
+    /**
+     * Effective roles of a user , as Keycloak computes them : the roles mapped to the user , to its groups
+     * and to their parent groups , composites expanded .
+     *
+     * @param roleIds ids of the roles mapped to the user
+     * @param groupIds ids of the groups the user is a direct member of
+     * @return the names of the roles , sorted
+     */
+    public Set<String> expand(Collection<String> roleIds, Collection<String> groupIds) {
+        Set<String> mapped = new HashSet<>(roleIds);
+
+        for (String groupId : groupIds) {
+            mapped.addAll(groupRoleIds(groupId));
+        }
+
+        return expand(mapped);
+    }
+
+
+    /**
+     * @param roleIds ids of the roles mapped to a user
+     * @return the names of these roles only , sorted
+     */
+    public Set<String> names(Collection<String> roleIds) {
+        Set<String> names = new TreeSet<>();
+
+        for (String roleId : roleIds) {
+            RoleModel role = session.roles().getRoleById(realm, roleId);
+
+            if (role != null) {
+                names.add(role.getName());
+            }
+        }
+
+        return names;
+    }
+
+
+    private Set<String> closure(String roleId) {
+        Set<String> cached = closures.get(roleId);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        Set<String> names = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(roleId);
+
+        // iterative walk , composite roles may form cycles
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+
+            if (!visited.add(id)) {
+                continue;
+            }
+
+            Set<String> known = closures.get(id);
+
+            if (known != null) {
+                names.addAll(known);
+                continue;
+            }
+
+            RoleModel role = session.roles().getRoleById(realm, id);
+
+            if (role == null) {
+                continue;
+            }
+
+            names.add(role.getName());
+
+            if (role.isComposite()) {
+                role.getCompositesStream().map(RoleModel::getId).forEach(pending::push);
+            }
+        }
+
+        closures.put(roleId, names);
+
+        return names;
+    }
+
+
+    private Set<String> groupRoleIds(String groupId) {
+        Set<String> cached = groupRoles.get(groupId);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        Set<String> roleIds = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        GroupModel group = session.groups().getGroupById(realm, groupId);
+
+        // up to the top level group , the roles of a parent are inherited by its sub groups
+        while (group != null && visited.add(group.getId())) {
+            group.getRoleMappingsStream().map(RoleModel::getId).forEach(roleIds::add);
+            group = group.getParent();
+        }
+
+        groupRoles.put(groupId, roleIds);
+
+        return roleIds;
+    }
+}
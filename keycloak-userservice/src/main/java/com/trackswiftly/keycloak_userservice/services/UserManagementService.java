@@ -1,9 +1,14 @@
 package com.trackswiftly.keycloak_userservice.services;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import org.keycloak.models.GroupModel;
@@ -12,7 +17,14 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 
-import com.trackswiftly.keycloak_userservice.middlewares.AuthenticateMiddleware;
+import com.trackswiftly.keycloak_userservice.cache.AssignableGroupsCache;
+import com.trackswiftly.keycloak_userservice.cache.EffectiveRolesCache;
+import com.trackswiftly.keycloak_userservice.cache.TokenRevocations;
+import com.trackswiftly.keycloak_userservice.dtos.MemberDetails;
+import com.trackswiftly.keycloak_userservice.dtos.MemberSummary;
+import com.trackswiftly.keycloak_userservice.middlewares.CallerContext;
+import com.trackswiftly.keycloak_userservice.middlewares.OrganizationAccess;
+import com.trackswiftly.keycloak_userservice.repositories.UserBatchRepository;
 
 import jakarta.ws.rs.ForbiddenException;
 import jakarta.ws.rs.core.Response;
@@ -24,10 +36,12 @@ public class UserManagementService {
 
     private final KeycloakSession session;
     private final RealmModel realm;
+    private final CallerContext caller;
 
-    public UserManagementService(KeycloakSession session) {
-       this.session = session;
-       this.realm = session.getContext().getRealm();
+    public UserManagementService(CallerContext caller) {
+       this.caller = caller;
+       this.session = caller.getSession();
+       this.realm = caller.getRealm();
     }
 
 
@@ -42,6 +56,11 @@ public class UserManagementService {
 
        user.setEnabled(enabled);
 
+        if (!enabled) {
+            // cached tokens of the user must be verified again
+            new TokenRevocations(session).revokeUser(user.getId());
+        }
+
         return Response.ok(Map.of(
            "id", user.getId(),
            "username", user.getUsername(),
@@ -60,8 +79,10 @@ public class UserManagementService {
      */
 
     
-    public Response assignUserToGroup(UserModel requestingUser, UserModel targetUser, GroupModel group) {
+    public Response assignUserToGroup(UserModel targetUser, GroupModel group) {
         
+        UserModel requestingUser = caller.getUser();
+
         Response inputValidation = validateInputs(requestingUser, targetUser, group);
         if (inputValidation != null) {
             return inputValidation;
@@ -75,6 +96,10 @@ public class UserManagementService {
         try {
             
             targetUser.joinGroup(group);
+
+            // the group can carry TrackSwiftly roles , and sub groups the user can assign to
+            new EffectiveRolesCache(session).evictUser(realm.getId(), targetUser.getId());
+            new AssignableGroupsCache(session).evictUser(realm.getId(), targetUser.getId());
             
             return Response.ok(Map.of(
                 "userId", targetUser.getId(),
@@ -96,8 +121,10 @@ public class UserManagementService {
 
 
 
-    public Response unassignUserFromGroup(UserModel requestingUser, UserModel targetUser, GroupModel group) {
+    public Response unassignUserFromGroup(UserModel targetUser, GroupModel group) {
         
+        UserModel requestingUser = caller.getUser();
+
         Response inputValidation = validateInputs(requestingUser, targetUser, group);
         if (inputValidation != null) {
             return inputValidation;
@@ -111,6 +138,10 @@ public class UserManagementService {
         try {
             
             targetUser.leaveGroup(group);
+
+            // the group can carry TrackSwiftly roles , and sub groups the user can assign to
+            new EffectiveRolesCache(session).evictUser(realm.getId(), targetUser.getId());
+            new AssignableGroupsCache(session).evictUser(realm.getId(), targetUser.getId());
             
             return Response.ok(Map.of(
                 "userId", targetUser.getId(),
@@ -159,6 +190,53 @@ public class UserManagementService {
 
 
 
+    /***
+     *
+     * Batch form of {@link #userDetails} : the ids are filtered to the organizations of the caller with one
+     * membership query , then the users , their role mappings and their groups are read with one query each .
+     * Ids missing or outside the organizations of the caller are reported the same way , as not found .
+     *
+     * @param userIds the ids of the target users
+     * @return the details by id , in the order of the request , and the ids not found
+     */
+    public Response usersDetails(List<String> userIds) {
+        Set<String> requested = new LinkedHashSet<>(userIds);
+        Set<String> accessible = new OrganizationAccess(caller).filterSharingOrganization(requested);
+
+        UserBatchRepository repository = new UserBatchRepository(session);
+        Map<String, MemberSummary> users = repository.findSummaries(realm, accessible);
+        Map<String, List<String>> roleIds = repository.findRoleIds(users.keySet());
+        Map<String, List<String>> groupNames = repository.findGroupNames(users.keySet());
+        RoleGraph roleGraph = new RoleGraph(session, realm);
+
+        Map<String, MemberDetails> details = new LinkedHashMap<>();
+        List<String> notFound = new ArrayList<>();
+
+        for (String userId : requested) {
+            MemberSummary user = users.get(userId);
+
+            if (user == null) {
+                notFound.add(userId);
+                continue;
+            }
+
+            details.put(userId, MemberDetails.of(
+                user,
+                roleGraph.names(roleIds.getOrDefault(userId, List.of())),
+                new TreeSet<>(groupNames.getOrDefault(userId, List.of()))
+            ));
+        }
+
+        return Response.ok(Map.of(
+            "users", details,
+            "notFound", notFound
+        )).build();
+    }
+
+
+
+
+
     private Response validateInputs(UserModel requestingUser, UserModel targetUser, GroupModel group) {
         if (requestingUser == null) {
             return Response.status(Response.Status.UNAUTHORIZED)
@@ -0,0 +1,274 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.keycloak.http.FormPartValue;
+import org.keycloak.http.HttpRequest;
+
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.core.Cookie;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.PathSegment;
+import jakarta.ws.rs.core.UriBuilder;
+import jakarta.ws.rs.core.UriInfo;
+
+
+/***
+ *
+ * Request of a session opened by a background job , replaying the base URI and the Accept-Language
+ * of the request that created the job .
+ *
+ * Keycloak builds the URLs of a session (issuer , action token links , theme resources) and resolves
+ * the locale of the emails from the request of its context , set with
+ * {@code session.getContext().setHttpRequest(new BackgroundHttpRequest(baseUri, acceptLanguage))} .
+ */
+public class BackgroundHttpRequest implements HttpRequest {
+
+
+    private final UriInfo uri;
+    private final HttpHeaders headers;
+
+
+    public BackgroundHttpRequest(String baseUri, String acceptLanguage) {
+        this.uri = new BaseUriInfo(URI.create(baseUri.endsWith("/") ? baseUri : baseUri + "/"));
+        this.headers = new LanguageHeaders(acceptLanguage);
+    }
+
+
+    @Override
+    public String getHttpMethod() {
+        return HttpMethod.POST;
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getDecodedFormParameters() {
+        return new MultivaluedHashMap<>();
+    }
+
+    @Override
+    public MultivaluedMap<String, FormPartValue> getMultiPartFormParameters() {
+        return new MultivaluedHashMap<>();
+    }
+
+    @Override
+    public HttpHeaders getHttpHeaders() {
+        return headers;
+    }
+
+    @Override
+    public X509Certificate[] getClientCertificateChain() {
+        return new X509Certificate[0];
+    }
+
+    @Override
+    public UriInfo getUri() {
+        return uri;
+    }
+
+
+
+    /*
+     * the request URI is the base URI , nothing was matched
+     */
+    private static final class BaseUriInfo implements UriInfo {
+
+        private final URI baseUri;
+
+
+        BaseUriInfo(URI baseUri) {
+            this.baseUri = baseUri;
+        }
+
+
+        @Override
+        public String getPath() {
+            return "/";
+        }
+
+        @Override
+        public String getPath(boolean decode) {
+            return "/";
+        }
+
+        @Override
+        public List<PathSegment> getPathSegments() {
+            return List.of();
+        }
+
+        @Override
+        public List<PathSegment> getPathSegments(boolean decode) {
+            return List.of();
+        }
+
+        @Override
+        public URI getRequestUri() {
+            return baseUri;
+        }
+
+        @Override
+        public UriBuilder getRequestUriBuilder() {
+            return UriBuilder.fromUri(baseUri);
+        }
+
+        @Override
+        public URI getAbsolutePath() {
+            return baseUri;
+        }
+
+        @Override
+        public UriBuilder getAbsolutePathBuilder() {
+            return UriBuilder.fromUri(baseUri);
+        }
+
+        @Override
+        public URI getBaseUri() {
+            return baseUri;
+        }
+
+        @Override
+        public UriBuilder getBaseUriBuilder() {
+            return UriBuilder.fromUri(baseUri);
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getPathParameters() {
+            return new MultivaluedHashMap<>();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getPathParameters(boolean decode) {
+            return new MultivaluedHashMap<>();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getQueryParameters() {
+            return new MultivaluedHashMap<>();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getQueryParameters(boolean decode) {
+            return new MultivaluedHashMap<>();
+        }
+
+        @Override
+        public List<String> getMatchedURIs() {
+            return List.of();
+        }
+
+        @Override
+        public List<String> getMatchedURIs(boolean decode) {
+            return List.of();
+        }
+
+        @Override
+        public List<Object> getMatchedResources() {
+            return List.of();
+        }
+
+        @Override
+        public URI resolve(URI uri) {
+            return baseUri.resolve(uri);
+        }
+
+        @Override
+        public URI relativize(URI uri) {
+            return baseUri.relativize(uri);
+        }
+    }
+
+
+
+    /*
+     * no cookie , no body , only the Accept-Language of the original request
+     */
+    private static final class LanguageHeaders implements HttpHeaders {
+
+        private final MultivaluedMap<String, String> values = new MultivaluedHashMap<>();
+        private final List<Locale> languages;
+
+
+        LanguageHeaders(String acceptLanguage) {
+            if (acceptLanguage == null || acceptLanguage.isBlank()) {
+                this.languages = List.of();
+                return;
+            }
+
+            values.putSingle(ACCEPT_LANGUAGE, acceptLanguage);
+
+            List<Locale> parsed;
+
+            try {
+                parsed = Locale.LanguageRange.parse(acceptLanguage).stream()
+                    .map(Locale.LanguageRange::getRange)
+                    .filter(range -> !range.equals("*"))
+                    .map(Locale::forLanguageTag)
+                    .toList();
+            } catch (IllegalArgumentException e) {
+                parsed = List.of();
+            }
+
+            this.languages = parsed;
+        }
+
+
+        @Override
+        public List<String> getRequestHeader(String name) {
+            return ACCEPT_LANGUAGE.equalsIgnoreCase(name) ? values.getOrDefault(ACCEPT_LANGUAGE, List.of()) : List.of();
+        }
+
+        @Override
+        public String getHeaderString(String name) {
+            List<String> header = getRequestHeader(name);
+
+            return header.isEmpty() ? null : String.join(",", header);
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getRequestHeaders() {
+            return values;
+        }
+
+        @Override
+        public List<MediaType> getAcceptableMediaTypes() {
+            return List.of(MediaType.WILDCARD_TYPE);
+        }
+
+        @Override
+        public List<Locale> getAcceptableLanguages() {
+            return languages;
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return null;
+        }
+
+        @Override
+        public Locale getLanguage() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Cookie> getCookies() {
+            return Map.of();
+        }
+
+        @Override
+        public Date getDate() {
+            return null;
+        }
+
+        @Override
+        public int getLength() {
+            return -1;
+        }
+    }
+}
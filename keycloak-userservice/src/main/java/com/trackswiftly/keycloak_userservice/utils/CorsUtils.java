@@ -1,111 +1,77 @@
 package com.trackswiftly.keycloak_userservice.utils;
 
-import jakarta.ws.rs.core.HttpHeaders;
+import org.keycloak.http.HttpResponse;
+import org.keycloak.models.KeycloakSession;
+
 import jakarta.ws.rs.core.Response;
 
 
+/***
+ *
+ * CORS headers of the users-services endpoints , written in place on the Keycloak HTTP response
+ * once per request (see {@link com.trackswiftly.keycloak_userservice.TrackSwiftlyResourceProvider#getResource}) ,
+ * the response built by the endpoint is never copied .
+ */
 public class CorsUtils {
 
 
+    public static final String PREFLIGHT_MAX_AGE_OPTION = "cors-preflight-max-age";
+    public static final int DEFAULT_PREFLIGHT_MAX_AGE = 3600;
+
+    private static final String ALLOW_METHODS = "GET, POST, PUT, DELETE, OPTIONS";
+    private static final String ALLOW_HEADERS = "Content-Type, Authorization, X-Requested-With, Accept, Origin";
+    private static final String EXPOSE_HEADERS = "Location, X-Next-Cursor, ETag";
+    private static final String ANY_ORIGIN = "*";
+
+
     private CorsUtils() {
         // Private constructor to prevent instantiation
     }
 
 
 
-    public static Response addCorsHeaders(Response originalResponse, HttpHeaders headers) {
-        String origin = getOriginFromHeaders(headers);
-        
-        return Response.fromResponse(originalResponse)
-                .header("Access-Control-Allow-Origin", origin)
-                .header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
-                .header("Access-Control-Allow-Headers", 
-                    "Content-Type, Authorization, X-Requested-With, Accept, Origin")
-                .header("Access-Control-Expose-Headers", "Location")
-                .header("Access-Control-Allow-Credentials", "true")
-                .build();
+    public static void addCorsHeaders(KeycloakSession session, OriginPolicy originPolicy) {
+        String origin = getOriginFromHeaders(session, originPolicy);
+        HttpResponse response = session.getContext().getHttpResponse();
+
+        response.setHeader("Access-Control-Allow-Origin", origin);
+        response.setHeader("Access-Control-Allow-Methods", ALLOW_METHODS);
+        response.setHeader("Access-Control-Allow-Headers", ALLOW_HEADERS);
+        response.setHeader("Access-Control-Expose-Headers", EXPOSE_HEADERS);
+        response.setHeader("Access-Control-Allow-Credentials", "true");
+        response.addHeader("Vary", "Origin");
     }
 
 
-    private static String getOriginFromHeaders(HttpHeaders headers) {
-        String origin = headers.getHeaderString("Origin");
-        
-        // You can add origin validation here if needed
-        if (origin == null || origin.trim().isEmpty()) {
-            return "*"; // Fallback, but be careful with credentials
-        }
-        
-        // Optional: Validate against allowed origins from realm settings
-        if (isOriginAllowedEnhanced(origin)) {
-            return origin;
-        }
-        
-        return "*"; // or throw an exception for unauthorized origins
+    /**
+     * Answers a preflight request , the CORS headers are already set , browsers keep the answer for max age seconds .
+     *
+     * @param session the Keycloak session
+     * @param maxAge the Access-Control-Max-Age value
+     * @return the preflight response
+     */
+    public static Response preflight(KeycloakSession session, String maxAge) {
+        session.getContext().getHttpResponse().setHeader("Access-Control-Max-Age", maxAge);
+
+        return Response.ok().build();
     }
 
 
 
+    private static String getOriginFromHeaders(KeycloakSession session, OriginPolicy originPolicy) {
+        String origin = session.getContext().getRequestHeaders().getHeaderString("Origin");
 
-    private static boolean isOriginAllowedEnhanced(String origin) {
         if (origin == null || origin.trim().isEmpty()) {
-            return false;
+            return ANY_ORIGIN; // Fallback, but be careful with credentials
         }
-        
-        String lowerOrigin = origin.toLowerCase();
-        
-        try {
-            java.net.URL url = new java.net.URL(origin);
-            String hostname = url.getHost().toLowerCase();
-            
-            // Check for trackswiftly domains
-            if (hostname.contains("trackswiftly")) {
-                return true;
-            }
-            
-            // Check for localhost variations
-            if (isLocalhostVariation(hostname)) {
-                return true;
-            }
-            
-            // Check for common development domains
-            return isDevelopmentDomain(hostname);
-            
-        } catch (java.net.MalformedURLException e) {
-            return fallbackOriginCheck(lowerOrigin);
-        }
-    }
-
-
-
 
-    private static boolean isLocalhostVariation(String hostname) {
-        return hostname.equals("localhost") || 
-            hostname.equals("127.0.0.1") || 
-            hostname.equals("0.0.0.0") ||
-            hostname.equals("::1") || // IPv6 localhost
-            hostname.endsWith(".localhost") || // subdomain.localhost
-            hostname.matches("192\\.168\\.\\d+\\.\\d+") || // Local network
-            hostname.matches("10\\.\\d+\\.\\d+\\.\\d+") || // Local network
-            hostname.matches("172\\.(1[6-9]|2[0-9]|3[0-1])\\.\\d+\\.\\d+"); // Local network
-    }
+        // Validate against the allowed origins of the realm
+        if (originPolicy.isAllowed(origin)) {
+            return origin;
+        }
 
-    // Helper method for development domains
-    private static boolean isDevelopmentDomain(String hostname) {
-        return hostname.endsWith(".local") ||
-            hostname.endsWith(".dev") ||
-            hostname.endsWith(".test") ||
-            hostname.contains("staging") ||
-            hostname.contains("dev");
+        return ANY_ORIGIN; // or throw an exception for unauthorized origins
     }
 
-    // Fallback method when URL parsing fails
-    private static boolean fallbackOriginCheck(String lowerOrigin) {
-        return lowerOrigin.contains("trackswiftly") || 
-            lowerOrigin.contains("localhost") ||
-            lowerOrigin.contains("127.0.0.1") ||
-            lowerOrigin.contains("0.0.0.0") ||
-            lowerOrigin.contains("::1");
-    }
 
-    
 }
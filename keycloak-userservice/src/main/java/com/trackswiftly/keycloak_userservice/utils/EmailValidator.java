@@ -2,227 +2,403 @@ package com.trackswiftly.keycloak_userservice.utils;
 
 import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class EmailValidator {
     
-    // Email regex pattern based on RFC 5322 but simplified for practical use
-    private static final String EMAIL_REGEX = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$";
-    private static final Pattern EMAIL_PATTERN = Pattern.compile(EMAIL_REGEX);
+    private static final String USER_INVITATIONS_FIELD = "userInvitations";
+    
+    // RFC 5321 limits
+    private static final int MAX_LOCAL_PART_LENGTH = 64;
+    private static final int MAX_DOMAIN_LENGTH = 253;
+    private static final int MAX_DOMAIN_LABEL_LENGTH = 63;
+    private static final int MIN_TOP_LEVEL_DOMAIN_LENGTH = 2;
     
     /**
-     * Validates a single email address
+     * Validates a single email address, in one pass over the characters and without allocating.
+     * 
+     * Accepted addresses, once trimmed:
+     * - local part: 1 to 64 of [a-zA-Z0-9._%+-], no leading, trailing or consecutive dots
+     * - exactly one @
+     * - domain: at most 253 characters, at least two dot separated labels of 1 to 63 [a-zA-Z0-9-],
+     *   not starting or ending with a hyphen, the last label being at least two letters
+     * 
      * @param email the email address to validate
      * @return true if the email is valid, false otherwise
      */
     public static boolean isValidEmail(String email) {
-        if (email == null || email.trim().isEmpty()) {
+        if (email == null) {
             return false;
         }
         
-        email = email.trim();
+        // same bounds as String.trim()
+        int start = 0;
+        int end = email.length();
         
-        // Basic checks
-        if (!email.contains("@")) {
-            return false;
+        while (start < end && email.charAt(start) <= ' ') {
+            start++;
         }
         
-        String[] parts = email.split("@");
-        if (parts.length != 2) {
-            return false;
+        while (end > start && email.charAt(end - 1) <= ' ') {
+            end--;
         }
         
-        String localPart = parts[0];
-        String domainPart = parts[1];
+        int at = scanLocalPart(email, start, end);
         
-        // Check local part (before @)
-        if (!isValidLocalPart(localPart)) {
+        if (at < 0) {
             return false;
         }
         
-        // Check domain part (after @)
-        if (!isValidDomainPart(domainPart)) {
-            return false;
-        }
-        
-        // Use regex for final validation
-        return EMAIL_PATTERN.matcher(email).matches();
+        return isValidDomainPart(email, at + 1, end);
     }
     
     /**
-     * Validates the local part of an email (part before @)
-     * @param localPart the local part to validate
-     * @return true if valid, false otherwise
+     * Scans the local part of an email (part before @)
+     * @return the index of the @, or -1 if the local part is invalid
      */
-    private static boolean isValidLocalPart(String localPart) {
-        if (localPart.isEmpty()) {
-            return false;
-        }
-        
-        // Cannot start or end with a dot
-        if (localPart.startsWith(".") || localPart.endsWith(".")) {
-            return false;
-        }
-        
-        // Cannot have consecutive dots
-        if (localPart.contains("..")) {
-            return false;
-        }
+    private static int scanLocalPart(String email, int start, int end) {
+        char previous = 0;
         
-        // Check length (local part should not exceed 64 characters per RFC 5321)
-        if (localPart.length() > 64) {
-            return false;
+        for (int i = start; i < end; i++) {
+            char c = email.charAt(i);
+            
+            if (c == '@') {
+                boolean valid = i > start 
+                    && previous != '.' 
+                    && i - start <= MAX_LOCAL_PART_LENGTH;
+                
+                return valid ? i : -1;
+            }
+            
+            // Cannot start with a dot or have consecutive dots
+            if (!isLocalPartChar(c) || (c == '.' && (i == start || previous == '.'))) {
+                return -1;
+            }
+            
+            previous = c;
         }
         
-        return true;
+        // no @
+        return -1;
     }
     
     /**
-     * Validates the domain part of an email (part after @)
-     * @param domainPart the domain part to validate
+     * Validates the domain part of an email (part after @) and each of its labels
      * @return true if valid, false otherwise
      */
-    private static boolean isValidDomainPart(String domainPart) {
-        if (domainPart.isEmpty()) {
-            return false;
-        }
-        
-        // Must contain at least one dot
-        if (!domainPart.contains(".")) {
-            return false;
-        }
-        
-        // Cannot start or end with a dot or hyphen
-        if (domainPart.startsWith(".") || domainPart.endsWith(".") || 
-            domainPart.startsWith("-") || domainPart.endsWith("-")) {
-            return false;
-        }
-        
-        // Cannot have consecutive dots
-        if (domainPart.contains("..")) {
+    private static boolean isValidDomainPart(String email, int start, int end) {
+        if (end - start > MAX_DOMAIN_LENGTH) {
             return false;
         }
         
-        // Check length (domain should not exceed 253 characters per RFC 5321)
-        if (domainPart.length() > 253) {
-            return false;
-        }
+        int labelStart = start;
+        int labels = 0;
+        boolean lettersOnly = true;
         
-        // Split by dots and validate each label
-        String[] labels = domainPart.split("\\.");
-        for (String label : labels) {
-            if (!isValidDomainLabel(label)) {
+        // a virtual dot at the end closes the last label
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? email.charAt(i) : '.';
+            
+            if (c == '.') {
+                if (!isValidDomainLabel(email, labelStart, i)) {
+                    return false;
+                }
+                
+                labels++;
+                
+                if (i < end) {
+                    labelStart = i + 1;
+                    lettersOnly = true;
+                }
+            } else if (isDigit(c) || c == '-') {
+                lettersOnly = false;
+            } else if (!isLetter(c)) {
                 return false;
             }
         }
         
-        return true;
+        // at least one dot, the top level domain is made of letters only
+        return labels >= 2 && lettersOnly && end - labelStart >= MIN_TOP_LEVEL_DOMAIN_LENGTH;
     }
     
     /**
-     * Validates a single domain label (part between dots in domain)
-     * @param label the domain label to validate
+     * Validates a single domain label (part between dots in domain), its characters are checked by the caller
      * @return true if valid, false otherwise
      */
-    private static boolean isValidDomainLabel(String label) {
-        if (label.isEmpty() || label.length() > 63) {
-            return false;
-        }
+    private static boolean isValidDomainLabel(String email, int start, int end) {
+        int length = end - start;
         
-        // Cannot start or end with hyphen
-        if (label.startsWith("-") || label.endsWith("-")) {
+        if (length == 0 || length > MAX_DOMAIN_LABEL_LENGTH) {
             return false;
         }
         
-        // Should contain only alphanumeric characters and hyphens
-        return label.matches("^[a-zA-Z0-9-]+$");
+        // Cannot start or end with hyphen
+        return email.charAt(start) != '-' && email.charAt(end - 1) != '-';
+    }
+    
+    private static boolean isLocalPartChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+    
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
     
     /**
-     * Validates a list of invitation requests
+     * Validates a list of invitation requests, sequentially
      * @param userInvitations the list of invitation requests to validate
      * @return ValidationResult containing validation status and any errors
      */
     public static ValidationResult validateInvitationRequests(List<InvitationRequest> userInvitations) {
-        ValidationResult result = new ValidationResult();
-        
+        return validateInvitationRequests(userInvitations, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Validates a list of invitation requests and marks the duplicate emails.
+     * 
+     * Lists larger than the threshold are split across the common fork-join pool, the emails are then
+     * normalized (trimmed, lower case) and deduplicated in request order: the first occurrence is kept,
+     * the next ones are marked as duplicates (see {@link ValidationResult#isDuplicate(int)}).
+     * 
+     * @param userInvitations the list of invitation requests to validate
+     * @param parallelThreshold size above which the list is validated in parallel
+     * @return ValidationResult containing validation status, errors and duplicates
+     */
+    public static ValidationResult validateInvitationRequests(List<InvitationRequest> userInvitations, int parallelThreshold) {
         if (userInvitations == null || userInvitations.isEmpty()) {
-            result.addError("userInvitations", "User invitations list cannot be null or empty");
+            ValidationResult result = new ValidationResult();
+            result.addError(USER_INVITATIONS_FIELD, "User invitations list cannot be null or empty");
             return result;
         }
         
-        for (int i = 0; i < userInvitations.size(); i++) {
-            InvitationRequest invitation = userInvitations.get(i);
-            String fieldPrefix = "userInvitations[" + i + "]";
-            
-            validateSingleInvitationRequest(invitation, fieldPrefix, result);
+        ValidationResult result = userInvitations.size() > parallelThreshold
+            ? ForkJoinPool.commonPool().invoke(new ValidationTask(userInvitations, 0, userInvitations.size(), parallelThreshold))
+            : validateRange(userInvitations, 0, userInvitations.size());
+        
+        if (result.isValid()) {
+            markDuplicates(userInvitations, result);
         }
         
         return result;
     }
     
+    /**
+     * Validates a chunk of a streamed upload. Invalid rows are reported by {@link ValidationResult#getRowError(int)}
+     * and do not invalidate the chunk, duplicates are marked against the emails of the previous chunks too.
+     * 
+     * @param chunk the invitation requests of the chunk
+     * @param seenEmails normalized emails of the previous chunks, the emails of this chunk are added
+     * @return ValidationResult containing the row errors and duplicates of the chunk
+     */
+    public static ValidationResult validateInvitationChunk(List<InvitationRequest> chunk, Set<String> seenEmails) {
+        ValidationResult result = validateRange(chunk, 0, chunk.size());
+        
+        markDuplicates(chunk, result, seenEmails);
+        
+        return result;
+    }
+    
+    private static ValidationResult validateRange(List<InvitationRequest> userInvitations, int from, int to) {
+        ValidationResult result = new ValidationResult();
+        
+        for (int i = from; i < to; i++) {
+            validateSingleInvitationRequest(userInvitations.get(i), i, result);
+        }
+        
+        return result;
+    }
+    
+    private static void markDuplicates(List<InvitationRequest> userInvitations, ValidationResult result) {
+        markDuplicates(userInvitations, result, new HashSet<>(userInvitations.size() * 2));
+    }
+    
+    private static void markDuplicates(List<InvitationRequest> userInvitations, ValidationResult result, Set<String> emails) {
+        for (int i = 0; i < userInvitations.size(); i++) {
+            String email = userInvitations.get(i).getEmail();
+            
+            if (email != null && !emails.add(email.trim().toLowerCase(Locale.ROOT))) {
+                result.duplicates.set(i);
+            }
+        }
+    }
+    
     /**
      * Validates a single invitation request
      * @param invitation the invitation request to validate
-     * @param fieldPrefix prefix for error field names
+     * @param index index of the request, used for the error field names
      * @param result the validation result to add errors to
      */
-    private static void validateSingleInvitationRequest(InvitationRequest invitation, String fieldPrefix, ValidationResult result) {
+    private static void validateSingleInvitationRequest(InvitationRequest invitation, int index, ValidationResult result) {
         if (invitation == null) {
-            result.addError(fieldPrefix, "Invitation request cannot be null");
+            result.addError(index, null, "Invitation request cannot be null");
             return;
         }
         
         // Validate email (required)
         if (invitation.getEmail() == null || invitation.getEmail().trim().isEmpty()) {
-            result.addError(fieldPrefix + ".email", "Email cannot be null or empty");
-        } else if (!isValidEmail(invitation.getEmail().trim())) {
-            result.addError(fieldPrefix + ".email", "Email format is invalid");
+            result.addError(index, "email", "Email cannot be null or empty");
+        } else if (!isValidEmail(invitation.getEmail())) {
+            result.addError(index, "email", "Email format is invalid");
         }
         
         // Validate firstName (optional, but if provided should not be empty)
         if (invitation.getFirstName() != null && invitation.getFirstName().trim().isEmpty()) {
-            result.addError(fieldPrefix + ".firstName", "First name cannot be empty if provided");
+            result.addError(index, "firstName", "First name cannot be empty if provided");
         }
         
         // Validate lastName (optional, but if provided should not be empty)
         if (invitation.getLastName() != null && invitation.getLastName().trim().isEmpty()) {
-            result.addError(fieldPrefix + ".lastName", "Last name cannot be empty if provided");
+            result.addError(index, "lastName", "Last name cannot be empty if provided");
         }
         
         // Validate userId (optional, but if provided should not be empty)
         if (invitation.getUserId() != null && invitation.getUserId().trim().isEmpty()) {
-            result.addError(fieldPrefix + ".userId", "User ID cannot be empty if provided");
+            result.addError(index, "userId", "User ID cannot be empty if provided");
         }
     }
     
     /**
-     * Helper class to hold validation results
+     * Splits the list in halves until a range is below the threshold, the results are merged in index order
+     */
+    private static class ValidationTask extends RecursiveTask<ValidationResult> {
+        
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<InvitationRequest> userInvitations;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        
+        ValidationTask(List<InvitationRequest> userInvitations, int from, int to, int threshold) {
+            this.userInvitations = userInvitations;
+            this.from = from;
+            this.to = to;
+            this.threshold = Math.max(threshold, 1);
+        }
+        
+        @Override
+        protected ValidationResult compute() {
+            if (to - from <= threshold) {
+                return validateRange(userInvitations, from, to);
+            }
+            
+            int middle = (from + to) >>> 1;
+            
+            ValidationTask left = new ValidationTask(userInvitations, from, middle, threshold);
+            left.fork();
+            
+            ValidationResult right = new ValidationTask(userInvitations, middle, to, threshold).compute();
+            ValidationResult result = left.join();
+            result.fieldErrors.addAll(right.fieldErrors);
+            
+            return result;
+        }
+    }
+    
+    /**
+     * Helper class to hold validation results.
+     * Errors are kept by request index, the "userInvitations[i].field" keys are only built when the errors are read.
      */
     public static class ValidationResult {
-        private final Map<String, String> errors = new HashMap<>();
+        
+        private record FieldError(int index, String field, String message) {}
+        
+        private final List<FieldError> fieldErrors = new ArrayList<>();
+        private final BitSet duplicates = new BitSet();
+        private Map<String, String> errors;
+        private Map<Integer, FieldError> rowErrors;
         
         public void addError(String field, String message) {
-            errors.put(field, message);
+            fieldErrors.add(new FieldError(-1, field, message));
+            errors = null;
+            rowErrors = null;
+        }
+        
+        void addError(int index, String field, String message) {
+            fieldErrors.add(new FieldError(index, field, message));
+            errors = null;
+            rowErrors = null;
         }
         
         public boolean isValid() {
-            return errors.isEmpty();
+            return fieldErrors.isEmpty();
         }
         
+        /**
+         * @return the errors keyed by field name, e.g. "userInvitations[3].email"
+         */
         public Map<String, String> getErrors() {
+            if (errors == null) {
+                errors = new LinkedHashMap<>();
+                
+                for (FieldError error : fieldErrors) {
+                    errors.put(fieldName(error), error.message());
+                }
+            }
+            
             return errors;
         }
         
         public boolean hasErrors() {
-            return !errors.isEmpty();
+            return !fieldErrors.isEmpty();
         }
         
         public int getErrorCount() {
-            return errors.size();
+            return getErrors().size();
+        }
+        
+        /**
+         * The first error of each row is indexed once, so reading every row of a chunk stays linear.
+         *
+         * @return the first error of the request at this index, as "field: message", null if the request is valid
+         */
+        public String getRowError(int index) {
+            if (rowErrors == null) {
+                rowErrors = new HashMap<>(fieldErrors.size() * 2);
+                
+                for (FieldError error : fieldErrors) {
+                    rowErrors.putIfAbsent(error.index(), error);
+                }
+            }
+            
+            FieldError error = rowErrors.get(index);
+            
+            if (error == null) {
+                return null;
+            }
+            
+            return error.field() == null ? error.message() : error.field() + ": " + error.message();
+        }
+        
+        /**
+         * @return true if the email of the request at this index already appears earlier in the list
+         */
+        public boolean isDuplicate(int index) {
+            return duplicates.get(index);
+        }
+        
+        private static String fieldName(FieldError error) {
+            if (error.index() < 0) {
+                return error.field();
+            }
+            
+            String prefix = USER_INVITATIONS_FIELD + "[" + error.index() + "]";
+            
+            return error.field() == null ? prefix : prefix + "." + error.field();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,243 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.keycloak.util.JsonSerialization;
+
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+
+
+/***
+ *
+ * Reads the invitation requests of a streamed upload one row at a time , NDJSON (one JSON object per line)
+ * or CSV with a header line (email , firstName , lastName , userId columns , any order , case insensitive) .
+ *
+ * A line is never longer than {@link #MAX_LINE_LENGTH} characters in memory , a longer line , or a line that
+ * cannot be parsed , is returned as a row with an error so the upload goes on .
+ * CSV fields may be quoted ("a, b" , "say ""hi""") , a quoted field cannot span lines .
+ */
+public class InvitationRowReader implements Closeable {
+
+
+    public static final int MAX_LINE_LENGTH = 8192;
+
+
+    /**
+     * @param line line number in the upload , the CSV header is line 1
+     * @param request the request , null when the row has an error
+     * @param error why the row could not be read
+     */
+    public record Row(int line, InvitationRequest request, String error) {}
+
+
+    private enum Format { NDJSON, CSV }
+
+    private enum Column { EMAIL, FIRST_NAME, LAST_NAME, USER_ID, IGNORED }
+
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final StringBuilder line = new StringBuilder();
+    private Column[] columns;
+    private int lineNumber;
+    private boolean truncated;
+
+
+    private InvitationRowReader(InputStream input, Format format) {
+        this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        this.format = format;
+    }
+
+
+
+    public static InvitationRowReader ndjson(InputStream input) {
+        return new InvitationRowReader(input, Format.NDJSON);
+    }
+
+
+    /**
+     * @throws IOException if the header line is missing , too long or has no email column
+     */
+    public static InvitationRowReader csv(InputStream input) throws IOException {
+        InvitationRowReader rows = new InvitationRowReader(input, Format.CSV);
+        rows.readHeader();
+
+        return rows;
+    }
+
+
+
+    /**
+     * @return the next row , null at the end of the upload , blank lines are skipped
+     */
+    public Row next() throws IOException {
+        while (readLine()) {
+            if (truncated) {
+                return new Row(lineNumber, null, "Row longer than " + MAX_LINE_LENGTH + " characters");
+            }
+
+            if (line.toString().isBlank()) {
+                continue;
+            }
+
+            return format == Format.CSV ? parseCsvRow() : parseJsonRow();
+        }
+
+        return null;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+
+
+    private void readHeader() throws IOException {
+        if (!readLine() || truncated) {
+            throw new IOException("CSV header line is missing or too long");
+        }
+
+        List<String> names = splitCsv(line);
+
+        if (names == null) {
+            throw new IOException("CSV header line is invalid");
+        }
+
+        columns = new Column[names.size()];
+        boolean hasEmail = false;
+
+        for (int i = 0; i < names.size(); i++) {
+            columns[i] = switch (names.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "email" -> Column.EMAIL;
+                case "firstname" -> Column.FIRST_NAME;
+                case "lastname" -> Column.LAST_NAME;
+                case "userid" -> Column.USER_ID;
+                default -> Column.IGNORED;
+            };
+
+            hasEmail |= columns[i] == Column.EMAIL;
+        }
+
+        if (!hasEmail) {
+            throw new IOException("CSV header has no email column");
+        }
+    }
+
+
+    private Row parseJsonRow() {
+        try {
+            return new Row(lineNumber, JsonSerialization.readValue(line.toString(), InvitationRequest.class), null);
+        } catch (IOException e) {
+            return new Row(lineNumber, null, "Invalid JSON row");
+        }
+    }
+
+
+    private Row parseCsvRow() {
+        List<String> values = splitCsv(line);
+
+        if (values == null) {
+            return new Row(lineNumber, null, "Unterminated quoted field");
+        }
+
+        InvitationRequest request = new InvitationRequest();
+
+        for (int i = 0; i < Math.min(values.size(), columns.length); i++) {
+            // an empty cell is an absent value
+            String value = values.get(i).isBlank() ? null : values.get(i).trim();
+
+            switch (columns[i]) {
+                case EMAIL -> request.setEmail(value);
+                case FIRST_NAME -> request.setFirstName(value);
+                case LAST_NAME -> request.setLastName(value);
+                case USER_ID -> request.setUserId(value);
+                default -> { }
+            }
+        }
+
+        return new Row(lineNumber, request, null);
+    }
+
+
+    /*
+     * reads the next line in the buffer , keeps at most MAX_LINE_LENGTH characters , false at the end of the input
+     */
+    private boolean readLine() throws IOException {
+        line.setLength(0);
+        truncated = false;
+
+        int c = reader.read();
+
+        if (c < 0) {
+            return false;
+        }
+
+        lineNumber++;
+
+        while (c >= 0 && c != '\n') {
+            if (line.length() < MAX_LINE_LENGTH) {
+                line.append((char) c);
+            } else {
+                truncated = true;
+            }
+
+            c = reader.read();
+        }
+
+        if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+        }
+
+        return true;
+    }
+
+
+    /*
+     * null when a quoted field is not terminated
+     */
+    private static List<String> splitCsv(CharSequence text) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+
+        if (quoted) {
+            return null;
+        }
+
+        values.add(value.toString());
+
+        return values;
+    }
+}
@@ -0,0 +1,54 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import jakarta.ws.rs.BadRequestException;
+
+
+/***
+ *
+ * Opaque cursor of a keyset paginated listing : the sort key of the last row of a page ,
+ * Base64 URL encoded so clients pass it back as is .
+ */
+public final class KeysetCursor {
+
+
+    private static final String SEPARATOR = "\u001F";
+
+
+    private KeysetCursor() {
+    }
+
+
+
+    public static String encode(String... keys) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(String.join(SEPARATOR, keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * @param cursor a cursor returned by {@link #encode} , null or blank for the first page
+     * @param parts number of keys of the cursor
+     * @return the keys , null for the first page
+     * @throws BadRequestException if the cursor was not built by {@link #encode}
+     */
+    public static String[] decode(String cursor, int parts) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+
+        try {
+            String[] keys = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+
+            if (keys.length == parts) {
+                return keys;
+            }
+        } catch (IllegalArgumentException e) {
+            // not Base64 , reported below
+        }
+
+        throw new BadRequestException("Invalid cursor");
+    }
+}
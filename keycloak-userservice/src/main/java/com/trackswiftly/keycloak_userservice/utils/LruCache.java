@@ -0,0 +1,52 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+
+/***
+ *
+ * Small bounded map , the least recently used entry is dropped once the size limit is reached .
+ * All methods are synchronized , meant for per node caches shared by the request threads .
+ */
+public class LruCache<K, V> {
+
+
+    private final Map<K, V> entries;
+
+
+    public LruCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void removeIf(Predicate<V> filter) {
+        entries.values().removeIf(filter);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,269 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+/***
+ *
+ * CORS origin rules of a realm , compiled once from a comma separated list :
+ *
+ *   app.trackswiftly.com / https://app.trackswiftly.com  -> exact host (hash set , scheme and port are ignored)
+ *   *.trackswiftly.com                                    -> any sub domain (reversed suffix trie)
+ *   *trackswiftly*                                        -> host containing the text
+ *   private-networks                                      -> 10/8 , 172.16/12 and 192.168/16 addresses
+ *
+ * The decision is cached per Origin header value in a bounded LRU , a repeated origin costs one map lookup .
+ * Origins without a host (e.g. "null") are only matched by the "*text*" rules .
+ */
+public class OriginPolicy {
+
+
+    public static final String PRIVATE_NETWORKS = "private-networks";
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+
+    /*
+     * sources the policy was compiled from , to detect a configuration change
+     */
+    private final String allowedOrigins;
+    private final Set<String> webOrigins;
+
+    private final Set<String> exactHosts = new HashSet<>();
+    private final SuffixNode suffixes = new SuffixNode();
+    private final List<String> keywords = new ArrayList<>();
+    private boolean privateNetworks;
+
+    private final LruCache<String, Boolean> decisions;
+
+
+    private OriginPolicy(String allowedOrigins, Set<String> webOrigins, int maxCachedDecisions) {
+        this.allowedOrigins = allowedOrigins;
+        this.webOrigins = Set.copyOf(webOrigins);
+        this.decisions = new LruCache<>(maxCachedDecisions);
+    }
+
+
+    /**
+     * Compiles the rules .
+     *
+     * @param allowedOrigins comma separated rules
+     * @param webOrigins Web Origins of a client , exact origins or wildcards
+     * @param maxCachedDecisions origins whose decision is kept
+     * @return the compiled policy
+     */
+    public static OriginPolicy compile(String allowedOrigins, Set<String> webOrigins, int maxCachedDecisions) {
+        OriginPolicy policy = new OriginPolicy(allowedOrigins, webOrigins, maxCachedDecisions);
+
+        for (String rule : allowedOrigins.split(",")) {
+            policy.addRule(rule);
+        }
+
+        for (String webOrigin : webOrigins) {
+            policy.addRule(webOrigin);
+        }
+
+        return policy;
+    }
+
+
+    public boolean isCompiledFrom(String allowedOrigins, Set<String> webOrigins) {
+        return this.allowedOrigins.equals(allowedOrigins) && this.webOrigins.equals(webOrigins);
+    }
+
+
+
+    public boolean isAllowed(String origin) {
+        if (origin == null || origin.isBlank()) {
+            return false;
+        }
+
+        Boolean cached = decisions.get(origin);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean allowed = evaluate(origin.trim().toLowerCase(Locale.ROOT));
+        decisions.put(origin, allowed);
+
+        return allowed;
+    }
+
+
+
+    private void addRule(String rawRule) {
+        String rule = rawRule.trim().toLowerCase(Locale.ROOT);
+
+        if (rule.isEmpty()) {
+            return;
+        }
+
+        if (rule.equals(PRIVATE_NETWORKS)) {
+            privateNetworks = true;
+
+        } else if (rule.length() > 2 && rule.startsWith("*") && rule.endsWith("*")) {
+            keywords.add(rule.substring(1, rule.length() - 1));
+
+        } else {
+            String host = hostOf(rule);
+
+            if (host == null) {
+                return;
+            }
+
+            if (host.startsWith("*.")) {
+                suffixes.add(host.substring(1));
+            } else if (!host.contains("*")) {
+                exactHosts.add(host);
+            }
+        }
+    }
+
+
+    private boolean evaluate(String origin) {
+        String host = origin.contains(SCHEME_SEPARATOR) ? hostOf(origin) : null;
+
+        if (host == null) {
+            return containsKeyword(origin);
+        }
+
+        return exactHosts.contains(host)
+            || suffixes.matches(host)
+            || (privateNetworks && isPrivateNetworkAddress(host))
+            || containsKeyword(host);
+    }
+
+
+    private boolean containsKeyword(String value) {
+        for (String keyword : keywords) {
+            if (value.contains(keyword)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+
+    /***
+     *
+     * "https://host:port/path" -> "host" , "[::1]" -> "::1" , a rule without scheme is taken as a host .
+     * null if there is no host .
+     */
+    static String hostOf(String value) {
+        int start = value.indexOf(SCHEME_SEPARATOR);
+        start = start < 0 ? 0 : start + SCHEME_SEPARATOR.length();
+
+        int end;
+
+        if (value.startsWith("[", start)) {
+            end = value.indexOf(']', start);
+
+            if (end < 0) {
+                return null;
+            }
+
+            start++;
+        } else {
+            end = start;
+
+            while (end < value.length() && value.charAt(end) != ':' && value.charAt(end) != '/') {
+                end++;
+            }
+
+            // a bare IPv6 address like "::1"
+            if (start == 0 && end < value.length() && value.indexOf('/') < 0 && value.indexOf(':', end + 1) >= 0) {
+                end = value.length();
+            }
+        }
+
+        return end > start ? value.substring(start, end) : null;
+    }
+
+
+    /***
+     *
+     * 10.x.x.x , 172.16-31.x.x and 192.168.x.x , parsed without regex .
+     */
+    static boolean isPrivateNetworkAddress(String host) {
+        int[] octets = new int[4];
+        int octet = 0;
+        int digits = 0;
+
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+
+            if (c == '.') {
+                if (digits == 0 || ++octet > 3) {
+                    return false;
+                }
+
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                octets[octet] = octets[octet] * 10 + (c - '0');
+                digits++;
+            } else {
+                return false;
+            }
+        }
+
+        if (octet != 3 || digits == 0) {
+            return false;
+        }
+
+        return octets[0] == 10
+            || (octets[0] == 172 && octets[1] >= 16 && octets[1] <= 31)
+            || (octets[0] == 192 && octets[1] == 168);
+    }
+
+
+
+    /***
+     *
+     * Trie of the domain suffixes , keyed by the characters read from the end of the host .
+     * ".trackswiftly.com" matches "app.trackswiftly.com" but neither "trackswiftly.com" nor "apptrackswiftly.com" .
+     */
+    private static final class SuffixNode {
+
+        private final Map<Character, SuffixNode> children = new HashMap<>();
+        private boolean terminal;
+
+
+        void add(String suffix) {
+            SuffixNode node = this;
+
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(suffix.charAt(i), c -> new SuffixNode());
+            }
+
+            node.terminal = true;
+        }
+
+
+        boolean matches(String host) {
+            SuffixNode node = this;
+
+            for (int i = host.length() - 1; i > 0; i--) {
+                node = node.children.get(host.charAt(i));
+
+                if (node == null) {
+                    return false;
+                }
+
+                if (node.terminal) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
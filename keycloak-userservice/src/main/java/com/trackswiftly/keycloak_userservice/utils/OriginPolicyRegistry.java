@@ -0,0 +1,91 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.keycloak.Config.Scope;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.RealmModel;
+
+
+/***
+ *
+ * Compiled CORS origin policy of each realm , keyed by realm id .
+ *
+ * The rules come from :
+ *  - the realm attribute "trackswiftly.cors.allowed-origins" (see {@link OriginPolicy} for the syntax) ,
+ *    the former hardcoded rules are used when it is not set ,
+ *  - the Web Origins of the client named by the realm attribute "trackswiftly.cors.web-origins-client" .
+ *
+ * A policy is compiled again as soon as one of its sources changes , no rebuild or restart is needed .
+ * One instance per node , owned by the resource factory , option : cors-decision-cache-max-entries .
+ */
+public class OriginPolicyRegistry {
+
+
+    public static final String ALLOWED_ORIGINS_ATTRIBUTE = "trackswiftly.cors.allowed-origins";
+    public static final String WEB_ORIGINS_CLIENT_ATTRIBUTE = "trackswiftly.cors.web-origins-client";
+
+    public static final String DEFAULT_ALLOWED_ORIGINS =
+        "*trackswiftly*,localhost,*.localhost,127.0.0.1,0.0.0.0,::1," + OriginPolicy.PRIVATE_NETWORKS + ",*.local,*.test,*staging*,*dev*";
+
+    public static final String DECISION_CACHE_MAX_ENTRIES_OPTION = "cors-decision-cache-max-entries";
+    public static final int DEFAULT_DECISION_CACHE_MAX_ENTRIES = 1_000;
+
+
+    private final int maxCachedDecisions;
+
+    private final Map<String, OriginPolicy> policies = new ConcurrentHashMap<>();
+
+
+    public OriginPolicyRegistry(int maxCachedDecisions) {
+        this.maxCachedDecisions = maxCachedDecisions;
+    }
+
+
+    public static OriginPolicyRegistry fromConfig(Scope config) {
+        return new OriginPolicyRegistry(
+            config.getInt(DECISION_CACHE_MAX_ENTRIES_OPTION, DEFAULT_DECISION_CACHE_MAX_ENTRIES)
+        );
+    }
+
+
+
+    public OriginPolicy getPolicy(RealmModel realm) {
+        String allowedOrigins = realm.getAttribute(ALLOWED_ORIGINS_ATTRIBUTE);
+
+        if (allowedOrigins == null) {
+            allowedOrigins = DEFAULT_ALLOWED_ORIGINS;
+        }
+
+        Set<String> webOrigins = getWebOrigins(realm);
+        OriginPolicy policy = policies.get(realm.getId());
+
+        if (policy == null || !policy.isCompiledFrom(allowedOrigins, webOrigins)) {
+            policy = OriginPolicy.compile(allowedOrigins, webOrigins, maxCachedDecisions);
+            policies.put(realm.getId(), policy);
+        }
+
+        return policy;
+    }
+
+
+    public void unregister(String realmId) {
+        policies.remove(realmId);
+    }
+
+
+
+    private static Set<String> getWebOrigins(RealmModel realm) {
+        String clientId = realm.getAttribute(WEB_ORIGINS_CLIENT_ATTRIBUTE);
+
+        if (clientId == null) {
+            return Set.of();
+        }
+
+        ClientModel client = realm.getClientByClientId(clientId);
+
+        return client == null ? Set.of() : client.getWebOrigins();
+    }
+}
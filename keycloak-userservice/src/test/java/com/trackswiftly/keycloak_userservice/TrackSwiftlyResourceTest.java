@@ -0,0 +1,267 @@
+package com.trackswiftly.keycloak_userservice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.Config;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+import org.keycloak.services.managers.AuthenticationManager.AuthResult;
+
+import com.trackswiftly.keycloak_userservice.cache.VerifiedTokenCache;
+import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
+import com.trackswiftly.keycloak_userservice.events.TrackSwiftlyModelEventListener;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+import com.trackswiftly.keycloak_userservice.utils.BackgroundHttpRequest;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+
+class TrackSwiftlyResourceTest {
+
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+
+    private static String adminId;
+    private static String managerId;
+    private static String driverId;
+
+    private static final List<String> crewIds = new ArrayList<>();
+
+    // caller of the next request , and the number of times its token was verified
+    private static String callerId;
+    private static final AtomicInteger authentications = new AtomicInteger();
+
+    private static final TrackSwiftlyResourceFactory factory = new TrackSwiftlyResourceFactory() {
+        private final VerifiedTokenCache tokenCache = new VerifiedTokenCache(1, 1) {
+            @Override
+            public AuthResult authenticate(KeycloakSession session) {
+                authentications.incrementAndGet();
+
+                return new AuthResult(session.users().getUserById(session.getContext().getRealm(), callerId), null, null, null);
+            }
+        };
+
+        @Override
+        public VerifiedTokenCache getTokenCache() {
+            return tokenCache;
+        }
+    };
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        // the workers of postInit are not started , the endpoints below do not use them
+        factory.init(new Config.SystemPropertiesScope("keycloak.users-services."));
+        keycloak.register(new TrackSwiftlyModelEventListener(
+            factory.getRealmRegistry(), factory.getGroupAssignmentPolicy(), factory.getGroupCatalog(), factory.getOriginPolicyRegistry()));
+
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+
+            for (TrackSwiftlyRoles role : TrackSwiftlyRoles.values()) {
+                session.roles().addRealmRole(realm, role.name());
+            }
+
+            GroupModel drivers = session.groups().createGroup(realm, "DRIVERS");
+            session.groups().createGroup(realm, "DISPATCHERS");
+            session.groups().createGroup(realm, "MANAGERS");
+
+            OrganizationModel fleet = organizations.create("TrackSwiftly Fleet", "fleet");
+
+            adminId = member(session, organizations, fleet, "admin", TrackSwiftlyRoles.ADMIN).getId();
+            managerId = member(session, organizations, fleet, "manager", TrackSwiftlyRoles.MANAGER).getId();
+
+            UserModel driver = member(session, organizations, fleet, "driver", TrackSwiftlyRoles.DRIVER);
+            driver.joinGroup(drivers);
+            driverId = driver.getId();
+
+            for (int i = 0; i < 20; i++) {
+                crewIds.add(member(session, organizations, fleet, "crew-" + i, TrackSwiftlyRoles.DRIVER).getId());
+            }
+
+            factory.getGroupAssignmentPolicy().compile(realm);
+        });
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        factory.close();
+        keycloak.close();
+    }
+
+
+
+    /*
+     * statements prepared by each endpoint , caches empty then warm ; the token of the caller is verified
+     * and its roles and organizations are looked up once per request whatever the endpoint needs them for
+     */
+    @Test
+    void countsTheLookupsOfEachEndpoint() {
+        Map<String, Function<TrackSwiftlyResource, Response>> endpoints = new LinkedHashMap<>();
+        Map<String, List<Long>> expected = new LinkedHashMap<>();
+
+        endpoint(endpoints, expected, "GET myorg", 5, 2, TrackSwiftlyResource::myOrg);
+        endpoint(endpoints, expected, "GET groups", 27, 1, TrackSwiftlyResource::getRealmGroups);
+        endpoint(endpoints, expected, "GET groups/assignment-policy", 27, 1, TrackSwiftlyResource::getGroupAssignmentPolicy);
+        endpoint(endpoints, expected, "GET users", 31, 14, resource -> resource.getUsers(20, null, null, "roles,groups"));
+        endpoint(endpoints, expected, "GET users/{id}", 30, 10, resource -> resource.getUser(driverId));
+        endpoint(endpoints, expected, "POST users/details", 29, 8, resource -> resource.getUsersDetails(crewIds));
+        endpoint(endpoints, expected, "POST groups/{group}/users/{id}", 34, 8, resource -> resource.assignUserToGroup(driverId, "dispatchers"));
+        endpoint(endpoints, expected, "DELETE groups/{group}/users/{id}", 34, 7, resource -> resource.unAssignUserFromGroup(driverId, "dispatchers"));
+        endpoint(endpoints, expected, "PUT users/{id}/status", 27, 5, resource -> resource.toggleUser(driverId, true));
+        endpoint(endpoints, expected, "GET invitations/pending", 26, 3, resource -> resource.getPendingInvitations(0, 20));
+
+        Map<String, List<Long>> counted = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Function<TrackSwiftlyResource, Response>> endpoint : endpoints.entrySet()) {
+            keycloak.clearWorkCache();
+
+            long cold = statements(adminId, endpoint.getValue());
+            long warm = statements(adminId, endpoint.getValue());
+
+            counted.put(endpoint.getKey(), List.of(cold, warm));
+        }
+
+        assertEquals(expected, counted);
+    }
+
+
+    @Test
+    void verifiesTheTokenOnceForAManagerToo() {
+        keycloak.clearWorkCache();
+
+        statements(managerId, resource -> resource.getUsers(20, null, null, "roles,groups"));
+        statements(managerId, resource -> resource.getUser(driverId));
+        statements(managerId, TrackSwiftlyResource::getGroupAssignmentPolicy);
+    }
+
+
+    @Test
+    void answersNotModifiedUntilTheGroupsChange() {
+        Response listed = groups(null);
+        String etag = listed.getHeaderString(HttpHeaders.ETAG);
+
+        assertEquals(200, listed.getStatus());
+        assertEquals("private, no-cache", listed.getHeaderString(HttpHeaders.CACHE_CONTROL));
+
+        Response notModified = groups(etag);
+
+        assertEquals(304, notModified.getStatus());
+        assertNull(notModified.getEntity());
+        assertEquals(etag, notModified.getHeaderString(HttpHeaders.ETAG));
+        assertEquals(304, groups("\"stale\" , " + etag).getStatus());
+        assertEquals(304, groups("*").getStatus());
+
+        String groupId = keycloak.callInRealm(realmId, session ->
+            session.groups().createGroup(session.getContext().getRealm(), "YARD CREW").getId());
+
+        Response changed = groups(etag);
+
+        assertEquals(200, changed.getStatus());
+        assertNotEquals(etag, changed.getHeaderString(HttpHeaders.ETAG));
+
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            session.groups().removeGroup(realm, session.groups().getGroupById(realm, groupId));
+        });
+
+        // the listing is back to the groups the etag was computed from
+        assertEquals(304, groups(etag).getStatus());
+    }
+
+
+
+    /*
+     * one request of the caller , the statements prepared by the endpoint ; the token verified once
+     */
+    private static long statements(String userId, Function<TrackSwiftlyResource, Response> endpoint) {
+        callerId = userId;
+        authentications.set(0);
+
+        long prepared = keycloak.callInRealm(realmId, session -> {
+            keycloak.statistics().clear();
+
+            Response response = endpoint.apply(new TrackSwiftlyResource(session, factory));
+            assertEquals(2, response.getStatus() / 100, () -> "status " + response.getStatus() + " " + response.getEntity());
+
+            return keycloak.statistics().getPrepareStatementCount();
+        });
+
+        assertEquals(1, authentications.get());
+
+        return prepared;
+    }
+
+
+    /*
+     * GET groups by the admin , with the If-None-Match of the request when not null
+     */
+    private static Response groups(String ifNoneMatch) {
+        callerId = adminId;
+
+        return keycloak.callInRealm(realmId, session -> {
+            BackgroundHttpRequest request = new BackgroundHttpRequest(TestKeycloak.BASE_URI, null) {
+                @Override
+                public HttpHeaders getHttpHeaders() {
+                    HttpHeaders headers = super.getHttpHeaders();
+
+                    return (HttpHeaders) Proxy.newProxyInstance(HttpHeaders.class.getClassLoader(), new Class<?>[] {HttpHeaders.class},
+                        (proxy, method, args) -> method.getName().equals("getHeaderString") && HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase((String) args[0])
+                            ? ifNoneMatch
+                            : method.invoke(headers, args));
+                }
+            };
+
+            session.getContext().setHttpRequest(request);
+
+            return new TrackSwiftlyResource(session, factory).getRealmGroups();
+        });
+    }
+
+
+    private static void endpoint(Map<String, Function<TrackSwiftlyResource, Response>> endpoints, Map<String, List<Long>> expected,
+            String name, long cold, long warm, Function<TrackSwiftlyResource, Response> call) {
+
+        endpoints.put(name, call);
+        expected.put(name, List.of(cold, warm));
+    }
+
+
+    private static UserModel member(KeycloakSession session, OrganizationProvider organizations, OrganizationModel organization,
+            String username, TrackSwiftlyRoles role) {
+
+        RealmModel realm = session.getContext().getRealm();
+        UserModel user = session.users().addUser(realm, username);
+        user.setEmail(username + "@trackswiftly.com");
+        user.setEnabled(true);
+        user.grantRole(realm.getRole(role.name()));
+        organizations.addMember(organization, user);
+
+        return user;
+    }
+}
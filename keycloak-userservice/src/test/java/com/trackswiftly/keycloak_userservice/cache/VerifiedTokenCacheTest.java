@@ -0,0 +1,294 @@
+package com.trackswiftly.keycloak_userservice.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.UserSessionProvider;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.services.managers.AuthenticationManager.AuthResult;
+
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+import jakarta.ws.rs.NotAuthorizedException;
+
+
+class VerifiedTokenCacheTest {
+
+
+    private static final String CLIENT_ID = "fleet-app";
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+    private static String userId;
+
+    // user session id -> user id , the sessions the stub provider knows of
+    private static final Map<String, String> onlineSessions = new ConcurrentHashMap<>();
+    private static final Map<String, String> offlineSessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger verifications = new AtomicInteger();
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        keycloak.register(UserSessionProvider.class, VerifiedTokenCacheTest::sessions);
+
+        realmId = keycloak.createRealm("fleet");
+
+        userId = keycloak.callInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            session.clients().addClient(realm, CLIENT_ID).setEnabled(true);
+
+            UserModel user = session.users().addUser(realm, "jane");
+            user.setEnabled(true);
+
+            return user.getId();
+        });
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+    @AfterEach
+    void clearSessions() {
+        onlineSessions.clear();
+        offlineSessions.clear();
+        keycloak.clearWorkCache();
+        keycloak.runInRealm(realmId, session -> session.users().getUserById(session.getContext().getRealm(), userId).setEnabled(true));
+    }
+
+
+
+    @Test
+    void servesTheNextCallsFromTheCacheWithTheUserSession() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 60);
+        AccessToken token = token(onlineSession(), 3600);
+
+        authenticate(cache, "token-1", token);
+        AuthResult hit = authenticate(cache, "token-1", token);
+
+        assertEquals(1, verifications.get());
+        assertEquals(token.getSessionId(), hit.getSession().getId());
+        assertEquals(userId, hit.getUser().getId());
+        assertEquals(CLIENT_ID, hit.getClient().getClientId());
+    }
+
+
+    @Test
+    void verifiesAgainOnceTheUserSessionIsGone() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 60);
+        AccessToken token = token(onlineSession(), 3600);
+
+        authenticate(cache, "token-1", token);
+
+        // logged out on another node , no revocation marker written
+        onlineSessions.clear();
+
+        assertThrows(NotAuthorizedException.class, () -> authenticate(cache, "token-1", token));
+        assertEquals(2, verifications.get());
+    }
+
+
+    @Test
+    void acceptsTheOfflineSessionOfTheToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 60);
+        String sessionId = UUID.randomUUID().toString();
+        offlineSessions.put(sessionId, userId);
+
+        AccessToken token = token(sessionId, 3600);
+
+        authenticate(cache, "token-1", token);
+        AuthResult hit = authenticate(cache, "token-1", token);
+
+        assertEquals(1, verifications.get());
+        assertTrue(hit.getSession().isOffline());
+    }
+
+
+    @Test
+    void verifiesAgainForADisabledUser() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 60);
+        AccessToken token = token(onlineSession(), 3600);
+
+        authenticate(cache, "token-1", token);
+        keycloak.runInRealm(realmId, session -> session.users().getUserById(session.getContext().getRealm(), userId).setEnabled(false));
+
+        assertThrows(NotAuthorizedException.class, () -> authenticate(cache, "token-1", token));
+        assertEquals(2, verifications.get());
+    }
+
+
+    @Test
+    void verifiesAgainWhileASessionRevocationIsPending() {
+        AccessToken token = token(onlineSession(), 3600);
+
+        assertVerifiedAgainAfter(token, revocations -> revocations.revokeSession(token.getSessionId()));
+    }
+
+
+    @Test
+    void verifiesAgainWhileAUserRevocationIsPending() {
+        assertVerifiedAgainAfter(token(onlineSession(), 3600), revocations -> revocations.revokeUser(userId));
+    }
+
+
+    @Test
+    void verifiesAgainWhileARealmRevocationIsPending() {
+        assertVerifiedAgainAfter(token(onlineSession(), 3600), revocations -> revocations.revokeRealm(realmId));
+    }
+
+
+    @Test
+    void keepsATokenNoLongerThanItsExpiry() throws InterruptedException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 60);
+        AccessToken token = token(onlineSession(), 1);
+
+        authenticate(cache, "token-1", token);
+        authenticate(cache, "token-1", token);
+
+        assertEquals(1, verifications.get());
+
+        Thread.sleep(token.getExp() * 1000 - System.currentTimeMillis() + 50);
+        authenticate(cache, "token-1", token);
+
+        assertEquals(2, verifications.get());
+    }
+
+
+    @Test
+    void keepsATokenNoLongerThanTheMaxTtl() throws InterruptedException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 1);
+        AccessToken token = token(onlineSession(), 3600);
+
+        authenticate(cache, "token-1", token);
+        authenticate(cache, "token-1", token);
+
+        assertEquals(1, verifications.get());
+
+        Thread.sleep(1_050);
+        authenticate(cache, "token-1", token);
+
+        assertEquals(2, verifications.get());
+    }
+
+
+
+    /*
+     * cached , revoked , then verified on every call until the marker expires
+     */
+    private void assertVerifiedAgainAfter(AccessToken token, Consumer<TokenRevocations> revoke) {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 60);
+
+        authenticate(cache, "token-1", token);
+        authenticate(cache, "token-1", token);
+
+        assertEquals(1, verifications.get());
+
+        keycloak.run(session -> revoke.accept(new TokenRevocations(session)));
+
+        authenticate(cache, "token-1", token);
+        authenticate(cache, "token-1", token);
+
+        assertEquals(3, verifications.get());
+    }
+
+
+    /*
+     * the full verification reduced to the session and user lookups , the signature is not under test
+     */
+    private AuthResult authenticate(VerifiedTokenCache cache, String tokenString, AccessToken token) {
+        return keycloak.callInRealm(realmId, session -> cache.authenticate(session, tokenString, () -> {
+            verifications.incrementAndGet();
+
+            RealmModel realm = session.getContext().getRealm();
+            UserSessionModel userSession = session.sessions().getUserSession(realm, token.getSessionId());
+
+            if (userSession == null) {
+                userSession = session.sessions().getOfflineUserSession(realm, token.getSessionId());
+            }
+
+            UserModel user = session.users().getUserById(realm, token.getSubject());
+
+            if (userSession == null || !user.isEnabled()) {
+                return null;
+            }
+
+            return new AuthResult(user, userSession, token, realm.getClientByClientId(token.getIssuedFor()));
+        }));
+    }
+
+
+    private static String onlineSession() {
+        String sessionId = UUID.randomUUID().toString();
+        onlineSessions.put(sessionId, userId);
+
+        return sessionId;
+    }
+
+
+    private static AccessToken token(String sessionId, int lifespanSeconds) {
+        AccessToken token = new AccessToken();
+        token.subject(userId);
+        token.issuedFor(CLIENT_ID);
+        token.setSessionId(sessionId);
+        token.exp((long) Time.currentTime() + lifespanSeconds);
+
+        return token;
+    }
+
+
+    private static UserSessionProvider sessions(KeycloakSession session) {
+        return (UserSessionProvider) Proxy.newProxyInstance(UserSessionProvider.class.getClassLoader(), new Class<?>[] { UserSessionProvider.class }, (proxy, method, args) ->
+            switch (method.getName()) {
+                case "getUserSession" -> userSession(session, (RealmModel) args[0], (String) args[1], onlineSessions.get(args[1]), false);
+                case "getOfflineUserSession" -> userSession(session, (RealmModel) args[0], (String) args[1], offlineSessions.get(args[1]), true);
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method.getName());
+            }
+        );
+    }
+
+
+    private static UserSessionModel userSession(KeycloakSession session, RealmModel realm, String id, String userId, boolean offline) {
+        if (userId == null) {
+            return null;
+        }
+
+        int started = Time.currentTime();
+
+        return (UserSessionModel) Proxy.newProxyInstance(UserSessionModel.class.getClassLoader(), new Class<?>[] { UserSessionModel.class }, (proxy, method, args) ->
+            switch (method.getName()) {
+                case "getId" -> id;
+                case "getRealm" -> realm;
+                case "getUser" -> session.users().getUserById(realm, userId);
+                case "getStarted", "getLastSessionRefresh" -> started;
+                case "isOffline" -> offline;
+                case "isRememberMe" -> false;
+                case "getNote" -> null;
+                default -> throw new UnsupportedOperationException(method.getName());
+            }
+        );
+    }
+}
@@ -0,0 +1,179 @@
+package com.trackswiftly.keycloak_userservice.email;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/***
+ *
+ * In process SMTP server for tests and benchmarks : accepts every message , keeps only counters and recipients .
+ *
+ * The handshake delay is spent before the greeting , like the TLS handshake and AUTH exchange of a real server ,
+ * so the cost of opening a connection can be made visible on the loopback interface .
+ */
+public class LocalSmtpServer implements Closeable {
+
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "local-smtp");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long handshakeDelayMillis;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger messageCount = new AtomicInteger();
+    private final List<String> recipients = new CopyOnWriteArrayList<>();
+
+
+    public LocalSmtpServer(long handshakeDelayMillis) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.handshakeDelayMillis = handshakeDelayMillis;
+
+        connections.execute(this::accept);
+    }
+
+
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+
+    public int getMessageCount() {
+        return messageCount.get();
+    }
+
+
+    /**
+     * Addresses of the RCPT TO commands received , in order .
+     */
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+
+    /**
+     * Mail properties of a plain , unauthenticated connection to this server .
+     */
+    public Properties mailProperties() {
+        Properties props = new Properties();
+        props.setProperty("mail.smtp.host", serverSocket.getInetAddress().getHostAddress());
+        props.setProperty("mail.smtp.port", String.valueOf(getPort()));
+        props.setProperty("mail.smtp.timeout", "5000");
+        props.setProperty("mail.smtp.connectiontimeout", "5000");
+
+        return props;
+    }
+
+
+    /**
+     * Drops the open connections , as a server restart or an idle timeout on the server side would .
+     */
+    public void dropConnections() throws IOException {
+        for (Socket socket : open) {
+            socket.close();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        connections.shutdownNow();
+    }
+
+
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                open.add(socket);
+                connectionCount.incrementAndGet();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+
+            OutputStream out = socket.getOutputStream();
+
+            if (handshakeDelayMillis > 0) {
+                Thread.sleep(handshakeDelayMillis);
+            }
+
+            reply(out, "220 localhost ESMTP");
+
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase(Locale.ROOT);
+
+                switch (command) {
+                    case "EHLO" -> reply(out, "250-localhost\r\n250 8BITMIME");
+                    case "RCPT" -> {
+                        recipients.add(line.substring(line.indexOf('<') + 1, line.lastIndexOf('>')));
+                        reply(out, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+
+                        for (String data = in.readLine(); data != null && !data.equals("."); data = in.readLine()) {
+                            // the content is not kept
+                        }
+
+                        messageCount.incrementAndGet();
+                        reply(out, "250 OK");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "250 OK");
+                }
+            }
+        } catch (IOException e) {
+            // client gone or connection dropped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
@@ -0,0 +1,102 @@
+package com.trackswiftly.keycloak_userservice.email;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+
+
+/***
+ *
+ * Messages per second of a 1,000 invite batch sent to a {@link LocalSmtpServer} , through the pooled transports
+ * and with one connection per message as Keycloak's default sender does :
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks=SmtpTransportPoolBenchmark
+ *
+ * The handshake delay stands for the TLS handshake and AUTH exchange of a remote server .
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SmtpTransportPoolBenchmark {
+
+
+    static final int BATCH = 1_000;
+
+    private static final String KEY = "local";
+
+
+    @Param({ "0", "5" })
+    public long handshakeDelayMillis;
+
+    private LocalSmtpServer server;
+    private SmtpTransportPool pool;
+    private Session mailSession;
+
+
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LocalSmtpServer(handshakeDelayMillis);
+        pool = new SmtpTransportPool(4, 60_000);
+        mailSession = pool.getMailSession(KEY, server::mailProperties);
+    }
+
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+        server.close();
+    }
+
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pooled() throws MessagingException {
+        for (int i = 0; i < BATCH; i++) {
+            Transport transport = pool.borrow(KEY);
+
+            if (transport == null) {
+                transport = SmtpTransportPoolTest.connect(mailSession);
+            }
+
+            SmtpTransportPoolTest.send(mailSession, transport);
+            pool.release(KEY, transport);
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void connectionPerMessage() throws MessagingException {
+        for (int i = 0; i < BATCH; i++) {
+            Transport transport = SmtpTransportPoolTest.connect(mailSession);
+
+            try {
+                SmtpTransportPoolTest.send(mailSession, transport);
+            } finally {
+                transport.close();
+            }
+        }
+    }
+}
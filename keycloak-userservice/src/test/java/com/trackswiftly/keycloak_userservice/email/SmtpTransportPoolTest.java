@@ -0,0 +1,181 @@
+package com.trackswiftly.keycloak_userservice.email;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+
+class SmtpTransportPoolTest {
+
+
+    private static final String KEY = "local";
+
+    private LocalSmtpServer server;
+
+
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new LocalSmtpServer(0);
+    }
+
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.close();
+    }
+
+
+
+    @Test
+    void reusesOneConnectionAcrossMessages() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(4, 60_000);
+        Session mailSession = pool.getMailSession(KEY, server::mailProperties);
+
+        for (int i = 0; i < 5; i++) {
+            Transport transport = pool.borrow(KEY);
+
+            if (transport == null) {
+                transport = connect(mailSession);
+            }
+
+            send(mailSession, transport);
+            pool.release(KEY, transport);
+        }
+
+        assertEquals(5, server.getMessageCount());
+        assertEquals(1, server.getConnectionCount());
+
+        pool.close();
+    }
+
+
+    @Test
+    void buildsTheMailSessionOncePerConfiguration() {
+        SmtpTransportPool pool = new SmtpTransportPool(4, 60_000);
+
+        assertSame(pool.getMailSession(KEY, server::mailProperties), pool.getMailSession(KEY, server::mailProperties));
+        assertNull(pool.borrow("unknown"));
+    }
+
+
+    @Test
+    void closesTransportsAboveMaxIdle() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(1, 60_000);
+        Session mailSession = pool.getMailSession(KEY, server::mailProperties);
+
+        Transport first = connect(mailSession);
+        Transport second = connect(mailSession);
+        pool.release(KEY, first);
+        pool.release(KEY, second);
+
+        assertFalse(second.isConnected());
+        assertSame(first, pool.borrow(KEY));
+        assertNull(pool.borrow(KEY));
+
+        pool.release(KEY, first);
+        pool.close();
+    }
+
+
+    @Test
+    void evictsIdleTransports() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(4, 0);
+        Session mailSession = pool.getMailSession(KEY, server::mailProperties);
+
+        Transport transport = connect(mailSession);
+        pool.release(KEY, transport);
+        pool.evictIdle();
+
+        assertFalse(transport.isConnected());
+        assertNull(pool.borrow(KEY));
+    }
+
+
+    @Test
+    void dropsTheEndpointsNoLongerInUse() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(4, 200);
+        Session mailSession = pool.getMailSession(KEY, server::mailProperties);
+        pool.getMailSession("old-password", server::mailProperties);
+
+        Transport transport = connect(mailSession);
+        pool.release(KEY, transport);
+        pool.evictIdle();
+
+        assertEquals(2, pool.getEndpointCount());
+
+        Thread.sleep(250);
+        assertSame(mailSession, pool.getMailSession(KEY, server::mailProperties));
+        pool.evictIdle();
+
+        assertFalse(transport.isConnected());
+        assertEquals(1, pool.getEndpointCount());
+
+        Thread.sleep(250);
+        pool.evictIdle();
+
+        assertEquals(0, pool.getEndpointCount());
+        assertNotSame(mailSession, pool.getMailSession(KEY, server::mailProperties));
+
+        pool.close();
+    }
+
+
+    @Test
+    void dropsTransportsClosedByTheServer() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(4, 60_000);
+        Session mailSession = pool.getMailSession(KEY, server::mailProperties);
+
+        pool.release(KEY, connect(mailSession));
+        server.dropConnections();
+
+        assertNull(pool.borrow(KEY));
+    }
+
+
+    @Test
+    void fingerprintsTheConfigurationWhateverTheOrder() {
+        String key = SmtpTransportPool.key(Map.of("host", "smtp.example.com", "port", "587", "password", "secret"));
+
+        assertEquals(key, SmtpTransportPool.key(Map.of("password", "secret", "port", "587", "host", "smtp.example.com")));
+        assertNotEquals(key, SmtpTransportPool.key(Map.of("host", "smtp.example.com", "port", "587", "password", "other")));
+        assertFalse(key.contains("secret"));
+    }
+
+
+
+    static Transport connect(Session mailSession) throws MessagingException {
+        Transport transport = mailSession.getTransport("smtp");
+        transport.connect();
+
+        return transport;
+    }
+
+
+    static void send(Session mailSession, Transport transport) throws MessagingException {
+        MimeMessage message = new MimeMessage(mailSession);
+        message.setFrom(new InternetAddress("noreply@trackswiftly.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("invitee@trackswiftly.com"));
+        message.setSubject("Invitation");
+        message.setText("Join the organization");
+
+        transport.sendMessage(message, message.getAllRecipients());
+    }
+}
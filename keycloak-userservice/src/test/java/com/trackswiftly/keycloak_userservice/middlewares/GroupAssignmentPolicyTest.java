@@ -0,0 +1,133 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RealmModel;
+
+import com.trackswiftly.keycloak_userservice.dtos.TrackSwiftlyRoles;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy.Decision;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy.GroupClass;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy.Tier;
+
+
+class GroupAssignmentPolicyTest {
+
+
+    private final GroupAssignmentPolicy policy = new GroupAssignmentPolicy();
+
+
+
+    @Test
+    void adminsCanDoAnythingOthersNothing() {
+        for (Tier target : Tier.values()) {
+            for (GroupClass groupClass : GroupClass.values()) {
+                assertEquals(Decision.ALLOW, policy.decide(Tier.ADMIN, target, groupClass));
+                assertEquals(Decision.DENY_INSUFFICIENT_PERMISSIONS, policy.decide(Tier.OTHER, target, groupClass));
+            }
+        }
+    }
+
+
+    @Test
+    void managersCannotTouchPrivilegedUsersOrGroups() {
+        for (GroupClass groupClass : GroupClass.values()) {
+            assertEquals(Decision.DENY_ADMIN_TARGET, policy.decide(Tier.MANAGER, Tier.ADMIN, groupClass));
+            assertEquals(Decision.DENY_MANAGER_TARGET, policy.decide(Tier.MANAGER, Tier.MANAGER, groupClass));
+        }
+
+        assertEquals(Decision.DENY_PRIVILEGED_GROUP, policy.decide(Tier.MANAGER, Tier.OTHER, GroupClass.ADMIN));
+        assertEquals(Decision.DENY_PRIVILEGED_GROUP, policy.decide(Tier.MANAGER, Tier.OTHER, GroupClass.MANAGER));
+        assertEquals(Decision.REQUIRES_GROUP_ACCESS, policy.decide(Tier.MANAGER, Tier.OTHER, GroupClass.OTHER));
+    }
+
+
+    @Test
+    void rulesListEveryCombination() {
+        Map<Tier, Map<Tier, Map<GroupClass, Decision>>> rules = policy.getRules();
+
+        for (Tier requester : Tier.values()) {
+            for (Tier target : Tier.values()) {
+                for (GroupClass groupClass : GroupClass.values()) {
+                    assertEquals(policy.decide(requester, target, groupClass), rules.get(requester).get(target).get(groupClass));
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void tierAndGroupClassFollowTheHighestRoleAndTheGroupName() {
+        assertEquals(Tier.ADMIN, Tier.of(Set.of(TrackSwiftlyRoles.ADMIN, TrackSwiftlyRoles.MANAGER)));
+        assertEquals(Tier.MANAGER, Tier.of(Set.of(TrackSwiftlyRoles.MANAGER)));
+        assertEquals(Tier.OTHER, Tier.of(Set.of()));
+
+        assertEquals(GroupClass.ADMIN, GroupClass.of("Fleet-ADMINS"));
+        assertEquals(GroupClass.MANAGER, GroupClass.of("site managers"));
+        assertEquals(GroupClass.OTHER, GroupClass.of("drivers"));
+    }
+
+
+    @Test
+    void classifyCompilesTheRealmOnceAndFollowsRenames() {
+        Map<String, String> names = new HashMap<>(Map.of("g1", "admins", "g2", "drivers"));
+        AtomicInteger realmReads = new AtomicInteger();
+        RealmModel realm = realm("realm-1", names, realmReads);
+
+        assertEquals(GroupClass.ADMIN, policy.classify(realm, group("g1", names)));
+        assertEquals(GroupClass.OTHER, policy.classify(realm, group("g2", names)));
+
+        names.put("g2", "managers");
+
+        assertEquals(GroupClass.MANAGER, policy.classify(realm, group("g2", names)));
+        assertEquals(1, realmReads.get());
+
+        policy.evictRealm("realm-1");
+        policy.classify(realm, group("g1", names));
+
+        assertEquals(2, realmReads.get());
+    }
+
+
+
+    private static RealmModel realm(String id, Map<String, String> names, AtomicInteger groupReads) {
+        return stub(RealmModel.class, Map.of(
+            "getId", args -> id,
+            "getGroupsStream", args -> {
+                groupReads.incrementAndGet();
+                return List.copyOf(names.keySet()).stream().map(groupId -> group(groupId, names));
+            }
+        ));
+    }
+
+
+    private static GroupModel group(String id, Map<String, String> names) {
+        return stub(GroupModel.class, Map.of(
+            "getId", args -> id,
+            "getName", args -> names.get(id)
+        ));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            Function<Object[], Object> answer = methods.get(method.getName());
+
+            if (answer == null) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+
+            return answer.apply(args);
+        });
+    }
+}
@@ -0,0 +1,150 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.trackswiftly.keycloak_userservice.testing.TestCaller;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+
+/***
+ *
+ * Time per access check of a manager against 100 targets , half of them in another organization ,
+ * one request (session and transaction) per invocation :
+ *
+ *   nestedStreams      the check before OrganizationAccess : getByMember of the caller and of the target ,
+ *                      nested anyMatch , target per target
+ *   sharesOrganization OrganizationAccess , the caller organizations resolved once , isMember target per target
+ *   filterSharing      OrganizationAccess , the 100 targets in one IN (...) query
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks="OrganizationAccessBenchmark -prof gc"
+ *
+ * Runs on the H2 {@link TestKeycloak} , no Keycloak cache is in front of the JPA model : every getByMember and
+ * isMember is a query , as on a cache miss in Keycloak .
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OrganizationAccessBenchmark {
+
+
+    static final int TARGETS = 100;
+
+
+    private TestKeycloak keycloak;
+    private String realmId;
+    private String managerId;
+    private List<String> targetIds;
+
+
+
+    @Setup
+    public void setUp() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+        targetIds = new ArrayList<>();
+
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+
+            OrganizationModel fleet = organizations.create("TrackSwiftly Fleet", "fleet");
+            OrganizationModel other = organizations.create("Other Fleet", "other");
+
+            UserModel manager = session.users().addUser(realm, "manager");
+            organizations.addMember(fleet, manager);
+            managerId = manager.getId();
+
+            for (int i = 0; i < TARGETS; i++) {
+                UserModel target = session.users().addUser(realm, "driver-" + i);
+                organizations.addMember(i % 2 == 0 ? fleet : other, target);
+                targetIds.add(target.getId());
+            }
+        });
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        keycloak.close();
+    }
+
+
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS)
+    public void nestedStreams(Blackhole blackhole) {
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            OrganizationProvider provider = session.getProvider(OrganizationProvider.class);
+            UserModel manager = session.users().getUserById(realm, managerId);
+
+            for (String targetId : targetIds) {
+                blackhole.consume(nestedStreams(provider, manager, session.users().getUserById(realm, targetId)));
+            }
+        });
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS)
+    public void sharesOrganization(Blackhole blackhole) {
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            OrganizationAccess access = new OrganizationAccess(TestCaller.of(session, managerId));
+
+            for (String targetId : targetIds) {
+                blackhole.consume(access.sharesOrganization(session.users().getUserById(realm, targetId)));
+            }
+        });
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS)
+    public void filterSharing(Blackhole blackhole) {
+        keycloak.runInRealm(realmId, session ->
+            blackhole.consume(new OrganizationAccess(TestCaller.of(session, managerId)).filterSharingOrganization(targetIds))
+        );
+    }
+
+
+
+    /*
+     * AuthenticateMiddleware#checkOrganizationAccess before OrganizationAccess , exact for a caller in one organization
+     */
+    private static boolean nestedStreams(OrganizationProvider provider, UserModel adminUser, UserModel targetUser) {
+        Stream<OrganizationModel> adminOrganizations = provider.getByMember(adminUser);
+        Stream<OrganizationModel> targetUserOrganizations = provider.getByMember(targetUser);
+
+        return adminOrganizations
+            .anyMatch(adminOrg ->
+                targetUserOrganizations.anyMatch(targetOrg ->
+                    targetOrg.getId().equals(adminOrg.getId())
+                )
+            );
+    }
+}
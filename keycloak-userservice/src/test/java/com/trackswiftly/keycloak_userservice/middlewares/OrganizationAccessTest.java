@@ -0,0 +1,179 @@
+package com.trackswiftly.keycloak_userservice.middlewares;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.repositories.OrganizationMemberRepository;
+import com.trackswiftly.keycloak_userservice.testing.TestCaller;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.NotFoundException;
+
+
+class OrganizationAccessTest {
+
+
+    // more members than two IN (...) clauses take
+    private static final int FLEET_MEMBERS = 2 * OrganizationMemberRepository.MAX_IDS_PER_QUERY + 100;
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+
+    // manager of fleet , dispatcher of fleet and rentals
+    private static String managerId;
+    private static String dispatcherId;
+
+    private static String rentalsMemberId;
+    private static String outsiderId;
+    private static String lonerId;
+
+    private static final List<String> fleetMemberIds = new ArrayList<>();
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+
+            OrganizationModel fleet = organizations.create("TrackSwiftly Fleet", "fleet");
+            OrganizationModel rentals = organizations.create("TrackSwiftly Rentals", "rentals");
+            OrganizationModel other = organizations.create("Other Fleet", "other");
+
+            managerId = member(session, organizations, "manager", fleet).getId();
+
+            UserModel dispatcher = member(session, organizations, "dispatcher", fleet);
+            organizations.addMember(rentals, dispatcher);
+            dispatcherId = dispatcher.getId();
+
+            rentalsMemberId = member(session, organizations, "rentals-driver", rentals).getId();
+            outsiderId = member(session, organizations, "outsider", other).getId();
+            lonerId = session.users().addUser(realm, "loner").getId();
+
+            for (int i = 0; i < FLEET_MEMBERS; i++) {
+                fleetMemberIds.add(member(session, organizations, "driver-" + i, fleet).getId());
+            }
+        });
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+
+    @Test
+    void sharesTheOrganizationOfTheCaller() {
+        assertTrue(shares(managerId, fleetMemberIds.get(0)));
+        assertTrue(shares(managerId, dispatcherId));
+
+        assertFalse(shares(managerId, rentalsMemberId));
+        assertFalse(shares(managerId, outsiderId));
+        assertFalse(shares(managerId, lonerId));
+    }
+
+
+    @Test
+    void sharesAnyOfTheOrganizationsOfTheCaller() {
+        // the nested streams check failed here , the target stream was consumed by the first organization
+        assertTrue(shares(dispatcherId, rentalsMemberId));
+        assertTrue(shares(dispatcherId, fleetMemberIds.get(0)));
+
+        assertFalse(shares(dispatcherId, outsiderId));
+    }
+
+
+    @Test
+    void filtersTheUsersSharingAnOrganizationWithTheCaller() {
+        List<String> targets = List.of(fleetMemberIds.get(0), rentalsMemberId, outsiderId, lonerId, "unknown-user");
+
+        assertEquals(Set.of(fleetMemberIds.get(0)), filter(managerId, targets));
+        assertEquals(Set.of(fleetMemberIds.get(0), rentalsMemberId), filter(dispatcherId, targets));
+        assertEquals(Set.of(), filter(managerId, List.of()));
+    }
+
+
+    @Test
+    void filtersAThousandIdsInChunksOfFiveHundred() {
+        List<String> targets = new ArrayList<>(fleetMemberIds);
+        targets.add(outsiderId);
+        targets.add(rentalsMemberId);
+
+        // caller organizations resolved first , only the membership queries are counted
+        long queries = keycloak.callInRealm(realmId, session -> {
+            CallerContext caller = TestCaller.of(session, dispatcherId);
+            caller.getOrganizations();
+
+            keycloak.statistics().clear();
+            Set<String> accessible = new OrganizationAccess(caller).filterSharingOrganization(targets);
+
+            Set<String> expected = new HashSet<>(fleetMemberIds);
+            expected.add(rentalsMemberId);
+            assertEquals(expected, accessible);
+
+            return keycloak.statistics().getQueryExecutionCount();
+        });
+
+        // 1,102 ids : 3 chunks for each of the 2 organizations of the caller
+        assertEquals(6, queries);
+    }
+
+
+    @Test
+    void answersNotFoundThenForbidden() {
+        assertThrows(NotFoundException.class, () -> keycloak.callInRealm(realmId, session ->
+            AuthenticateMiddleware.checkOrganizationAccess(TestCaller.of(session, managerId), "unknown-user")));
+
+        assertThrows(ForbiddenException.class, () -> keycloak.callInRealm(realmId, session ->
+            AuthenticateMiddleware.checkOrganizationAccess(TestCaller.of(session, managerId), outsiderId)));
+
+        String found = keycloak.callInRealm(realmId, session ->
+            AuthenticateMiddleware.checkOrganizationAccess(TestCaller.of(session, managerId), dispatcherId).getId());
+
+        assertEquals(dispatcherId, found);
+    }
+
+
+
+    private static boolean shares(String callerId, String targetId) {
+        return keycloak.callInRealm(realmId, session -> new OrganizationAccess(TestCaller.of(session, callerId))
+            .sharesOrganization(session.users().getUserById(session.getContext().getRealm(), targetId)));
+    }
+
+
+    private static Set<String> filter(String callerId, List<String> targetIds) {
+        return keycloak.callInRealm(realmId, session ->
+            new OrganizationAccess(TestCaller.of(session, callerId)).filterSharingOrganization(targetIds));
+    }
+
+
+    private static UserModel member(KeycloakSession session, OrganizationProvider organizations, String username, OrganizationModel organization) {
+        UserModel user = session.users().addUser(session.getContext().getRealm(), username);
+        organizations.addMember(organization, user);
+
+        return user;
+    }
+}
@@ -0,0 +1,159 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.organization.OrganizationProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.trackswiftly.keycloak_userservice.dtos.MemberSummary;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+
+/***
+ *
+ * Time of a page of 20 members of an organization of 50,000 members , in a realm of 100,000 users :
+ * the first page , the page in the middle and the last page , each read after the username of the page before .
+ * The 50,000 members of another organization sort between the last two pages of the first .
+ *
+ *   realmUsernameIndex the query before TS_ORG_MEMBER : the users of the realm in username order ,
+ *                      the membership checked user per user
+ *   memberIndex        OrganizationMemberRepository#findMembersAfter on the (ORGANIZATION_ID , USERNAME) index
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks="OrganizationMemberRepositoryBenchmark"
+ *
+ * Runs on the H2 {@link TestKeycloak} , the users , their memberships and the member index are inserted with plain SQL .
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OrganizationMemberRepositoryBenchmark {
+
+
+    static final int MEMBERS = 50_000;
+    static final int PAGE_SIZE = 20;
+
+
+    @Param({"first", "middle", "last"})
+    public String page;
+
+    private TestKeycloak keycloak;
+    private String realmId;
+    private String fleetId;
+    private String afterUsername;
+
+
+
+    @Setup
+    public void setUp() throws SQLException {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        String otherId = keycloak.callInRealm(realmId, session -> {
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+
+            fleetId = organizations.create("TrackSwiftly Fleet", "fleet").getId();
+
+            return organizations.create("Other Fleet", "other").getId();
+        });
+
+        try (Connection connection = keycloak.jdbc()) {
+            execute(connection,
+                "INSERT INTO USER_ENTITY (ID , USERNAME , EMAIL_CONSTRAINT , REALM_ID , ENABLED , EMAIL_VERIFIED , NOT_BEFORE , CREATED_TIMESTAMP) " +
+                "SELECT 'user-id-' || X , 'user-' || LPAD(X , 6 , '0') , 'user-id-' || X , ? , TRUE , FALSE , 0 , 0 " +
+                "FROM SYSTEM_RANGE(0 , ?)",
+                realmId, 2 * MEMBERS - 1);
+
+            execute(connection,
+                "INSERT INTO USER_GROUP_MEMBERSHIP (GROUP_ID , USER_ID , MEMBERSHIP_TYPE) " +
+                "SELECT CASE WHEN X < ? OR X >= ? THEN (SELECT GROUP_ID FROM ORG WHERE ID = ?) ELSE (SELECT GROUP_ID FROM ORG WHERE ID = ?) END , " +
+                "'user-id-' || X , 'UNMANAGED' FROM SYSTEM_RANGE(0 , ?)",
+                MEMBERS - PAGE_SIZE / 2, 2 * MEMBERS - PAGE_SIZE / 2, fleetId, otherId, 2 * MEMBERS - 1);
+
+            // as the changelog fills the index on an existing database
+            execute(connection,
+                "INSERT INTO TS_ORG_MEMBER (ORGANIZATION_ID , USER_ID , USERNAME) " +
+                "SELECT O.ID , M.USER_ID , U.USERNAME FROM ORG O " +
+                "JOIN USER_GROUP_MEMBERSHIP M ON M.GROUP_ID = O.GROUP_ID JOIN USER_ENTITY U ON U.ID = M.USER_ID");
+
+            execute(connection, "ANALYZE");
+
+            // H2 would otherwise hand back the result of the same query while the tables are unchanged
+            execute(connection, "SET OPTIMIZE_REUSE_RESULTS FALSE");
+        }
+
+        afterUsername = switch (page) {
+            case "first" -> null;
+            case "middle" -> String.format("user-%06d", MEMBERS / 2);
+            default -> String.format("user-%06d", MEMBERS - PAGE_SIZE - 1);
+        };
+
+        if (memberIndex().size() != PAGE_SIZE || realmUsernameIndex().size() != PAGE_SIZE) {
+            throw new IllegalStateException("Expected a full page");
+        }
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        keycloak.close();
+    }
+
+
+
+    @Benchmark
+    public List<MemberSummary> memberIndex() {
+        return keycloak.callInRealm(realmId, session -> new OrganizationMemberRepository(session).findMembersAfter(
+            session.getProvider(OrganizationProvider.class).getById(fleetId), afterUsername, null, PAGE_SIZE));
+    }
+
+
+    @Benchmark
+    public List<MemberSummary> realmUsernameIndex() {
+        return keycloak.callInRealm(realmId, session -> session.getProvider(JpaConnectionProvider.class).getEntityManager().createQuery(
+                "select new " + MemberSummary.class.getName() + "(u.id , u.username , u.email , u.firstName , u.lastName , u.enabled) " +
+                "from UserGroupMembershipEntity m join m.user u , OrganizationEntity o " +
+                "where u.realmId = :realmId and o.id = :organizationId and m.groupId = o.groupId and u.username > :afterUsername " +
+                "order by u.username", MemberSummary.class)
+            .setParameter("realmId", realmId)
+            .setParameter("organizationId", fleetId)
+            .setParameter("afterUsername", afterUsername == null ? "" : afterUsername)
+            .setMaxResults(PAGE_SIZE)
+            .getResultList());
+    }
+
+
+
+    private static void execute(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            if (statement.execute()) {
+                try (ResultSet ignored = statement.getResultSet()) {
+                    // ANALYZE returns no rows
+                }
+            }
+        }
+    }
+}
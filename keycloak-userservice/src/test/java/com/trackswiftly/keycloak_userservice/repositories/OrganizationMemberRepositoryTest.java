@@ -0,0 +1,199 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserManager;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.dtos.MemberSummary;
+import com.trackswiftly.keycloak_userservice.events.TrackSwiftlyModelEventListener;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy;
+import com.trackswiftly.keycloak_userservice.middlewares.RealmRegistry;
+import com.trackswiftly.keycloak_userservice.services.GroupCatalog;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+import com.trackswiftly.keycloak_userservice.utils.OriginPolicyRegistry;
+
+
+class OrganizationMemberRepositoryTest {
+
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+    private static String fleetId;
+    private static String otherId;
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        // the member index follows the membership through the model events
+        Config.Scope config = new Config.SystemPropertiesScope("keycloak.users-services.");
+        keycloak.register(new TrackSwiftlyModelEventListener(
+            RealmRegistry.fromConfig(config), new GroupAssignmentPolicy(), new GroupCatalog(), OriginPolicyRegistry.fromConfig(config)));
+
+        keycloak.runInRealm(realmId, session -> {
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+
+            OrganizationModel fleet = organizations.create("TrackSwiftly Fleet", "fleet");
+            OrganizationModel other = organizations.create("Other Fleet", "other");
+            fleetId = fleet.getId();
+            otherId = other.getId();
+
+            // joined out of username order , members of the other organization in between
+            for (int i = 9; i >= 0; i--) {
+                member(session, fleet, "driver-" + i);
+                member(session, other, "driver-" + i + "-other");
+            }
+
+            UserModel jane = member(session, fleet, "jane");
+            jane.setEmail("jane.doe@trackswiftly.com");
+            jane.setFirstName("Jane");
+            jane.setLastName("Smith");
+
+            session.users().addUser(session.getContext().getRealm(), "loner");
+        });
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+
+    @Test
+    void pagesThroughTheMembersInUsernameOrder() {
+        List<String> usernames = new ArrayList<>();
+        String after = null;
+
+        for (List<String> page = page(fleetId, null, null, 4); !page.isEmpty(); page = page(fleetId, after, null, 4)) {
+            usernames.addAll(page);
+            after = page.get(page.size() - 1);
+        }
+
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            expected.add("driver-" + i);
+        }
+
+        expected.add("jane");
+
+        assertEquals(expected, usernames);
+    }
+
+
+    @Test
+    void searchesTheUsernameEmailAndNamesByPrefix() {
+        assertEquals(List.of("driver-1"), page(fleetId, null, "Driver-1", 10));
+        assertEquals(List.of("jane"), page(fleetId, null, "jane.doe@", 10));
+        assertEquals(List.of("jane"), page(fleetId, null, "SMI", 10));
+        assertEquals(List.of("driver-2", "driver-3"), page(fleetId, "driver-1", "driver-", 2));
+
+        // the wildcards of LIKE are searched as is
+        assertEquals(List.of(), page(fleetId, null, "driver_", 10));
+    }
+
+
+    @Test
+    void followsTheMembersWhoJoinLeaveOrAreRemoved() {
+        keycloak.runInRealm(realmId, session -> {
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+            OrganizationModel fleet = organizations.getById(fleetId);
+
+            member(session, fleet, "newcomer");
+            organizations.removeMember(fleet, user(session, "driver-5"));
+        });
+
+        assertEquals(List.of("driver-4", "driver-6", "driver-7", "driver-8", "driver-9", "jane", "newcomer"), page(fleetId, "driver-3", null, 10));
+
+        keycloak.runInRealm(realmId, session ->
+            new UserManager(session).removeUser(session.getContext().getRealm(), user(session, "newcomer")));
+
+        assertEquals(List.of("jane"), page(fleetId, "driver-9", null, 10));
+
+        keycloak.runInRealm(realmId, session ->
+            session.getProvider(OrganizationProvider.class).addMember(
+                session.getProvider(OrganizationProvider.class).getById(fleetId), user(session, "driver-5")));
+
+        assertEquals(List.of("driver-5"), page(fleetId, "driver-4", null, 1));
+    }
+
+
+    @Test
+    void sortsARenamedMemberUnderItsNewUsername() {
+        keycloak.runInRealm(realmId, session -> {
+            UserModel driver = user(session, "driver-0-other");
+            driver.setUsername("zed");
+
+            // as the admin event listener does after an update of the user
+            new OrganizationMemberRepository(session).renameUser(driver);
+        });
+
+        assertEquals(List.of("driver-9-other", "zed"), page(otherId, "driver-8-other", null, 10));
+
+        keycloak.runInRealm(realmId, session -> {
+            UserModel driver = user(session, "zed");
+            driver.setUsername("driver-0-other");
+            new OrganizationMemberRepository(session).renameUser(driver);
+        });
+
+        assertEquals(List.of("driver-0-other"), page(otherId, null, null, 1));
+    }
+
+
+    @Test
+    void readsAPageInOneQuery() {
+        long queries = keycloak.callInRealm(realmId, session -> {
+            OrganizationModel fleet = session.getProvider(OrganizationProvider.class).getById(fleetId);
+
+            keycloak.statistics().clear();
+            new OrganizationMemberRepository(session).findMembersAfter(fleet, "driver-2", "driver", 3);
+
+            return keycloak.statistics().getQueryExecutionCount();
+        });
+
+        assertEquals(1, queries);
+    }
+
+
+
+    /*
+     * usernames of a page of the members of the organization
+     */
+    private static List<String> page(String organizationId, String afterUsername, String search, int max) {
+        return keycloak.callInRealm(realmId, session -> new OrganizationMemberRepository(session).findMembersAfter(
+                session.getProvider(OrganizationProvider.class).getById(organizationId), afterUsername, search, max)
+            .stream().map(MemberSummary::username).toList());
+    }
+
+
+    private static UserModel member(KeycloakSession session, OrganizationModel organization, String username) {
+        UserModel user = session.users().addUser(session.getContext().getRealm(), username);
+        session.getProvider(OrganizationProvider.class).addMember(organization, user);
+
+        return user;
+    }
+
+
+    private static UserModel user(KeycloakSession session, String username) {
+        RealmModel realm = session.getContext().getRealm();
+
+        return session.users().getUserByUsername(realm, username);
+    }
+}
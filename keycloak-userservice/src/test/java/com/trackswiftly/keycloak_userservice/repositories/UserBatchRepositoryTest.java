@@ -0,0 +1,218 @@
+package com.trackswiftly.keycloak_userservice.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.services.RoleGraph;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+
+class UserBatchRepositoryTest {
+
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+    private static String janeId;
+    private static String johnId;
+
+    // more users than one IN (...) clause takes
+    private static final List<String> crewIds = new ArrayList<>();
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            realm.setDuplicateEmailsAllowed(true);
+
+            // dispatcher -> viewer , drivers (driver) under fleet (fleet-user)
+            RoleModel dispatcher = session.roles().addRealmRole(realm, "dispatcher");
+            dispatcher.addCompositeRole(session.roles().addRealmRole(realm, "viewer"));
+
+            GroupModel fleet = session.groups().createGroup(realm, "fleet");
+            fleet.grantRole(session.roles().addRealmRole(realm, "fleet-user"));
+
+            GroupModel drivers = session.groups().createGroup(realm, "drivers", fleet);
+            drivers.grantRole(session.roles().addRealmRole(realm, "driver"));
+
+            UserModel jane = session.users().addUser(realm, "jane");
+            jane.setEmail("jane@trackswiftly.com");
+            jane.grantRole(dispatcher);
+            jane.joinGroup(drivers);
+            janeId = jane.getId();
+
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+            organizations.addMember(organizations.create("TrackSwiftly Fleet", "fleet"), jane);
+
+            UserModel john = session.users().addUser(realm, "john");
+            john.setEmail("John@TrackSwiftly.com");
+            johnId = john.getId();
+
+            // two accounts on one address
+            session.users().addUser(realm, "shared-1").setEmail("shared@trackswiftly.com");
+            session.users().addUser(realm, "shared-2").setEmail("shared@trackswiftly.com");
+
+            for (int i = 0; i < OrganizationMemberRepository.MAX_IDS_PER_QUERY + 100; i++) {
+                crewIds.add(session.users().addUser(realm, "crew-" + i).getId());
+            }
+        });
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+
+    @Test
+    void findsTheUsersByIdOneQueryPerChunk() {
+        keycloak.statistics().clear();
+
+        int found = keycloak.callInRealm(realmId, session -> {
+            try (UserBatchRepository repository = new UserBatchRepository(session)) {
+                return repository.findByIds(session.getContext().getRealm(), crewIds).size();
+            }
+        });
+
+        assertEquals(crewIds.size(), found);
+        assertEquals(2, keycloak.statistics().getQueryExecutionCount());
+    }
+
+
+    @Test
+    void findsTheUsersByLowerCaseEmail() {
+        Map<String, String> ids = keycloak.callInRealm(realmId, session -> {
+            try (UserBatchRepository repository = new UserBatchRepository(session)) {
+                Map<String, UserModel> users = repository.findByEmails(
+                    session.getContext().getRealm(), List.of("JANE@trackswiftly.com", "john@trackswiftly.com", "nobody@trackswiftly.com"));
+
+                return Map.of(
+                    "jane", users.get("jane@trackswiftly.com").getId(),
+                    "john", users.get("john@trackswiftly.com").getId(),
+                    "nobody", String.valueOf(users.containsKey("nobody@trackswiftly.com"))
+                );
+            }
+        });
+
+        assertEquals(janeId, ids.get("jane"));
+        assertEquals(johnId, ids.get("john"));
+        assertEquals("false", ids.get("nobody"));
+    }
+
+
+    @Test
+    void mapsAnEmailSharedBySeveralUsersToNull() {
+        boolean shared = keycloak.callInRealm(realmId, session -> {
+            try (UserBatchRepository repository = new UserBatchRepository(session)) {
+                Map<String, UserModel> users = repository.findByEmails(
+                    session.getContext().getRealm(), List.of("shared@trackswiftly.com", "jane@trackswiftly.com"));
+
+                assertNotNull(users.get("jane@trackswiftly.com"));
+
+                return users.containsKey("shared@trackswiftly.com") && users.get("shared@trackswiftly.com") == null;
+            }
+        });
+
+        assertTrue(shared);
+    }
+
+
+    @Test
+    void leavesTheUsersOfTheRequestManaged() {
+        // the request holds jane before and after the batch , its changes are still written
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            UserModel jane = session.users().getUserById(realm, janeId);
+
+            try (UserBatchRepository repository = new UserBatchRepository(session)) {
+                repository.findByIds(realm, List.of(janeId, johnId));
+                repository.findByEmails(realm, List.of("jane@trackswiftly.com"));
+            }
+
+            jane.setFirstName("Jane");
+        });
+
+        String firstName = keycloak.callInRealm(realmId, session ->
+            session.users().getUserById(session.getContext().getRealm(), janeId).getFirstName());
+
+        assertEquals("Jane", firstName);
+    }
+
+
+    @Test
+    void readsTheAttributesOfTheUsersAfterClose() {
+        String email = keycloak.callInRealm(realmId, session -> {
+            UserModel jane;
+
+            try (UserBatchRepository repository = new UserBatchRepository(session)) {
+                jane = repository.findByIds(session.getContext().getRealm(), List.of(janeId)).get(janeId);
+            }
+
+            return jane.getEmail() + " " + jane.getUsername() + " " + jane.getAttributes().containsKey(UserModel.EMAIL);
+        });
+
+        assertEquals("jane@trackswiftly.com jane true", email);
+    }
+
+
+    @Test
+    void expandsTheRolesOfTheUserAndOfItsGroups() {
+        Set<String> roles = keycloak.callInRealm(realmId, session -> {
+            UserBatchRepository repository = new UserBatchRepository(session);
+            List<String> ids = List.of(janeId);
+
+            return new RoleGraph(session, session.getContext().getRealm()).expand(
+                repository.findRoleIds(ids).get(janeId),
+                repository.findGroupIds(ids).get(janeId)
+            );
+        });
+
+        assertEquals(Set.of("default-roles-fleet", "dispatcher", "viewer", "driver", "fleet-user"), roles);
+    }
+
+
+    @Test
+    void listsTheGroupsOfTheUsersWithoutTheOrganizationGroups() {
+        Map<String, List<String>> groupNames = keycloak.call(session ->
+            new UserBatchRepository(session).findGroupNames(List.of(janeId, johnId)));
+
+        // jane is also in the internal group of the organization , john in no group
+        assertEquals(List.of("drivers"), groupNames.get(janeId));
+        assertNull(groupNames.get(johnId));
+    }
+
+
+    @Test
+    void findsOnlyTheDirectRoleMappings() {
+        Map<String, List<String>> roleIds = keycloak.callInRealm(realmId, session ->
+            new UserBatchRepository(session).findRoleIds(List.of(janeId, johnId)));
+
+        Set<String> names = keycloak.callInRealm(realmId, session ->
+            new RoleGraph(session, session.getContext().getRealm()).names(roleIds.get(janeId)));
+
+        assertEquals(Set.of("default-roles-fleet", "dispatcher"), names);
+        assertEquals(1, roleIds.get(johnId).size());
+    }
+}
@@ -0,0 +1,268 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.email.EmailException;
+import org.keycloak.email.EmailSenderProvider;
+import org.keycloak.models.RealmModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.dtos.BulkInvitationResponse;
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.dtos.InvitationResult;
+import com.trackswiftly.keycloak_userservice.repositories.PendingInvitationRepository;
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+import com.trackswiftly.keycloak_userservice.utils.EmailValidator;
+
+
+class BulkInvitationSenderTest {
+
+
+    /*
+     * what the email sender of the test Keycloak does with each address
+     */
+    private interface Send {
+        void send(String address) throws EmailException;
+    }
+
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+    private static String organizationId;
+
+    private static volatile Send send = address -> {};
+
+    private BulkInvitationSender sender;
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+
+        keycloak.register(EmailSenderProvider.class, session -> new EmailSenderProvider() {
+            @Override
+            public void send(Map<String, String> config, String address, String subject, String textBody, String htmlBody) throws EmailException {
+                send.send(address);
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        });
+
+        realmId = keycloak.createRealm("fleet");
+
+        organizationId = keycloak.callInRealm(realmId, session ->
+            session.getProvider(OrganizationProvider.class).create("TrackSwiftly Fleet", "fleet").getId()
+        );
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+    @AfterEach
+    void stopSender() {
+        send = address -> {};
+
+        if (sender != null) {
+            sender.stop();
+        }
+    }
+
+
+
+    @Test
+    void answersInTheOrderOfTheEmails() {
+        sender = start(8, 4);
+        send = address -> {
+            sleep(ThreadLocalRandom.current().nextInt(10));
+
+            if (address.startsWith("fail")) {
+                throw new EmailException(address);
+            }
+        };
+
+        List<RenderedEmail> emails = new ArrayList<>();
+
+        for (int i = 0; i < 40; i++) {
+            emails.add(email((i % 3 == 0 ? "fail" : "user") + i + "@trackswiftly.com"));
+        }
+
+        List<Exception> failures = sendAll(emails);
+
+        assertEquals(emails.size(), failures.size());
+
+        for (int i = 0; i < emails.size(); i++) {
+            if (i % 3 == 0) {
+                assertEquals(emails.get(i).address(), failures.get(i).getMessage());
+            } else {
+                assertNull(failures.get(i), emails.get(i).address());
+            }
+        }
+    }
+
+
+    @Test
+    void sendsNoMoreEmailsAtOnceThanTheRealmPermits() {
+        sender = start(8, 2);
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        send = address -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(20);
+            inFlight.decrementAndGet();
+        };
+
+        List<RenderedEmail> emails = new ArrayList<>();
+
+        for (int i = 0; i < 24; i++) {
+            emails.add(email("user" + i + "@trackswiftly.com"));
+        }
+
+        assertTrue(sendAll(emails).stream().allMatch(failure -> failure == null));
+        assertEquals(2, maxInFlight.get());
+    }
+
+
+    @Test
+    void failsTheEmailsTheFullQueueCannotTake() throws Exception {
+        // one worker busy , 16 queued , the rest is rejected
+        sender = start(1, 100);
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        send = address -> await(blocked);
+
+        List<RenderedEmail> emails = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            emails.add(email("user" + i + "@trackswiftly.com"));
+        }
+
+        CompletableFuture<List<Exception>> sent = CompletableFuture.supplyAsync(() -> sendAll(emails));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+
+        while (!sender.isSaturated() && System.currentTimeMillis() < deadline) {
+            sleep(5);
+        }
+
+        assertTrue(sender.isSaturated());
+        blocked.countDown();
+
+        List<Exception> failures = sent.get(10, TimeUnit.SECONDS);
+
+        for (int i = 0; i < emails.size(); i++) {
+            if (i < 17) {
+                assertNull(failures.get(i));
+            } else {
+                assertInstanceOf(RejectedExecutionException.class, failures.get(i));
+            }
+        }
+
+        assertFalse(sender.isSaturated());
+    }
+
+
+    @Test
+    void dropsTheClaimsOfTheInvitationsNotSent() {
+        sender = start(4, 4);
+        send = address -> {
+            if (address.startsWith("fail")) {
+                throw new EmailException("Mailbox unavailable");
+            }
+        };
+
+        List<InvitationRequest> requests = List.of(
+            InvitationRequest.builder().email("sent@trackswiftly.com").firstName("Jane").lastName("Doe").build(),
+            InvitationRequest.builder().email("fail@trackswiftly.com").firstName("John").lastName("Doe").build()
+        );
+
+        List<InvitationResult> results = keycloak.callInRealm(realmId, session -> {
+            BulkInvitationResponse response = (BulkInvitationResponse) OrganizationInvitationService.forOrganization(
+                session,
+                session.getProvider(OrganizationProvider.class).getById(organizationId),
+                new FixedInvitationTemplates(),
+                new PendingInvitationIndex(3600)
+            ).inviteMultipleUsers(requests, EmailValidator.validateInvitationRequests(requests), sender).getEntity();
+
+            return response.getResults();
+        });
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("EMAIL_SEND_FAILED", results.get(1).getErrorCode());
+
+        List<String> pending = keycloak.call(session -> List.copyOf(new PendingInvitationRepository(session)
+            .findLatest(organizationId, List.of("sent@trackswiftly.com", "fail@trackswiftly.com")).keySet()));
+
+        assertEquals(List.of("sent@trackswiftly.com"), pending);
+    }
+
+
+
+    private static BulkInvitationSender start(int workers, int realmConcurrency) {
+        BulkInvitationSender sender = new BulkInvitationSender(workers, 100, new RealmSendLimiter(realmConcurrency));
+        sender.start(keycloak);
+
+        return sender;
+    }
+
+
+    private List<Exception> sendAll(List<RenderedEmail> emails) {
+        return keycloak.callInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+
+            return sender.sendAll(realm, emails);
+        });
+    }
+
+
+    private static RenderedEmail email(String address) {
+        return new RenderedEmail(address, FixedInvitationTemplates.SUBJECT, "Join: https://sso.trackswiftly.com/l", null);
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+
+
+/***
+ *
+ * Template cache always holding the same compiled invitation , the tests render invitations without a theme .
+ */
+class FixedInvitationTemplates extends InvitationTemplateCache {
+
+
+    static final String SUBJECT = "Invitation to join TrackSwiftly Fleet";
+
+
+    private final InvitationTemplate template = InvitationTemplate.compile(new RenderedEmail(
+        InvitationTemplate.EMAIL_SENTINEL,
+        SUBJECT,
+        "Hello " + InvitationTemplate.FIRST_NAME_SENTINEL + " " + InvitationTemplate.LAST_NAME_SENTINEL + ", join: " + InvitationTemplate.LINK_SENTINEL,
+        null
+    ));
+
+
+    FixedInvitationTemplates() {
+        super(1, 3600);
+    }
+
+
+
+    @Override
+    public InvitationTemplate get(String key) {
+        return template;
+    }
+
+
+    @Override
+    public void put(String key, InvitationTemplate template) {
+        // always cached
+    }
+}
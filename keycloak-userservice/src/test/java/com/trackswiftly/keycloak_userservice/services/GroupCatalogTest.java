@@ -0,0 +1,198 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.Config;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.events.TrackSwiftlyModelEventListener;
+import com.trackswiftly.keycloak_userservice.middlewares.GroupAssignmentPolicy;
+import com.trackswiftly.keycloak_userservice.middlewares.RealmRegistry;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+import com.trackswiftly.keycloak_userservice.utils.OriginPolicyRegistry;
+
+
+class GroupCatalogTest {
+
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+
+    // the catalog of this node , patched by the model events , and the catalog of another node
+    private static final GroupCatalog catalog = new GroupCatalog();
+    private static final GroupCatalog otherNode = new GroupCatalog();
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        Config.Scope config = new Config.SystemPropertiesScope("keycloak.users-services.");
+        keycloak.register(new TrackSwiftlyModelEventListener(
+            RealmRegistry.fromConfig(config), new GroupAssignmentPolicy(), catalog, OriginPolicyRegistry.fromConfig(config)));
+
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+
+            GroupModel drivers = session.groups().createGroup(realm, "DRIVERS");
+            session.groups().createGroup(realm, "night shift", drivers);
+            session.groups().createGroup(realm, "MANAGERS");
+        });
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+
+    @Test
+    void keepsTheEtagAndReadsNothingWhileTheGroupsDoNotChange() {
+        String etag = etag(catalog);
+
+        long queries = keycloak.callInRealm(realmId, session -> {
+            keycloak.statistics().clear();
+            catalog.get(session, session.getContext().getRealm());
+
+            return keycloak.statistics().getQueryExecutionCount();
+        });
+
+        assertEquals(etag, etag(catalog));
+        assertEquals(0, queries);
+    }
+
+
+    @Test
+    void changesTheEtagWhenAGroupIsCreated() {
+        String before = etag(catalog);
+
+        String groupId = keycloak.callInRealm(realmId, session ->
+            session.groups().createGroup(session.getContext().getRealm(), "DISPATCHERS").getId());
+
+        String after = etag(catalog);
+
+        assertNotEquals(before, after);
+        assertEquals(groupId, topLevelId("DISPATCHERS"));
+
+        // another node rebuilds the same listing
+        assertEquals(after, etag(otherNode));
+
+        remove("DISPATCHERS");
+    }
+
+
+    @Test
+    void changesTheEtagWhenAGroupIsRenamed() {
+        etag(otherNode);
+        String before = etag(catalog);
+
+        rename("MANAGERS", "FLEET MANAGERS");
+
+        String after = etag(catalog);
+
+        assertNotEquals(before, after);
+        assertNull(topLevelId("MANAGERS"));
+        assertEquals(after, etag(otherNode));
+
+        rename("FLEET MANAGERS", "MANAGERS");
+
+        assertEquals(before, etag(catalog));
+        assertEquals(before, etag(otherNode));
+    }
+
+
+    @Test
+    void changesTheEtagWhenAGroupIsRemovedWithItsSubGroups() {
+        keycloak.runInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            session.groups().createGroup(realm, "night dispatch", session.groups().createGroup(realm, "TEMPORARY"));
+        });
+
+        String before = etag(catalog);
+        int groups = groupCount();
+
+        remove("TEMPORARY");
+
+        assertNotEquals(before, etag(catalog));
+        assertEquals(groups - 2, groupCount());
+        assertNull(topLevelId("TEMPORARY"));
+    }
+
+
+    @Test
+    void keepsTheEtagWhenTheChangeIsRolledBack() {
+        String before = etag(catalog);
+
+        assertThrows(IllegalStateException.class, () -> keycloak.runInRealm(realmId, session -> {
+            session.groups().createGroup(session.getContext().getRealm(), "ROLLED BACK");
+
+            throw new IllegalStateException("The request failed after the group was created");
+        }));
+
+        assertEquals(before, etag(catalog));
+        assertNull(topLevelId("ROLLED BACK"));
+    }
+
+
+    @Test
+    void listsNoOrganizationGroup() {
+        String before = etag(catalog);
+
+        keycloak.runInRealm(realmId, session ->
+            session.getProvider(OrganizationProvider.class).create("TrackSwiftly Fleet " + System.nanoTime(), "fleet-" + System.nanoTime()));
+
+        assertEquals(before, etag(catalog));
+    }
+
+
+
+    private static String etag(GroupCatalog groupCatalog) {
+        return keycloak.callInRealm(realmId, session -> groupCatalog.get(session, session.getContext().getRealm()).etag());
+    }
+
+
+    private static String topLevelId(String name) {
+        return keycloak.callInRealm(realmId, session -> catalog.get(session, session.getContext().getRealm()).topLevelIds().get(name));
+    }
+
+
+    private static int groupCount() {
+        return keycloak.callInRealm(realmId, session -> catalog.get(session, session.getContext().getRealm()).byId().size());
+    }
+
+
+    private static void rename(String name, String newName) {
+        keycloak.runInRealm(realmId, session -> group(session, name).setName(newName));
+    }
+
+
+    private static void remove(String name) {
+        keycloak.runInRealm(realmId, session -> session.groups().removeGroup(session.getContext().getRealm(), group(session, name)));
+    }
+
+
+    private static GroupModel group(KeycloakSession session, String name) {
+        List<GroupModel> groups = session.groups().getTopLevelGroupsStream(session.getContext().getRealm())
+            .filter(group -> group.getName().equals(name))
+            .toList();
+
+        assertEquals(1, groups.size(), name);
+
+        return groups.get(0);
+    }
+}
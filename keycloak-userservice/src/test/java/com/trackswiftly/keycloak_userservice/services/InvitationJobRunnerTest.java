@@ -0,0 +1,372 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.entities.InvitationJobEntity;
+import com.trackswiftly.keycloak_userservice.repositories.InvitationJobRepository;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+import com.trackswiftly.keycloak_userservice.utils.EmailValidator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.NotFoundException;
+
+
+class InvitationJobRunnerTest {
+
+
+    private static final int CHUNK_SIZE = 3;
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+    private static String organizationId;
+    private static String otherOrganizationId;
+    private static String otherRealmId;
+    private static String otherRealmOrganizationId;
+
+    /*
+     * the claim of a chunk with crash@ fails while set , as a crash of the node halfway through the job would
+     */
+    private static volatile CountDownLatch crash;
+
+    private InvitationJobRunner runner;
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+        otherRealmId = keycloak.createRealm("other");
+
+        keycloak.runInRealm(realmId, session -> {
+            OrganizationProvider organizations = session.getProvider(OrganizationProvider.class);
+            OrganizationModel organization = organizations.create("TrackSwiftly Fleet", "fleet");
+            organizationId = organization.getId();
+            otherOrganizationId = organizations.create("TrackSwiftly Rentals", "rentals").getId();
+
+            UserModel member = session.users().addUser(session.getContext().getRealm(), "member");
+            member.setEmail("member@trackswiftly.com");
+            member.setEnabled(true);
+            organizations.addMember(organization, member);
+        });
+
+        otherRealmOrganizationId = keycloak.callInRealm(otherRealmId, session ->
+            session.getProvider(OrganizationProvider.class).create("TrackSwiftly Fleet", "fleet").getId()
+        );
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+    @AfterEach
+    void stopRunner() {
+        crash = null;
+
+        if (runner != null) {
+            runner.stop();
+        }
+
+        // a job left by a test would be claimed by the runner of the next one
+        keycloak.run(session -> {
+            EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+
+            em.createQuery("delete from InvitationJobRowEntity").executeUpdate();
+            em.createQuery("delete from InvitationJobEntity").executeUpdate();
+            em.createQuery("delete from InvitationOutboxEntity").executeUpdate();
+        });
+    }
+
+
+
+    @Test
+    void runsAJobChunkAfterChunkAndRecordsTheRowResults() {
+        runner = start();
+
+        String jobId = createJob(
+            "jane@trackswiftly.com", "john@trackswiftly.com", "member@trackswiftly.com",
+            "ana@trackswiftly.com", "JANE@trackswiftly.com", "omar@trackswiftly.com", "lea@trackswiftly.com"
+        );
+
+        InvitationJobEntity pending = find(jobId);
+
+        assertEquals(InvitationJobEntity.STATUS_PENDING, pending.getStatus());
+        assertEquals(7, pending.getTotal());
+        assertEquals(0, pending.getProcessed());
+
+        InvitationJobEntity job = awaitFinished(jobId);
+
+        assertEquals(InvitationJobEntity.STATUS_COMPLETED, job.getStatus());
+        assertEquals(7, job.getProcessed());
+        assertEquals(5, job.getSucceeded());
+        assertEquals(2, job.getFailures());
+        assertNull(job.getLastError());
+
+        // the member and the duplicate failed , the others are queued in the outbox
+        assertEquals(Map.of(2, "ALREADY_MEMBER", 4, "DUPLICATE_EMAIL"), failedRows(jobId));
+        assertEquals(List.of("ana@trackswiftly.com", "jane@trackswiftly.com", "john@trackswiftly.com", "lea@trackswiftly.com", "omar@trackswiftly.com"),
+            queued());
+    }
+
+
+    @Test
+    void goesOnFromTheLastCommittedChunkAfterAFailure() throws InterruptedException {
+        runner = start();
+        crash = new CountDownLatch(1);
+
+        // the second chunk fails , the first one stays committed
+        String jobId = createJob(
+            "one@trackswiftly.com", "two@trackswiftly.com", "three@trackswiftly.com",
+            "four@trackswiftly.com", "crash@trackswiftly.com", "six@trackswiftly.com",
+            "seven@trackswiftly.com"
+        );
+
+        runner.poll();
+        assertTrue(crash.await(20, TimeUnit.SECONDS));
+
+        InvitationJobEntity failed = find(jobId);
+
+        assertEquals(InvitationJobEntity.STATUS_RUNNING, failed.getStatus());
+        assertEquals(CHUNK_SIZE, failed.getProcessed());
+        assertEquals(CHUNK_SIZE, failed.getSucceeded());
+        assertEquals(List.of("one@trackswiftly.com", "three@trackswiftly.com", "two@trackswiftly.com"), queued());
+
+        // leased until the lease of the failed node ends
+        crash = null;
+        runner.poll();
+        Thread.sleep(100);
+
+        assertEquals(CHUNK_SIZE, find(jobId).getProcessed());
+
+        endLease(jobId);
+        InvitationJobEntity job = awaitFinished(jobId);
+
+        assertEquals(InvitationJobEntity.STATUS_COMPLETED, job.getStatus());
+        assertEquals(7, job.getProcessed());
+        assertEquals(7, job.getSucceeded());
+
+        // the rolled back chunk queued nothing , each address once
+        assertEquals(7, queued().size());
+    }
+
+
+    @Test
+    void commitsAChunkOnlyForTheOwnerOfTheLease() {
+        String jobId = createJob("jane@trackswiftly.com", "john@trackswiftly.com");
+        long now = System.currentTimeMillis();
+
+        List<String> claimed = keycloak.call(session -> new InvitationJobRepository(session).claimRunnable(now, 10, "node-1", 60_000));
+
+        assertTrue(claimed.contains(jobId));
+
+        // leased , no other node claims it
+        List<String> claimedAgain = keycloak.call(session -> new InvitationJobRepository(session).claimRunnable(now, 10, "node-2", 60_000));
+
+        assertFalse(claimedAgain.contains(jobId));
+
+        boolean otherOwner = keycloak.call(session -> new InvitationJobRepository(session).commitChunk(jobId, "node-2", 0, 1, 1, 0, now));
+        boolean wrongChunk = keycloak.call(session -> new InvitationJobRepository(session).commitChunk(jobId, "node-1", 1, 1, 1, 0, now));
+        boolean first = keycloak.call(session -> new InvitationJobRepository(session).commitChunk(jobId, "node-1", 0, 1, 1, 0, now));
+        boolean again = keycloak.call(session -> new InvitationJobRepository(session).commitChunk(jobId, "node-1", 0, 1, 1, 0, now));
+
+        assertFalse(otherOwner);
+        assertFalse(wrongChunk);
+        assertTrue(first);
+        assertFalse(again);
+        assertEquals(InvitationJobEntity.STATUS_RUNNING, find(jobId).getStatus());
+
+        boolean last = keycloak.call(session -> new InvitationJobRepository(session).commitChunk(jobId, "node-1", 1, 1, 0, 1, now));
+        InvitationJobEntity job = find(jobId);
+
+        assertTrue(last);
+        assertEquals(InvitationJobEntity.STATUS_COMPLETED, job.getStatus());
+        assertEquals(2, job.getProcessed());
+        assertEquals(1, job.getSucceeded());
+        assertEquals(1, job.getFailures());
+    }
+
+
+    @Test
+    void purgesTheFinishedJobsWithTheirRows() {
+        String finishedId = createJob("jane@trackswiftly.com");
+        String pendingId = createJob("john@trackswiftly.com");
+
+        keycloak.run(session -> new InvitationJobRepository(session).markFailed(new InvitationJobRepository(session).find(finishedId), "Realm not found"));
+
+        int purged = keycloak.call(session -> new InvitationJobRepository(session).purgeFinished(System.currentTimeMillis() + 1));
+        int rows = keycloak.call(session -> new InvitationJobRepository(session).findRows(finishedId, 0, 10).size());
+
+        assertEquals(1, purged);
+        assertEquals(0, rows);
+        assertNull(find(finishedId));
+        assertEquals(InvitationJobEntity.STATUS_PENDING, find(pendingId).getStatus());
+    }
+
+
+    @Test
+    void hidesTheJobFromAnotherOrganization() {
+        String jobId = createJob("jane@trackswiftly.com");
+
+        assertThrows(NotFoundException.class, () -> keycloak.callInRealm(realmId, session ->
+            service(session, otherOrganizationId).getInvitationJob(jobId, 0, 10)));
+
+        int status = keycloak.callInRealm(realmId, session ->
+            service(session, organizationId).getInvitationJob(jobId, 0, 10).getStatus());
+
+        assertEquals(200, status);
+    }
+
+
+    @Test
+    void hidesTheJobFromAnotherRealm() {
+        String jobId = createJob("jane@trackswiftly.com");
+
+        assertThrows(NotFoundException.class, () -> keycloak.callInRealm(otherRealmId, session ->
+            service(session, otherRealmOrganizationId).getInvitationJob(jobId, 0, 10)));
+    }
+
+
+
+    private static InvitationJobRunner start() {
+        // the scheduler never fires during a test , the tests poll
+        InvitationJobRunner runner = new InvitationJobRunner(1, 3600, CHUNK_SIZE, new FixedInvitationTemplates(), new PendingInvitationIndex(3600) {
+            @Override
+            public Claim claim(KeycloakSession session, RealmModel realm, OrganizationModel organization, List<UserModel> users, long expiresAt) {
+                CountDownLatch crashing = crash;
+
+                if (crashing != null && users.stream().anyMatch(user -> "crash@trackswiftly.com".equals(user.getEmail()))) {
+                    crashing.countDown();
+                    throw new IllegalStateException("Node stopped");
+                }
+
+                return super.claim(session, realm, organization, users, expiresAt);
+            }
+        });
+
+        runner.start(keycloak);
+
+        return runner;
+    }
+
+
+    /*
+     * created as POST invite-users-jobs does
+     */
+    private static String createJob(String... emails) {
+        List<InvitationRequest> requests = new ArrayList<>();
+
+        for (String email : emails) {
+            requests.add(InvitationRequest.builder().email(email).firstName("Jane").lastName("Doe").build());
+        }
+
+        return keycloak.callInRealm(realmId, session -> new InvitationJobRepository(session).create(
+            session.getContext().getRealm(),
+            organization(session, organizationId),
+            "admin",
+            TestKeycloak.BASE_URI,
+            "en",
+            requests,
+            EmailValidator.validateInvitationRequests(requests)
+        ).getId());
+    }
+
+
+    private static OrganizationInvitationService service(KeycloakSession session, String organizationId) {
+        return OrganizationInvitationService.forOrganization(
+            session, organization(session, organizationId), new FixedInvitationTemplates(), new PendingInvitationIndex(3600));
+    }
+
+
+    private static OrganizationModel organization(KeycloakSession session, String organizationId) {
+        return session.getProvider(OrganizationProvider.class).getById(organizationId);
+    }
+
+
+    private static InvitationJobEntity find(String jobId) {
+        return keycloak.call(session -> new InvitationJobRepository(session).find(jobId));
+    }
+
+
+    private static void endLease(String jobId) {
+        keycloak.run(session -> new InvitationJobRepository(session).find(jobId).setLeaseUntil(System.currentTimeMillis()));
+    }
+
+
+    /*
+     * row index -> error code , read back through GET invite-users-jobs/{jobId}
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, String> failedRows(String jobId) {
+        return keycloak.callInRealm(realmId, session -> {
+            Map<String, Object> progress = (Map<String, Object>) service(session, organizationId).getInvitationJob(jobId, 0, 10).getEntity();
+            Map<Integer, String> failed = new TreeMap<>();
+
+            for (Map<String, Object> row : (List<Map<String, Object>>) progress.get("failedRows")) {
+                failed.put((Integer) row.get("row"), (String) row.get("errorCode"));
+            }
+
+            return failed;
+        });
+    }
+
+
+    private static List<String> queued() {
+        return keycloak.call(session -> session.getProvider(JpaConnectionProvider.class).getEntityManager().createQuery(
+                "select o.email from InvitationOutboxEntity o where o.organizationId = :organizationId order by o.email", String.class)
+            .setParameter("organizationId", organizationId)
+            .getResultList());
+    }
+
+
+    /*
+     * polls as the scheduler would until the job is completed or failed
+     */
+    private InvitationJobEntity awaitFinished(String jobId) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(20);
+
+        while (System.currentTimeMillis() < deadline) {
+            runner.poll();
+            InvitationJobEntity job = find(jobId);
+
+            if (!InvitationJobEntity.STATUS_PENDING.equals(job.getStatus()) && !InvitationJobEntity.STATUS_RUNNING.equals(job.getStatus())) {
+                return job;
+            }
+
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return fail("Invitation job " + jobId + " not done");
+    }
+}
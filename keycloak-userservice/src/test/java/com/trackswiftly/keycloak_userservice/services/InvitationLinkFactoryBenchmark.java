@@ -0,0 +1,115 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.crypto.AsymmetricSignatureSignerContext;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.UserModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jakarta.ws.rs.core.UriBuilder;
+
+
+/***
+ *
+ * CPU time per invitation link of a 1,000 invite batch , RS256 signed :
+ *
+ *   perLink      the invariants resolved again for each link (URI builders , signer) , as before the factory
+ *   batch        one factory for the batch , links signed in the calling thread
+ *   parallel     one factory for the batch , links signed on the common pool
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks="InvitationLinkFactoryBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvitationLinkFactoryBenchmark {
+
+
+    static final int BATCH = 1_000;
+
+    private static final String BASE_URI = "https://sso.trackswiftly.com";
+    private static final String REALM = "fleet";
+
+
+    private KeyWrapper key;
+    private List<UserModel> users;
+
+
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        key = InvitationLinkFactoryTest.rsaKey();
+        users = new ArrayList<>();
+
+        for (int i = 0; i < BATCH; i++) {
+            users.add(InvitationLinkFactoryTest.user("user-" + i, "user" + i + "@trackswiftly.com"));
+        }
+    }
+
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void perLink(Blackhole blackhole) {
+        for (UserModel user : users) {
+            blackhole.consume(resolveFactory().createLink(user));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void batch(Blackhole blackhole) {
+        blackhole.consume(resolveFactory().createLinks(users, Integer.MAX_VALUE));
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void parallel(Blackhole blackhole) {
+        blackhole.consume(resolveFactory().createLinks(users, 64));
+    }
+
+
+
+    /*
+     * the URI building and signer lookup InvitationLinkFactory#forBatch does , without a session
+     */
+    private InvitationLinkFactory resolveFactory() {
+        String issuer = UriBuilder.fromUri(BASE_URI).path("realms/{realm}").build(REALM).toString();
+
+        String invitationBase = UriBuilder.fromUri(BASE_URI)
+            .path("realms/{realm}/login-actions/action-token")
+            .build(REALM).toString();
+
+        String registrationBase = UriBuilder.fromUri(BASE_URI)
+            .path("realms/{realm}/protocol/{protocol}/registrations")
+            .queryParam("response_type", "code")
+            .queryParam("client_id", "account")
+            .build(REALM, "openid-connect").toString();
+
+        String redirectUri = UriBuilder.fromUri(BASE_URI).path("realms/{realm}/account").path("/").build(REALM).toString();
+
+        return new InvitationLinkFactory(
+            issuer, redirectUri, "org-1", 2_000_000_000, new AsymmetricSignatureSignerContext(key), invitationBase, registrationBase
+        );
+    }
+}
@@ -0,0 +1,137 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.authentication.actiontoken.inviteorg.InviteOrgActionToken;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.AsymmetricSignatureSignerContext;
+import org.keycloak.crypto.AsymmetricSignatureVerifierContext;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.models.UserModel;
+
+
+class InvitationLinkFactoryTest {
+
+
+    static final String ISSUER = "https://sso.trackswiftly.com/realms/fleet";
+    static final String REDIRECT_URI = "https://app.trackswiftly.com/welcome";
+    static final String INVITATION_BASE = ISSUER + "/login-actions/action-token";
+    static final String REGISTRATION_BASE = ISSUER + "/protocol/openid-connect/registrations?response_type=code&client_id=account";
+
+    private static KeyWrapper key;
+
+
+
+    @BeforeAll
+    static void generateKey() throws NoSuchAlgorithmException {
+        key = rsaKey();
+    }
+
+
+
+    @Test
+    void mintsInvitationAndRegistrationLinks() throws Exception {
+        InvitationLinkFactory links = factory(key);
+
+        String invitation = links.createLink("user-1", "jane@trackswiftly.com");
+        String registration = links.createLink(null, "new@trackswiftly.com");
+
+        assertTrue(invitation.startsWith(INVITATION_BASE + "?key="), invitation);
+        assertTrue(registration.startsWith(REGISTRATION_BASE + "&token="), registration);
+
+        InviteOrgActionToken token = verify(invitation.substring(invitation.indexOf("key=") + 4));
+
+        assertEquals("user-1", token.getSubject());
+        assertEquals("jane@trackswiftly.com", token.getEmail());
+        assertEquals("org-1", token.getOrgId());
+        assertEquals(REDIRECT_URI, token.getRedirectUri());
+        assertEquals(ISSUER, token.getIssuer());
+        assertArrayEquals(new String[] { ISSUER }, token.getAudience());
+        assertEquals(2_000_000_000L, token.getExp());
+        assertEquals(InviteOrgActionToken.TOKEN_TYPE, token.getType());
+
+        assertEquals("new@trackswiftly.com", verify(registration.substring(registration.indexOf("token=") + 6)).getEmail());
+    }
+
+
+    @Test
+    void keepsTheOrderOfTheUsersWhenSigningInParallel() throws Exception {
+        List<UserModel> users = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            users.add(user("user-" + i, "user" + i + "@trackswiftly.com"));
+        }
+
+        List<String> links = factory(key).createLinks(users, 16);
+
+        assertEquals(users.size(), links.size());
+
+        for (int i = 0; i < users.size(); i++) {
+            String link = links.get(i);
+
+            assertEquals("user" + i + "@trackswiftly.com", verify(link.substring(link.indexOf("key=") + 4)).getEmail());
+        }
+    }
+
+
+
+    static InvitationLinkFactory factory(KeyWrapper key) {
+        return new InvitationLinkFactory(
+            ISSUER, REDIRECT_URI, "org-1", 2_000_000_000, new AsymmetricSignatureSignerContext(key), INVITATION_BASE, REGISTRATION_BASE
+        );
+    }
+
+
+    static KeyWrapper rsaKey() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        KeyWrapper key = new KeyWrapper();
+        key.setKid("test");
+        key.setAlgorithm(Algorithm.RS256);
+        key.setType(KeyType.RSA);
+        key.setUse(KeyUse.SIG);
+        key.setPrivateKey(keyPair.getPrivate());
+        key.setPublicKey(keyPair.getPublic());
+
+        return key;
+    }
+
+
+    static UserModel user(String id, String email) {
+        return (UserModel) Proxy.newProxyInstance(UserModel.class.getClassLoader(), new Class<?>[] { UserModel.class }, (proxy, method, args) ->
+            switch (method.getName()) {
+                case "getId" -> id;
+                case "getEmail" -> email;
+                default -> throw new UnsupportedOperationException(method.getName());
+            }
+        );
+    }
+
+
+    private static InviteOrgActionToken verify(String token) throws Exception {
+        JWSInput input = new JWSInput(token);
+
+        assertTrue(new AsymmetricSignatureVerifierContext(key).verify(
+            input.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8), input.getSignature()
+        ));
+
+        return input.readJsonContent(InviteOrgActionToken.class);
+    }
+}
@@ -0,0 +1,219 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.email.DefaultEmailSenderProvider;
+import org.keycloak.email.EmailSenderProvider;
+import org.keycloak.models.RealmModel;
+import org.keycloak.organization.OrganizationProvider;
+
+import com.trackswiftly.keycloak_userservice.email.LocalSmtpServer;
+import com.trackswiftly.keycloak_userservice.entities.InvitationOutboxEntity;
+import com.trackswiftly.keycloak_userservice.repositories.InvitationOutboxRepository;
+import com.trackswiftly.keycloak_userservice.repositories.PendingInvitationRepository;
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+
+class InvitationOutboxDispatcherTest {
+
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BACKOFF_SECONDS = 60;
+
+    private static TestKeycloak keycloak;
+    private static LocalSmtpServer server;
+    private static String realmId;
+    private static String organizationId;
+
+    private InvitationOutboxDispatcher dispatcher;
+
+
+
+    @BeforeAll
+    static void startKeycloak() throws IOException {
+        keycloak = new TestKeycloak();
+        keycloak.register(EmailSenderProvider.class, DefaultEmailSenderProvider::new);
+
+        server = new LocalSmtpServer(0);
+        realmId = keycloak.createRealm("fleet");
+
+        organizationId = keycloak.callInRealm(realmId, session ->
+            session.getProvider(OrganizationProvider.class).create("TrackSwiftly Fleet", "fleet").getId()
+        );
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() throws IOException {
+        server.close();
+        keycloak.close();
+    }
+
+
+    @BeforeEach
+    void startDispatcher() {
+        // the scheduler never fires during a test , the tests poll
+        dispatcher = new InvitationOutboxDispatcher(2, 3600, MAX_ATTEMPTS, BACKOFF_SECONDS, new RealmSendLimiter(2));
+        dispatcher.start(keycloak);
+    }
+
+
+    @AfterEach
+    void stopDispatcher() {
+        dispatcher.stop();
+    }
+
+
+
+    @Test
+    void deliversTheQueuedInvitations() {
+        smtpPort(server.getPort());
+
+        List<String> ids = List.of(enqueue("jane@trackswiftly.com"), enqueue("john@trackswiftly.com"), enqueue("ana@trackswiftly.com"));
+
+        dispatcher.poll();
+
+        for (String id : ids) {
+            InvitationOutboxEntity row = awaitOutcome(id);
+
+            assertEquals(InvitationOutboxEntity.STATUS_SENT, row.getStatus());
+            assertEquals(1, row.getAttempts());
+            assertNull(row.getLastError());
+        }
+
+        assertTrue(server.getRecipients().containsAll(List.of("jane@trackswiftly.com", "john@trackswiftly.com", "ana@trackswiftly.com")));
+    }
+
+
+    @Test
+    void retriesWithBackoffThenGivesUpAndForgetsThePendingInvitation() throws IOException {
+        smtpPort(closedPort());
+
+        String id = enqueue("retry@trackswiftly.com");
+        int messages = server.getMessageCount();
+
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            long before = System.currentTimeMillis();
+
+            dispatcher.poll();
+            InvitationOutboxEntity row = awaitOutcome(id);
+
+            long backoff = TimeUnit.SECONDS.toMillis(BACKOFF_SECONDS) << (attempt - 1);
+
+            assertEquals(InvitationOutboxEntity.STATUS_PENDING, row.getStatus());
+            assertEquals(attempt, row.getAttempts());
+            assertNotNull(row.getLastError());
+            assertTrue(row.getNextAttemptAt() >= before + backoff, "backoff of attempt " + attempt);
+            assertTrue(row.getNextAttemptAt() <= System.currentTimeMillis() + backoff, "backoff of attempt " + attempt);
+
+            // not due before its backoff
+            dispatcher.poll();
+            assertEquals(attempt, find(id).getAttempts());
+
+            makeDue(id);
+        }
+
+        dispatcher.poll();
+        InvitationOutboxEntity row = awaitOutcome(id);
+
+        assertEquals(InvitationOutboxEntity.STATUS_FAILED, row.getStatus());
+        assertEquals(MAX_ATTEMPTS, row.getAttempts());
+        assertEquals(messages, server.getMessageCount());
+
+        boolean forgotten = keycloak.call(session ->
+            new PendingInvitationRepository(session).findLatest(organizationId, List.of("retry@trackswiftly.com")).isEmpty()
+        );
+
+        assertTrue(forgotten);
+    }
+
+
+
+    /*
+     * queued as OrganizationInvitationService does , the address claimed in the pending invitations
+     */
+    private static String enqueue(String email) {
+        return keycloak.callInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            long now = System.currentTimeMillis();
+
+            new PendingInvitationRepository(session).claim(
+                realmId, organizationId, Collections.singletonMap(email, null), now, now + TimeUnit.HOURS.toMillis(1), row -> true
+            );
+
+            return new InvitationOutboxRepository(session).enqueue(
+                realm,
+                session.getProvider(OrganizationProvider.class).getById(organizationId),
+                new RenderedEmail(email, "Invitation to join TrackSwiftly Fleet", "Join: https://sso.trackswiftly.com/l", null)
+            );
+        });
+    }
+
+
+    private static void smtpPort(int port) {
+        keycloak.runInRealm(realmId, session -> session.getContext().getRealm().setSmtpConfig(Map.of(
+            "host", "127.0.0.1",
+            "port", String.valueOf(port),
+            "from", "noreply@trackswiftly.com"
+        )));
+    }
+
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+
+    private static InvitationOutboxEntity find(String id) {
+        return keycloak.call(session -> new InvitationOutboxRepository(session).find(id));
+    }
+
+
+    private static void makeDue(String id) {
+        keycloak.run(session -> new InvitationOutboxRepository(session).find(id).setNextAttemptAt(System.currentTimeMillis()));
+    }
+
+
+    /*
+     * the row once the worker recorded the outcome of its send
+     */
+    private static InvitationOutboxEntity awaitOutcome(String id) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+
+        while (System.currentTimeMillis() < deadline) {
+            InvitationOutboxEntity row = find(id);
+
+            if (!InvitationOutboxEntity.STATUS_SENDING.equals(row.getStatus())) {
+                return row;
+            }
+
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return fail("Invitation " + id + " still being sent");
+    }
+}
@@ -0,0 +1,149 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+
+/***
+ *
+ * 1,000 invitation renders , through FreeMarker with the templates already parsed (the theme cache of Keycloak) ,
+ * and through the {@link InvitationTemplate} compiled from the same templates :
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks="InvitationTemplateBenchmark -prof gc"
+ *
+ * The FreeMarker side leaves out the theme , locale and message bundle lookups Keycloak does for each email ,
+ * the real saving is larger .
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvitationTemplateBenchmark {
+
+
+    static final int RENDERS = 1_000;
+
+    private static final String SUBJECT = "Invitation to join ${organization}";
+
+    private static final String TEXT_BODY =
+        "Hello ${firstName} ${lastName},\n\n" +
+        "You were invited to join the ${organization} organization. Click the link below to join.\n\n" +
+        "${link}\n\n" +
+        "This link will expire within ${expiration} minutes.\n\n" +
+        "If you don't want to join the organization, just ignore this message.\n";
+
+    private static final String HTML_BODY =
+        "<html><body>" +
+        "<p>Hello ${firstName} ${lastName},</p>" +
+        "<p>You were invited to join the ${organization} organization. Click the link below to join.</p>" +
+        "<p><a href=\"${link}\">Link to join the organization</a></p>" +
+        "<p>This link will expire within ${expiration} minutes.</p>" +
+        "<p>If you don't want to join the organization, just ignore this message.</p>" +
+        "</body></html>";
+
+
+    private Template subject;
+    private Template textBody;
+    private Template htmlBody;
+    private InvitationTemplate compiled;
+
+    private String[] firstNames;
+    private String[] links;
+
+
+
+    @Setup
+    public void setUp() throws IOException, TemplateException {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setRecognizeStandardFileExtensions(true);
+
+        subject = new Template("subject.ftl", new StringReader(SUBJECT), configuration);
+        textBody = new Template("text.ftl", new StringReader(TEXT_BODY), configuration);
+        htmlBody = new Template("html.ftlh", new StringReader(HTML_BODY), configuration);
+
+        // compiled the way RenderingEmailTemplateProvider does : one render for the sentinel user
+        compiled = InvitationTemplate.compile(freemarker(
+            InvitationTemplate.EMAIL_SENTINEL ,
+            InvitationTemplate.LINK_SENTINEL ,
+            InvitationTemplate.FIRST_NAME_SENTINEL ,
+            InvitationTemplate.LAST_NAME_SENTINEL
+        ));
+
+        if (!compiled.isCacheable()) {
+            throw new IllegalStateException("The benchmark templates must be cacheable");
+        }
+
+        firstNames = new String[RENDERS];
+        links = new String[RENDERS];
+
+        for (int i = 0; i < RENDERS; i++) {
+            firstNames[i] = "Invitee " + i;
+            links[i] = "https://sso.trackswiftly.com/realms/fleet/login-actions/action-token?key=eyJhbGciOi." + i + ".sig";
+        }
+    }
+
+
+
+    @Benchmark
+    @OperationsPerInvocation(RENDERS)
+    public void freemarker(Blackhole blackhole) throws IOException, TemplateException {
+        for (int i = 0; i < RENDERS; i++) {
+            blackhole.consume(freemarker("user" + i + "@trackswiftly.com", links[i], firstNames[i], "O'Neil"));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(RENDERS)
+    public void compiled(Blackhole blackhole) {
+        for (int i = 0; i < RENDERS; i++) {
+            blackhole.consume(compiled.render("user" + i + "@trackswiftly.com", links[i], firstNames[i], "O'Neil"));
+        }
+    }
+
+
+
+    private RenderedEmail freemarker(String address, String link, String firstName, String lastName) throws IOException, TemplateException {
+        Map<String, Object> model = new HashMap<>();
+        model.put("link", link);
+        model.put("firstName", firstName);
+        model.put("lastName", lastName);
+        model.put("organization", "TrackSwiftly Fleet");
+        model.put("expiration", 43200);
+
+        return new RenderedEmail(address, process(subject, model), process(textBody, model), process(htmlBody, model));
+    }
+
+
+    private static String process(Template template, Map<String, Object> model) throws IOException, TemplateException {
+        StringWriter out = new StringWriter();
+        template.process(model, out);
+
+        return out.toString();
+    }
+}
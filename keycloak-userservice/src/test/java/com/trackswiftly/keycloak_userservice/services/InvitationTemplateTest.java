@@ -0,0 +1,81 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.trackswiftly.keycloak_userservice.services.RenderingEmailTemplateProvider.RenderedEmail;
+
+
+class InvitationTemplateTest {
+
+
+    private static final String LINK = InvitationTemplate.LINK_SENTINEL;
+    private static final String FIRST_NAME = InvitationTemplate.FIRST_NAME_SENTINEL;
+    private static final String LAST_NAME = InvitationTemplate.LAST_NAME_SENTINEL;
+
+
+
+    @Test
+    void rendersTheRecipientFieldsInEveryPart() {
+        InvitationTemplate template = InvitationTemplate.compile(new RenderedEmail(
+            InvitationTemplate.EMAIL_SENTINEL,
+            "Invitation for " + FIRST_NAME,
+            "Hello " + FIRST_NAME + " " + LAST_NAME + ", join: " + LINK + "\nLink: " + LINK,
+            "<p>Hello " + FIRST_NAME + " " + LAST_NAME + "</p><a href=\"" + LINK + "\">Join</a>"
+        ));
+
+        RenderedEmail email = template.render("jane@trackswiftly.com", "https://sso/link?key=a.b.c", "Jane", "O'Neil & <Co>");
+
+        assertTrue(template.isCacheable());
+        assertEquals("jane@trackswiftly.com", email.address());
+        assertEquals("Invitation for Jane", email.subject());
+        assertEquals("Hello Jane O'Neil & <Co>, join: https://sso/link?key=a.b.c\nLink: https://sso/link?key=a.b.c", email.textBody());
+        assertEquals("<p>Hello Jane O&#39;Neil &amp; &lt;Co&gt;</p><a href=\"https://sso/link?key=a.b.c\">Join</a>", email.htmlBody());
+    }
+
+
+    @Test
+    void rendersMissingNamesAsEmptyAndKeepsMissingParts() {
+        InvitationTemplate template = InvitationTemplate.compile(new RenderedEmail(
+            InvitationTemplate.EMAIL_SENTINEL, "Invitation", "Hi " + FIRST_NAME + "! " + LINK, null
+        ));
+
+        RenderedEmail email = template.render("a@trackswiftly.com", "https://sso/l", null, null);
+
+        assertEquals("Invitation", email.subject());
+        assertEquals("Hi ! https://sso/l", email.textBody());
+        assertNull(email.htmlBody());
+    }
+
+
+    @Test
+    void doesNotCacheTemplatesUsingOtherRecipientData() {
+        assertSame(InvitationTemplate.UNCACHEABLE, InvitationTemplate.compile(new RenderedEmail(
+            InvitationTemplate.EMAIL_SENTINEL, "Invitation", "Sent to " + InvitationTemplate.EMAIL_SENTINEL + " " + LINK, null
+        )));
+
+        assertSame(InvitationTemplate.UNCACHEABLE, InvitationTemplate.compile(new RenderedEmail(
+            InvitationTemplate.EMAIL_SENTINEL, "Invitation for " + InvitationTemplate.USERNAME_SENTINEL, LINK, null
+        )));
+
+        assertFalse(InvitationTemplate.UNCACHEABLE.isCacheable());
+    }
+
+
+    @Test
+    void doesNotCacheTemplatesTransformingTheLink() {
+        String encodedLink = URLEncoder.encode(LINK, StandardCharsets.UTF_8);
+
+        assertSame(InvitationTemplate.UNCACHEABLE, InvitationTemplate.compile(new RenderedEmail(
+            InvitationTemplate.EMAIL_SENTINEL, "Invitation", "Join: " + LINK, "<a href=\"/r?to=" + encodedLink + "\">Join</a>"
+        )));
+    }
+}
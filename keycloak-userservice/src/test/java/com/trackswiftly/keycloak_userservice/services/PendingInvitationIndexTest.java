@@ -0,0 +1,268 @@
+package com.trackswiftly.keycloak_userservice.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.OrganizationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.organization.OrganizationProvider;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+
+import com.trackswiftly.keycloak_userservice.entities.PendingInvitationEntity;
+import com.trackswiftly.keycloak_userservice.repositories.PendingInvitationRepository;
+import com.trackswiftly.keycloak_userservice.testing.TestKeycloak;
+
+
+class PendingInvitationIndexTest {
+
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static TestKeycloak keycloak;
+    private static String realmId;
+    private static String organizationId;
+
+    private final PendingInvitationIndex index = new PendingInvitationIndex(TimeUnit.DAYS.toSeconds(1));
+
+
+
+    @BeforeAll
+    static void startKeycloak() {
+        keycloak = new TestKeycloak();
+        realmId = keycloak.createRealm("fleet");
+
+        organizationId = keycloak.callInRealm(realmId, session ->
+            session.getProvider(OrganizationProvider.class).create("TrackSwiftly Fleet", "fleet").getId()
+        );
+    }
+
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+
+    @AfterEach
+    void clearInvitations() {
+        keycloak.clearWorkCache();
+        keycloak.run(session -> new PendingInvitationRepository(session).purgeExpired(Long.MAX_VALUE));
+    }
+
+
+
+    @Test
+    void claimsAnAddressOnceWithinTheWindow() {
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(index, HOUR, "Jane@TrackSwiftly.com"));
+        assertEquals(Set.of(), claim(index, HOUR, "jane@trackswiftly.com"));
+
+        // from the cache , then from the index once the cache is gone
+        assertEquals(Set.of("jane@trackswiftly.com"), findRecent("jane@trackswiftly.com", "john@trackswiftly.com"));
+
+        keycloak.clearWorkCache();
+
+        assertEquals(Set.of("jane@trackswiftly.com"), findRecent("JANE@trackswiftly.com", "john@trackswiftly.com"));
+    }
+
+
+    @Test
+    void claimsEachAddressForOneOfTheConcurrentRequests() throws Exception {
+        int requests = 6;
+        List<String> emails = new ArrayList<>();
+
+        for (int i = 0; i < 40; i++) {
+            emails.add("driver" + i + "@trackswiftly.com");
+        }
+
+        CyclicBarrier start = new CyclicBarrier(requests);
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<CompletableFuture<Set<String>>> claims = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < requests; i++) {
+                // each request in its own order , the conflicts fall on different rows
+                List<String> shuffled = new ArrayList<>(emails);
+                Collections.shuffle(shuffled);
+
+                claims.add(CompletableFuture.supplyAsync(() -> {
+                    await(start);
+
+                    return claim(index, HOUR, shuffled.toArray(String[]::new));
+                }, executor));
+            }
+
+            Map<String, Long> claimedBy = new HashMap<>();
+
+            for (CompletableFuture<Set<String>> claim : claims) {
+                claim.get(30, TimeUnit.SECONDS).forEach(email -> claimedBy.merge(email, 1L, Long::sum));
+            }
+
+            assertEquals(Set.copyOf(emails), claimedBy.keySet());
+            assertTrue(claimedBy.values().stream().allMatch(count -> count == 1), claimedBy.toString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    void claimsAgainWithoutDeduplication() {
+        PendingInvitationIndex always = new PendingInvitationIndex(0);
+
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(always, HOUR, "jane@trackswiftly.com"));
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(always, HOUR, "jane@trackswiftly.com"));
+
+        assertEquals(Set.of(), keycloak.callInRealm(realmId, session ->
+            always.findRecent(session, organization(session), List.of("jane@trackswiftly.com")).keySet()));
+    }
+
+
+    @Test
+    void takesOverAnExpiredClaim() {
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(index, -1, "jane@trackswiftly.com"));
+        assertEquals(Set.of(), findRecent("jane@trackswiftly.com"));
+
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(index, HOUR, "jane@trackswiftly.com"));
+        assertEquals(Set.of("jane@trackswiftly.com"), findRecent("jane@trackswiftly.com"));
+    }
+
+
+    @Test
+    void unclaimsTheInvitationsNotSent() {
+        keycloak.runInRealm(realmId, session -> {
+            List<UserModel> users = List.of(user(session, "jane@trackswiftly.com"), user(session, "john@trackswiftly.com"));
+
+            PendingInvitationIndex.Claim claim = index.claim(
+                session, session.getContext().getRealm(), organization(session), users, System.currentTimeMillis() + HOUR);
+
+            index.unclaim(session, organization(session), claim, List.of(users.get(1)));
+        });
+
+        assertEquals(Set.of("jane@trackswiftly.com"), findRecent("jane@trackswiftly.com", "john@trackswiftly.com"));
+        assertEquals(Set.of("john@trackswiftly.com"), claim(index, HOUR, "jane@trackswiftly.com", "john@trackswiftly.com"));
+    }
+
+
+    @Test
+    void dropsTheClaimsOfARequestRolledBack() {
+        assertThrows(IllegalStateException.class, () -> keycloak.runInRealm(realmId, session -> {
+            index.claim(session, session.getContext().getRealm(), organization(session),
+                List.of(user(session, "jane@trackswiftly.com")), System.currentTimeMillis() + HOUR);
+
+            throw new IllegalStateException("The request failed after the claim");
+        }));
+
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(index, HOUR, "jane@trackswiftly.com"));
+    }
+
+
+    @Test
+    void forgetsTheAddressAnInvitationWasGivenUpFor() {
+        claim(index, HOUR, "jane@trackswiftly.com");
+
+        // as the outbox does after the last attempt
+        keycloak.run(session -> PendingInvitationIndex.forget(session, organizationId, "Jane@TrackSwiftly.com"));
+
+        assertEquals(Set.of(), findRecent("jane@trackswiftly.com"));
+        assertEquals(Set.of("jane@trackswiftly.com"), claim(index, HOUR, "jane@trackswiftly.com"));
+    }
+
+
+    @Test
+    void purgesTheExpiredInvitationsOnly() {
+        claim(index, -1, "expired@trackswiftly.com");
+        claim(index, HOUR, "pending@trackswiftly.com");
+
+        int purged = keycloak.call(session -> new PendingInvitationRepository(session).purgeExpired(System.currentTimeMillis()));
+
+        Set<String> left = keycloak.call(session -> new PendingInvitationRepository(session)
+            .findLatest(organizationId, List.of("expired@trackswiftly.com", "pending@trackswiftly.com"))
+            .values().stream().map(PendingInvitationEntity::getEmail).collect(Collectors.toSet()));
+
+        assertEquals(1, purged);
+        assertEquals(Set.of("pending@trackswiftly.com"), left);
+    }
+
+
+    @Test
+    void listsThePendingInvitationsLatestFirst() throws InterruptedException {
+        claim(index, -1, "expired@trackswiftly.com");
+        claim(index, HOUR, "jane@trackswiftly.com");
+        Thread.sleep(5);
+        claim(index, HOUR, "john@trackswiftly.com");
+
+        List<Object> emails = keycloak.callInRealm(realmId, session -> index.listPending(session, organization(session), 0, 10)
+            .stream().map(invitation -> invitation.get("email")).toList());
+
+        assertEquals(List.of("john@trackswiftly.com", "jane@trackswiftly.com"), emails);
+        assertFalse(emails.contains("expired@trackswiftly.com"));
+    }
+
+
+
+    /*
+     * one request claiming the addresses , tokens expiring in expiresIn milliseconds
+     */
+    private static Set<String> claim(PendingInvitationIndex index, long expiresIn, String... emails) {
+        return keycloak.callInRealm(realmId, session -> {
+            RealmModel realm = session.getContext().getRealm();
+            List<UserModel> users = new ArrayList<>();
+
+            for (String email : emails) {
+                users.add(user(session, email));
+            }
+
+            return index.claim(session, realm, organization(session), users, System.currentTimeMillis() + expiresIn).emails();
+        });
+    }
+
+
+    private Set<String> findRecent(String... emails) {
+        return keycloak.callInRealm(realmId, session ->
+            index.findRecent(session, organization(session), List.of(emails)).keySet());
+    }
+
+
+    private static OrganizationModel organization(KeycloakSession session) {
+        return session.getProvider(OrganizationProvider.class).getById(organizationId);
+    }
+
+
+    private static UserModel user(KeycloakSession session, String email) {
+        UserModel user = new InMemoryUserAdapter(session, session.getContext().getRealm(), KeycloakModelUtils.generateId());
+        user.setEmail(email);
+
+        return user;
+    }
+
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.trackswiftly.keycloak_userservice.testing;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
+import org.keycloak.services.managers.AuthenticationManager.AuthResult;
+
+import com.trackswiftly.keycloak_userservice.cache.VerifiedTokenCache;
+import com.trackswiftly.keycloak_userservice.middlewares.CallerContext;
+
+
+/***
+ *
+ * Caller of a request , authenticated as the given user without a bearer token .
+ *
+ * Roles and organizations are resolved by the {@link CallerContext} as for a real request .
+ */
+public final class TestCaller {
+
+
+    private TestCaller() {
+    }
+
+
+
+    /**
+     * @param session session of the request , its context realm set
+     * @param userId id of the caller
+     */
+    public static CallerContext of(KeycloakSession session, String userId) {
+        UserModel user = session.users().getUserById(session.getContext().getRealm(), userId);
+
+        return new CallerContext(session, new VerifiedTokenCache(1, 1) {
+            @Override
+            public AuthResult authenticate(KeycloakSession requestSession) {
+                return new AuthResult(user, null, null, null);
+            }
+        });
+    }
+}
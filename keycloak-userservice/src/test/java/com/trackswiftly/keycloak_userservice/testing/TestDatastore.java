@@ -0,0 +1,122 @@
+package com.trackswiftly.keycloak_userservice.testing;
+
+import java.util.Set;
+
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.ClientProvider;
+import org.keycloak.models.ClientScopeProvider;
+import org.keycloak.models.GroupProvider;
+import org.keycloak.models.IdentityProviderStorageProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.RoleProvider;
+import org.keycloak.models.SingleUseObjectProvider;
+import org.keycloak.models.UserLoginFailureProvider;
+import org.keycloak.models.UserProvider;
+import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.jpa.JpaRealmProvider;
+import org.keycloak.models.jpa.JpaUserProvider;
+import org.keycloak.sessions.AuthenticationSessionProvider;
+import org.keycloak.storage.DatastoreProvider;
+import org.keycloak.storage.ExportImportManager;
+
+
+/***
+ *
+ * The JPA providers of Keycloak , without the cache layer nor the user storage federation in front of them .
+ * User sessions come from the {@link UserSessionProvider} registered by the test , if any .
+ */
+class TestDatastore implements DatastoreProvider {
+
+
+    private final KeycloakSession session;
+
+    private JpaRealmProvider realms;
+    private JpaUserProvider users;
+
+
+    TestDatastore(KeycloakSession session) {
+        this.session = session;
+    }
+
+
+
+    @Override
+    public RealmProvider realms() {
+        return realmProvider();
+    }
+
+    @Override
+    public ClientProvider clients() {
+        return realmProvider();
+    }
+
+    @Override
+    public ClientScopeProvider clientScopes() {
+        return realmProvider();
+    }
+
+    @Override
+    public GroupProvider groups() {
+        return realmProvider();
+    }
+
+    @Override
+    public RoleProvider roles() {
+        return realmProvider();
+    }
+
+    @Override
+    public UserProvider users() {
+        if (users == null) {
+            users = new JpaUserProvider(session, session.getProvider(JpaConnectionProvider.class).getEntityManager());
+        }
+
+        return users;
+    }
+
+    @Override
+    public UserSessionProvider userSessions() {
+        return session.getProvider(UserSessionProvider.class);
+    }
+
+    @Override
+    public AuthenticationSessionProvider authSessions() {
+        throw new UnsupportedOperationException("No authentication sessions in tests");
+    }
+
+    @Override
+    public IdentityProviderStorageProvider identityProviders() {
+        throw new UnsupportedOperationException("No identity providers in tests");
+    }
+
+    @Override
+    public UserLoginFailureProvider loginFailures() {
+        throw new UnsupportedOperationException("No login failures in tests");
+    }
+
+    @Override
+    public SingleUseObjectProvider singleUseObjects() {
+        throw new UnsupportedOperationException("No single use objects in tests");
+    }
+
+    @Override
+    public ExportImportManager getExportImportManager() {
+        throw new UnsupportedOperationException("No export in tests");
+    }
+
+    @Override
+    public void close() {
+        // the entity manager belongs to the JPA connection of the session
+    }
+
+
+
+    private JpaRealmProvider realmProvider() {
+        if (realms == null) {
+            realms = new JpaRealmProvider(session, session.getProvider(JpaConnectionProvider.class).getEntityManager(), Set.of(), Set.of());
+        }
+
+        return realms;
+    }
+}
@@ -0,0 +1,64 @@
+package com.trackswiftly.keycloak_userservice.testing;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.infinispan.Cache;
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.util.concurrent.BlockingManager;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.connections.infinispan.TopologyInfo;
+
+
+/***
+ *
+ * The local caches of the {@link TestKeycloak} , there is no remote store nor cluster .
+ */
+class TestInfinispan implements InfinispanConnectionProvider {
+
+
+    private final EmbeddedCacheManager cacheManager;
+
+
+    TestInfinispan(EmbeddedCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+
+
+    @Override
+    public <K, V> Cache<K, V> getCache(String name, boolean createIfAbsent) {
+        return cacheManager.getCache(name, createIfAbsent);
+    }
+
+    @Override
+    public <K, V> RemoteCache<K, V> getRemoteCache(String name) {
+        return null;
+    }
+
+    @Override
+    public TopologyInfo getTopologyInfo() {
+        throw new UnsupportedOperationException("No cluster in tests");
+    }
+
+    @Override
+    public CompletionStage<Void> migrateToProtoStream() {
+        throw new UnsupportedOperationException("No remote store in tests");
+    }
+
+    @Override
+    public ScheduledExecutorService getScheduledExecutor() {
+        throw new UnsupportedOperationException("No scheduled tasks in tests");
+    }
+
+    @Override
+    public BlockingManager getBlockingManager() {
+        throw new UnsupportedOperationException("No blocking tasks in tests");
+    }
+
+    @Override
+    public void close() {
+        // the caches belong to the session factory
+    }
+}
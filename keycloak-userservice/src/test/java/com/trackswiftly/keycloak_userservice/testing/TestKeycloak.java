@@ -0,0 +1,353 @@
+package com.trackswiftly.keycloak_userservice.testing;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.keycloak.Config;
+import org.keycloak.common.Profile;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.connections.jpa.DefaultJpaConnectionProvider;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.connections.jpa.JpaKeycloakTransaction;
+import org.keycloak.connections.jpa.PersistenceExceptionConverter;
+import org.keycloak.crypto.HS512SignatureProviderFactory;
+import org.keycloak.crypto.RS256SignatureProviderFactory;
+import org.keycloak.crypto.SignatureProvider;
+import org.keycloak.locale.LocaleSelectorProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.KeycloakSessionTaskWithResult;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.jpa.JpaRealmProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.organization.OrganizationProvider;
+import org.keycloak.organization.jpa.JpaOrganizationProviderFactory;
+import org.keycloak.provider.Provider;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.services.DefaultKeycloakSessionFactory;
+import org.keycloak.storage.DatastoreProvider;
+import org.keycloak.tracing.NoopTracingProviderFactory;
+import org.keycloak.tracing.TracingProvider;
+import org.keycloak.urls.HostnameProvider;
+
+import com.trackswiftly.keycloak_userservice.entities.TrackSwiftlyJpaEntityProvider;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+
+/***
+ *
+ * In process Keycloak session factory for the tests and benchmarks that need the database .
+ *
+ *  - the Keycloak JPA model (realms , users , groups , roles , organizations) over an in memory H2 database ,
+ *    the Keycloak tables created by Hibernate , the users-services tables by their Liquibase changelog ,
+ *  - the local "work" cache of {@link InfinispanConnectionProvider} ,
+ *  - an HMAC and an RSA key per realm ({@link TestKeys}) , English for every locale lookup ,
+ *  - requests on {@link #BASE_URI} .
+ *
+ * Transactions behave as in Keycloak : one {@link JpaKeycloakTransaction} per session , committed when the session closes .
+ * No Keycloak cache is in front of the JPA providers , every lookup is a query (see {@link #statistics()}) .
+ * Other providers are added with {@link #register} .
+ */
+public class TestKeycloak extends DefaultKeycloakSessionFactory implements AutoCloseable {
+
+
+    public static final String BASE_URI = "https://sso.trackswiftly.com/";
+
+    private static final String PROVIDER_ID = "test";
+
+
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;NON_KEYWORDS=VALUE";
+
+    private final DefaultCacheManager cacheManager;
+    private final EntityManagerFactory entityManagerFactory;
+    private final Connection keepAlive;
+
+
+    public TestKeycloak() {
+        if (Profile.getInstance() == null) {
+            Profile.defaults();
+        }
+
+        try {
+            keepAlive = DriverManager.getConnection(url, "sa", "");
+            migrate(keepAlive);
+        } catch (SQLException | LiquibaseException e) {
+            throw new IllegalStateException("Failed to create the test database", e);
+        }
+
+        entityManagerFactory = buildEntityManagerFactory();
+
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.WORK_CACHE_NAME,
+            new ConfigurationBuilder().build());
+
+        serverStartupTimestamp = System.currentTimeMillis();
+
+        register(TracingProvider.class, new NoopTracingProviderFactory());
+        register(JpaConnectionProvider.class, this::connect);
+        register(DatastoreProvider.class, TestDatastore::new);
+        register(InfinispanConnectionProvider.class, session -> new TestInfinispan(cacheManager));
+        register(OrganizationProvider.class, new JpaOrganizationProviderFactory());
+        register(HostnameProvider.class, session -> new HostnameProvider() {});
+        register(LocaleSelectorProvider.class, session -> new LocaleSelectorProvider() {
+            @Override
+            public Locale resolveLocale(RealmModel realm, UserModel user) {
+                return Locale.ENGLISH;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        });
+        register(SignatureProvider.class, new HS512SignatureProviderFactory());
+        register(SignatureProvider.class, new RS256SignatureProviderFactory());
+    }
+
+
+
+    @Override
+    public KeycloakSession create() {
+        return new TestKeycloakSession(this);
+    }
+
+
+    /**
+     * Registers the default provider of the type , replacing the previous one .
+     */
+    public <T extends Provider> void register(Class<T> type, Function<KeycloakSession, T> create) {
+        register(type, new ProviderFactory<T>() {
+            @Override
+            public T create(KeycloakSession session) {
+                return create.apply(session);
+            }
+
+            @Override
+            public void init(Config.Scope config) {
+                // nothing to configure
+            }
+
+            @Override
+            public void postInit(KeycloakSessionFactory factory) {
+                // nothing to wire
+            }
+
+            @Override
+            public void close() {
+                // providers hold no resources of their own
+            }
+
+            @Override
+            public String getId() {
+                return PROVIDER_ID;
+            }
+        });
+    }
+
+
+    /**
+     * Registers the factory under its id , it becomes the default provider of the type .
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public <T extends Provider> void register(Class<T> type, ProviderFactory<? extends T> factory) {
+        factory.postInit(this);
+
+        factoriesMap.computeIfAbsent(type, key -> new HashMap<>()).put(factory.getId(), (ProviderFactory) factory);
+        provider.put(type, factory.getId());
+    }
+
+
+
+    /**
+     * Creates a realm with its default role , the default timeouts and organizations enabled , returns its id .
+     */
+    public String createRealm(String name) {
+        return call(session -> {
+            RealmModel realm = session.realms().createRealm(name);
+            realm.setDefaultRole(session.roles().addRealmRole(realm, "default-roles-" + name));
+            realm.setOrganizationsEnabled(true);
+            realm.setEnabled(true);
+
+            // the defaults of a realm created through the admin API
+            realm.setAccessTokenLifespan(300);
+            realm.setSsoSessionIdleTimeout(1800);
+            realm.setSsoSessionMaxLifespan(36000);
+            realm.setOfflineSessionIdleTimeout(2592000);
+            realm.setActionTokenGeneratedByAdminLifespan(43200);
+
+            return realm.getId();
+        });
+    }
+
+
+    /**
+     * Runs the task in its own transaction , committed unless it throws .
+     */
+    public void run(KeycloakSessionTask task) {
+        KeycloakModelUtils.runJobInTransaction(this, task);
+    }
+
+
+    public <V> V call(KeycloakSessionTaskWithResult<V> task) {
+        return KeycloakModelUtils.runJobInTransactionWithResult(this, task);
+    }
+
+
+    /**
+     * Runs the task in its own transaction , the realm set in the context of the session .
+     */
+    public <V> V callInRealm(String realmId, Function<KeycloakSession, V> task) {
+        return call(session -> {
+            RealmModel realm = session.realms().getRealm(realmId);
+            session.getContext().setRealm(realm);
+
+            return task.apply(session);
+        });
+    }
+
+
+    public void runInRealm(String realmId, KeycloakSessionTask task) {
+        callInRealm(realmId, session -> {
+            task.run(session);
+            return null;
+        });
+    }
+
+
+    /**
+     * Empties the "work" cache , the users-services caches and revocation markers with it .
+     */
+    public void clearWorkCache() {
+        cacheManager.getCache(InfinispanConnectionProvider.WORK_CACHE_NAME).clear();
+    }
+
+
+    /**
+     * Query and entity counters of the JPA model , cleared with {@code statistics().clear()} .
+     */
+    public Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+
+    /**
+     * Plain JDBC connection to the test database , for native statements (indexes , explain plans) .
+     */
+    public Connection jdbc() throws SQLException {
+        return DriverManager.getConnection(url, "sa", "");
+    }
+
+
+    @Override
+    public void close() {
+        super.close();
+
+        entityManagerFactory.close();
+        cacheManager.stop();
+
+        try {
+            keepAlive.close();
+        } catch (SQLException e) {
+            // the in memory database is gone with the connection
+        }
+    }
+
+
+
+    private JpaConnectionProvider connect(KeycloakSession session) {
+        EntityManager em = PersistenceExceptionConverter.create(session, entityManagerFactory.createEntityManager());
+        session.getTransactionManager().enlist(new JpaKeycloakTransaction(em));
+
+        return new DefaultJpaConnectionProvider(em);
+    }
+
+
+    /*
+     * the tables of the users-services come from the changelog deployed with the provider
+     */
+    private static void migrate(Connection connection) throws LiquibaseException {
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+
+        try (Liquibase liquibase = new Liquibase(
+                new TrackSwiftlyJpaEntityProvider().getChangelogLocation(), new ClassLoaderResourceAccessor(), database)) {
+            liquibase.update("");
+        } catch (Exception e) {
+            throw new LiquibaseException(e);
+        }
+    }
+
+
+    /*
+     * the Keycloak tables are created from the mappings , those already created by the changelog are left as is
+     */
+    private EntityManagerFactory buildEntityManagerFactory() {
+        Configuration configuration = new Configuration()
+            .setProperty("hibernate.connection.url", url)
+            .setProperty("hibernate.connection.username", "sa")
+            .setProperty("hibernate.connection.password", "")
+            .setProperty("hibernate.connection.pool_size", "16")
+            .setProperty("hibernate.hbm2ddl.auto", "update")
+            .setProperty("hibernate.generate_statistics", "true")
+            .setProperty("hibernate.jdbc.batch_size", "32");
+
+        keycloakEntities().forEach(configuration::addAnnotatedClass);
+        new TrackSwiftlyJpaEntityProvider().getEntities().forEach(configuration::addAnnotatedClass);
+
+        return configuration.buildSessionFactory();
+    }
+
+
+    private static List<Class<?>> keycloakEntities() {
+        List<Class<?>> entities = new ArrayList<>();
+        ClassLoader loader = TestKeycloak.class.getClassLoader();
+
+        try (JarFile jar = new JarFile(Path.of(JpaRealmProvider.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toFile())) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                String name = entry.getName();
+
+                if (!name.endsWith(".class") || name.contains("$")) {
+                    continue;
+                }
+
+                Class<?> type = Class.forName(name.substring(0, name.length() - ".class".length()).replace('/', '.'), false, loader);
+
+                if (type.isAnnotationPresent(Entity.class)) {
+                    entities.add(type);
+                }
+            }
+        } catch (IOException | URISyntaxException | ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to list the Keycloak JPA entities", e);
+        }
+
+        return entities;
+    }
+}
@@ -0,0 +1,49 @@
+package com.trackswiftly.keycloak_userservice.testing;
+
+import org.keycloak.http.HttpRequest;
+import org.keycloak.http.HttpResponse;
+import org.keycloak.models.KeyManager;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.DefaultKeycloakContext;
+import org.keycloak.services.DefaultKeycloakSession;
+
+import com.trackswiftly.keycloak_userservice.utils.BackgroundHttpRequest;
+
+
+/***
+ *
+ * Session of the {@link TestKeycloak} : requests on its base URI , keys of {@link TestKeys} .
+ */
+class TestKeycloakSession extends DefaultKeycloakSession {
+
+
+    private static final TestKeys KEYS = new TestKeys();
+
+
+    TestKeycloakSession(TestKeycloak factory) {
+        super(factory);
+    }
+
+
+
+    @Override
+    public KeyManager keys() {
+        return KEYS;
+    }
+
+
+    @Override
+    protected DefaultKeycloakContext createKeycloakContext(KeycloakSession session) {
+        return new DefaultKeycloakContext(session) {
+            @Override
+            protected HttpRequest createHttpRequest() {
+                return new BackgroundHttpRequest(TestKeycloak.BASE_URI, null);
+            }
+
+            @Override
+            protected HttpResponse createHttpResponse() {
+                throw new UnsupportedOperationException("No response in tests");
+            }
+        };
+    }
+}
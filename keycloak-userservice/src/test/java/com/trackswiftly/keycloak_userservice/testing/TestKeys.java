@@ -0,0 +1,145 @@
+package com.trackswiftly.keycloak_userservice.testing;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.keys.RsaKeyMetadata;
+import org.keycloak.keys.SecretKeyMetadata;
+import org.keycloak.models.KeyManager;
+import org.keycloak.models.RealmModel;
+
+
+/***
+ *
+ * One signing key per realm and algorithm (HS512 for the action tokens , RS256 for the access tokens) ,
+ * generated on first use , in place of the key providers of the realm .
+ */
+class TestKeys implements KeyManager {
+
+
+    private final Map<String, KeyWrapper> keys = new ConcurrentHashMap<>();
+
+
+
+    @Override
+    public KeyWrapper getActiveKey(RealmModel realm, KeyUse use, String algorithm) {
+        return keys.computeIfAbsent(realm.getId() + "." + algorithm, kid -> generate(kid, algorithm));
+    }
+
+    @Override
+    public KeyWrapper getKey(RealmModel realm, String kid, KeyUse use, String algorithm) {
+        return keys.get(kid);
+    }
+
+    @Override
+    public Stream<KeyWrapper> getKeysStream(RealmModel realm, KeyUse use, String algorithm) {
+        return Stream.of(getActiveKey(realm, use, algorithm));
+    }
+
+    @Override
+    public Stream<KeyWrapper> getKeysStream(RealmModel realm) {
+        return keys.values().stream().filter(key -> key.getKid().startsWith(realm.getId() + "."));
+    }
+
+    @Override
+    public ActiveRsaKey getActiveRsaKey(RealmModel realm) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PublicKey getRsaPublicKey(RealmModel realm, String kid) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Certificate getRsaCertificate(RealmModel realm, String kid) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<RsaKeyMetadata> getRsaKeys(RealmModel realm) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ActiveHmacKey getActiveHmacKey(RealmModel realm) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SecretKey getHmacSecretKey(RealmModel realm, String kid) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<SecretKeyMetadata> getHmacKeys(RealmModel realm) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ActiveAesKey getActiveAesKey(RealmModel realm) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SecretKey getAesSecretKey(RealmModel realm, String kid) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<SecretKeyMetadata> getAesKeys(RealmModel realm) {
+        throw new UnsupportedOperationException();
+    }
+
+
+
+    private static KeyWrapper generate(String kid, String algorithm) {
+        KeyWrapper key = new KeyWrapper();
+        key.setKid(kid);
+        key.setAlgorithm(algorithm);
+        key.setUse(KeyUse.SIG);
+
+        if (algorithm.startsWith("HS")) {
+            byte[] secret = new byte[64];
+            new SecureRandom().nextBytes(secret);
+
+            key.setType(KeyType.OCT);
+            key.setSecretKey(new SecretKeySpec(secret, "HmacSHA512"));
+
+            return key;
+        }
+
+        if (!Algorithm.RS256.equals(algorithm)) {
+            throw new UnsupportedOperationException("No " + algorithm + " key in tests");
+        }
+
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+
+            key.setType(KeyType.RSA);
+            key.setPrivateKey(keyPair.getPrivate());
+            key.setPublicKey(keyPair.getPublic());
+
+            return key;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
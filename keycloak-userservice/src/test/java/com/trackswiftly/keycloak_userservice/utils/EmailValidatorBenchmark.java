@@ -0,0 +1,89 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.trackswiftly.keycloak_userservice.utils.EmailValidatorDifferentialTest.LegacyEmailValidator;
+
+
+/***
+ *
+ * ns per address of the single pass validator and of the regex based one it replaced , over a mix of
+ * valid and invalid addresses . Bytes allocated per address are reported with the GC profiler :
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks="EmailValidatorBenchmark -prof gc"
+ *
+ * An operation is one address , gc.alloc.rate.norm is the bytes allocated per address .
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailValidatorBenchmark {
+
+
+    static final int ADDRESSES = 1024;
+
+    private static final String[] SAMPLES = {
+        "john.doe@trackswiftly.com" ,
+        "first.last+invite@mail.example.co.uk" ,
+        "ops_team%eu@sub-domain.example.org" ,
+        " padded.address@example.com\t" ,
+        "no-at-sign.example.com" ,
+        "double@@example.com" ,
+        "dots..in@example.com" ,
+        "user@-example.com" ,
+        "user@example.c0m" ,
+        "user@example"
+    };
+
+
+    private String[] addresses;
+
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        addresses = new String[ADDRESSES];
+
+        for (int i = 0; i < ADDRESSES; i++) {
+            // distinct strings , the regex cannot benefit from a single hot input
+            addresses[i] = new String(SAMPLES[random.nextInt(SAMPLES.length)]);
+        }
+    }
+
+
+
+    @Benchmark
+    @OperationsPerInvocation(ADDRESSES)
+    public void singlePass(Blackhole blackhole) {
+        for (String address : addresses) {
+            blackhole.consume(EmailValidator.isValidEmail(address));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ADDRESSES)
+    public void regex(Blackhole blackhole) {
+        for (String address : addresses) {
+            blackhole.consume(LegacyEmailValidator.isValidEmail(address));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+
+/***
+ *
+ * The single pass {@link EmailValidator#isValidEmail} against the regex based validator it replaced ,
+ * over a generated corpus : random strings over the characters that matter to the rules , and well formed
+ * addresses mutated around the limits (local part , label and domain lengths , dots , hyphens , top level domain) .
+ */
+class EmailValidatorDifferentialTest {
+
+
+    private static final long SEED = 20240611L;
+
+    private static final int RANDOM_CASES = 300_000;
+    private static final int STRUCTURED_CASES = 300_000;
+
+    private static final String ALPHABET = "abcXYZ019._%+-@ \té!#";
+    private static final String LOCAL_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789._%+-";
+    private static final String LABEL_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-";
+
+
+
+    @Test
+    void acceptsTheSameAddressesAsTheRegexValidator() {
+        Random random = new Random(SEED);
+        List<String> mismatches = new ArrayList<>();
+
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            check(randomString(random), mismatches);
+        }
+
+        for (int i = 0; i < STRUCTURED_CASES; i++) {
+            check(mutate(structuredAddress(random), random), mismatches);
+        }
+
+        assertEquals(List.of(), mismatches.subList(0, Math.min(mismatches.size(), 20)),
+            mismatches.size() + " addresses validated differently");
+    }
+
+
+    @Test
+    void acceptsTheSameEdgeCases() {
+        List<String> mismatches = new ArrayList<>();
+
+        for (String email : new String[] {
+                null , "" , " " , "@" , "a@b" , "a@b.c" , "a@b.co" , " a@b.co\t" , "a@@b.co" , "a@b.co@" ,
+                "@b.co" , ".a@b.co" , "a.@b.co" , "a..b@b.co" , "a@.b.co" , "a@b..co" , "a@-b.co" , "a@b-.co" ,
+                "a@b.co-" , "a@b.c0" , "a@b.co." , "a@b_c.co" , "a+tag@sub.b.co" , "A%B@B.CO" , "é@b.co" ,
+                "a".repeat(64) + "@b.co" , "a".repeat(65) + "@b.co" ,
+                "a@" + "b".repeat(63) + ".co" , "a@" + "b".repeat(64) + ".co" ,
+                "a@" + ("b".repeat(62) + ".").repeat(4) + "co" , "a@" + ("b".repeat(60) + ".").repeat(4) + "co" }) {
+
+            check(email, mismatches);
+        }
+
+        assertEquals(List.of(), mismatches);
+    }
+
+
+
+    private static void check(String email, List<String> mismatches) {
+        if (LegacyEmailValidator.isValidEmail(email) != EmailValidator.isValidEmail(email)) {
+            mismatches.add(email);
+        }
+    }
+
+
+    private static String randomString(Random random) {
+        StringBuilder email = new StringBuilder();
+        int length = random.nextInt(24);
+
+        for (int i = 0; i < length; i++) {
+            email.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+
+        return email.toString();
+    }
+
+
+    private static String structuredAddress(Random random) {
+        StringBuilder email = new StringBuilder();
+        append(email, LOCAL_CHARS, 1 + random.nextInt(random.nextInt(10) == 0 ? 70 : 12), random);
+        email.append('@');
+
+        int labels = 1 + random.nextInt(random.nextInt(10) == 0 ? 6 : 3);
+
+        for (int i = 0; i < labels; i++) {
+            append(email, LABEL_CHARS, 1 + random.nextInt(random.nextInt(10) == 0 ? 66 : 10), random);
+            email.append('.');
+        }
+
+        // top level domain , mostly letters
+        append(email, random.nextInt(5) == 0 ? LABEL_CHARS : "abcdefghijklmnopqrstuvwxyz", random.nextInt(5), random);
+
+        return email.toString();
+    }
+
+
+    /*
+     * one edit out of four is left as is
+     */
+    private static String mutate(String email, Random random) {
+        if (random.nextInt(4) == 0) {
+            return email;
+        }
+
+        StringBuilder mutated = new StringBuilder(email);
+        int at = random.nextInt(mutated.length() + 1);
+
+        switch (random.nextInt(5)) {
+            case 0 -> mutated.insert(at, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            case 1 -> mutated.insert(at, random.nextBoolean() ? "." : "-");
+            case 2 -> mutated.insert(at, ' ');
+            case 3 -> mutated.setLength(at);
+            default -> {
+                if (at < mutated.length()) {
+                    mutated.deleteCharAt(at);
+                }
+            }
+        }
+
+        return mutated.toString();
+    }
+
+
+    private static void append(StringBuilder email, String chars, int length, Random random) {
+        for (int i = 0; i < length; i++) {
+            email.append(chars.charAt(random.nextInt(chars.length())));
+        }
+    }
+
+
+
+    /***
+     *
+     * The validator before the single pass scanner , kept as the reference of the acceptance rules .
+     */
+    static final class LegacyEmailValidator {
+
+        private static final Pattern EMAIL_PATTERN = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
+
+
+        private LegacyEmailValidator() {
+        }
+
+
+        static boolean isValidEmail(String email) {
+            if (email == null || email.trim().isEmpty()) {
+                return false;
+            }
+
+            email = email.trim();
+
+            if (!email.contains("@")) {
+                return false;
+            }
+
+            String[] parts = email.split("@");
+
+            if (parts.length != 2) {
+                return false;
+            }
+
+            if (!isValidLocalPart(parts[0]) || !isValidDomainPart(parts[1])) {
+                return false;
+            }
+
+            return EMAIL_PATTERN.matcher(email).matches();
+        }
+
+
+        private static boolean isValidLocalPart(String localPart) {
+            return !localPart.isEmpty()
+                && !localPart.startsWith(".") && !localPart.endsWith(".")
+                && !localPart.contains("..")
+                && localPart.length() <= 64;
+        }
+
+
+        private static boolean isValidDomainPart(String domainPart) {
+            if (domainPart.isEmpty() || !domainPart.contains(".")) {
+                return false;
+            }
+
+            if (domainPart.startsWith(".") || domainPart.endsWith(".")
+                    || domainPart.startsWith("-") || domainPart.endsWith("-")) {
+                return false;
+            }
+
+            if (domainPart.contains("..") || domainPart.length() > 253) {
+                return false;
+            }
+
+            for (String label : domainPart.split("\\.")) {
+                if (!isValidDomainLabel(label)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+
+        private static boolean isValidDomainLabel(String label) {
+            if (label.isEmpty() || label.length() > 63) {
+                return false;
+            }
+
+            if (label.startsWith("-") || label.endsWith("-")) {
+                return false;
+            }
+
+            return label.matches("^[a-zA-Z0-9-]+$");
+        }
+    }
+}
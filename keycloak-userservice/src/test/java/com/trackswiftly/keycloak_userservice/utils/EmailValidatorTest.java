@@ -0,0 +1,146 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.utils.EmailValidator.ValidationResult;
+
+
+class EmailValidatorTest {
+
+
+    @Test
+    void rejectsAnEmptyList() {
+        ValidationResult result = EmailValidator.validateInvitationRequests(List.of());
+
+        assertFalse(result.isValid());
+        assertEquals("User invitations list cannot be null or empty", result.getErrors().get("userInvitations"));
+    }
+
+
+    @Test
+    void reportsTheErrorsByRequestIndex() {
+        List<InvitationRequest> requests = new ArrayList<>();
+        requests.add(invitation("valid@trackswiftly.com"));
+        requests.add(invitation("not-an-email"));
+        requests.add(null);
+        requests.add(InvitationRequest.builder().email("named@trackswiftly.com").firstName(" ").userId("").build());
+
+        ValidationResult result = EmailValidator.validateInvitationRequests(requests);
+
+        assertFalse(result.isValid());
+        assertEquals(4, result.getErrorCount());
+        assertEquals("Email format is invalid", result.getErrors().get("userInvitations[1].email"));
+        assertEquals("Invitation request cannot be null", result.getErrors().get("userInvitations[2]"));
+        assertEquals("First name cannot be empty if provided", result.getErrors().get("userInvitations[3].firstName"));
+        assertEquals("User ID cannot be empty if provided", result.getErrors().get("userInvitations[3].userId"));
+        assertNull(result.getRowError(0));
+        assertEquals("email: Email format is invalid", result.getRowError(1));
+    }
+
+
+    @Test
+    void marksTheRepeatedEmailsAfterTheFirstOne() {
+        ValidationResult result = EmailValidator.validateInvitationRequests(List.of(
+            invitation("a@trackswiftly.com"),
+            invitation(" A@TrackSwiftly.com "),
+            invitation("b@trackswiftly.com"),
+            invitation("a@trackswiftly.com")
+        ));
+
+        assertTrue(result.isValid());
+        assertFalse(result.isDuplicate(0));
+        assertTrue(result.isDuplicate(1));
+        assertFalse(result.isDuplicate(2));
+        assertTrue(result.isDuplicate(3));
+    }
+
+
+    @Test
+    void validatesInParallelWithTheSameResult() {
+        List<InvitationRequest> requests = new ArrayList<>();
+
+        for (int i = 0; i < 1_000; i++) {
+            requests.add(invitation(i % 7 == 0 ? "invalid-" + i : "user" + (i % 400) + "@trackswiftly.com"));
+        }
+
+        ValidationResult sequential = EmailValidator.validateInvitationRequests(requests);
+        ValidationResult parallel = EmailValidator.validateInvitationRequests(requests, 16);
+
+        assertEquals(List.copyOf(sequential.getErrors().keySet()), List.copyOf(parallel.getErrors().keySet()));
+        assertEquals(sequential.getErrors(), parallel.getErrors());
+    }
+
+
+    @Test
+    void marksTheDuplicatesOfTheValidParallelListLikeTheSequentialOne() {
+        List<InvitationRequest> requests = new ArrayList<>();
+
+        for (int i = 0; i < 1_000; i++) {
+            requests.add(invitation("user" + (i % 300) + "@trackswiftly.com"));
+        }
+
+        ValidationResult parallel = EmailValidator.validateInvitationRequests(requests, 16);
+
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals(i >= 300, parallel.isDuplicate(i), "request " + i);
+        }
+    }
+
+
+    @Test
+    void keepsTheInvalidRowsOfAChunkAndItsDuplicatesAcrossChunks() {
+        Set<String> seen = new HashSet<>();
+
+        ValidationResult first = EmailValidator.validateInvitationChunk(List.of(
+            invitation("a@trackswiftly.com"),
+            invitation("broken")
+        ), seen);
+
+        ValidationResult second = EmailValidator.validateInvitationChunk(List.of(
+            invitation("b@trackswiftly.com"),
+            invitation("A@trackswiftly.com")
+        ), seen);
+
+        assertNull(first.getRowError(0));
+        assertEquals("email: Email format is invalid", first.getRowError(1));
+        assertTrue(second.isValid());
+        assertFalse(second.isDuplicate(0));
+        assertTrue(second.isDuplicate(1));
+        assertEquals(Set.of("a@trackswiftly.com", "broken", "b@trackswiftly.com"), seen);
+    }
+
+
+    @Test
+    void reportsTheFirstErrorOfEachRowAndSeesTheErrorsAddedLater() {
+        ValidationResult result = EmailValidator.validateInvitationChunk(List.of(
+            InvitationRequest.builder().email("").firstName(" ").build(),
+            invitation("a@trackswiftly.com")
+        ), new HashSet<>());
+
+        assertEquals("email: Email cannot be null or empty", result.getRowError(0));
+        assertNull(result.getRowError(1));
+
+        result.addError(1, "userId", "Unknown user");
+
+        assertEquals("email: Email cannot be null or empty", result.getRowError(0));
+        assertEquals("userId: Unknown user", result.getRowError(1));
+        assertNull(result.getRowError(2));
+    }
+
+
+
+    private static InvitationRequest invitation(String email) {
+        return InvitationRequest.builder().email(email).build();
+    }
+}
@@ -0,0 +1,115 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.trackswiftly.keycloak_userservice.dtos.InvitationRequest;
+import com.trackswiftly.keycloak_userservice.utils.InvitationRowReader.Row;
+
+
+class InvitationRowReaderTest {
+
+
+    @Test
+    void readsNdjsonRowsAndSkipsBlankLines() throws IOException {
+        List<Row> rows = readAll(InvitationRowReader.ndjson(input(
+            "{\"email\":\"a@trackswiftly.com\",\"firstName\":\"Ann\"}\r\n" +
+            "\n" +
+            "{not json}\n" +
+            "{\"email\":\"b@trackswiftly.com\",\"userId\":\"u-2\"}"
+        )));
+
+        assertEquals(3, rows.size());
+        assertEquals(request("a@trackswiftly.com", "Ann", null, null), rows.get(0).request());
+        assertEquals(1, rows.get(0).line());
+        assertEquals(new Row(3, null, "Invalid JSON row"), rows.get(1));
+        assertEquals(request("b@trackswiftly.com", null, null, "u-2"), rows.get(2).request());
+        assertEquals(4, rows.get(2).line());
+    }
+
+
+    @Test
+    void mapsCsvColumnsByHeaderName() throws IOException {
+        List<Row> rows = readAll(InvitationRowReader.csv(input(
+            "LastName,Email,notes,firstname\n" +
+            "Doe,john@trackswiftly.com,ignored,John\n" +
+            ",jane@trackswiftly.com,, \n"
+        )));
+
+        assertEquals(2, rows.size());
+        assertEquals(request("john@trackswiftly.com", "John", "Doe", null), rows.get(0).request());
+        assertEquals(2, rows.get(0).line());
+        assertEquals(request("jane@trackswiftly.com", null, null, null), rows.get(1).request());
+    }
+
+
+    @Test
+    void readsQuotedCsvFields() throws IOException {
+        List<Row> rows = readAll(InvitationRowReader.csv(input(
+            "email,firstName,lastName\n" +
+            "a@trackswiftly.com,\"Smith, Jr\",\"say \"\"hi\"\"\"\n" +
+            "b@trackswiftly.com,\"unterminated\n"
+        )));
+
+        assertEquals(request("a@trackswiftly.com", "Smith, Jr", "say \"hi\"", null), rows.get(0).request());
+        assertEquals(new Row(3, null, "Unterminated quoted field"), rows.get(1));
+    }
+
+
+    @Test
+    void reportsTooLongRowsAndGoesOn() throws IOException {
+        String longRow = "{\"email\":\"" + "a".repeat(InvitationRowReader.MAX_LINE_LENGTH) + "@trackswiftly.com\"}";
+
+        List<Row> rows = readAll(InvitationRowReader.ndjson(input(
+            longRow + "\n" +
+            "{\"email\":\"b@trackswiftly.com\"}\n"
+        )));
+
+        assertEquals(2, rows.size());
+        assertNull(rows.get(0).request());
+        assertEquals("Row longer than " + InvitationRowReader.MAX_LINE_LENGTH + " characters", rows.get(0).error());
+        assertEquals("b@trackswiftly.com", rows.get(1).request().getEmail());
+    }
+
+
+    @Test
+    void rejectsCsvWithoutEmailColumnOrHeader() {
+        assertThrows(IOException.class, () -> InvitationRowReader.csv(input("firstName,lastName\nJohn,Doe\n")));
+        assertThrows(IOException.class, () -> InvitationRowReader.csv(input("")));
+        assertThrows(IOException.class, () -> InvitationRowReader.csv(input("\"email\n")));
+    }
+
+
+
+    private static List<Row> readAll(InvitationRowReader reader) throws IOException {
+        List<Row> rows = new ArrayList<>();
+
+        try (reader) {
+            for (Row row = reader.next(); row != null; row = reader.next()) {
+                rows.add(row);
+            }
+        }
+
+        return rows;
+    }
+
+
+    private static InputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private static InvitationRequest request(String email, String firstName, String lastName, String userId) {
+        return new InvitationRequest(email, firstName, lastName, userId);
+    }
+}
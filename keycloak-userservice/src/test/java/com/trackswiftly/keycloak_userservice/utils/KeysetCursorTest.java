@@ -0,0 +1,45 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.ws.rs.BadRequestException;
+
+
+class KeysetCursorTest {
+
+
+    @Test
+    void decodesTheKeysItEncoded() {
+        assertArrayEquals(new String[] { "jane.doe" }, KeysetCursor.decode(KeysetCursor.encode("jane.doe"), 1));
+        assertArrayEquals(new String[] { "élodie", "" }, KeysetCursor.decode(KeysetCursor.encode("élodie", ""), 2));
+        assertArrayEquals(new String[] { "a,b|c" }, KeysetCursor.decode(" " + KeysetCursor.encode("a,b|c") + " ", 1));
+    }
+
+
+    @Test
+    void encodesUrlSafeCursors() {
+        String cursor = KeysetCursor.encode("user??>>~~");
+
+        assertFalse(cursor.contains("+") || cursor.contains("/") || cursor.contains("="), cursor);
+    }
+
+
+    @Test
+    void startsFromTheFirstPageWithoutCursor() {
+        assertNull(KeysetCursor.decode(null, 1));
+        assertNull(KeysetCursor.decode("  ", 1));
+    }
+
+
+    @Test
+    void rejectsForeignCursors() {
+        assertThrows(BadRequestException.class, () -> KeysetCursor.decode("not base64 !", 1));
+        assertThrows(BadRequestException.class, () -> KeysetCursor.decode(KeysetCursor.encode("jane.doe", "id-1"), 1));
+        assertThrows(BadRequestException.class, () -> KeysetCursor.decode(KeysetCursor.encode("jane.doe"), 2));
+    }
+}
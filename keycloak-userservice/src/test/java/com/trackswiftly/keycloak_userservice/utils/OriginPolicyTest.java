@@ -0,0 +1,113 @@
+package com.trackswiftly.keycloak_userservice.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+
+class OriginPolicyTest {
+
+
+    private static final String RULES = "app.trackswiftly.com , *.fleet.trackswiftly.com , *swiftdev* , private-networks";
+
+    private final OriginPolicy policy = OriginPolicy.compile(RULES, Set.of("https://client.example.com"), 16);
+
+
+
+    @Test
+    void exactHostsIgnoreSchemePortAndCase() {
+        assertTrue(policy.isAllowed("https://app.trackswiftly.com"));
+        assertTrue(policy.isAllowed("http://app.trackswiftly.com:8080"));
+        assertTrue(policy.isAllowed("HTTPS://APP.TrackSwiftly.com"));
+        assertTrue(policy.isAllowed("https://client.example.com"));
+
+        assertFalse(policy.isAllowed("https://api.trackswiftly.com"));
+        assertFalse(policy.isAllowed("https://example.com"));
+    }
+
+
+    @Test
+    void wildcardsMatchSubDomainsOnly() {
+        assertTrue(policy.isAllowed("https://eu.fleet.trackswiftly.com"));
+        assertTrue(policy.isAllowed("https://a.b.fleet.trackswiftly.com"));
+
+        assertFalse(policy.isAllowed("https://fleet.trackswiftly.com"));
+        assertFalse(policy.isAllowed("https://myfleet.trackswiftly.com"));
+        assertFalse(policy.isAllowed("https://fleet.trackswiftly.com.evil.io"));
+    }
+
+
+    @Test
+    void keywordsMatchAnywhereInTheHost() {
+        assertTrue(policy.isAllowed("https://my-swiftdev-box.local"));
+        assertTrue(OriginPolicy.compile("*null*", Set.of(), 16).isAllowed("null"));
+
+        assertFalse(policy.isAllowed("null"));
+    }
+
+
+    @Test
+    void privateNetworksAreThe1918Ranges() {
+        assertTrue(policy.isAllowed("http://10.1.2.3:3000"));
+        assertTrue(policy.isAllowed("http://172.16.0.1"));
+        assertTrue(policy.isAllowed("http://172.31.255.255"));
+        assertTrue(policy.isAllowed("http://192.168.1.20"));
+
+        assertFalse(policy.isAllowed("http://172.32.0.1"));
+        assertFalse(policy.isAllowed("http://192.169.1.20"));
+        assertFalse(policy.isAllowed("http://11.0.0.1"));
+        assertFalse(OriginPolicy.compile("app.trackswiftly.com", Set.of(), 16).isAllowed("http://10.0.0.1"));
+    }
+
+
+    @Test
+    void privateNetworkAddressesAreParsedStrictly() {
+        assertTrue(OriginPolicy.isPrivateNetworkAddress("10.0.0.1"));
+
+        assertFalse(OriginPolicy.isPrivateNetworkAddress("10.0.0"));
+        assertFalse(OriginPolicy.isPrivateNetworkAddress("10.0.0.1.5"));
+        assertFalse(OriginPolicy.isPrivateNetworkAddress("10..0.1"));
+        assertFalse(OriginPolicy.isPrivateNetworkAddress("10.0.0.1000"));
+        assertFalse(OriginPolicy.isPrivateNetworkAddress("10.0.0.x"));
+    }
+
+
+    @Test
+    void hostsAreExtractedFromOriginsAndRules() {
+        assertEquals("app.trackswiftly.com", OriginPolicy.hostOf("https://app.trackswiftly.com:8443/path"));
+        assertEquals("app.trackswiftly.com", OriginPolicy.hostOf("app.trackswiftly.com"));
+        assertEquals("::1", OriginPolicy.hostOf("http://[::1]:8080"));
+        assertEquals("::1", OriginPolicy.hostOf("::1"));
+
+        assertNull(OriginPolicy.hostOf("https://"));
+        assertNull(OriginPolicy.hostOf("http://[::1"));
+    }
+
+
+    @Test
+    void blankOriginsAreRejectedAndDecisionsAreStable() {
+        assertFalse(policy.isAllowed(null));
+        assertFalse(policy.isAllowed(" "));
+
+        // beyond the cache size , decisions are evaluated again
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i % 2 == 0, policy.isAllowed(i % 2 == 0 ? "http://10.0.0." + i : "http://11.0.0." + i));
+        }
+
+        assertTrue(policy.isAllowed("http://10.0.0.0"));
+    }
+
+
+    @Test
+    void isCompiledFromItsSources() {
+        assertTrue(policy.isCompiledFrom(RULES, Set.of("https://client.example.com")));
+
+        assertFalse(policy.isCompiledFrom(RULES, Set.of()));
+        assertFalse(policy.isCompiledFrom("app.trackswiftly.com", Set.of("https://client.example.com")));
+    }
+}